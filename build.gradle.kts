@@ -3,6 +3,8 @@ plugins {
     id("com.github.hierynomus.license")
     id("io.github.sgtsilvio.gradle.defaults")
     id("org.asciidoctor.jvm.convert")
+    id("me.champeau.jmh")
+    id("io.github.reyerizo.gradle.jcstress")
     id("org.sonarqube") version "4.0.0.2929"
     jacoco
     id("jacoco-report-aggregation")
@@ -32,6 +34,7 @@ dependencies {
     implementation("org.apache.commons:commons-text:${property("commons-text.version")}")
     implementation("org.bouncycastle:bcprov-jdk15on:${property("bouncycastle.version")}")
     implementation("com.github.ben-manes.caffeine:caffeine:${property("caffeine.version")}")
+    implementation("org.hdrhistogram:HdrHistogram:${property("hdrhistogram.version")}")
     implementation("jakarta.xml.bind:jakarta.xml.bind-api:${property("jakarta-xml-bind.version")}")
     implementation("com.beust:jcommander:${property("jcommander.version")}")
 
@@ -93,6 +96,58 @@ tasks.processTestResources {
     from("src/hivemq-extension/")
 }
 
+/* ******************** benchmarks ******************** */
+
+jmh {
+    jmhVersion.set("${property("jmh.version")}")
+}
+
+/* ******************** concurrency tests ******************** */
+
+jcstress {
+    jcstressDependency = "org.openjdk.jcstress:jcstress-core:${property("jcstress.version")}"
+}
+
+//the tests build the permissions with the interfaces of the extension SDK
+configurations.named("jcstressImplementation") {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+/* ******************** simulation ******************** */
+
+val simulation: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath
+}
+
+configurations[simulation.runtimeOnlyConfigurationName].extendsFrom(configurations.compileOnly.get())
+
+//the simulation runs every connect in a virtual thread
+val simulationJavaVersion = JavaLanguageVersion.of(21)
+
+tasks.named<JavaCompile>(simulation.compileJavaTaskName) {
+    javaCompiler.set(javaToolchains.compilerFor { languageVersion.set(simulationJavaVersion) })
+    options.release.set(simulationJavaVersion.asInt())
+}
+
+val simulateConnectStorm by tasks.registering(JavaExec::class) {
+    group = "simulation"
+    description = "Simulates a connect storm against the authenticator, options are passed with --args."
+    classpath = simulation.runtimeClasspath
+    mainClass.set("com.hivemq.extensions.rbac.ConnectStormSimulator")
+    javaLauncher.set(javaToolchains.launcherFor { languageVersion.set(simulationJavaVersion) })
+    jvmArgs("-Xmx4g")
+}
+
+val replayAuthTrace by tasks.registering(JavaExec::class) {
+    group = "simulation"
+    description = "Replays recorded authentication traces against a fresh validator, options are passed with --args."
+    classpath = simulation.runtimeClasspath
+    mainClass.set("com.hivemq.extensions.rbac.AuthTraceReplay")
+    javaLauncher.set(javaToolchains.launcherFor { languageVersion.set(simulationJavaVersion) })
+    jvmArgs("-Xmx4g")
+}
+
 /* ******************** checks ******************** */
 
 license {
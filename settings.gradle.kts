@@ -6,5 +6,7 @@ pluginManagement {
         id("com.github.hierynomus.license") version "${extra["plugin.license.version"]}"
         id("io.github.sgtsilvio.gradle.defaults") version "${extra["plugin.defaults.version"]}"
         id("org.asciidoctor.jvm.convert") version "${extra["plugin.asciidoctor.version"]}"
+        id("me.champeau.jmh") version "${extra["plugin.jmh.version"]}"
+        id("io.github.reyerizo.gradle.jcstress") version "${extra["plugin.jcstress.version"]}"
     }
 }
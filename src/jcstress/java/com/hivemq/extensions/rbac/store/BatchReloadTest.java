@@ -0,0 +1,107 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+import java.util.List;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE_INTERESTING;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * A reload removes the last two users at once, like a batch of the admin channel, while a connect looks up the last
+ * and then the second to last user.
+ * <p>
+ * The results are 1 if the user was found and 0 if not. The changes of a reload are published at once, so once the
+ * last user is gone, the second to last user must be gone as well.
+ */
+public class BatchReloadTest {
+
+    private static final @NotNull List<String> ROLES = List.of("role");
+
+    /**
+     * Two of many users are removed, so the removed users are put into the overlay of the index.
+     */
+    @JCStressTest
+    @Description("The users of a batch in the overlay are removed at once")
+    @Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "Both users found before the reload")
+    @Outcome(id = "0, 0", expect = ACCEPTABLE, desc = "Both users removed")
+    @Outcome(id = "1, 0", expect = ACCEPTABLE_INTERESTING, desc = "Reload between the lookups")
+    @Outcome(id = "0, 1", expect = FORBIDDEN, desc = "Only a part of the batch was visible")
+    @State
+    public static class Overlay extends Reload {
+
+        public Overlay() {
+            super(64);
+        }
+    }
+
+    /**
+     * Two of three users are removed, so the index is rebuilt.
+     */
+    @JCStressTest
+    @Description("The users of a batch in a rebuilt index are removed at once")
+    @Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "Both users found before the reload")
+    @Outcome(id = "0, 0", expect = ACCEPTABLE, desc = "Both users removed")
+    @Outcome(id = "1, 0", expect = ACCEPTABLE_INTERESTING, desc = "Reload between the lookups")
+    @Outcome(id = "0, 1", expect = FORBIDDEN, desc = "Only a part of the batch was visible")
+    @State
+    public static class Rebuild extends Reload {
+
+        public Rebuild() {
+            super(3);
+        }
+    }
+
+    abstract static class Reload {
+
+        private final @NotNull InMemoryCredentialsStore store;
+        private final @NotNull CredentialsDiff diff;
+        private final @NotNull String lastUser;
+        private final @NotNull String secondToLastUser;
+
+        Reload(final int users) {
+            final FileAuthConfig oldConfig = TestCredentials.config(users, ROLES);
+            final FileAuthConfig newConfig = TestCredentials.config(users - 2, ROLES);
+            store = TestCredentials.store(oldConfig);
+            diff = CredentialsDiff.compute(oldConfig, newConfig);
+            lastUser = "user" + (users - 1);
+            secondToLastUser = "user" + (users - 2);
+        }
+
+        @Actor
+        public void reload() {
+            store.applyDiff(diff);
+        }
+
+        @Actor
+        public void lookup(final @NotNull II_Result result) {
+            result.r1 = store.lookupUser(lastUser) == null ? 0 : 1;
+            result.r2 = store.lookupUser(secondToLastUser) == null ? 0 : 1;
+        }
+    }
+}
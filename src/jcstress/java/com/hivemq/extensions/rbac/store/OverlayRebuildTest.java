@@ -0,0 +1,87 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * user0 was changed by a previous reload and is in the overlay of the index. A reload that changes many other users
+ * rebuilds the index and clears the overlay, while a connect looks up user0.
+ * <p>
+ * The result is 1 if user0 was found with its changed role, 2 if it was found with its role before the previous
+ * reload and 0 if it was not found. The overlay is only cleared after the rebuilt index was published, so user0 is
+ * always found with its changed role.
+ */
+@JCStressTest
+@Description("A user that is moved from the overlay to a rebuilt index is always found")
+@Outcome(id = "1", expect = ACCEPTABLE, desc = "Changed user found")
+@Outcome(id = "2", expect = FORBIDDEN, desc = "User found in the index that was built before the change")
+@Outcome(id = "0", expect = FORBIDDEN, desc = "User not found during the rebuild")
+@State
+public class OverlayRebuildTest {
+
+    private static final int USERS = 64;
+    //more than a sixteenth of the users, so the index is rebuilt
+    private static final int CHANGED_USERS = 8;
+    private static final @NotNull String OLD_ROLE = "old-role";
+    private static final @NotNull String NEW_ROLE = "new-role";
+
+    private final @NotNull InMemoryCredentialsStore store;
+    private final @NotNull CredentialsDiff diff;
+
+    public OverlayRebuildTest() {
+        final FileAuthConfig initialConfig = TestCredentials.config(USERS, List.of(OLD_ROLE));
+        final FileAuthConfig changedConfig = TestCredentials.config(USERS, List.of(NEW_ROLE));
+        store = TestCredentials.store(initialConfig);
+        store.applyDiff(CredentialsDiff.compute(initialConfig, changedConfig));
+
+        final List<User> users = new ArrayList<>(changedConfig.getUsers());
+        for (int i = 1; i <= CHANGED_USERS; i++) {
+            final User user = users.get(i);
+            users.set(i, new User(user.getName(), TestCredentials.PASSWORD + "-changed", user.getRoles()));
+        }
+        diff = CredentialsDiff.compute(changedConfig, new FileAuthConfig(users, changedConfig.getRoles()));
+    }
+
+    @Actor
+    public void reload() {
+        store.applyDiff(diff);
+    }
+
+    @Actor
+    public void lookup(final @NotNull I_Result result) {
+        final User user = store.lookupUser("user0");
+        if (user != null) {
+            result.r1 = NEW_ROLE.equals(user.getRoles().get(0)) ? 1 : 2;
+        }
+    }
+}
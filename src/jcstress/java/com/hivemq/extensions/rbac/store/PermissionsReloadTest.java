@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
+import com.hivemq.extensions.rbac.utils.CredentialsValidator;
+import com.hivemq.extensions.rbac.utils.TopicPermissionInterner;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE_INTERESTING;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * A reload replaces one of the two roles of user0 and removes the replaced role and the combined role of the old
+ * roles, while a connect checks the credentials of user0 and builds its permissions with the validator.
+ * <p>
+ * The result is the amount of permissions, -1 if the credentials were rejected and -2 if building the permissions
+ * failed. Both the old and the new roles grant two permissions. If a role is removed after the roles of the user were
+ * returned, the permissions of the remaining roles are granted.
+ */
+@JCStressTest
+@Description("Authentication during a reload that changes the roles of the user")
+@Outcome(id = "2", expect = ACCEPTABLE, desc = "Permissions of the old or the new roles")
+@Outcome(id = "1", expect = ACCEPTABLE_INTERESTING, desc = "Old role removed after the old roles were returned")
+@Outcome(id = "-1", expect = FORBIDDEN, desc = "Credentials rejected during the reload")
+@Outcome(id = "-2", expect = FORBIDDEN, desc = "Permissions could not be built during the reload")
+@State
+public class PermissionsReloadTest {
+
+    private static final @NotNull ByteBuffer PASSWORD =
+            ByteBuffer.wrap(TestCredentials.PASSWORD.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+
+    private final @NotNull InMemoryCredentialsStore store;
+    private final @NotNull CredentialsValidator credentialsValidator;
+    private final @NotNull CredentialsDiff diff;
+
+    public PermissionsReloadTest() {
+        final FileAuthConfig oldConfig = TestCredentials.config(1, List.of("role-a", "role-b"));
+        final FileAuthConfig newConfig = TestCredentials.config(1, List.of("role-a", "role-c"));
+        store = TestCredentials.store(oldConfig);
+        diff = CredentialsDiff.compute(oldConfig, newConfig);
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        credentialsValidator = new CredentialsValidator(store,
+                extensionConfig,
+                new MetricRegistry(),
+                null,
+                new TopicPermissionInterner(TestCredentials.TestTopicPermissionBuilder::new));
+    }
+
+    @Actor
+    public void reload() {
+        store.applyDiff(diff);
+    }
+
+    @Actor
+    public void authenticate(final @NotNull I_Result result) {
+        final List<String> roles = credentialsValidator.getRoles("user0", PASSWORD.duplicate(), null);
+        if (roles == null) {
+            result.r1 = -1;
+            return;
+        }
+        try {
+            final List<TopicPermission> permissions = credentialsValidator.getPermissions("client0", "user0", roles);
+            result.r1 = permissions.size();
+        } catch (final RuntimeException e) {
+            result.r1 = -2;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extension.sdk.api.services.builder.TopicPermissionBuilder;
+import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.CredentialsFlattener;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Credentials for the concurrency tests of reloads and lookups.
+ * <p>
+ * The stores of the tests are updated by applying the diffs of reloads directly, like the reload callbacks do, so a
+ * reload races with the lookups without reading any files.
+ */
+final class TestCredentials {
+
+    static final @NotNull String PASSWORD = "password";
+    private static final @NotNull String OTHER_ROLE = "other-role";
+
+    //only needed to create stores, the tests never load credentials files
+    private static final @NotNull CredentialsConfiguration CREDENTIALS_CONFIGURATION = createConfiguration();
+
+    private TestCredentials() {
+    }
+
+    /**
+     * @param users      the amount of users
+     * @param user0Roles the roles of user0
+     * @return a flattened config with the users user0 to userN and one permission for every role, all users except
+     *         user0 hold the same other role
+     */
+    static @NotNull FileAuthConfig config(final int users, final @NotNull List<String> user0Roles) {
+        final List<User> userList = new ArrayList<>(users);
+        userList.add(new User("user0", PASSWORD, user0Roles));
+        for (int i = 1; i < users; i++) {
+            userList.add(new User("user" + i, PASSWORD, List.of(OTHER_ROLE)));
+        }
+        final List<Role> roleList = new ArrayList<>();
+        for (final String role : user0Roles) {
+            roleList.add(new Role(role, List.of(new Permission(role + "/#"))));
+        }
+        roleList.add(new Role(OTHER_ROLE, List.of(new Permission(OTHER_ROLE + "/#"))));
+        return CredentialsFlattener.flatten(new FileAuthConfig(userList, roleList));
+    }
+
+    /**
+     * @param config the initial config of the store
+     * @return a new in-memory store that contains the config
+     */
+    static @NotNull InMemoryCredentialsStore store(final @NotNull FileAuthConfig config) {
+        final InMemoryCredentialsStore store = new InMemoryCredentialsStore(CREDENTIALS_CONFIGURATION);
+        store.applyDiff(CredentialsDiff.compute(null, config));
+        return store;
+    }
+
+    private static @NotNull CredentialsConfiguration createConfiguration() {
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setReloadInterval(Integer.MAX_VALUE);
+        extensionConfig.setJournalPollInterval(0);
+        final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "test-credentials-configuration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            return new CredentialsConfiguration(Files.createTempDirectory("file-rbac-jcstress").toFile(),
+                    executorService,
+                    extensionConfig,
+                    new MetricRegistry());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stands in for the builder of HiveMQ, which is only available inside the broker.
+     */
+    static class TestTopicPermissionBuilder implements TopicPermissionBuilder {
+
+        private @NotNull String topicFilter = "#";
+
+        @Override
+        public @NotNull TopicPermissionBuilder topicFilter(final @NotNull String topicFilter) {
+            this.topicFilter = topicFilter;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder type(final TopicPermission.@NotNull PermissionType type) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder qos(final TopicPermission.@NotNull Qos qos) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder activity(final TopicPermission.@NotNull MqttActivity activity) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder retain(final TopicPermission.@NotNull Retain retain) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder sharedSubscription(
+                final TopicPermission.@NotNull SharedSubscription sharedSubscription) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder sharedGroup(final @NotNull String sharedGroup) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermission build() {
+            return new TestTopicPermission(topicFilter);
+        }
+    }
+
+    private static class TestTopicPermission implements TopicPermission {
+
+        private final @NotNull String topicFilter;
+
+        TestTopicPermission(final @NotNull String topicFilter) {
+            this.topicFilter = topicFilter;
+        }
+
+        @Override
+        public @NotNull String getTopicFilter() {
+            return topicFilter;
+        }
+
+        @Override
+        public @NotNull PermissionType getType() {
+            return PermissionType.ALLOW;
+        }
+
+        @Override
+        public @NotNull Qos getQos() {
+            return Qos.ALL;
+        }
+
+        @Override
+        public @NotNull MqttActivity getActivity() {
+            return MqttActivity.ALL;
+        }
+
+        @Override
+        public @NotNull Retain getPublishRetain() {
+            return Retain.ALL;
+        }
+
+        @Override
+        public @NotNull SharedSubscription getSharedSubscription() {
+            return SharedSubscription.ALL;
+        }
+
+        @Override
+        public @NotNull String getSharedGroup() {
+            return "#";
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+import java.util.List;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE_INTERESTING;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * A reload moves user0 from an old role to a new role and removes the old role, while a connect looks up user0 and
+ * then its role, like the validator does.
+ * <p>
+ * The result is the role the user was found with, 1 for the old and 2 for the new role or 0 if the user was not found,
+ * and if its role was found. A user with the new role must always find it, as the users and roles of a reload are
+ * published together. The old role may be removed between the lookups, the validator skips roles that were removed.
+ */
+public class UserRolesReloadTest {
+
+    private static final @NotNull String OLD_ROLE = "old-role";
+    private static final @NotNull String NEW_ROLE = "new-role";
+
+    /**
+     * One of many users is changed, so the changed user is put into the overlay of the index.
+     */
+    @JCStressTest
+    @Description("The role of a changed user in the overlay is found")
+    @Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "Old user and old role")
+    @Outcome(id = "2, 1", expect = ACCEPTABLE, desc = "New user and new role")
+    @Outcome(id = "1, 0", expect = ACCEPTABLE_INTERESTING, desc = "Old role removed after the old user was found")
+    @Outcome(id = "2, 0", expect = FORBIDDEN, desc = "New user found before its role was added")
+    @Outcome(id = "0, 0", expect = FORBIDDEN, desc = "User not found during the reload")
+    @State
+    public static class Overlay extends Reload {
+
+        public Overlay() {
+            super(64);
+        }
+    }
+
+    /**
+     * The only user is changed, so the index is rebuilt.
+     */
+    @JCStressTest
+    @Description("The role of a user in a rebuilt index is found")
+    @Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "Old user and old role")
+    @Outcome(id = "2, 1", expect = ACCEPTABLE, desc = "New user and new role")
+    @Outcome(id = "1, 0", expect = ACCEPTABLE_INTERESTING, desc = "Old role removed after the old user was found")
+    @Outcome(id = "2, 0", expect = FORBIDDEN, desc = "New user found before its role was added")
+    @Outcome(id = "0, 0", expect = FORBIDDEN, desc = "User not found during the reload")
+    @State
+    public static class Rebuild extends Reload {
+
+        public Rebuild() {
+            super(1);
+        }
+    }
+
+    abstract static class Reload {
+
+        private final @NotNull InMemoryCredentialsStore store;
+        private final @NotNull CredentialsDiff diff;
+
+        Reload(final int users) {
+            final FileAuthConfig oldConfig = TestCredentials.config(users, List.of(OLD_ROLE));
+            final FileAuthConfig newConfig = TestCredentials.config(users, List.of(NEW_ROLE));
+            store = TestCredentials.store(oldConfig);
+            diff = CredentialsDiff.compute(oldConfig, newConfig);
+        }
+
+        @Actor
+        public void reload() {
+            store.applyDiff(diff);
+        }
+
+        @Actor
+        public void lookup(final @NotNull II_Result result) {
+            final User user = store.lookupUser("user0");
+            if (user == null) {
+                return;
+            }
+            final String role = user.getRoles().get(0);
+            result.r1 = OLD_ROLE.equals(role) ? 1 : 2;
+            result.r2 = store.lookupRole(role) == null ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the validation of a credentials configuration by the amount of users.
+ * <p>
+ * Every user has a hashed password and two of 100 roles, every role has 10 permissions, like a typical fleet of
+ * devices. The positions of the users are recorded, so the validation runs like the validation of a parsed file.
+ * <pre>
+ * ./gradlew jmhJar
+ * java -jar build/libs/hivemq-file-rbac-extension-4.5.3-jmh.jar ValidationBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ValidationBenchmark {
+
+    private static final int ROLES = 100;
+    private static final int PERMISSIONS_PER_ROLE = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    public int users;
+
+    private final @NotNull ExtensionConfig extensionConfig = new ExtensionConfig();
+    private @NotNull FileAuthConfig config = new FileAuthConfig();
+    private @NotNull SourcePositions positions = SourcePositions.NONE;
+
+    @Setup
+    public void setUp() {
+        final List<Role> roles = new ArrayList<>(ROLES);
+        for (int i = 0; i < ROLES; i++) {
+            final List<Permission> permissions = new ArrayList<>(PERMISSIONS_PER_ROLE);
+            for (int j = 0; j < PERMISSIONS_PER_ROLE; j++) {
+                permissions.add(new Permission("role-" + i + "/topic-" + j + "/${{clientid}}/#"));
+            }
+            roles.add(new Role("role-" + i, permissions));
+        }
+        final SourcePositions.Recorder recorder = new SourcePositions.Recorder();
+        final List<User> userList = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            final User user = new User("user-" + i,
+                    "c2FsdA==:100:aGFzaA==",
+                    List.of("role-" + (i % ROLES), "role-" + ((i + 1) % ROLES)));
+            userList.add(user);
+            recorder.record(user, i * 6 + 3, 9);
+        }
+        config = new FileAuthConfig(userList, roles);
+        positions = recorder.build("credentials.xml");
+    }
+
+    @Benchmark
+    public @NotNull ConfigCredentialsValidator.ValidationResult validate() {
+        return ConfigCredentialsValidator.validateConfig(extensionConfig, config, positions);
+    }
+}
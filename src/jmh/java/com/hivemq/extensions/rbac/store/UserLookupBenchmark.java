@@ -0,0 +1,97 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares user lookups in a {@link ConcurrentHashMap} with lookups in a {@link UserIndex} for 1M users.
+ * <p>
+ * The names are looked up in random order, so most lookups miss the CPU caches like the connects of many clients do.
+ * Every lookup reads the password of the user, like the authentication does.
+ * <pre>
+ * ./gradlew jmhJar
+ * java -jar build/libs/hivemq-file-rbac-extension-4.5.3-jmh.jar UserLookupBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UserLookupBenchmark {
+
+    private static final int USERS = 1_000_000;
+    //a power of two, so the next name is selected with a mask
+    private static final int NAMES = 1 << 20;
+
+    @Param({"map", "index"})
+    public @NotNull String lookup;
+
+    private final @NotNull Map<String, User> map = new ConcurrentHashMap<>();
+    private @NotNull UserIndex index = UserIndex.EMPTY;
+    private final @NotNull String @NotNull [] names = new String[NAMES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            users.add(new User("user-" + i, "pass", List.of("role1")));
+        }
+        if ("map".equals(lookup)) {
+            for (final User user : users) {
+                map.put(user.getName(), user);
+            }
+        } else {
+            index = UserIndex.build(users);
+        }
+        //distinct instances, like the user names of the connect packets
+        final Random random = new Random(42);
+        for (int i = 0; i < NAMES; i++) {
+            names[i] = new String("user-" + random.nextInt(USERS));
+        }
+    }
+
+    @Benchmark
+    public @Nullable String lookupUser() {
+        final String name = names[next++ & (NAMES - 1)];
+        final User user = "map".equals(lookup) ? map.get(name) : index.get(name);
+        return user == null ? null : user.getPassword();
+    }
+}
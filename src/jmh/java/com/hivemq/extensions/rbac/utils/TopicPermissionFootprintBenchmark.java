@@ -0,0 +1,255 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extension.sdk.api.services.builder.TopicPermissionBuilder;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the heap that the topic permissions of 100k sessions retain with and without interning.
+ * <p>
+ * Every session holds 20 permissions, 4 of them contain the client id. The heap per session is reported as the
+ * {@code retainedBytesPerSession} secondary result, the primary result is the time to build the permissions of all
+ * sessions.
+ * <pre>
+ * ./gradlew jmhJar
+ * java -jar build/libs/hivemq-file-rbac-extension-4.5.3-jmh.jar TopicPermissionFootprintBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class TopicPermissionFootprintBenchmark {
+
+    private static final int SESSIONS = 100_000;
+    private static final int PERMISSIONS = 20;
+    private static final int SUBSTITUTED_PERMISSIONS = 4;
+
+    @Param({"false", "true"})
+    public boolean interned;
+
+    private final @NotNull List<Permission> permissions = new ArrayList<>();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+
+        public long retainedBytesPerSession;
+    }
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PERMISSIONS; i++) {
+            final Permission permission = new Permission(
+                    i < SUBSTITUTED_PERMISSIONS ? "devices/${{clientid}}/channel" + i + "/#" : "fleet/channel" + i);
+            permission.setActivity(i % 2 == 0 ? TopicPermission.MqttActivity.PUBLISH :
+                    TopicPermission.MqttActivity.SUBSCRIBE);
+            permissions.add(permission);
+        }
+    }
+
+    @Benchmark
+    public @NotNull Object connect(final @NotNull Footprint footprint) {
+        final TopicPermissionInterner interner = new TopicPermissionInterner(SimpleTopicPermissionBuilder::new);
+        final long before = usedHeap();
+        final List<List<TopicPermission>> sessions = new ArrayList<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            final String clientId = "client-" + i;
+            final List<TopicPermission> topicPermissions = new ArrayList<>(PERMISSIONS);
+            for (final Permission permission : permissions) {
+                topicPermissions.add(interned ?
+                        interner.intern(clientId, clientId, permission) :
+                        build(clientId, permission));
+            }
+            sessions.add(topicPermissions);
+        }
+        footprint.retainedBytesPerSession = (usedHeap() - before) / SESSIONS;
+        return sessions;
+    }
+
+    /**
+     * Builds a new topic permission for every session, like the permissions were built before they were interned.
+     */
+    private static @NotNull TopicPermission build(
+            final @NotNull String clientId, final @NotNull Permission permission) {
+        final String topic = Objects.requireNonNull(permission.getTopic());
+        return new SimpleTopicPermissionBuilder().topicFilter(Substitution.substitute(topic, clientId, clientId))
+                .activity(Objects.requireNonNull(permission.getActivity()))
+                .type(TopicPermission.PermissionType.ALLOW)
+                .retain(Objects.requireNonNull(permission.getRetain()))
+                .qos(Objects.requireNonNull(permission.getQos()))
+                .sharedSubscription(Objects.requireNonNull(permission.getSharedSubscription()))
+                .sharedGroup(Objects.requireNonNull(permission.getSharedGroup()))
+                .build();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Stands in for the builder of HiveMQ, which is only available inside the broker. The permission it builds has the
+     * same fields as the permissions HiveMQ builds.
+     */
+    private static class SimpleTopicPermissionBuilder implements TopicPermissionBuilder {
+
+        private @NotNull String topicFilter = "#";
+        private @NotNull TopicPermission.PermissionType type = TopicPermission.PermissionType.ALLOW;
+        private @NotNull TopicPermission.Qos qos = TopicPermission.Qos.ALL;
+        private @NotNull TopicPermission.MqttActivity activity = TopicPermission.MqttActivity.ALL;
+        private @NotNull TopicPermission.Retain retain = TopicPermission.Retain.ALL;
+        private @NotNull TopicPermission.SharedSubscription sharedSubscription =
+                TopicPermission.SharedSubscription.ALL;
+        private @NotNull String sharedGroup = "#";
+
+        @Override
+        public @NotNull TopicPermissionBuilder topicFilter(final @NotNull String topicFilter) {
+            this.topicFilter = topicFilter;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder type(final TopicPermission.@NotNull PermissionType type) {
+            this.type = type;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder qos(final TopicPermission.@NotNull Qos qos) {
+            this.qos = qos;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder activity(final TopicPermission.@NotNull MqttActivity activity) {
+            this.activity = activity;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder retain(final TopicPermission.@NotNull Retain retain) {
+            this.retain = retain;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder sharedSubscription(
+                final TopicPermission.@NotNull SharedSubscription sharedSubscription) {
+            this.sharedSubscription = sharedSubscription;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder sharedGroup(final @NotNull String sharedGroup) {
+            this.sharedGroup = sharedGroup;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermission build() {
+            return new SimpleTopicPermission(topicFilter, type, qos, activity, retain, sharedSubscription, sharedGroup);
+        }
+    }
+
+    private static class SimpleTopicPermission implements TopicPermission {
+
+        private final @NotNull String topicFilter;
+        private final @NotNull PermissionType type;
+        private final @NotNull Qos qos;
+        private final @NotNull MqttActivity activity;
+        private final @NotNull Retain retain;
+        private final @NotNull SharedSubscription sharedSubscription;
+        private final @NotNull String sharedGroup;
+
+        SimpleTopicPermission(
+                final @NotNull String topicFilter,
+                final @NotNull PermissionType type,
+                final @NotNull Qos qos,
+                final @NotNull MqttActivity activity,
+                final @NotNull Retain retain,
+                final @NotNull SharedSubscription sharedSubscription,
+                final @NotNull String sharedGroup) {
+            this.topicFilter = topicFilter;
+            this.type = type;
+            this.qos = qos;
+            this.activity = activity;
+            this.retain = retain;
+            this.sharedSubscription = sharedSubscription;
+            this.sharedGroup = sharedGroup;
+        }
+
+        @Override
+        public @NotNull String getTopicFilter() {
+            return topicFilter;
+        }
+
+        @Override
+        public @NotNull PermissionType getType() {
+            return type;
+        }
+
+        @Override
+        public @NotNull Qos getQos() {
+            return qos;
+        }
+
+        @Override
+        public @NotNull MqttActivity getActivity() {
+            return activity;
+        }
+
+        @Override
+        public @NotNull Retain getPublishRetain() {
+            return retain;
+        }
+
+        @Override
+        public @NotNull SharedSubscription getSharedSubscription() {
+            return sharedSubscription;
+        }
+
+        @Override
+        public @NotNull String getSharedGroup() {
+            return sharedGroup;
+        }
+    }
+}
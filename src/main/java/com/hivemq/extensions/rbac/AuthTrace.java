@@ -0,0 +1,58 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+/**
+ * The format of the authentication trace files that the {@link AuthTraceRecorder} writes and the
+ * {@link AuthTraceReader} reads.
+ * <p>
+ * A file starts with a header: the magic number {@value #MAGIC}, the version, the random ID of the run of the extension
+ * that recorded it, the start of the run in milliseconds since epoch and the start of the file in nanoseconds since the
+ * start of the run. Records follow the header, each starts with its type:
+ * <ul>
+ * <li>{@value #LISTENER}: the index and the name of a listener</li>
+ * <li>{@value #ROLE_SET}: the index and the amount of roles of a set of roles</li>
+ * <li>{@value #CONNECT}: the time since the previous connect or the start of the file in nanoseconds, the user ID, the
+ * index of the listener and the role set plus 1 or 0 if there was none, the amount of granted permissions, the
+ * duration of the authentication in nanoseconds, the ordinal of the outcome and the ordinal of the password check
+ * plus 1 or 0 if the password was not checked</li>
+ * </ul>
+ * The indexes of listeners and role sets are the same in all files of a run, a listener or role set is written to
+ * every file before the first connect that refers to it. The user ID is always written with 8 bytes, all other
+ * numbers are written as variable length integers, the time since the previous connect is zigzag encoded as it is
+ * negative if a connect that started earlier was recorded later. A file that ends within a record was not closed, its
+ * last record is ignored.
+ */
+final class AuthTrace {
+
+    static final int MAGIC = 0x46524254;
+    static final int VERSION = 1;
+    static final @NotNull String FOLDER_NAME = "auth-trace";
+    static final @NotNull String FILE_SUFFIX = ".trace";
+
+    static final int LISTENER = 1;
+    static final int ROLE_SET = 2;
+    static final int CONNECT = 3;
+
+    //written for connects without a user name, user IDs that collide with it are replaced with 1
+    static final long NO_USER = 0;
+
+    private AuthTrace() {
+    }
+}
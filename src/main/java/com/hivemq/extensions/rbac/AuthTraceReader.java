@@ -0,0 +1,255 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.AuthenticationMetrics.Outcome;
+import com.hivemq.extensions.rbac.utils.PasswordCheck;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the connects of an authentication trace file, see {@link AuthTrace}.
+ * <p>
+ * This class is not thread safe.
+ */
+class AuthTraceReader implements Closeable {
+
+    private static final @NotNull Outcome @NotNull [] OUTCOMES = Outcome.values();
+    private static final @NotNull PasswordCheck @NotNull [] PASSWORD_CHECKS = PasswordCheck.values();
+
+    private final @NotNull DataInputStream input;
+    private final long runId;
+    private final long runStartMillis;
+    private final @NotNull Map<Integer, String> listeners = new HashMap<>();
+    private final @NotNull Map<Integer, Integer> roleSetSizes = new HashMap<>();
+    private long time;
+
+    /**
+     * Opens a trace file and reads its header.
+     *
+     * @param file the trace file
+     * @throws IOException if the file could not be read or is not a trace file
+     */
+    AuthTraceReader(final @NotNull Path file) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        try {
+            if (input.readInt() != AuthTrace.MAGIC) {
+                throw new IOException("File " + file + " is not an authentication trace");
+            }
+            final int version = input.readUnsignedByte();
+            if (version != AuthTrace.VERSION) {
+                throw new IOException("Authentication trace " + file + " has the unsupported version " + version);
+            }
+            runId = input.readLong();
+            runStartMillis = input.readLong();
+            time = input.readLong();
+        } catch (final IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the random ID of the run of the extension that recorded the trace
+     */
+    long getRunId() {
+        return runId;
+    }
+
+    /**
+     * @return the start of the run of the extension that recorded the trace in milliseconds since epoch
+     */
+    long getRunStartMillis() {
+        return runStartMillis;
+    }
+
+    /**
+     * @return the next connect or null if the end of the trace was reached
+     * @throws IOException if the file could not be read or contains an invalid record
+     */
+    @Nullable Connect next() throws IOException {
+        try {
+            while (true) {
+                final int type = input.readUnsignedByte();
+                if (type == AuthTrace.LISTENER) {
+                    listeners.put((int) readVarLong(), input.readUTF());
+                } else if (type == AuthTrace.ROLE_SET) {
+                    roleSetSizes.put((int) readVarLong(), (int) readVarLong());
+                } else if (type == AuthTrace.CONNECT) {
+                    return readConnect();
+                } else {
+                    throw new IOException("Invalid record type " + type + " in authentication trace");
+                }
+            }
+        } catch (final EOFException e) {
+            //the end of the file or a record that was not written completely
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private @NotNull Connect readConnect() throws IOException {
+        final long zigzagTimeDelta = readVarLong();
+        time += (zigzagTimeDelta >>> 1) ^ -(zigzagTimeDelta & 1);
+        final long userId = input.readLong();
+        final int listener = (int) readVarLong();
+        final int roleSet = (int) readVarLong();
+        final int permissions = (int) readVarLong();
+        final long duration = readVarLong();
+        final int outcome = input.readUnsignedByte();
+        final int passwordCheck = input.readUnsignedByte();
+        if (outcome >= OUTCOMES.length || passwordCheck > PASSWORD_CHECKS.length) {
+            throw new IOException("Invalid outcome or password check in authentication trace");
+        }
+        return new Connect(time,
+                userId,
+                listener == 0 ? null : listeners.get(listener - 1),
+                roleSet - 1,
+                roleSet == 0 ? 0 : roleSetSizes.getOrDefault(roleSet - 1, 0),
+                permissions,
+                duration,
+                OUTCOMES[outcome],
+                passwordCheck == 0 ? null : PASSWORD_CHECKS[passwordCheck - 1]);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid number in authentication trace");
+    }
+
+    /**
+     * A recorded connect.
+     */
+    @Immutable
+    static class Connect {
+
+        private final long time;
+        private final long userId;
+        private final @Nullable String listener;
+        private final int roleSet;
+        private final int roles;
+        private final int permissions;
+        private final long duration;
+        private final @NotNull Outcome outcome;
+        private final @Nullable PasswordCheck passwordCheck;
+
+        Connect(
+                final long time,
+                final long userId,
+                final @Nullable String listener,
+                final int roleSet,
+                final int roles,
+                final int permissions,
+                final long duration,
+                final @NotNull Outcome outcome,
+                final @Nullable PasswordCheck passwordCheck) {
+            this.time = time;
+            this.userId = userId;
+            this.listener = listener;
+            this.roleSet = roleSet;
+            this.roles = roles;
+            this.permissions = permissions;
+            this.duration = duration;
+            this.outcome = outcome;
+            this.passwordCheck = passwordCheck;
+        }
+
+        /**
+         * @return the start of the connect in nanoseconds since the start of the run
+         */
+        long getTime() {
+            return time;
+        }
+
+        /**
+         * @return the ID of the user, the same for all connects of a user in a run, {@link AuthTrace#NO_USER} if the
+         *         connect had no user name
+         */
+        long getUserId() {
+            return userId;
+        }
+
+        /**
+         * @return the name of the listener or null if the listener was unknown
+         */
+        @Nullable String getListener() {
+            return listener;
+        }
+
+        /**
+         * @return the index of the role set of the user, the same for all connects with the same roles in a run, -1 if
+         *         the connect was not granted any roles
+         */
+        int getRoleSet() {
+            return roleSet;
+        }
+
+        /**
+         * @return the amount of roles of the role set
+         */
+        int getRoles() {
+            return roles;
+        }
+
+        /**
+         * @return the amount of granted permissions
+         */
+        int getPermissions() {
+            return permissions;
+        }
+
+        /**
+         * @return the duration of the authentication in nanoseconds
+         */
+        long getDuration() {
+            return duration;
+        }
+
+        @NotNull Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return how the password was checked or null if it was not checked
+         */
+        @Nullable PasswordCheck getPasswordCheck() {
+            return passwordCheck;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.AuthenticationMetrics.Outcome;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.utils.PasswordCheck;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Records the authentications of the {@link FileAuthAuthenticator} to a compact binary trace, so the user names,
+ * reconnect intervals and role sets of production can be replayed offline.
+ * <p>
+ * The authenticator only adds an entry to a bounded queue, entries are dropped and counted if the queue is full. The
+ * entries are written in the background to files in the {@value AuthTrace#FOLDER_NAME} folder, see {@link AuthTrace}.
+ * A new file is started when a file reaches the configured size, the oldest files beyond the configured amount are
+ * deleted.
+ * <p>
+ * The trace never contains passwords. User names are replaced by the first 8 bytes of their HMAC-SHA256 under a key
+ * that is created for every start of the extension and never written, so the user IDs of a trace only tell if two
+ * connects were made by the same user, but not by which. Roles are only written as the amount of roles of a set.
+ */
+@ThreadSafe
+class AuthTraceRecorder {
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(AuthTraceRecorder.class);
+
+    static final @NotNull String PREFIX = "com.hivemq.extensions.file-rbac.trace.";
+    static final @NotNull String RECORDED = PREFIX + "recorded";
+    static final @NotNull String DROPPED = PREFIX + "dropped";
+
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final long WRITE_INTERVAL = 100;
+    private static final @NotNull String MAC_ALGORITHM = "HmacSHA256";
+    private static final @NotNull FastDateFormat DATE_FORMAT = FastDateFormat.getInstance("yyyyMMdd-HH-mm-ss-SSS");
+
+    private final @NotNull File traceFolder;
+    private final @NotNull ScheduledExecutorService executorService;
+    private final int maxFiles;
+    private final long maxFileSize;
+    private final @NotNull BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final @NotNull Counter recorded;
+    private final @NotNull Counter dropped;
+    private final long runId;
+    private final long runStartMillis = System.currentTimeMillis();
+    private final long runStartNanos = System.nanoTime();
+
+    //only used by the writer, guarded by this
+    private final @NotNull Mac mac;
+    private final @NotNull List<Entry> batch = new ArrayList<>();
+    private final @NotNull Map<String, Integer> listenerIndexes = new HashMap<>();
+    private final @NotNull Map<List<String>, Integer> roleSetIndexes = new HashMap<>();
+    private final @NotNull Set<Integer> writtenListeners = new HashSet<>();
+    private final @NotNull Set<Integer> writtenRoleSets = new HashSet<>();
+    private @Nullable DataOutputStream output;
+    private long previousTime;
+    private int fileSequence;
+    private @Nullable ScheduledFuture<?> writeFuture;
+
+    AuthTraceRecorder(
+            final @NotNull File extensionHomeFolder,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull ScheduledExecutorService executorService,
+            final @NotNull MetricRegistry metricRegistry) {
+        this.executorService = executorService;
+        traceFolder = new File(extensionHomeFolder, AuthTrace.FOLDER_NAME);
+        maxFiles = extensionConfig.getTraceMaxFiles();
+        maxFileSize = extensionConfig.getTraceFileSize() * 1024L * 1024L;
+        recorded = metricRegistry.counter(RECORDED);
+        dropped = metricRegistry.counter(DROPPED);
+        final SecureRandom random = new SecureRandom();
+        final byte[] key = new byte[32];
+        random.nextBytes(key);
+        runId = random.nextLong();
+        try {
+            mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+        } catch (final GeneralSecurityException e) {
+            //HmacSHA256 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Starts writing the recorded entries in the background.
+     */
+    synchronized void start() {
+        writeFuture = executorService.scheduleWithFixedDelay(this::write,
+                WRITE_INTERVAL,
+                WRITE_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the remaining entries and closes the current file.
+     */
+    synchronized void stop() {
+        if (writeFuture != null) {
+            writeFuture.cancel(false);
+            writeFuture = null;
+        }
+        write();
+        closeFile();
+    }
+
+    /**
+     * @return a new entry for a connect that started now
+     */
+    @NotNull Entry newEntry() {
+        return new Entry(System.nanoTime() - runStartNanos);
+    }
+
+    /**
+     * Called by the authenticator when the authentication of an entry is done, does not block.
+     */
+    void record(final @NotNull Entry entry) {
+        if (queue.offer(entry)) {
+            recorded.inc();
+        } else {
+            dropped.inc();
+        }
+    }
+
+    synchronized void write() {
+        queue.drainTo(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (final Entry entry : batch) {
+                final DataOutputStream out = output == null || output.size() >= maxFileSize ? rotate() : output;
+                writeEntry(out, entry);
+            }
+            if (output != null) {
+                output.flush();
+            }
+        } catch (final IOException e) {
+            LOG.warn("Could not write the authentication trace, reason: {}", e.getMessage());
+            closeFile();
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void writeEntry(final @NotNull DataOutputStream out, final @NotNull Entry entry) throws IOException {
+        int listener = 0;
+        if (entry.listener != null) {
+            listener = listenerIndexes.computeIfAbsent(entry.listener, name -> listenerIndexes.size()) + 1;
+            if (writtenListeners.add(listener)) {
+                out.writeByte(AuthTrace.LISTENER);
+                writeVarLong(out, listener - 1);
+                out.writeUTF(entry.listener);
+            }
+        }
+        int roleSet = 0;
+        if (entry.roles != null) {
+            roleSet = roleSetIndexes.computeIfAbsent(entry.roles, roles -> roleSetIndexes.size()) + 1;
+            if (writtenRoleSets.add(roleSet)) {
+                out.writeByte(AuthTrace.ROLE_SET);
+                writeVarLong(out, roleSet - 1);
+                writeVarLong(out, entry.roles.size());
+            }
+        }
+        out.writeByte(AuthTrace.CONNECT);
+        final long timeDelta = entry.time - previousTime;
+        writeVarLong(out, (timeDelta << 1) ^ (timeDelta >> 63));
+        previousTime = entry.time;
+        out.writeLong(entry.userName == null ? AuthTrace.NO_USER : userId(entry.userName));
+        writeVarLong(out, listener);
+        writeVarLong(out, roleSet);
+        writeVarLong(out, entry.permissions);
+        writeVarLong(out, Math.max(0, entry.duration));
+        out.writeByte(entry.outcome == null ? 0 : entry.outcome.ordinal());
+        out.writeByte(entry.passwordCheck == null ? 0 : entry.passwordCheck.ordinal() + 1);
+    }
+
+    private long userId(final @NotNull String userName) {
+        final byte[] digest = mac.doFinal(userName.getBytes(StandardCharsets.UTF_8));
+        long userId = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            userId = (userId << 8) | (digest[i] & 0xFF);
+        }
+        return userId == AuthTrace.NO_USER ? 1 : userId;
+    }
+
+    private @NotNull DataOutputStream rotate() throws IOException {
+        closeFile();
+        if (!traceFolder.isDirectory() && !traceFolder.mkdirs()) {
+            throw new IOException("Could not create the trace folder " + traceFolder.getAbsolutePath());
+        }
+        final long fileStart = System.nanoTime() - runStartNanos;
+        final String fileName = String.format("%s-%04d%s",
+                DATE_FORMAT.format(System.currentTimeMillis()),
+                fileSequence++,
+                AuthTrace.FILE_SUFFIX);
+        final File file = new File(traceFolder, fileName);
+        final DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())));
+        output = out;
+        out.writeInt(AuthTrace.MAGIC);
+        out.writeByte(AuthTrace.VERSION);
+        out.writeLong(runId);
+        out.writeLong(runStartMillis);
+        out.writeLong(fileStart);
+        previousTime = fileStart;
+        writtenListeners.clear();
+        writtenRoleSets.clear();
+        LOG.debug("Started authentication trace file {}.", file.getAbsolutePath());
+        applyRetention();
+        return out;
+    }
+
+    private void closeFile() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (final IOException e) {
+            LOG.warn("Could not close the authentication trace file, reason: {}", e.getMessage());
+        }
+        output = null;
+    }
+
+    /**
+     * Deletes the oldest trace files beyond the maximum amount of files, the names start with their creation time.
+     */
+    private void applyRetention() {
+        final File[] files = traceFolder.listFiles((dir, name) -> name.endsWith(AuthTrace.FILE_SUFFIX));
+        if (files == null || files.length <= maxFiles) {
+            return;
+        }
+        Arrays.sort(files);
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            if (!files[i].delete()) {
+                LOG.warn("Could not delete authentication trace file {}.", files[i].getAbsolutePath());
+            }
+        }
+    }
+
+    private static void writeVarLong(final @NotNull DataOutputStream out, final long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    /**
+     * The authentication of a connect. It is filled by the thread of the connect and read by the writer after it was
+     * added to the queue.
+     */
+    static class Entry implements Consumer<PasswordCheck> {
+
+        private final long time;
+        private long duration;
+        private @Nullable String userName;
+        private @Nullable String listener;
+        private @Nullable List<String> roles;
+        private int permissions;
+        private @Nullable Outcome outcome;
+        private @Nullable PasswordCheck passwordCheck;
+
+        private Entry(final long time) {
+            this.time = time;
+        }
+
+        @Override
+        public void accept(final @NotNull PasswordCheck passwordCheck) {
+            this.passwordCheck = passwordCheck;
+        }
+
+        void setRoles(final @Nullable List<String> roles) {
+            this.roles = roles;
+        }
+
+        void complete(
+                final long duration,
+                final @NotNull Outcome outcome,
+                final @Nullable String userName,
+                final @Nullable String listener,
+                final int permissions) {
+            this.duration = duration;
+            this.outcome = outcome;
+            this.userName = userName;
+            this.listener = listener;
+            this.permissions = permissions;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event that is committed for the authentication of a CONNECT by the {@link FileAuthAuthenticator}.
+ * <p>
+ * The cache hit and hashing time of the password check are recorded in the nested
+ * <code>com.hivemq.extensions.rbac.PasswordCheck</code> event on the same thread.
+ */
+@Name("com.hivemq.extensions.rbac.Authentication")
+@Label("Authentication")
+@Description("Authentication of a CONNECT by the File RBAC extension")
+@Category({"HiveMQ", "File RBAC"})
+class AuthenticationEvent extends Event {
+
+    @Label("Client Identifier")
+    String clientId;
+
+    @Label("User Name")
+    String userName;
+
+    @Label("Listener")
+    String listener;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Permissions")
+    int permissions;
+}
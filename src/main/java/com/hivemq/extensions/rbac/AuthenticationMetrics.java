@@ -0,0 +1,116 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.utils.HdrHistogramReservoir;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics for the outcome and latency of authentications.
+ * <p>
+ * All metric handles are resolved once, so recording an authentication does not allocate.
+ */
+@ThreadSafe
+class AuthenticationMetrics {
+
+    static final @NotNull String PREFIX = "com.hivemq.extensions.file-rbac.authentication.";
+    static final @NotNull String TIME = PREFIX + "time";
+    static final @NotNull String LISTENER_PREFIX = PREFIX + "listener.";
+
+    /**
+     * The possible outcomes of an authentication by the {@link FileAuthAuthenticator}.
+     */
+    enum Outcome {
+        ACCEPTED("accepted"),
+        REJECTED_MISSING_CREDENTIALS("rejected.missing-credentials"),
+        REJECTED_INVALID_CREDENTIALS("rejected.invalid-credentials"),
+        REJECTED_MAX_SESSIONS("rejected.max-sessions"),
+        NEXT_EXTENSION_MISSING_CREDENTIALS("next-extension.missing-credentials"),
+        NEXT_EXTENSION_INVALID_CREDENTIALS("next-extension.invalid-credentials"),
+        SKIPPED_LISTENER("skipped-listener"),
+        //appended, as the ordinals are written to authentication traces
+        NEXT_EXTENSION_MAX_SESSIONS("next-extension.max-sessions");
+
+        private final @NotNull String metricName;
+
+        Outcome(final @NotNull String metricName) {
+            this.metricName = PREFIX + metricName;
+        }
+
+        @NotNull String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private final @NotNull MetricRegistry metricRegistry;
+    private final @NotNull Counter @NotNull [] outcomeCounters;
+    private final @NotNull Timer timer;
+    private final @NotNull ConcurrentHashMap<String, Counter> listenerCounters = new ConcurrentHashMap<>();
+
+    AuthenticationMetrics(final @NotNull MetricRegistry metricRegistry, final @Nullable Set<String> listenerNames) {
+        this.metricRegistry = metricRegistry;
+        final Outcome[] outcomes = Outcome.values();
+        outcomeCounters = new Counter[outcomes.length];
+        for (final Outcome outcome : outcomes) {
+            outcomeCounters[outcome.ordinal()] = metricRegistry.counter(outcome.getMetricName());
+        }
+        timer = metricRegistry.timer(TIME, () -> new Timer(new HdrHistogramReservoir()));
+        if (listenerNames != null) {
+            for (final String listenerName : listenerNames) {
+                listenerCounter(listenerName);
+            }
+        }
+    }
+
+    /**
+     * Records a connect on a listener.
+     *
+     * @param listenerName the name of the listener the client connected to
+     */
+    void listener(final @NotNull String listenerName) {
+        listenerCounter(listenerName).inc();
+    }
+
+    /**
+     * Records the outcome and the duration of an authentication.
+     *
+     * @param outcome       the outcome of the authentication
+     * @param durationNanos the duration of the authentication in nanoseconds
+     */
+    void record(final @NotNull Outcome outcome, final long durationNanos) {
+        outcomeCounters[outcome.ordinal()].inc();
+        timer.update(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private @NotNull Counter listenerCounter(final @NotNull String listenerName) {
+        final Counter counter = listenerCounters.get(listenerName);
+        if (counter != null) {
+            return counter;
+        }
+        return listenerCounters.computeIfAbsent(listenerName,
+                name -> metricRegistry.counter(LISTENER_PREFIX + name + ".connects"));
+    }
+}
@@ -16,7 +16,9 @@
  */
 package com.hivemq.extensions.rbac;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.auth.SimpleAuthenticator;
 import com.hivemq.extension.sdk.api.auth.parameter.SimpleAuthInput;
 import com.hivemq.extension.sdk.api.auth.parameter.SimpleAuthOutput;
@@ -24,37 +26,84 @@ import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
 import com.hivemq.extension.sdk.api.client.parameter.Listener;
 import com.hivemq.extension.sdk.api.packets.auth.DefaultAuthorizationBehaviour;
 import com.hivemq.extension.sdk.api.packets.connect.ConnackReasonCode;
+import com.hivemq.extensions.rbac.AuthenticationMetrics.Outcome;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
 import com.hivemq.extensions.rbac.utils.CredentialsValidator;
 
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 class FileAuthAuthenticator implements SimpleAuthenticator {
 
     private final @NotNull CredentialsValidator credentialsValidator;
+    private final @NotNull SessionRegistry sessionRegistry;
     private final @NotNull ExtensionConfig extensionConfig;
+    private final @NotNull AuthenticationMetrics authenticationMetrics;
+    private final @NotNull QuotaMetrics quotaMetrics;
+    private final @Nullable AuthTraceRecorder authTraceRecorder;
+    private final long jfrEventThresholdNanos;
 
+    /**
+     * @param authTraceRecorder the recorder of the authentication trace or null if the trace is disabled
+     */
     FileAuthAuthenticator(
-            final @NotNull CredentialsValidator credentialsValidator, final @NotNull ExtensionConfig extensionConfig) {
+            final @NotNull CredentialsValidator credentialsValidator,
+            final @NotNull SessionRegistry sessionRegistry,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull MetricRegistry metricRegistry,
+            final @Nullable AuthTraceRecorder authTraceRecorder) {
         this.credentialsValidator = credentialsValidator;
+        this.sessionRegistry = sessionRegistry;
         this.extensionConfig = extensionConfig;
+        this.authenticationMetrics = new AuthenticationMetrics(metricRegistry, extensionConfig.getListenerNames());
+        this.quotaMetrics = new QuotaMetrics(metricRegistry);
+        this.authTraceRecorder = authTraceRecorder;
+        this.jfrEventThresholdNanos = TimeUnit.MILLISECONDS.toNanos(extensionConfig.getJfrEventThreshold());
     }
 
     @Override
     public void onConnect(
             final @NotNull SimpleAuthInput simpleAuthInput, final @NotNull SimpleAuthOutput simpleAuthOutput) {
+        final long start = System.nanoTime();
+        final AuthenticationEvent event = new AuthenticationEvent();
+        event.begin();
+        final AuthTraceRecorder.Entry traceEntry = authTraceRecorder == null ? null : authTraceRecorder.newEntry();
+        final Outcome outcome = authenticate(simpleAuthInput, simpleAuthOutput, event, traceEntry);
+        final long duration = System.nanoTime() - start;
+        authenticationMetrics.record(outcome, duration);
+        if (traceEntry != null) {
+            traceEntry.complete(duration, outcome, event.userName, event.listener, event.permissions);
+            authTraceRecorder.record(traceEntry);
+        }
+
+        event.end();
+        if (duration >= jfrEventThresholdNanos && event.shouldCommit()) {
+            event.clientId = simpleAuthInput.getClientInformation().getClientId();
+            event.outcome = outcome.name();
+            event.commit();
+        }
+    }
+
+    private @NotNull Outcome authenticate(
+            final @NotNull SimpleAuthInput simpleAuthInput,
+            final @NotNull SimpleAuthOutput simpleAuthOutput,
+            final @NotNull AuthenticationEvent event,
+            final @Nullable AuthTraceRecorder.Entry traceEntry) {
         final boolean nextExtensionInsteadOfFail = extensionConfig.isNextExtensionInsteadOfFail();
         final Set<String> listenerNames = extensionConfig.getListenerNames();
         final Optional<Listener> connectedListenerOptional = simpleAuthInput.getConnectionInformation().getListener();
 
-        if (listenerNames != null && !listenerNames.isEmpty() && connectedListenerOptional.isPresent()) {
+        if (connectedListenerOptional.isPresent()) {
             final String connectedListenerName = connectedListenerOptional.get().getName();
-            if (!listenerNames.contains(connectedListenerName)) {
+            event.listener = connectedListenerName;
+            authenticationMetrics.listener(connectedListenerName);
+            if (listenerNames != null && !listenerNames.isEmpty() && !listenerNames.contains(connectedListenerName)) {
                 simpleAuthOutput.nextExtensionOrDefault();
-                return;
+                return Outcome.SKIPPED_LISTENER;
             }
         }
 
@@ -67,33 +116,73 @@ class FileAuthAuthenticator implements SimpleAuthenticator {
             //client is not authenticated
             if (nextExtensionInsteadOfFail) {
                 simpleAuthOutput.nextExtensionOrDefault();
-                return;
+                return Outcome.NEXT_EXTENSION_MISSING_CREDENTIALS;
             }
             simpleAuthOutput.failAuthentication(ConnackReasonCode.BAD_USER_NAME_OR_PASSWORD,
                     "Authentication failed because username or password are missing");
-            return;
+            return Outcome.REJECTED_MISSING_CREDENTIALS;
         }
         final String userName = userNameOptional.get();
+        event.userName = userName;
+
+        //reject excess sessions before the password is hashed
+        final int maxSessions = credentialsValidator.getMaxSessions(userName);
+        if (!sessionRegistry.hasSessionCapacity(clientId, userName, maxSessions)) {
+            return failMaxSessions(simpleAuthOutput, nextExtensionInsteadOfFail);
+        }
 
         //check if we have any roles for username/password combination
-        final List<String> roles = credentialsValidator.getRoles(userName, passwordOptional.get());
+        final List<String> roles = credentialsValidator.getRoles(userName, passwordOptional.get(), traceEntry);
+        if (traceEntry != null) {
+            traceEntry.setRoles(roles);
+        }
 
         if (roles == null || roles.isEmpty()) {
             //username/password combination is unknown or has invalid roles
             if (nextExtensionInsteadOfFail) {
                 simpleAuthOutput.nextExtensionOrDefault();
-                return;
+                return Outcome.NEXT_EXTENSION_INVALID_CREDENTIALS;
             }
-            simpleAuthOutput.failAuthentication(ConnackReasonCode.NOT_AUTHORIZED,
-                    "Authentication failed because of invalid credentials");
-            return;
+            return failInvalidCredentials(simpleAuthOutput);
+        }
+
+        //the token buckets of the quota are attached to the session, the client initializer adds them to the client
+        final Quota quota = credentialsValidator.getQuota(roles);
+        final PublishLimiter publishLimiter = quota == null || !quota.isLimited() ? null :
+                new PublishLimiter(quota, extensionConfig.getQuotaMaxDelay(), quotaMetrics, System.nanoTime());
+
+        //registered before the authentication succeeds, so the session is pending when the lifecycle event arrives
+        if (!sessionRegistry.authenticated(clientId, userName, roles, maxSessions, publishLimiter)) {
+            //concurrent connects of the same user took the remaining sessions
+            return failMaxSessions(simpleAuthOutput, nextExtensionInsteadOfFail);
         }
 
         //username/password combination is valid and has roles, so we set the default permissions for this client
         final List<TopicPermission> topicPermissions = credentialsValidator.getPermissions(clientId, userName, roles);
+        event.permissions = topicPermissions.size();
         simpleAuthOutput.getDefaultPermissions().addAll(topicPermissions);
         simpleAuthOutput.getDefaultPermissions().setDefaultBehaviour(DefaultAuthorizationBehaviour.DENY);
-
         simpleAuthOutput.authenticateSuccessfully();
+        return Outcome.ACCEPTED;
+    }
+
+    /**
+     * A client is rejected like a client with invalid credentials, so the response does not reveal whether the user
+     * exists and how many sessions it has.
+     */
+    private static @NotNull Outcome failMaxSessions(
+            final @NotNull SimpleAuthOutput simpleAuthOutput, final boolean nextExtensionInsteadOfFail) {
+        if (nextExtensionInsteadOfFail) {
+            simpleAuthOutput.nextExtensionOrDefault();
+            return Outcome.NEXT_EXTENSION_MAX_SESSIONS;
+        }
+        failInvalidCredentials(simpleAuthOutput);
+        return Outcome.REJECTED_MAX_SESSIONS;
+    }
+
+    private static @NotNull Outcome failInvalidCredentials(final @NotNull SimpleAuthOutput simpleAuthOutput) {
+        simpleAuthOutput.failAuthentication(ConnackReasonCode.NOT_AUTHORIZED,
+                "Authentication failed because of invalid credentials");
+        return Outcome.REJECTED_INVALID_CREDENTIALS;
     }
 }
@@ -18,48 +18,139 @@ package com.hivemq.extensions.rbac;
 
 import com.hivemq.extension.sdk.api.ExtensionMain;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.parameter.ExtensionStartInput;
 import com.hivemq.extension.sdk.api.parameter.ExtensionStartOutput;
 import com.hivemq.extension.sdk.api.parameter.ExtensionStopInput;
 import com.hivemq.extension.sdk.api.parameter.ExtensionStopOutput;
 import com.hivemq.extension.sdk.api.services.Services;
+import com.hivemq.extensions.rbac.configuration.AdminChannel;
 import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
 import com.hivemq.extensions.rbac.configuration.ExtensionConfiguration;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.store.CredentialsStore;
 import com.hivemq.extensions.rbac.utils.CredentialsValidator;
+import com.hivemq.extensions.rbac.utils.TopicPermissionInterner;
+import com.hivemq.extensions.rbac.utils.VerificationCache;
+import com.hivemq.extensions.rbac.utils.WarmUp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("unused")
 public class FileAuthMain implements ExtensionMain {
 
     private static final @NotNull Logger LOG = LoggerFactory.getLogger(FileAuthMain.class);
 
+    private @Nullable AdminChannel adminChannel;
+    private @Nullable CredentialsStore credentialsStore;
+    private @Nullable VerificationCache verificationCache;
+    //set by the loading of the verification cache, which is joined before it is read
+    private @Nullable ScheduledFuture<?> verificationCacheSaver;
+    private @Nullable AuthTraceRecorder authTraceRecorder;
+
     @Override
     public void extensionStart(
             final @NotNull ExtensionStartInput extensionStartInput,
             final @NotNull ExtensionStartOutput extensionStartOutput) {
         LOG.info("Starting File RBAC extension.");
         try {
+            final long start = System.nanoTime();
             final File extensionHomeFolder = extensionStartInput.getExtensionInformation().getExtensionHomeFolder();
             final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionHomeFolder);
+            final ExtensionConfig extensionConfig = extensionConfiguration.getExtensionConfig();
+            final long extensionConfigLoaded = System.nanoTime();
+
+            //the warm cache and the warm-up do not depend on the credentials, so they run while these are loaded
+            CompletableFuture<VerificationCache> verificationCacheLoaded = CompletableFuture.completedFuture(null);
+            if (extensionConfig.getWarmCacheSize() > 0) {
+                verificationCacheLoaded =
+                        CompletableFuture.supplyAsync(() -> loadVerificationCache(extensionHomeFolder, extensionConfig),
+                                Services.extensionExecutorService());
+            }
+            CompletableFuture<Void> warmedUp = CompletableFuture.completedFuture(null);
+            if (extensionConfig.getWarmUpTime() > 0) {
+                //the first connects after the authenticator is registered already run compiled code
+                warmedUp = CompletableFuture.runAsync(() -> new WarmUp(extensionConfig.getWarmUpTime()).run(),
+                        Services.extensionExecutorService()).exceptionally(throwable -> {
+                    //the warm-up only speeds up the first connects, the extension works without it
+                    LOG.warn("Warm-up of File RBAC extension failed, continuing without it.", throwable);
+                    return null;
+                });
+            }
 
             final CredentialsConfiguration credentialsConfiguration = new CredentialsConfiguration(extensionHomeFolder,
                     Services.extensionExecutorService(),
-                    extensionConfiguration.getExtensionConfig());
+                    extensionConfig,
+                    Services.metricRegistry());
             credentialsConfiguration.init();
+            final long credentialsLoaded = System.nanoTime();
 
-            final CredentialsValidator credentialsValidator = new CredentialsValidator(credentialsConfiguration,
-                    extensionConfiguration.getExtensionConfig(),
-                    Services.metricRegistry());
+            credentialsStore = CredentialsStore.create(extensionHomeFolder,
+                    extensionConfig,
+                    credentialsConfiguration,
+                    Services.extensionExecutorService());
+            verificationCache = verificationCacheLoaded.join();
+            final CredentialsValidator credentialsValidator = new CredentialsValidator(credentialsStore,
+                    extensionConfig,
+                    Services.metricRegistry(),
+                    verificationCache,
+                    new TopicPermissionInterner());
             credentialsValidator.init();
+            final long storeLoaded = System.nanoTime();
+            warmedUp.join();
+            final long warmUpFinished = System.nanoTime();
 
-            final ExtensionConfig extensionConfig = extensionConfiguration.getExtensionConfig();
+            final SessionRegistry sessionRegistry = new SessionRegistry();
+            Services.eventRegistry().setClientLifecycleEventListener(input -> sessionRegistry);
+            Services.initializerRegistry().setClientInitializer((initializerInput, clientContext) -> {
+                final PublishLimiter publishLimiter =
+                        sessionRegistry.getPublishLimiter(initializerInput.getClientInformation().getClientId());
+                if (publishLimiter != null) {
+                    clientContext.addPublishInboundInterceptor(
+                            new PublishQuotaInterceptor(publishLimiter, Services.extensionExecutorService()));
+                }
+            });
+            if (extensionConfig.getRevocationBatchSize() > 0) {
+                credentialsConfiguration.addReloadCallback(new SessionRevoker(sessionRegistry,
+                        Services.clientService(),
+                        Services.extensionExecutorService(),
+                        extensionConfig,
+                        Services.metricRegistry()));
+            }
 
+            if (extensionConfig.getTraceMaxFiles() > 0) {
+                authTraceRecorder = new AuthTraceRecorder(extensionHomeFolder,
+                        extensionConfig,
+                        Services.extensionExecutorService(),
+                        Services.metricRegistry());
+                authTraceRecorder.start();
+            }
             Services.securityRegistry()
-                    .setAuthenticatorProvider(new FileAuthenticatorProvider(credentialsValidator, extensionConfig));
+                    .setAuthenticatorProvider(new FileAuthenticatorProvider(credentialsValidator,
+                            sessionRegistry,
+                            extensionConfig,
+                            Services.metricRegistry(),
+                            authTraceRecorder));
+
+            if (extensionConfig.getAdminSocket() != null) {
+                adminChannel = new AdminChannel(extensionHomeFolder,
+                        extensionConfig.getAdminSocket(),
+                        credentialsConfiguration,
+                        credentialsValidator::flushCaches);
+                adminChannel.start();
+            }
+            LOG.info("Started File RBAC extension in {} ms (extension config {} ms, credentials {} ms, " +
+                            "credentials store {} ms, waiting for warm-up {} ms).",
+                    millisSince(start),
+                    millis(extensionConfigLoaded - start),
+                    millis(credentialsLoaded - extensionConfigLoaded),
+                    millis(storeLoaded - credentialsLoaded),
+                    millis(warmUpFinished - storeLoaded));
         } catch (final Exception e) {
             LOG.error("Exception thrown at extension start: ", e);
         }
@@ -70,5 +161,44 @@ public class FileAuthMain implements ExtensionMain {
             final @NotNull ExtensionStopInput extensionStopInput,
             final @NotNull ExtensionStopOutput extensionStopOutput) {
         LOG.info("Stopping File RBAC extension.");
+        if (adminChannel != null) {
+            adminChannel.stop();
+        }
+        if (credentialsStore != null) {
+            credentialsStore.close();
+        }
+        if (verificationCacheSaver != null) {
+            verificationCacheSaver.cancel(false);
+        }
+        if (verificationCache != null) {
+            verificationCache.save();
+        }
+        if (authTraceRecorder != null) {
+            authTraceRecorder.stop();
+        }
+    }
+
+    private @Nullable VerificationCache loadVerificationCache(
+            final @NotNull File extensionHomeFolder, final @NotNull ExtensionConfig extensionConfig) {
+        //loaded before the authenticator is registered, so the first reconnects find their verifications
+        final VerificationCache verificationCache =
+                new VerificationCache(extensionHomeFolder, extensionConfig, Services.metricRegistry());
+        if (!verificationCache.load()) {
+            return null;
+        }
+        final long saveInterval = extensionConfig.getWarmCacheSaveInterval();
+        if (saveInterval > 0) {
+            verificationCacheSaver = Services.extensionExecutorService()
+                    .scheduleWithFixedDelay(verificationCache::save, saveInterval, saveInterval, TimeUnit.SECONDS);
+        }
+        return verificationCache;
+    }
+
+    private static long millisSince(final long start) {
+        return millis(System.nanoTime() - start);
+    }
+
+    private static long millis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 }
@@ -16,6 +16,7 @@
  */
 package com.hivemq.extensions.rbac;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.auth.Authenticator;
@@ -28,9 +29,20 @@ class FileAuthenticatorProvider implements AuthenticatorProvider {
 
     private final @NotNull FileAuthAuthenticator authenticator;
 
+    /**
+     * @param authTraceRecorder the recorder of the authentication trace or null if the trace is disabled
+     */
     FileAuthenticatorProvider(
-            final @NotNull CredentialsValidator credentialsValidator, final @NotNull ExtensionConfig extensionConfig) {
-        this.authenticator = new FileAuthAuthenticator(credentialsValidator, extensionConfig);
+            final @NotNull CredentialsValidator credentialsValidator,
+            final @NotNull SessionRegistry sessionRegistry,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull MetricRegistry metricRegistry,
+            final @Nullable AuthTraceRecorder authTraceRecorder) {
+        this.authenticator = new FileAuthAuthenticator(credentialsValidator,
+                sessionRegistry,
+                extensionConfig,
+                metricRegistry,
+                authTraceRecorder);
     }
 
     @Override
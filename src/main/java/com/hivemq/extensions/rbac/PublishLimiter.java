@@ -0,0 +1,148 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces the quota of a client on its PUBLISH packets.
+ * <p>
+ * The rates are token buckets that hold the tokens of one second, so a client can send the messages and bytes of one
+ * second at once. A PUBLISH that exceeds a rate is delayed until its tokens are refilled, or dropped if that takes
+ * longer than the maximum delay. A PUBLISH with a payload above the maximum payload size is always dropped.
+ * <p>
+ * Every bucket is a single atomic timestamp at which it will be full again, as in the generic cell rate algorithm, so
+ * taking tokens is one compare and set and the refill needs no timer.
+ */
+@ThreadSafe
+class PublishLimiter {
+
+    /**
+     * Returned by {@link #acquire(long, long)} if the PUBLISH must be dropped.
+     */
+    static final long DROPPED = -1;
+
+    private final long maxPayloadSize;
+    private final @Nullable Rate messages;
+    private final @Nullable Rate bytes;
+    private final long maxDelayNanos;
+    private final @NotNull QuotaMetrics.RoleCounters counters;
+
+    /**
+     * @param quota        the quota of the client, from the flattened config that knows the role that declares it
+     * @param maxDelay     the maximum delay of a PUBLISH in milliseconds
+     * @param quotaMetrics the metrics the throttled and dropped PUBLISH packets are counted in
+     * @param now          the current {@link System#nanoTime()}
+     */
+    PublishLimiter(
+            final @NotNull Quota quota,
+            final long maxDelay,
+            final @NotNull QuotaMetrics quotaMetrics,
+            final long now) {
+        this.maxPayloadSize = quota.getMaxPayloadSize();
+        this.messages = quota.getMessagesPerSecond() > 0 ? new Rate(quota.getMessagesPerSecond(), now) : null;
+        this.bytes = quota.getBytesPerSecond() > 0 ? new Rate(quota.getBytesPerSecond(), now) : null;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        this.counters = quotaMetrics.getRoleCounters(String.valueOf(quota.getRoleId()));
+    }
+
+    /**
+     * Takes the tokens for a PUBLISH.
+     *
+     * @param payloadSize the size of the payload of the PUBLISH in bytes
+     * @param now         the current {@link System#nanoTime()}
+     * @return the nanoseconds the PUBLISH must be delayed, 0 if it can be delivered at once or {@link #DROPPED}
+     */
+    long acquire(final long payloadSize, final long now) {
+        if (maxPayloadSize > 0 && payloadSize > maxPayloadSize) {
+            counters.dropped();
+            return DROPPED;
+        }
+        long delay = 0;
+        if (messages != null) {
+            delay = messages.take(1, now, maxDelayNanos);
+            if (delay == DROPPED) {
+                counters.dropped();
+                return DROPPED;
+            }
+        }
+        if (bytes != null && payloadSize > 0) {
+            final long bytesDelay = bytes.take(payloadSize, now, maxDelayNanos);
+            if (bytesDelay == DROPPED) {
+                if (messages != null) {
+                    //the message is not sent, so its token is returned
+                    messages.giveBack(1);
+                }
+                counters.dropped();
+                return DROPPED;
+            }
+            delay = Math.max(delay, bytesDelay);
+        }
+        if (delay > 0) {
+            counters.throttled();
+        }
+        return delay;
+    }
+
+    /**
+     * A token bucket that holds the tokens of one second.
+     */
+    @ThreadSafe
+    private static class Rate {
+
+        private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final double nanosPerToken;
+        //the time at which all tokens that were taken are refilled
+        private final @NotNull AtomicLong refilledAt;
+
+        private Rate(final long tokensPerSecond, final long now) {
+            this.nanosPerToken = (double) BURST_NANOS / tokensPerSecond;
+            this.refilledAt = new AtomicLong(now);
+        }
+
+        /**
+         * @return the nanoseconds until the tokens are available, they are taken in advance if this is not longer
+         *         than the maximum delay, otherwise {@link #DROPPED} and no tokens are taken
+         */
+        private long take(final long tokens, final long now, final long maxDelayNanos) {
+            final long tokenNanos = (long) Math.ceil(tokens * nanosPerToken);
+            while (true) {
+                final long current = refilledAt.get();
+                //the timestamps are compared by their difference, as nano time may overflow
+                final long next = (current - now > 0 ? current : now) + tokenNanos;
+                final long delay = next - now - BURST_NANOS;
+                if (delay > maxDelayNanos) {
+                    return DROPPED;
+                }
+                if (refilledAt.compareAndSet(current, next)) {
+                    return Math.max(0, delay);
+                }
+            }
+        }
+
+        private void giveBack(final long tokens) {
+            refilledAt.addAndGet(-(long) Math.ceil(tokens * nanosPerToken));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.async.Async;
+import com.hivemq.extension.sdk.api.async.TimeoutFallback;
+import com.hivemq.extension.sdk.api.interceptor.publish.PublishInboundInterceptor;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.publish.AckReasonCode;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces the quota of a client on its PUBLISH packets, it is added by the client initializer to every client that
+ * was authenticated with a quota.
+ * <p>
+ * A delayed PUBLISH is resumed by the extension executor. The client's following PUBLISH packets wait for it, so a
+ * client that exceeds its rate is slowed down instead of losing messages, as long as the delay is short enough.
+ */
+class PublishQuotaInterceptor implements PublishInboundInterceptor {
+
+    static final @NotNull String REASON = "The publish quota of the client is exceeded";
+    //a delayed PUBLISH is delivered even if the executor is late
+    private static final @NotNull Duration TIMEOUT_MARGIN = Duration.ofSeconds(1);
+
+    private final @NotNull PublishLimiter publishLimiter;
+    private final @NotNull ScheduledExecutorService executorService;
+
+    PublishQuotaInterceptor(
+            final @NotNull PublishLimiter publishLimiter, final @NotNull ScheduledExecutorService executorService) {
+        this.publishLimiter = publishLimiter;
+        this.executorService = executorService;
+    }
+
+    @Override
+    public void onInboundPublish(
+            final @NotNull PublishInboundInput publishInboundInput,
+            final @NotNull PublishInboundOutput publishInboundOutput) {
+        final int payloadSize =
+                publishInboundInput.getPublishPacket().getPayload().map(ByteBuffer::remaining).orElse(0);
+        final long delay = publishLimiter.acquire(payloadSize, System.nanoTime());
+        if (delay == PublishLimiter.DROPPED) {
+            publishInboundOutput.preventPublishDelivery(AckReasonCode.QUOTA_EXCEEDED, REASON);
+        } else if (delay > 0) {
+            final Async<PublishInboundOutput> async =
+                    publishInboundOutput.async(Duration.ofNanos(delay).plus(TIMEOUT_MARGIN), TimeoutFallback.SUCCESS);
+            executorService.schedule(async::resume, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics for the PUBLISH packets that exceeded the quota of a role.
+ * <p>
+ * The counters of a role are resolved with the first client that connects with its quota, so intercepting a PUBLISH
+ * does not allocate.
+ */
+@ThreadSafe
+class QuotaMetrics {
+
+    static final @NotNull String PREFIX = "com.hivemq.extensions.file-rbac.quota.";
+
+    private final @NotNull MetricRegistry metricRegistry;
+    private final @NotNull ConcurrentHashMap<String, RoleCounters> roleCounters = new ConcurrentHashMap<>();
+
+    QuotaMetrics(final @NotNull MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * @param roleId the id of the role that declares a quota
+     * @return the counters of the role
+     */
+    @NotNull RoleCounters getRoleCounters(final @NotNull String roleId) {
+        final RoleCounters counters = roleCounters.get(roleId);
+        if (counters != null) {
+            return counters;
+        }
+        return roleCounters.computeIfAbsent(roleId,
+                id -> new RoleCounters(metricRegistry.counter(PREFIX + id + ".throttled"),
+                        metricRegistry.counter(PREFIX + id + ".dropped")));
+    }
+
+    /**
+     * The counters of the delayed and the dropped PUBLISH packets of the clients with the quota of a role.
+     */
+    @ThreadSafe
+    static class RoleCounters {
+
+        private final @NotNull Counter throttled;
+        private final @NotNull Counter dropped;
+
+        private RoleCounters(final @NotNull Counter throttled, final @NotNull Counter dropped) {
+            this.throttled = throttled;
+            this.dropped = dropped;
+        }
+
+        void throttled() {
+            throttled.inc();
+        }
+
+        void dropped() {
+            dropped.inc();
+        }
+    }
+}
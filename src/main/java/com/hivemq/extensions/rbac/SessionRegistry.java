@@ -0,0 +1,320 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extension.sdk.api.events.client.ClientLifecycleEventListener;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationFailedInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationSuccessfulInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ConnectionStartInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the connected clients that were authenticated by the {@link FileAuthAuthenticator}, indexed by their user
+ * name.
+ * <p>
+ * The authenticator registers the user name, roles and quota of a client as pending, the session becomes active with
+ * the successful authentication event and ends with the disconnect event of the client. A client that takes over the
+ * session of a client with the same client id is authenticated before the old client is disconnected, so the
+ * connections of a client id are counted and the session only ends with the disconnect of the last connection.
+ * <p>
+ * The sessions and the index are concurrent hash maps that lock single bins, so connects and disconnects of different
+ * clients and users do not contend.
+ * <p>
+ * The connections of every user, including the pending ones, are counted with an atomic counter, so the maximum
+ * sessions of a user are enforced without locks. A counter that drops to 0 is marked with -1 before it is removed, so
+ * a concurrent connect of the same user retries with a new counter instead of incrementing the removed one.
+ */
+@ThreadSafe
+class SessionRegistry implements ClientLifecycleEventListener {
+
+    private final @NotNull Map<String, Session> pendingSessions = new ConcurrentHashMap<>();
+    private final @NotNull Map<String, Session> sessions = new ConcurrentHashMap<>();
+    //the client ids of a user are only modified inside the compute functions of the map
+    private final @NotNull Map<String, Set<String>> clientIdsByUser = new ConcurrentHashMap<>();
+    private final @NotNull Map<String, AtomicInteger> connectionCounts = new ConcurrentHashMap<>();
+
+    /**
+     * A client that takes over the session of a client id that is connected with the same user does not count as an
+     * additional session.
+     *
+     * @param clientId    the client id
+     * @param userName    the user name of the client
+     * @param maxSessions the maximum sessions of the user, 0 for no limit
+     * @return true if the user has less than the maximum sessions
+     */
+    boolean hasSessionCapacity(final @NotNull String clientId, final @NotNull String userName, final int maxSessions) {
+        if (maxSessions <= 0) {
+            return true;
+        }
+        final AtomicInteger counter = connectionCounts.get(userName);
+        return counter == null || counter.get() < maxSessions || isTakeOver(clientId, userName);
+    }
+
+    /**
+     * Called by the authenticator when the credentials of a client are valid.
+     *
+     * @param clientId       the client id
+     * @param userName       the user name of the client
+     * @param roles          the roles of the client
+     * @param maxSessions    the maximum sessions of the user, 0 for no limit
+     * @param publishLimiter the limiter for the quota of the client or null if the client has no quota
+     * @return false if the user has reached the maximum sessions, the client is not registered then
+     */
+    boolean authenticated(
+            final @NotNull String clientId,
+            final @NotNull String userName,
+            final @NotNull List<String> roles,
+            final int maxSessions,
+            final @Nullable PublishLimiter publishLimiter) {
+        final int limit = maxSessions <= 0 || isTakeOver(clientId, userName) ? Integer.MAX_VALUE : maxSessions;
+        if (!acquireConnection(userName, limit)) {
+            return false;
+        }
+        final Session replacedSession = pendingSessions.put(clientId,
+                new Session(clientId, userName, roles, publishLimiter, 1));
+        if (replacedSession != null) {
+            //the pending connection was never completed
+            releaseConnection(replacedSession.getUserName());
+        }
+        return true;
+    }
+
+    @Override
+    public void onMqttConnectionStart(final @NotNull ConnectionStartInput connectionStartInput) {
+        //the session is registered by the authenticator, which knows the roles of the client
+    }
+
+    @Override
+    public void onAuthenticationSuccessful(final @NotNull AuthenticationSuccessfulInput authenticationSuccessfulInput) {
+        final String clientId = authenticationSuccessfulInput.getClientInformation().getClientId();
+        final Session pendingSession = pendingSessions.remove(clientId);
+        if (pendingSession == null) {
+            //the client was authenticated by another extension
+            return;
+        }
+        sessions.compute(clientId, (id, oldSession) -> {
+            if (oldSession != null && !oldSession.getUserName().equals(pendingSession.getUserName())) {
+                removeClientId(oldSession.getUserName(), id);
+                //the old connections end with the disconnects of the taken over session, which count for the new user
+                for (int i = 0; i < oldSession.connections; i++) {
+                    releaseConnection(oldSession.getUserName());
+                    acquireConnection(pendingSession.getUserName(), Integer.MAX_VALUE);
+                }
+            }
+            addClientId(pendingSession.getUserName(), id);
+            return oldSession == null ? pendingSession : pendingSession.withConnections(oldSession.connections + 1);
+        });
+    }
+
+    @Override
+    public void onAuthenticationFailedDisconnect(final @NotNull AuthenticationFailedInput authenticationFailedInput) {
+        final Session pendingSession =
+                pendingSessions.remove(authenticationFailedInput.getClientInformation().getClientId());
+        if (pendingSession != null) {
+            releaseConnection(pendingSession.getUserName());
+        }
+    }
+
+    @Override
+    public void onDisconnect(final @NotNull DisconnectEventInput disconnectEventInput) {
+        final String clientId = disconnectEventInput.getClientInformation().getClientId();
+        final Session[] endedConnection = new Session[1];
+        sessions.computeIfPresent(clientId, (id, session) -> {
+            endedConnection[0] = session;
+            if (session.connections > 1) {
+                return session.withConnections(session.connections - 1);
+            }
+            removeClientId(session.getUserName(), id);
+            return null;
+        });
+        if (endedConnection[0] == null) {
+            //without an active session the disconnect can only belong to a pending connection
+            endedConnection[0] = pendingSessions.remove(clientId);
+        }
+        if (endedConnection[0] != null) {
+            releaseConnection(endedConnection[0].getUserName());
+        }
+    }
+
+    /**
+     * @param userName the user name
+     * @return the active sessions of the user
+     */
+    @NotNull List<Session> getSessions(final @NotNull String userName) {
+        final Set<String> clientIds = clientIdsByUser.get(userName);
+        if (clientIds == null) {
+            return List.of();
+        }
+        final List<Session> userSessions = new ArrayList<>(clientIds.size());
+        for (final String clientId : clientIds) {
+            final Session session = sessions.get(clientId);
+            if (session != null && session.getUserName().equals(userName)) {
+                userSessions.add(session);
+            }
+        }
+        return userSessions;
+    }
+
+    /**
+     * @return the active sessions of all users
+     */
+    @NotNull List<Session> getAllSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * @param session a session that was returned by {@link #getSessions(String)} or {@link #getAllSessions()}
+     * @return true if the client id of the session is still connected with the same user name and roles
+     */
+    boolean isActive(final @NotNull Session session) {
+        final Session activeSession = sessions.get(session.getClientId());
+        return activeSession != null &&
+                activeSession.getUserName().equals(session.getUserName()) &&
+                activeSession.getRoles().equals(session.getRoles());
+    }
+
+    /**
+     * The client initializer may run before or after the successful authentication event, so the pending session of
+     * the client is checked first, it belongs to a newer connect than the active session.
+     *
+     * @param clientId the client id
+     * @return the limiter for the quota of the client or null if the client has no quota
+     */
+    @Nullable PublishLimiter getPublishLimiter(final @NotNull String clientId) {
+        final Session pendingSession = pendingSessions.get(clientId);
+        if (pendingSession != null) {
+            return pendingSession.publishLimiter;
+        }
+        final Session session = sessions.get(clientId);
+        return session == null ? null : session.publishLimiter;
+    }
+
+    /**
+     * @return the amount of active sessions
+     */
+    int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @param userName the user name
+     * @return the amount of active and pending connections of the user
+     */
+    int getConnectionCount(final @NotNull String userName) {
+        final AtomicInteger counter = connectionCounts.get(userName);
+        return counter == null ? 0 : Math.max(0, counter.get());
+    }
+
+    private boolean isTakeOver(final @NotNull String clientId, final @NotNull String userName) {
+        final Session session = sessions.get(clientId);
+        return session != null && session.getUserName().equals(userName);
+    }
+
+    private boolean acquireConnection(final @NotNull String userName, final int limit) {
+        while (true) {
+            final AtomicInteger counter = connectionCounts.computeIfAbsent(userName, name -> new AtomicInteger());
+            final int count = counter.get();
+            if (count < 0) {
+                //the counter is being removed
+                Thread.onSpinWait();
+                continue;
+            }
+            if (count >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void releaseConnection(final @NotNull String userName) {
+        final AtomicInteger counter = connectionCounts.get(userName);
+        if (counter != null && counter.decrementAndGet() == 0 && counter.compareAndSet(0, -1)) {
+            connectionCounts.remove(userName, counter);
+        }
+    }
+
+    private void addClientId(final @NotNull String userName, final @NotNull String clientId) {
+        clientIdsByUser.compute(userName, (name, clientIds) -> {
+            final Set<String> userClientIds = clientIds == null ? ConcurrentHashMap.newKeySet() : clientIds;
+            userClientIds.add(clientId);
+            return userClientIds;
+        });
+    }
+
+    private void removeClientId(final @NotNull String userName, final @NotNull String clientId) {
+        clientIdsByUser.computeIfPresent(userName, (name, clientIds) -> {
+            clientIds.remove(clientId);
+            return clientIds.isEmpty() ? null : clientIds;
+        });
+    }
+
+    /**
+     * The user name, roles and quota a client was authenticated with.
+     */
+    @Immutable
+    static class Session {
+
+        private final @NotNull String clientId;
+        private final @NotNull String userName;
+        private final @NotNull List<String> roles;
+        private final @Nullable PublishLimiter publishLimiter;
+        //the connections of the client id, more than 1 while a session is taken over
+        private final int connections;
+
+        Session(
+                final @NotNull String clientId,
+                final @NotNull String userName,
+                final @NotNull List<String> roles,
+                final @Nullable PublishLimiter publishLimiter,
+                final int connections) {
+            this.clientId = clientId;
+            this.userName = userName;
+            this.roles = roles;
+            this.publishLimiter = publishLimiter;
+            this.connections = connections;
+        }
+
+        @NotNull String getClientId() {
+            return clientId;
+        }
+
+        @NotNull String getUserName() {
+            return userName;
+        }
+
+        @NotNull List<String> getRoles() {
+            return roles;
+        }
+
+        private @NotNull Session withConnections(final int connections) {
+            return new Session(clientId, userName, roles, publishLimiter, connections);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extension.sdk.api.packets.disconnect.DisconnectReasonCode;
+import com.hivemq.extension.sdk.api.services.session.ClientService;
+import com.hivemq.extensions.rbac.SessionRegistry.Session;
+import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+import com.hivemq.extensions.rbac.store.UserPatternMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disconnects the clients whose user was removed or lost one of its roles with a reload of the credentials.
+ * <p>
+ * Clients that have a role that was removed or changed are disconnected as well, the permissions of a changed role
+ * may be narrower than the permissions the client got. If the user patterns changed, the user of every client is
+ * resolved again like on a connect, so clients that were authenticated by a removed or narrowed pattern lose their
+ * access too.
+ * <p>
+ * The default permissions of a client are only set when it connects, so without a disconnect the client would keep
+ * the permissions of the revoked roles until it reconnects. The clients are disconnected in batches, so revoking a role
+ * of many clients does not make all of them reconnect at once. A client that connected again with the new credentials
+ * before its batch is due is not disconnected.
+ */
+@ThreadSafe
+class SessionRevoker implements CredentialsConfiguration.ReloadCallback {
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(SessionRevoker.class);
+
+    static final @NotNull String PREFIX = "com.hivemq.extensions.file-rbac.revocation.";
+    static final @NotNull String DISCONNECTS = PREFIX + "disconnects";
+    static final @NotNull String CLIENTS_PER_RELOAD = PREFIX + "clients-per-reload";
+    static final @NotNull String REASON = "The access of the client was revoked";
+
+    private final @NotNull SessionRegistry sessionRegistry;
+    private final @NotNull ClientService clientService;
+    private final @NotNull ScheduledExecutorService executorService;
+    private final int batchSize;
+    private final long batchInterval;
+    private final @NotNull Counter disconnects;
+    private final @NotNull Histogram clientsPerReload;
+
+    SessionRevoker(
+            final @NotNull SessionRegistry sessionRegistry,
+            final @NotNull ClientService clientService,
+            final @NotNull ScheduledExecutorService executorService,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull MetricRegistry metricRegistry) {
+        this.sessionRegistry = sessionRegistry;
+        this.clientService = clientService;
+        this.executorService = executorService;
+        this.batchSize = extensionConfig.getRevocationBatchSize();
+        this.batchInterval = extensionConfig.getRevocationBatchInterval();
+        this.disconnects = metricRegistry.counter(DISCONNECTS);
+        this.clientsPerReload = metricRegistry.histogram(CLIENTS_PER_RELOAD);
+    }
+
+    @Override
+    public void onReload(final @NotNull CredentialsDiff diff) {
+        final List<Session> revokedSessions = new ArrayList<>();
+        if (diff.isUserPatternsChanged() || !diff.getChangedRoles().isEmpty() || !diff.getRemovedRoles().isEmpty()) {
+            addAllRevokedSessions(diff, revokedSessions);
+        } else {
+            if (diff.getRemovedUsers().isEmpty() && diff.getChangedUsers().isEmpty()) {
+                return;
+            }
+            for (final String userName : diff.getRemovedUsers()) {
+                addRevokedSessions(userName, null, revokedSessions);
+            }
+            for (final User user : diff.getChangedUsers()) {
+                if (user.getName() != null) {
+                    addRevokedSessions(user.getName(), user.getRoles(), revokedSessions);
+                }
+            }
+        }
+        clientsPerReload.update(revokedSessions.size());
+        if (revokedSessions.isEmpty()) {
+            return;
+        }
+        LOG.info("Access of {} connected clients was revoked, disconnecting them in batches of {}.",
+                revokedSessions.size(),
+                batchSize);
+        for (int start = 0; start < revokedSessions.size(); start += batchSize) {
+            final List<Session> batch =
+                    revokedSessions.subList(start, Math.min(start + batchSize, revokedSessions.size()));
+            final long delay = (start / batchSize) * batchInterval;
+            executorService.schedule(() -> disconnect(batch), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param newRoles the roles of the user after the reload or null if the user was removed
+     */
+    private void addRevokedSessions(
+            final @NotNull String userName,
+            final @Nullable List<String> newRoles,
+            final @NotNull List<Session> revokedSessions) {
+        for (final Session session : sessionRegistry.getSessions(userName)) {
+            if (newRoles == null || !newRoles.containsAll(session.getRoles())) {
+                revokedSessions.add(session);
+            }
+        }
+    }
+
+    /**
+     * Checks all sessions, as the roles and user patterns are not bound to single users.
+     */
+    private void addAllRevokedSessions(
+            final @NotNull CredentialsDiff diff, final @NotNull List<Session> revokedSessions) {
+        final Set<String> revokedRoles = new HashSet<>(diff.getRemovedRoles());
+        for (final Role role : diff.getChangedRoles()) {
+            revokedRoles.add(role.getId());
+        }
+        final List<Session> sessions = sessionRegistry.getAllSessions();
+
+        //the new roles of the users of the sessions, null marks a removed user
+        final Map<String, List<String>> newRoles = new HashMap<>();
+        final UserPatternMatcher userPatternMatcher;
+        if (diff.isUserPatternsChanged()) {
+            final FileAuthConfig config = diff.getConfig();
+            final Set<String> userNames = new HashSet<>();
+            for (final Session session : sessions) {
+                userNames.add(session.getUserName());
+            }
+            if (config.getUsers() != null) {
+                for (final User user : config.getUsers()) {
+                    if (userNames.contains(user.getName())) {
+                        newRoles.put(user.getName(), user.getRoles());
+                    }
+                }
+            }
+            userPatternMatcher = UserPatternMatcher.compile(config.getUserPatterns());
+        } else {
+            for (final String userName : diff.getRemovedUsers()) {
+                newRoles.put(userName, null);
+            }
+            for (final User user : diff.getChangedUsers()) {
+                newRoles.put(user.getName(), user.getRoles());
+            }
+            userPatternMatcher = null;
+        }
+
+        for (final Session session : sessions) {
+            final List<String> roles;
+            if (newRoles.containsKey(session.getUserName())) {
+                roles = newRoles.get(session.getUserName());
+            } else if (userPatternMatcher != null) {
+                //users take precedence over user patterns like on a connect
+                final UserPattern userPattern = userPatternMatcher.match(session.getUserName());
+                roles = userPattern == null ? null : userPattern.getRoles();
+            } else {
+                roles = session.getRoles();
+            }
+            if (roles == null || !roles.containsAll(session.getRoles()) || containsAny(revokedRoles, session)) {
+                revokedSessions.add(session);
+            }
+        }
+    }
+
+    private static boolean containsAny(final @NotNull Set<String> roles, final @NotNull Session session) {
+        if (roles.isEmpty()) {
+            return false;
+        }
+        for (final String role : session.getRoles()) {
+            if (roles.contains(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void disconnect(final @NotNull List<Session> batch) {
+        for (final Session session : batch) {
+            if (!sessionRegistry.isActive(session)) {
+                continue;
+            }
+            clientService.disconnectClient(session.getClientId(), false, DisconnectReasonCode.NOT_AUTHORIZED, REASON)
+                    .whenComplete((disconnected, throwable) -> {
+                        if (throwable != null) {
+                            LOG.warn("Could not disconnect client {} whose access was revoked.",
+                                    session.getClientId(),
+                                    throwable);
+                        } else if (disconnected) {
+                            disconnects.inc();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An opt-in admin channel on a local Unix domain socket to change credentials without editing the credentials files.
+ * <p>
+ * Clients send commands as lines of UTF-8 text. Changes of users and roles use the payload syntax of the
+ * {@link JournalEntry} and are collected into a batch until a {@code commit} line. The batch is validated as a whole,
+ * appended to the credentials journal with a single forced write and published to the credentials stores as one
+ * change, so lookups see either all or none of its changes. A batch that could not be appended is removed from the
+ * journal again and not applied. The changes are only persisted in the journal, they are not written back to the
+ * credentials files. A {@code commit} and every control command are answered with a line that starts with
+ * {@code ok} or {@code error}:
+ * <pre>
+ * commit        appends the collected batch to the journal and applies it
+ * abort         discards the collected batch
+ * flush-caches  removes all cached password hashes
+ * reload        parses the credentials files again, even if they were not modified
+ * stats         lists statistics of the credentials, one "name value" line each
+ * </pre>
+ * Every connection is served on its own daemon thread, so an idle client does not block others. At most
+ * {@value #MAX_CONNECTIONS} connections are served at the same time, further connections are answered with an error
+ * and closed. Stopping the channel closes all open connections.
+ * The socket is bound inside a folder that is only accessible by the user of the HiveMQ process, the channel is not
+ * started if the permissions of the folder cannot be restricted.
+ * Unix domain socket channels were added in Java 16, on older versions the admin channel is not started.
+ */
+@ThreadSafe
+public class AdminChannel {
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(AdminChannel.class);
+    static final int MAX_BATCH_SIZE = 100_000;
+    static final int MAX_CONNECTIONS = 8;
+    private static final @NotNull Set<PosixFilePermission> OWNER_ONLY_FOLDER = EnumSet.of(
+            PosixFilePermission.OWNER_READ,
+            PosixFilePermission.OWNER_WRITE,
+            PosixFilePermission.OWNER_EXECUTE);
+    private static final @NotNull Set<PosixFilePermission> OWNER_READ_WRITE =
+            EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+
+    private final @NotNull Path socketPath;
+    private final @NotNull CredentialsConfiguration credentialsConfiguration;
+    private final @NotNull Runnable cacheFlusher;
+    private final @NotNull Semaphore connectionPermits = new Semaphore(MAX_CONNECTIONS);
+    private final @NotNull Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+
+    //guarded by this
+    private @Nullable ServerSocketChannel serverChannel;
+
+    /**
+     * @param extensionHomeFolder      the extension folder a relative socket path is resolved against
+     * @param socketPath               the path of the socket file
+     * @param credentialsConfiguration the credentials configuration to apply the changes to
+     * @param cacheFlusher             the action that removes all cached password hashes
+     */
+    public AdminChannel(
+            final @NotNull File extensionHomeFolder,
+            final @NotNull String socketPath,
+            final @NotNull CredentialsConfiguration credentialsConfiguration,
+            final @NotNull Runnable cacheFlusher) {
+        this.socketPath = extensionHomeFolder.toPath().resolve(socketPath);
+        this.credentialsConfiguration = credentialsConfiguration;
+        this.cacheFlusher = cacheFlusher;
+    }
+
+    /**
+     * Binds the socket and starts accepting connections on a daemon thread.
+     *
+     * @return true if the admin channel was started
+     */
+    public synchronized boolean start() {
+        if (serverChannel != null) {
+            return true;
+        }
+        if (Files.isRegularFile(socketPath)) {
+            LOG.warn("Admin socket {} for file auth extension is a regular file, not starting the admin channel.",
+                    socketPath);
+            return false;
+        }
+        if (!createSocketFolder()) {
+            return false;
+        }
+        final ServerSocketChannel channel;
+        try {
+            //a socket file of a previous run prevents binding
+            Files.deleteIfExists(socketPath);
+            channel = openServerChannel(socketPath);
+        } catch (final ReflectiveOperationException | IllegalArgumentException e) {
+            LOG.warn("The admin socket of the file auth extension requires Java 16 or later, not starting the admin " +
+                    "channel.");
+            return false;
+        } catch (final IOException e) {
+            LOG.warn("Could not open admin socket {} for file auth extension, reason: {}",
+                    socketPath,
+                    e.getMessage());
+            return false;
+        }
+        try {
+            Files.setPosixFilePermissions(socketPath, OWNER_READ_WRITE);
+        } catch (final IOException | UnsupportedOperationException e) {
+            LOG.warn("Could not restrict the permissions of admin socket {} for file auth extension, not starting " +
+                    "the admin channel.", socketPath);
+            close(channel);
+            return false;
+        }
+        serverChannel = channel;
+        final Thread thread = new Thread(() -> acceptConnections(channel), "file-rbac-admin-channel");
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Started admin channel of file auth extension on socket {}.", socketPath);
+        return true;
+    }
+
+    /**
+     * Closes the socket, removes the socket file and closes all open connections.
+     */
+    public synchronized void stop() {
+        final ServerSocketChannel channel = serverChannel;
+        if (channel == null) {
+            return;
+        }
+        serverChannel = null;
+        close(channel);
+        for (final SocketChannel connection : connections) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Creates the folder of the socket file, so only the user of the HiveMQ process can access it. The socket is
+     * bound inside this folder, so it is never reachable by others, even before its own permissions are restricted.
+     *
+     * @return true if the folder exists and is only accessible by its owner
+     */
+    private boolean createSocketFolder() {
+        final Path socketFolder = socketPath.toAbsolutePath().getParent();
+        try {
+            if (!Files.isDirectory(socketFolder)) {
+                Files.createDirectories(socketFolder, PosixFilePermissions.asFileAttribute(OWNER_ONLY_FOLDER));
+            }
+            if (!OWNER_ONLY_FOLDER.containsAll(Files.getPosixFilePermissions(socketFolder))) {
+                LOG.warn("The folder {} of the admin socket for file auth extension is accessible by other users, " +
+                        "not starting the admin channel.", socketFolder);
+                return false;
+            }
+            return true;
+        } catch (final IOException | UnsupportedOperationException e) {
+            LOG.warn("Could not create the folder {} of the admin socket for file auth extension with restricted " +
+                    "permissions, not starting the admin channel.", socketFolder);
+            return false;
+        }
+    }
+
+    private void close(final @NotNull ServerSocketChannel channel) {
+        try {
+            channel.close();
+            Files.deleteIfExists(socketPath);
+        } catch (final IOException e) {
+            LOG.debug("Could not close admin socket {}, reason: {}", socketPath, e.getMessage());
+        }
+    }
+
+    private static void close(final @NotNull SocketChannel connection) {
+        try {
+            connection.close();
+        } catch (final IOException e) {
+            LOG.debug("Could not close admin channel connection, reason: {}", e.getMessage());
+        }
+    }
+
+    private void acceptConnections(final @NotNull ServerSocketChannel channel) {
+        while (channel.isOpen()) {
+            final SocketChannel connection;
+            try {
+                connection = channel.accept();
+            } catch (final ClosedChannelException e) {
+                //the admin channel was stopped
+                return;
+            } catch (final IOException e) {
+                LOG.debug("Could not accept admin channel connection, reason: {}", e.getMessage());
+                continue;
+            }
+            if (!connectionPermits.tryAcquire()) {
+                LOG.warn("Rejecting admin channel connection, {} connections are already open.", MAX_CONNECTIONS);
+                try (connection) {
+                    respond(Channels.newWriter(connection, StandardCharsets.UTF_8),
+                            "error at most " + MAX_CONNECTIONS + " connections are allowed");
+                } catch (final IOException e) {
+                    LOG.debug("Could not reject admin channel connection, reason: {}", e.getMessage());
+                }
+                continue;
+            }
+            connections.add(connection);
+            final Thread thread = new Thread(() -> serve(connection), "file-rbac-admin-connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(final @NotNull SocketChannel connection) {
+        try (connection) {
+            handle(new BufferedReader(Channels.newReader(connection, StandardCharsets.UTF_8)),
+                    Channels.newWriter(connection, StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            LOG.debug("Admin channel connection failed, reason: {}", e.getMessage());
+        } finally {
+            connections.remove(connection);
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * Reads commands until the end of the stream and writes the responses.
+     * <p>
+     * A batch that was not committed before the end of the stream is discarded.
+     */
+    void handle(final @NotNull BufferedReader reader, final @NotNull Writer writer) throws IOException {
+        final List<JournalEntry> batch = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            switch (line) {
+                case "commit":
+                    respond(writer, commit(batch));
+                    batch.clear();
+                    break;
+                case "abort":
+                    batch.clear();
+                    respond(writer, "ok");
+                    break;
+                case "flush-caches":
+                    cacheFlusher.run();
+                    respond(writer, "ok");
+                    break;
+                case "reload":
+                    credentialsConfiguration.reloadNow();
+                    respond(writer, "ok generation " + credentialsConfiguration.getGeneration());
+                    break;
+                case "stats":
+                    writeStats(writer);
+                    respond(writer, "ok");
+                    break;
+                default:
+                    final JournalEntry entry = JournalEntry.parsePayload(line);
+                    if (entry == null) {
+                        batch.clear();
+                        respond(writer, "error invalid command, the batch was discarded");
+                    } else if (batch.size() >= MAX_BATCH_SIZE) {
+                        batch.clear();
+                        respond(writer, "error batches are limited to " + MAX_BATCH_SIZE + " entries, the batch " +
+                                "was discarded");
+                    } else {
+                        batch.add(entry);
+                    }
+            }
+        }
+    }
+
+    private @NotNull String commit(final @NotNull List<JournalEntry> batch) {
+        if (batch.isEmpty()) {
+            return "ok 0";
+        }
+        final List<String> errors = new ArrayList<>();
+        try {
+            if (credentialsConfiguration.applyBatch(batch, errors)) {
+                return "ok " + batch.size();
+            }
+            return "error " + String.join("; ", errors);
+        } catch (final IOException e) {
+            LOG.warn("Could not append admin channel batch to the credentials journal, reason: {}", e.getMessage());
+            return "error could not write the credentials journal: " + e.getMessage();
+        }
+    }
+
+    private void writeStats(final @NotNull Writer writer) throws IOException {
+        final ReloadMetrics reloadMetrics = credentialsConfiguration.getReloadMetrics();
+        writer.write("generation " + credentialsConfiguration.getGeneration() + "\n");
+        writer.write("users " + reloadMetrics.getUsers() + "\n");
+        writer.write("roles " + reloadMetrics.getRoles() + "\n");
+        writer.write("permissions " + reloadMetrics.getPermissions() + "\n");
+        writer.write("heap-bytes " + reloadMetrics.getHeapBytes() + "\n");
+        writer.write("last-success-timestamp " + reloadMetrics.getLastSuccessTimestamp() + "\n");
+        writer.write("read-failures " + reloadMetrics.getReadFailures() + "\n");
+        writer.write("validation-failures " + reloadMetrics.getValidationFailures() + "\n");
+        writer.write("journal-entries-applied " + reloadMetrics.getJournalEntriesApplied() + "\n");
+        writer.write("journal-entries-rejected " + reloadMetrics.getJournalEntriesRejected() + "\n");
+    }
+
+    private static void respond(final @NotNull Writer writer, final @NotNull String response) throws IOException {
+        writer.write(response);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private static @NotNull ServerSocketChannel openServerChannel(final @NotNull Path path)
+            throws IOException, ReflectiveOperationException {
+        //UnixDomainSocketAddress was added in Java 16, the extension is compiled for Java 11
+        final SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                .getMethod("of", Path.class)
+                .invoke(null, path);
+        final ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+        final ServerSocketChannel channel;
+        try {
+            channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+                    .invoke(null, unix);
+        } catch (final InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        try {
+            channel.bind(address);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+}
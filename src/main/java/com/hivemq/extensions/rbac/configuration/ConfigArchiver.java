@@ -16,52 +16,153 @@
  */
 package com.hivemq.extensions.rbac.configuration;
 
+import com.codahale.metrics.Timer;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
-import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
-import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 @ThreadSafe
 class ConfigArchiver {
 
     private static final @NotNull Logger LOG = LoggerFactory.getLogger(ConfigArchiver.class);
+    static final @NotNull String ARCHIVE_FOLDER_NAME = "credentials-archive";
+    private static final @NotNull String ARCHIVE_SUFFIX = ".xml.gz";
+    //archives written by previous versions of the extension are uncompressed
+    private static final @NotNull String LEGACY_ARCHIVE_SUFFIX = "-credentials.xml";
+    private static final @NotNull FastDateFormat DATE_FORMAT = FastDateFormat.getInstance("yyyyMMdd-HH-mm-ss-SSS");
+    private static final @NotNull char[] HEX = "0123456789abcdef".toCharArray();
 
     private final @NotNull File archiveFolder;
-    private final @NotNull XmlParser xmlParser;
+    private final @NotNull Executor executor;
+    private final @NotNull ReloadMetrics reloadMetrics;
+    private final int maxFiles;
+    private final long maxAgeMillis;
 
     ConfigArchiver(
-            final @NotNull File extensionHomeFolder, final @NotNull XmlParser xmlParser) {
-        this.xmlParser = xmlParser;
-        archiveFolder = new File(extensionHomeFolder, "credentials-archive");
+            final @NotNull File extensionHomeFolder,
+            final @NotNull Executor executor,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull ReloadMetrics reloadMetrics) {
+        this.executor = executor;
+        this.reloadMetrics = reloadMetrics;
+        maxFiles = extensionConfig.getArchiveMaxFiles();
+        maxAgeMillis = TimeUnit.DAYS.toMillis(extensionConfig.getArchiveMaxAge());
+        archiveFolder = new File(extensionHomeFolder, ARCHIVE_FOLDER_NAME);
     }
 
     /**
-     * A config to the archive folder as XML
+     * Archives the content of a credentials file or shard in the background.
      * <p>
-     * If archiving was not successful, this method will throw an IOException.
+     * The content is written compressed to the archive folder, unless an archived file with the same content already
+     * exists. Afterwards archived files that exceed the configured retention are deleted.
+     * <p>
+     * Failures are logged, the returned future completes exceptionally in this case.
+     *
+     * @param fileName the name of the credentials file
+     * @param content  the content of the credentials file, must not be modified afterwards
+     * @return a future that completes when the content was archived
+     */
+    @NotNull CompletableFuture<Void> archive(final @NotNull String fileName, final byte @NotNull [] content) {
+        final CompletableFuture<Void> future;
+        try {
+            future = CompletableFuture.runAsync(() -> {
+                try {
+                    archiveNow(fileName, content);
+                } catch (final IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (final RejectedExecutionException e) {
+            reloadMetrics.archiveFailed();
+            LOG.warn("Archival of the credentials config was rejected. Reason: {}", e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                reloadMetrics.archiveFailed();
+                final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                LOG.warn("Archival of the credentials config failed. Reason: {}", cause.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Archives the content of a credentials file in the calling thread.
      * <p>
      * This method is thread safe
      *
-     * @param config the config to archive
+     * @param fileName the name of the credentials file
+     * @param content  the content of the credentials file
      * @throws IOException if something bad happened and archival was not successful
      */
-    synchronized void archive(final @Nullable FileAuthConfig config) throws IOException {
-        if (config == null) {
-            LOG.debug("Configuration is invalid, archiving is not possible");
-            return;
+    synchronized void archiveNow(final @NotNull String fileName, final byte @NotNull [] content)
+            throws IOException {
+        final Timer.Context context = reloadMetrics.getArchiveTimer().time();
+        try {
+            createArchiveFolder();
+
+            final String archiveSuffix = "-" + hash(content) + "-" + fileName + ".gz";
+            final File[] archivedFiles = archiveFolder.listFiles();
+            if (archivedFiles != null) {
+                for (final File archivedFile : archivedFiles) {
+                    if (archivedFile.getName().endsWith(archiveSuffix)) {
+                        LOG.debug("Credentials config is already archived in {}.", archivedFile.getAbsolutePath());
+                        //the archive of the live config must be the most recent one, so retention keeps it
+                        if (!archivedFile.setLastModified(System.currentTimeMillis())) {
+                            LOG.debug("Could not update the modification time of {}.",
+                                    archivedFile.getAbsolutePath());
+                        }
+                        applyRetention();
+                        return;
+                    }
+                }
+            }
+
+            final String archiveName = DATE_FORMAT.format(System.currentTimeMillis()) + archiveSuffix;
+            final File file = new File(archiveFolder, archiveName);
+            final File tempFile = new File(archiveFolder, archiveName + ".tmp");
+            try (final OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(tempFile.toPath()))) {
+                outputStream.write(content);
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath());
+            }
+            LOG.info("Archived credentials config {} to {}.", fileName, file.getAbsolutePath());
+
+            applyRetention();
+        } finally {
+            context.stop();
         }
+    }
 
+    private void createArchiveFolder() throws IOException {
         //If someone's nasty and creates a file that looks like a folder
         if (archiveFolder.isFile()) {
             LOG.warn("The credentials archive folder is a file, trying to delete");
-            if (archiveFolder.delete()) {
+            if (!archiveFolder.delete()) {
                 throw new IOException("Could not delete file " + archiveFolder.getAbsolutePath());
             }
         }
@@ -73,18 +174,64 @@ class ConfigArchiver {
             if (!archiveFolder.mkdir()) {
                 throw new IOException("Could not create credentials archive folder " + archiveFolder.getAbsolutePath());
             } else {
-                LOG.info("Created credentials Archive folder {}." + archiveFolder.getAbsolutePath());
+                LOG.info("Created credentials Archive folder {}.", archiveFolder.getAbsolutePath());
             }
         }
+    }
 
-        final FastDateFormat formatter = FastDateFormat.getInstance("yyyyMMdd-hh-mm-ss");
+    /**
+     * Deletes archived files beyond the maximum amount of files or older than the maximum age.
+     * The most recent archived file is always kept.
+     */
+    private void applyRetention() {
+        if (maxFiles <= 0 && maxAgeMillis <= 0) {
+            return;
+        }
+        final File[] files = archiveFolder.listFiles();
+        if (files == null) {
+            return;
+        }
+        final List<File> archivedFiles = new ArrayList<>();
+        for (final File file : files) {
+            if (file.isFile() && isArchivedFile(file.getName())) {
+                archivedFiles.add(file);
+            }
+        }
+        archivedFiles.sort(Comparator.comparingLong(File::lastModified).thenComparing(File::getName).reversed());
+
+        final long oldestTimestamp = System.currentTimeMillis() - maxAgeMillis;
+        for (int i = 1; i < archivedFiles.size(); i++) {
+            final File file = archivedFiles.get(i);
+            final boolean tooMany = maxFiles > 0 && i >= maxFiles;
+            final boolean tooOld = maxAgeMillis > 0 && file.lastModified() < oldestTimestamp;
+            if (tooMany || tooOld) {
+                if (file.delete()) {
+                    LOG.debug("Deleted archived credentials config {}.", file.getAbsolutePath());
+                } else {
+                    LOG.warn("Could not delete archived credentials config {}.", file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    private static boolean isArchivedFile(final @NotNull String fileName) {
+        return fileName.endsWith(ARCHIVE_SUFFIX) || fileName.endsWith(LEGACY_ARCHIVE_SUFFIX);
+    }
+
+    private static @NotNull String hash(final byte @NotNull [] content) {
+        final byte[] digest;
         try {
-            final String dateString = formatter.format(new Date());
-            final File file = new File(archiveFolder, dateString + "-credentials.xml");
-            xmlParser.marshal(config, file);
-            LOG.info("Archived current credentials config to {}.", file.getAbsolutePath());
-        } catch (final NotMarshallableException e) {
-            throw new IOException(e);
+            digest = MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (final NoSuchAlgorithmException e) {
+            //SHA-256 is available on every Java platform
+            throw new IllegalStateException(e);
+        }
+        //the first 8 bytes are enough to tell different versions of the credentials file apart
+        final char[] chars = new char[16];
+        for (int i = 0; i < 8; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
         }
+        return new String(chars);
     }
 }
@@ -17,143 +17,600 @@
 package com.hivemq.extensions.rbac.configuration;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Group;
 import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
 import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
 import com.hivemq.extensions.rbac.configuration.entities.Role;
 import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+/**
+ * Validates the users, roles, groups and user patterns of credentials configurations.
+ * <p>
+ * The entries of a configuration are validated in partitions on the common {@link ForkJoinPool}, the duplicates are
+ * found in concurrent maps of the first index of every id. The errors of the partitions are collected in the order of
+ * the entries, so the errors are reported in the same order as by a sequential validation, with the position of the
+ * entry in its file if it is known. The validation stops after the maximum amount of errors of the extension config.
+ */
 class ConfigCredentialsValidator {
 
+    //large enough that a partition takes longer than handing it to another thread
+    private static final int PARTITION_SIZE = 1024;
+
     static @NotNull ValidationResult validateConfig(
             final @NotNull ExtensionConfig extensionConfig, final @NotNull FileAuthConfig config) {
-        final List<String> errors = new ArrayList<>();
-        boolean validationSuccessful = true;
-        final List<User> users = config.getUsers();
-        final List<Role> roles = config.getRoles();
-        if (users == null || users.isEmpty()) {
-            errors.add("No Users found in configuration file");
-            validationSuccessful = false;
+        return validateConfig(extensionConfig, config, SourcePositions.NONE);
+    }
+
+    /**
+     * @param extensionConfig the extension config
+     * @param config          the config to validate
+     * @param positions       the positions of the entries of the config, reported with their errors
+     * @return the result of the validation
+     */
+    static @NotNull ValidationResult validateConfig(
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull FileAuthConfig config,
+            final @NotNull SourcePositions positions) {
+        final List<User> users = config.getUsers() == null ? List.of() : config.getUsers();
+        final List<Role> roles = config.getRoles() == null ? List.of() : config.getRoles();
+        final List<Group> groups = config.getGroups() == null ? List.of() : config.getGroups();
+        final List<UserPattern> userPatterns = config.getUserPatterns() == null ? List.of() : config.getUserPatterns();
+        final List<String> missingErrors = new ArrayList<>();
+        if (users.isEmpty() && userPatterns.isEmpty()) {
+            missingErrors.add("No Users found in configuration file");
         }
-        if (roles == null || roles.isEmpty()) {
-            errors.add("No Roles found in configuration file");
-            validationSuccessful = false;
+        if (roles.isEmpty()) {
+            missingErrors.add("No Roles found in configuration file");
         }
 
         //if users or roles are missing stop here
-        if (!validationSuccessful) {
-            return new ValidationResult(errors, false);
+        if (!missingErrors.isEmpty()) {
+            return new ValidationResult(missingErrors, false);
         }
 
-        final Set<String> roleIds = new HashSet<>();
-        for (final Role role : roles) {
+        final Errors errors = new Errors(extensionConfig.getValidationMaxErrors());
+        final Map<String, Integer> firstRoles = firstIndexes(roles, Role::getId);
+        validatePartitioned(roles.size(), SourcePositions.Kind.ROLE, positions, errors, (index, roleErrors) -> {
+            final Role role = roles.get(index);
             if (role.getId() == null || role.getId().isEmpty()) {
-                errors.add("A Role is missing an ID");
+                roleErrors.add("A Role is missing an ID");
+                return;
+            }
+            if (firstRoles.get(role.getId()) != index) {
+                roleErrors.add("Duplicate ID '" + role.getId() + "' for role");
+                return;
+            }
+            validatePermissions(role, roleErrors);
+            validateQuota(role, roleErrors);
+        });
+        final Set<String> roleIds = firstRoles.keySet();
+        if (!errors.isFull()) {
+            final List<String> inheritanceErrors = new ArrayList<>();
+            validateRoleInheritance(roles, inheritanceErrors);
+            errors.addAll(inheritanceErrors);
+        }
+
+        final Map<String, Integer> firstGroups = firstIndexes(groups, Group::getId);
+        validatePartitioned(groups.size(), SourcePositions.Kind.GROUP, positions, errors, (index, groupErrors) -> {
+            final Group group = groups.get(index);
+            if (group.getId() == null || group.getId().isEmpty()) {
+                groupErrors.add("A Group is missing an ID");
+                return;
+            }
+            if (firstGroups.get(group.getId()) != index) {
+                groupErrors.add("Duplicate ID '" + group.getId() + "' for group");
+                return;
+            }
+            validateGroup(group, roleIds, groupErrors);
+        });
+        final Set<String> groupIds = firstGroups.keySet();
+
+        final Map<String, Integer> firstUsers = firstIndexes(users, User::getName);
+        validatePartitioned(users.size(), SourcePositions.Kind.USER, positions, errors, (index, userErrors) -> {
+            final User user = users.get(index);
+            if (user.getName() == null || user.getName().isEmpty()) {
+                userErrors.add("A User is missing a name");
+                return;
+            }
+            if (firstUsers.get(user.getName()) != index) {
+                userErrors.add("Duplicate Name '" + user.getName() + "' for user");
+                return;
+            }
+            validateUser(extensionConfig, user, roleIds, groupIds, userErrors);
+        });
+
+        validatePartitioned(userPatterns.size(),
+                SourcePositions.Kind.USER_PATTERN,
+                positions,
+                errors,
+                (index, userPatternErrors) -> validateUserPattern(extensionConfig,
+                        userPatterns.get(index),
+                        roleIds,
+                        groupIds,
+                        userPatternErrors));
+        return errors.toResult();
+    }
+
+    /**
+     * Validates the entries of a list in partitions, in parallel if there is more than one partition.
+     *
+     * @param size      the amount of entries
+     * @param kind      the kind of the entries
+     * @param positions the positions of the entries
+     * @param errors    the errors the errors of the entries are added to, in the order of the entries
+     * @param validator the validator of a single entry
+     */
+    private static void validatePartitioned(
+            final int size,
+            final @NotNull SourcePositions.Kind kind,
+            final @NotNull SourcePositions positions,
+            final @NotNull Errors errors,
+            final @NotNull EntryValidator validator) {
+        final int partitions = (size + PARTITION_SIZE - 1) / PARTITION_SIZE;
+        final IntStream partitionStream = IntStream.range(0, partitions);
+        //parallel streams run on the common pool, the calling thread takes part as well
+        final List<List<String>> partitionErrors =
+                (partitions > 1 ? partitionStream.parallel() : partitionStream).mapToObj(partition -> {
+                    final List<String> entryErrors = new ArrayList<>();
+                    final int end = Math.min(size, (partition + 1) * PARTITION_SIZE);
+                    for (int index = partition * PARTITION_SIZE; index < end && !errors.isFull(); index++) {
+                        final int before = entryErrors.size();
+                        validator.validate(index, entryErrors);
+                        if (entryErrors.size() > before) {
+                            final String position = positions.describe(kind, index);
+                            for (int i = before; i < entryErrors.size(); i++) {
+                                entryErrors.set(i, entryErrors.get(i) + position);
+                            }
+                            errors.found(entryErrors.size() - before);
+                        }
+                    }
+                    return entryErrors;
+                }).collect(Collectors.toList());
+        for (final List<String> entryErrors : partitionErrors) {
+            errors.collect(entryErrors);
+        }
+    }
+
+    /**
+     * @param entries the entries
+     * @param id      the id of an entry
+     * @return the index of the first entry with an id by the non-empty ids of the entries
+     */
+    private static <T> @NotNull Map<String, Integer> firstIndexes(
+            final @NotNull List<T> entries, final @NotNull Function<T, String> id) {
+        final Map<String, Integer> firstIndexes = new ConcurrentHashMap<>(Math.max(16, entries.size() * 4 / 3));
+        final IntStream indexes = IntStream.range(0, entries.size());
+        (entries.size() > PARTITION_SIZE ? indexes.parallel() : indexes).forEach(index -> {
+            final String entryId = id.apply(entries.get(index));
+            if (entryId != null && !entryId.isEmpty()) {
+                firstIndexes.merge(entryId, index, Math::min);
+            }
+        });
+        return firstIndexes;
+    }
+
+    /**
+     * Validates the permissions of a role.
+     *
+     * @param role   the role to validate, its id must be present
+     * @param errors the list the validation errors are added to
+     * @return true if the permissions are valid
+     */
+    static boolean validatePermissions(final @NotNull Role role, final @NotNull List<String> errors) {
+        if (role.getPermissions() == null || role.getPermissions().isEmpty()) {
+            //a role that extends other roles may consist of inherited permissions only
+            if (role.getExtendedRoles() != null && !role.getExtendedRoles().isEmpty()) {
+                return true;
+            }
+            errors.add("Role '" + role.getId() + "' is missing permissions");
+            return false;
+        }
+
+        boolean validationSuccessful = true;
+        for (final Permission permission : role.getPermissions()) {
+            if (permission.getTopic() == null || permission.getTopic().isEmpty()) {
+                errors.add("A Permission for role with id '" + role.getId() + "' is missing a topic filter");
                 validationSuccessful = false;
-                continue;
             }
-            if (roleIds.contains(role.getId())) {
-                errors.add("Duplicate ID '" + role.getId() + "' for role");
+
+            if (permission.getActivity() == null) {
+                errors.add("Invalid value for Activity in Permission for role with id '" + role.getId() + "'");
                 validationSuccessful = false;
-                continue;
             }
-            roleIds.add(role.getId());
 
-            if (role.getPermissions() == null || role.getPermissions().isEmpty()) {
-                errors.add("Role '" + role.getId() + "' is missing permissions");
+            if (permission.getQos() == null) {
+                errors.add("Invalid value for QoS in Permission for role with id '" + role.getId() + "'");
                 validationSuccessful = false;
-                continue;
             }
 
-            for (final Permission permission : role.getPermissions()) {
-                if (permission.getTopic() == null || permission.getTopic().isEmpty()) {
-                    errors.add("A Permission for role with id '" + role.getId() + "' is missing a topic filter");
-                    validationSuccessful = false;
-                }
+            if (permission.getRetain() == null) {
+                errors.add("Invalid value for Retain in Permission for role with id '" + role.getId() + "'");
+                validationSuccessful = false;
+            }
 
-                if (permission.getActivity() == null) {
-                    errors.add("Invalid value for Activity in Permission for role with id '" + role.getId() + "'");
-                    validationSuccessful = false;
-                }
+            if (permission.getSharedGroup() == null || permission.getSharedGroup().isEmpty()) {
+                errors.add("Invalid value for Shared Group in Permission for role with id '" + role.getId() + "'");
+                validationSuccessful = false;
+            }
 
-                if (permission.getQos() == null) {
-                    errors.add("Invalid value for QoS in Permission for role with id '" + role.getId() + "'");
-                    validationSuccessful = false;
-                }
+            if (permission.getSharedSubscription() == null) {
+                errors.add("Invalid value for Shared Subscription in Permission for role with id '" +
+                        role.getId() +
+                        "'");
+                validationSuccessful = false;
+            }
+        }
+        return validationSuccessful;
+    }
 
-                if (permission.getRetain() == null) {
-                    errors.add("Invalid value for Retain in Permission for role with id '" + role.getId() + "'");
-                    validationSuccessful = false;
-                }
+    /**
+     * Validates the quota of a role.
+     *
+     * @param role   the role to validate
+     * @param errors the list the validation errors are added to
+     * @return true if the role has no quota or a quota without negative limits
+     */
+    static boolean validateQuota(final @NotNull Role role, final @NotNull List<String> errors) {
+        final Quota quota = role.getQuota();
+        if (quota != null &&
+                (quota.getMessagesPerSecond() < 0 || quota.getBytesPerSecond() < 0 || quota.getMaxPayloadSize() < 0)) {
+            errors.add("Role '" + role.getId() + "' has a negative quota");
+            return false;
+        }
+        return true;
+    }
 
-                if (permission.getSharedGroup() == null || permission.getSharedGroup().isEmpty()) {
-                    errors.add("Invalid value for Shared Group in Permission for role with id '" + role.getId() + "'");
+    /**
+     * Checks that all extended roles exist and that no role inherits from itself.
+     *
+     * @param roles  the roles to validate
+     * @param errors the list the validation errors are added to
+     * @return true if the inheritance of the roles is valid
+     */
+    static boolean validateRoleInheritance(final @NotNull List<Role> roles, final @NotNull List<String> errors) {
+        //in the order of the config, so the same cycle is always reported the same way
+        final Map<String, Role> rolesById = new LinkedHashMap<>();
+        for (final Role role : roles) {
+            if (role.getId() != null) {
+                rolesById.putIfAbsent(role.getId(), role);
+            }
+        }
+        boolean validationSuccessful = true;
+        for (final Role role : roles) {
+            if (role.getExtendedRoles() == null) {
+                continue;
+            }
+            for (final String extendedRole : role.getExtendedRoles()) {
+                if (extendedRole == null || !rolesById.containsKey(extendedRole)) {
+                    errors.add("Unknown role '" + extendedRole + "' extended by role '" + role.getId() + "'");
                     validationSuccessful = false;
                 }
+            }
+        }
 
-                if (permission.getSharedSubscription() == null) {
-                    errors.add("Invalid value for Shared Subscription in Permission for role with id '" +
-                            role.getId() +
-                            "'");
+        //false while a role is on the current path, true after all roles it extends were visited
+        final Map<String, Boolean> visited = new HashMap<>();
+        for (final String roleId : rolesById.keySet()) {
+            if (!visited.containsKey(roleId) &&
+                    !validateNoCycle(roleId, rolesById, visited, new ArrayList<>(), errors)) {
+                validationSuccessful = false;
+            }
+        }
+        return validationSuccessful;
+    }
+
+    private static boolean validateNoCycle(
+            final @NotNull String roleId,
+            final @NotNull Map<String, Role> rolesById,
+            final @NotNull Map<String, Boolean> visited,
+            final @NotNull List<String> path,
+            final @NotNull List<String> errors) {
+        visited.put(roleId, false);
+        path.add(roleId);
+        boolean validationSuccessful = true;
+        final List<String> extendedRoles = rolesById.get(roleId).getExtendedRoles();
+        if (extendedRoles != null) {
+            for (final String extendedRole : extendedRoles) {
+                if (extendedRole == null || !rolesById.containsKey(extendedRole)) {
+                    continue;
+                }
+                final Boolean done = visited.get(extendedRole);
+                if (done == null) {
+                    if (!validateNoCycle(extendedRole, rolesById, visited, path, errors)) {
+                        validationSuccessful = false;
+                    }
+                } else if (!done) {
+                    final List<String> cycle = new ArrayList<>(path.subList(path.indexOf(extendedRole), path.size()));
+                    cycle.add(extendedRole);
+                    errors.add("Role '" + extendedRole + "' extends itself: " + String.join(" -> ", cycle));
                     validationSuccessful = false;
                 }
             }
         }
+        path.remove(path.size() - 1);
+        visited.put(roleId, true);
+        return validationSuccessful;
+    }
 
-        final Set<String> userNames = new HashSet<>();
-        for (final User user : users) {
-            if (user.getName() == null || user.getName().isEmpty()) {
-                errors.add("A User is missing a name");
+    /**
+     * Validates the roles of a group.
+     *
+     * @param group   the group to validate, its id must be present
+     * @param roleIds the ids of all known roles
+     * @param errors  the list the validation errors are added to
+     * @return true if the group is valid
+     */
+    static boolean validateGroup(
+            final @NotNull Group group, final @NotNull Set<String> roleIds, final @NotNull List<String> errors) {
+        if (group.getRoles() == null || group.getRoles().isEmpty()) {
+            errors.add("Group '" + group.getId() + "' is missing roles");
+            return false;
+        }
+        boolean validationSuccessful = true;
+        for (final String role : group.getRoles()) {
+            if (role == null || !roleIds.contains(role)) {
+                errors.add("Unknown role '" + role + "' for group '" + group.getId() + "'");
                 validationSuccessful = false;
-                continue;
             }
-            if (userNames.contains(user.getName())) {
-                errors.add("Duplicate Name '" + user.getName() + "' for user");
-                validationSuccessful = false;
-                continue;
+        }
+        return validationSuccessful;
+    }
+
+    /**
+     * Validates the password, the roles and the groups of a user.
+     *
+     * @param extensionConfig the extension config
+     * @param user            the user to validate, its name must be present
+     * @param roleIds         the ids of all known roles
+     * @param groupIds        the ids of all known groups
+     * @param errors          the list the validation errors are added to
+     * @return true if the user is valid
+     */
+    static boolean validateUser(
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull User user,
+            final @NotNull Set<String> roleIds,
+            final @NotNull Set<String> groupIds,
+            final @NotNull List<String> errors) {
+        if (user.getPassword() == null || user.getPassword().isEmpty()) {
+            errors.add("User '" + user.getName() + "' is missing a password");
+            return false;
+        }
+        if (extensionConfig.getPasswordType() == PasswordType.HASHED) {
+            final String password = user.getPassword();
+            final String[] split = password.split(":");
+
+            if (split.length < 2 || split[0].isEmpty() || split[1].isEmpty()) {
+                errors.add("User '" + user.getName() + "' has invalid password");
+                return false;
             }
-            userNames.add(user.getName());
+        }
+        if (user.getMaxSessions() < 0) {
+            errors.add("User '" + user.getName() + "' has a negative max-sessions");
+            return false;
+        }
+        final List<String> roles = user.getRoles() == null ? List.of() : user.getRoles();
+        final List<String> groups = user.getGroups() == null ? List.of() : user.getGroups();
+        if (roles.isEmpty() && groups.isEmpty()) {
+            errors.add("User '" + user.getName() + "' is missing roles");
+            return false;
+        }
 
-            if (user.getPassword() == null || user.getPassword().isEmpty()) {
-                errors.add("User '" + user.getName() + "' is missing a password");
+        boolean validationSuccessful = true;
+        for (final String role : roles) {
+            if (role == null || role.isEmpty()) {
+                errors.add("Invalid role for user '" + user.getName() + "'");
                 validationSuccessful = false;
                 continue;
             }
-            if (extensionConfig.getPasswordType() == PasswordType.HASHED) {
-                final String password = user.getPassword();
-                final String[] split = password.split(":");
+            if (!roleIds.contains(role)) {
+                errors.add("Unknown role '" + role + "' for user '" + user.getName() + "'");
+                validationSuccessful = false;
+            }
+        }
+        for (final String group : groups) {
+            if (group == null || !groupIds.contains(group)) {
+                errors.add("Unknown group '" + group + "' for user '" + user.getName() + "'");
+                validationSuccessful = false;
+            }
+        }
+        return validationSuccessful;
+    }
 
-                if (split.length < 2 || split[0].isEmpty() || split[1].isEmpty()) {
-                    errors.add("User '" + user.getName() + "' has invalid password");
-                    validationSuccessful = false;
-                    continue;
-                }
+    /**
+     * Validates the expression, the password and the roles of a user pattern.
+     *
+     * @param extensionConfig the extension config
+     * @param userPattern     the user pattern to validate
+     * @param roleIds         the ids of all known roles
+     * @param groupIds        the ids of all known groups
+     * @param errors          the list the validation errors are added to
+     * @return true if the user pattern is valid
+     */
+    static boolean validateUserPattern(
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull UserPattern userPattern,
+            final @NotNull Set<String> roleIds,
+            final @NotNull Set<String> groupIds,
+            final @NotNull List<String> errors) {
+        int expressions = 0;
+        for (final String expression : new String[]{
+                userPattern.getPrefix(), userPattern.getGlob(), userPattern.getRegex()}) {
+            if (expression != null) {
+                expressions++;
+            }
+        }
+        final String expression = userPattern.getExpression();
+        if (expressions != 1 || expression.isEmpty()) {
+            errors.add("A User Pattern needs exactly one non-empty prefix, glob or regex");
+            return false;
+        }
+        if (userPattern.getRegex() != null) {
+            try {
+                Pattern.compile(userPattern.getRegex());
+            } catch (final PatternSyntaxException e) {
+                errors.add("User Pattern '" + expression + "' has invalid regex: " + e.getDescription());
+                return false;
+            }
+        }
+
+        final boolean hasPassword = userPattern.getPassword() != null && !userPattern.getPassword().isEmpty();
+        final boolean hasHmacSecret = userPattern.getHmacSecret() != null && !userPattern.getHmacSecret().isEmpty();
+        if (hasPassword == hasHmacSecret) {
+            errors.add("User Pattern '" + expression + "' needs either a password or an hmac-secret");
+            return false;
+        }
+        if (hasPassword && extensionConfig.getPasswordType() == PasswordType.HASHED) {
+            final String[] split = userPattern.getPassword().split(":");
+            if (split.length < 2 || split[0].isEmpty() || split[1].isEmpty()) {
+                errors.add("User Pattern '" + expression + "' has invalid password");
+                return false;
+            }
+        }
+
+        final List<String> roles = userPattern.getRoles() == null ? List.of() : userPattern.getRoles();
+        final List<String> groups = userPattern.getGroups() == null ? List.of() : userPattern.getGroups();
+        if (roles.isEmpty() && groups.isEmpty()) {
+            errors.add("User Pattern '" + expression + "' is missing roles");
+            return false;
+        }
+        boolean validationSuccessful = true;
+        for (final String role : roles) {
+            if (role == null || role.isEmpty() || !roleIds.contains(role)) {
+                errors.add("Unknown role '" + role + "' for user pattern '" + expression + "'");
+                validationSuccessful = false;
             }
-            if (user.getRoles() == null || user.getRoles().isEmpty()) {
-                errors.add("User '" + user.getName() + "' is missing roles");
+        }
+        for (final String group : groups) {
+            if (group == null || !groupIds.contains(group)) {
+                errors.add("Unknown group '" + group + "' for user pattern '" + expression + "'");
                 validationSuccessful = false;
-                continue;
             }
+        }
+        return validationSuccessful;
+    }
 
-            for (final String role : user.getRoles()) {
-                if (role == null || role.isEmpty()) {
-                    errors.add("Invalid role for user '" + user.getName() + "'");
-                    validationSuccessful = false;
-                    continue;
+    /**
+     * Checks that no user, role or group is defined in more than one config file.
+     *
+     * @param configs the configs by the name of their file
+     * @return the result of the validation
+     */
+    static @NotNull ValidationResult validateShards(final @NotNull Map<String, FileAuthConfig> configs) {
+        final List<String> errors = new ArrayList<>();
+        final Map<String, String> userFiles = new HashMap<>();
+        final Map<String, String> roleFiles = new HashMap<>();
+        final Map<String, String> groupFiles = new HashMap<>();
+        for (final Map.Entry<String, FileAuthConfig> entry : configs.entrySet()) {
+            final String fileName = entry.getKey();
+            final FileAuthConfig config = entry.getValue();
+            if (config.getUsers() != null) {
+                for (final User user : config.getUsers()) {
+                    final String otherFileName = userFiles.putIfAbsent(user.getName(), fileName);
+                    //duplicates in the same file are reported by the validation of the merged config
+                    if (otherFileName != null && !otherFileName.equals(fileName)) {
+                        errors.add("User '" + user.getName() + "' is defined in '" + otherFileName + "' and '" +
+                                fileName + "'");
+                    }
                 }
-                if (!roleIds.contains(role)) {
-                    errors.add("Unknown role '" + role + "' for user '" + user.getName() + "'");
-                    validationSuccessful = false;
+            }
+            if (config.getRoles() != null) {
+                for (final Role role : config.getRoles()) {
+                    final String otherFileName = roleFiles.putIfAbsent(role.getId(), fileName);
+                    if (otherFileName != null && !otherFileName.equals(fileName)) {
+                        errors.add("Role '" + role.getId() + "' is defined in '" + otherFileName + "' and '" +
+                                fileName + "'");
+                    }
+                }
+            }
+            if (config.getGroups() != null) {
+                for (final Group group : config.getGroups()) {
+                    final String otherFileName = groupFiles.putIfAbsent(group.getId(), fileName);
+                    if (otherFileName != null && !otherFileName.equals(fileName)) {
+                        errors.add("Group '" + group.getId() + "' is defined in '" + otherFileName + "' and '" +
+                                fileName + "'");
+                    }
                 }
             }
         }
-        return new ValidationResult(errors, validationSuccessful);
+        return new ValidationResult(errors, errors.isEmpty());
+    }
+
+    private interface EntryValidator {
+
+        /**
+         * @param index  the index of the entry
+         * @param errors the list the validation errors of the entry are added to
+         */
+        void validate(int index, @NotNull List<String> errors);
+    }
+
+    /**
+     * The errors of a validation, limited to a maximum amount.
+     */
+    @ThreadSafe
+    private static class Errors {
+
+        private final int maxErrors;
+        //the errors found by all partitions, including the ones that are not collected yet
+        private final @NotNull AtomicInteger found = new AtomicInteger();
+        //guarded by the validating thread, the partitions are collected after they are done
+        private final @NotNull List<String> errors = new ArrayList<>();
+
+        Errors(final int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        boolean isFull() {
+            return found.get() >= maxErrors;
+        }
+
+        void found(final int count) {
+            found.addAndGet(count);
+        }
+
+        void addAll(final @NotNull List<String> newErrors) {
+            found(newErrors.size());
+            collect(newErrors);
+        }
+
+        void collect(final @NotNull List<String> newErrors) {
+            for (final String error : newErrors) {
+                if (errors.size() == maxErrors) {
+                    return;
+                }
+                errors.add(error);
+            }
+        }
+
+        @NotNull ValidationResult toResult() {
+            if (isFull()) {
+                final List<String> limitedErrors = new ArrayList<>(errors);
+                limitedErrors.add("Validation stopped after " + maxErrors + " errors");
+                return new ValidationResult(limitedErrors, false);
+            }
+            return new ValidationResult(errors, errors.isEmpty());
+        }
     }
 
     static class ValidationResult {
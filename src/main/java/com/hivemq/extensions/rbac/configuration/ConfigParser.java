@@ -16,15 +16,25 @@
  */
 package com.hivemq.extensions.rbac.configuration;
 
+import com.codahale.metrics.Timer;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Group;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 class ConfigParser {
 
@@ -32,9 +42,11 @@ class ConfigParser {
 
     private final @NotNull XmlParser xmlParser = new XmlParser();
     private final @NotNull ExtensionConfig extensionConfig;
+    private final @NotNull ReloadMetrics reloadMetrics;
 
-    ConfigParser(final @NotNull ExtensionConfig extensionConfig) {
+    ConfigParser(final @NotNull ExtensionConfig extensionConfig, final @NotNull ReloadMetrics reloadMetrics) {
         this.extensionConfig = extensionConfig;
+        this.reloadMetrics = reloadMetrics;
     }
 
     /**
@@ -42,25 +54,178 @@ class ConfigParser {
      * @return the new config based on the file contents or null if the config is invalid
      */
     @Nullable FileAuthConfig read(final @NotNull File file) {
+        return read(file, null);
+    }
+
+    /**
+     * @param file  the new config file to read.
+     * @param event the reload event to record the parse and validation time and failure reason in, may be null
+     * @return the new config based on the file contents or null if the config is invalid
+     */
+    @Nullable FileAuthConfig read(final @NotNull File file, final @Nullable CredentialsReloadEvent event) {
+        final byte[] content = readContent(file, event);
+        if (content == null) {
+            return null;
+        }
+        return parse(content, file.getName(), event);
+    }
+
+    /**
+     * @param file  the config file to read.
+     * @param event the reload event to record the failure reason in, may be null
+     * @return the raw content of the file or null if the file could not be read
+     */
+    byte @Nullable [] readContent(final @NotNull File file, final @Nullable CredentialsReloadEvent event) {
         if (!file.canRead()) {
             LOG.error("Unable to read configuration file {}", file.getAbsolutePath());
+            reloadMetrics.readFailed();
+            if (event != null) {
+                event.failureReason = "unreadable";
+            }
             return null;
         }
-
         try {
-            final FileAuthConfig config = xmlParser.unmarshalFileAuthConfig(file);
-            final ConfigCredentialsValidator.ValidationResult validationResult =
-                    ConfigCredentialsValidator.validateConfig(extensionConfig, config);
-            if (validationResult.isValidationSuccessful()) {
-                return config;
+            return Files.readAllBytes(file.toPath());
+        } catch (final IOException e) {
+            LOG.error("Could not read configuration file, reason: {}", e.getMessage());
+            reloadMetrics.readFailed();
+            if (event != null) {
+                event.failureReason = "unreadable";
             }
+            return null;
+        }
+    }
 
-            logConfigFileErrors(validationResult);
+    /**
+     * @param content the raw content of a config file.
+     * @param event   the reload event to record the parse and validation time and failure reason in, may be null
+     * @return the config based on the content or null if the config is invalid
+     */
+    @Nullable FileAuthConfig parse(final byte @NotNull [] content, final @Nullable CredentialsReloadEvent event) {
+        return parse(content, "", event);
+    }
+
+    private @Nullable FileAuthConfig parse(
+            final byte @NotNull [] content,
+            final @NotNull String fileName,
+            final @Nullable CredentialsReloadEvent event) {
+        final SourcePositions.Recorder recorder = new SourcePositions.Recorder();
+        final FileAuthConfig config = unmarshal(content, recorder, event);
+        if (config == null || !validate(config, recorder.build(fileName), event)) {
             return null;
+        }
+        return config;
+    }
+
+    /**
+     * Parses the content of a config file without validating it.
+     *
+     * @param content the raw content of a config file.
+     * @param event   the reload event to record the parse time and failure reason in, may be null
+     * @return the config based on the content or null if the content could not be parsed
+     */
+    @Nullable FileAuthConfig unmarshal(final byte @NotNull [] content, final @Nullable CredentialsReloadEvent event) {
+        return unmarshal(content, new SourcePositions.Recorder(), event);
+    }
+
+    /**
+     * Parses the content of a config file without validating it.
+     *
+     * @param content  the raw content of a config file.
+     * @param recorder the recorder for the positions of the entries of the file
+     * @param event    the reload event to record the parse time and failure reason in, may be null
+     * @return the config based on the content or null if the content could not be parsed
+     */
+    @Nullable FileAuthConfig unmarshal(
+            final byte @NotNull [] content,
+            final @NotNull SourcePositions.Recorder recorder,
+            final @Nullable CredentialsReloadEvent event) {
+        final Timer.Context parseContext = reloadMetrics.getParseTimer().time();
+        try {
+            return xmlParser.unmarshalFileAuthConfig(new ByteArrayInputStream(content), recorder);
         } catch (final IOException e) {
             LOG.error("Could not read configuration file, reason: {}", e.getMessage());
+            reloadMetrics.readFailed();
+            if (event != null) {
+                event.failureReason = "unparsable";
+            }
+            return null;
+        } finally {
+            final long parseTime = parseContext.stop();
+            if (event != null) {
+                event.parseTime = parseTime;
+            }
+        }
+    }
+
+    /**
+     * Merges the users and roles of the config files into one config and validates it.
+     *
+     * @param configs   the configs by the name of their file, in the order in which they are merged
+     * @param positions the positions of the entries of the configs by the name of their file
+     * @param event     the reload event to record the validation time and failure reason in, may be null
+     * @return the merged config or null if the merged config is invalid
+     */
+    @Nullable FileAuthConfig merge(
+            final @NotNull Map<String, FileAuthConfig> configs,
+            final @NotNull Map<String, SourcePositions> positions,
+            final @Nullable CredentialsReloadEvent event) {
+        final ConfigCredentialsValidator.ValidationResult shardsResult =
+                ConfigCredentialsValidator.validateShards(configs);
+        if (!shardsResult.isValidationSuccessful()) {
+            logConfigFileErrors(shardsResult);
+            reloadMetrics.validationFailed();
+            if (event != null) {
+                event.failureReason = "invalid";
+            }
             return null;
         }
+
+        final List<User> users = new ArrayList<>();
+        final List<Role> roles = new ArrayList<>();
+        final List<Group> groups = new ArrayList<>();
+        final List<UserPattern> userPatterns = new ArrayList<>();
+        for (final FileAuthConfig config : configs.values()) {
+            if (config.getUsers() != null) {
+                users.addAll(config.getUsers());
+            }
+            if (config.getRoles() != null) {
+                roles.addAll(config.getRoles());
+            }
+            if (config.getGroups() != null) {
+                groups.addAll(config.getGroups());
+            }
+            if (config.getUserPatterns() != null) {
+                userPatterns.addAll(config.getUserPatterns());
+            }
+        }
+        final FileAuthConfig mergedConfig = new FileAuthConfig(users, roles);
+        mergedConfig.setGroups(groups);
+        mergedConfig.setUserPatterns(userPatterns);
+        return validate(mergedConfig, SourcePositions.merge(configs, positions), event) ? mergedConfig : null;
+    }
+
+    private boolean validate(
+            final @NotNull FileAuthConfig config,
+            final @NotNull SourcePositions positions,
+            final @Nullable CredentialsReloadEvent event) {
+        final Timer.Context validateContext = reloadMetrics.getValidateTimer().time();
+        final ConfigCredentialsValidator.ValidationResult validationResult =
+                ConfigCredentialsValidator.validateConfig(extensionConfig, config, positions);
+        final long validateTime = validateContext.stop();
+        if (event != null) {
+            event.validateTime = validateTime;
+        }
+        if (validationResult.isValidationSuccessful()) {
+            return true;
+        }
+
+        logConfigFileErrors(validationResult);
+        reloadMetrics.validationFailed();
+        if (event != null) {
+            event.failureReason = "invalid";
+        }
+        return false;
     }
 
     private void logConfigFileErrors(final ConfigCredentialsValidator.ValidationResult validationResult) {
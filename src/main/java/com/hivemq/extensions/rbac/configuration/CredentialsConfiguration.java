@@ -16,90 +16,452 @@
  */
 package com.hivemq.extensions.rbac.configuration;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.entities.CredentialsStoreType;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
-import static java.util.Collections.unmodifiableList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 @ThreadSafe
 public class CredentialsConfiguration {
 
     private static final @NotNull Logger LOG = LoggerFactory.getLogger(CredentialsConfiguration.class);
     static final @NotNull String CONFIG_NAME = "credentials.xml";
-    private final @NotNull ReadWriteLock lock = new ReentrantReadWriteLock();
 
     //COWAL is perfect here because the callbacks are not expected to change regularly.
-    //The callbacks are shared between this class and the reloadable config task.
-    //Modifications are only possible via this class.
     private final @NotNull List<ReloadCallback> callbacks = new CopyOnWriteArrayList<>();
+    //serializes the updates of the config and the execution of the callbacks
+    private final @NotNull Lock updateLock = new ReentrantLock();
+
+    private final @NotNull CredentialsFiles credentialsFiles;
+    private final @NotNull CredentialsJournal credentialsJournal;
+    private final @NotNull JournalOverrides journalOverrides;
+    private final @NotNull ConfigArchiver configArchiver;
+    private final @NotNull ReloadMetrics reloadMetrics;
+    private final @NotNull ReloadConfigFileTask reloadConfigFileTask;
+    private final boolean journalEnabled;
+    private final int journalCompactionThreshold;
+    //the snapshot stores keep the users in the snapshot file, so the flattened config is not kept on the heap for them
+    private final boolean retainConfig;
 
-    private final @NotNull File extensionHomeFolder;
-    private final @NotNull ConfigParser configParser;
+    //written only under updateLock
+    private volatile @Nullable PublishedConfig config;
+    //written only under updateLock
+    private volatile long generation;
 
-    //guarded by lock
-    private @Nullable FileAuthConfig config;
+    //guarded by updateLock
+    private @Nullable FileAuthConfig baseConfig;
+    //guarded by updateLock
+    private boolean journalReplayed;
+    //guarded by updateLock
+    private int journalEntriesSinceCompaction;
+    //guarded by updateLock, the flattener of the last rebuild, which flattens the users of the journal afterwards
+    private @Nullable CredentialsFlattener flattener;
+    //guarded by updateLock, the flattened users of the last rebuild by name, null if the config is not retained
+    private @Nullable Map<String, User> rebuiltUsers;
+    //guarded by updateLock, a copy of the overrides of the last rebuild, null if the config is retained
+    private @Nullable JournalOverrides rebuiltOverrides;
+    //guarded by updateLock, the flattened users of the journal since the last rebuild, null marks a removed user
+    private final @NotNull Map<String, User> journalUsers = new LinkedHashMap<>();
+    //guarded by updateLock, the combined roles of the users of the journal since the last rebuild
+    private final @NotNull List<Role> journalRoles = new ArrayList<>();
+    //guarded by updateLock, the names of the users of the journal entries that were not published yet
+    private final @NotNull Set<String> pendingUsers = new LinkedHashSet<>();
+    //guarded by updateLock, true if the whole config must be flattened again, as roles or the files changed
+    private boolean rebuildRequired = true;
 
 
     public CredentialsConfiguration(
             final @NotNull File extensionHomeFolder,
             final @NotNull ScheduledExecutorService extensionExecutorService,
-            final @NotNull ExtensionConfig extensionConfig) {
-        configParser = new ConfigParser(extensionConfig);
-        this.extensionHomeFolder = extensionHomeFolder;
-        final ReloadConfigFileTask reloadableTask = new ReloadConfigFileTask(extensionHomeFolder,
-                unmodifiableList(callbacks) /* We don't want the task to modify the callbacks!*/,
-                configParser,
-                new ConfigArchiver(extensionHomeFolder, new XmlParser()),
-                this);
-        extensionExecutorService.scheduleWithFixedDelay(reloadableTask,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull MetricRegistry metricRegistry) {
+        reloadMetrics = new ReloadMetrics(metricRegistry, this::getGeneration);
+        credentialsFiles = new CredentialsFiles(extensionHomeFolder,
+                CONFIG_NAME,
+                new ConfigParser(extensionConfig, reloadMetrics));
+        //archiving is not time critical, so it must not delay applying a new config
+        configArchiver =
+                new ConfigArchiver(extensionHomeFolder, extensionExecutorService, extensionConfig, reloadMetrics);
+        credentialsJournal = new CredentialsJournal(extensionHomeFolder, reloadMetrics);
+        journalOverrides = new JournalOverrides(extensionConfig);
+        journalEnabled = extensionConfig.getJournalPollInterval() > 0;
+        journalCompactionThreshold = extensionConfig.getJournalCompactionThreshold();
+        retainConfig = extensionConfig.getCredentialsStore() != CredentialsStoreType.MAPPED &&
+                extensionConfig.getCredentialsStore() != CredentialsStoreType.LAZY;
+        reloadConfigFileTask = new ReloadConfigFileTask(credentialsFiles, configArchiver, reloadMetrics, this);
+        extensionExecutorService.scheduleWithFixedDelay(this::reloadConfigFiles,
                 extensionConfig.getReloadInterval(),
                 extensionConfig.getReloadInterval(),
                 TimeUnit.SECONDS);
+        if (journalEnabled) {
+            extensionExecutorService.scheduleWithFixedDelay(this::pollJournal,
+                    extensionConfig.getJournalPollInterval(),
+                    extensionConfig.getJournalPollInterval(),
+                    TimeUnit.MILLISECONDS);
+        }
     }
 
     public void init() {
-        config = configParser.read(getConfigFile(extensionHomeFolder));
+        final CredentialsReloadEvent event = new CredentialsReloadEvent();
+        event.begin();
+        final FileAuthConfig initialConfig = credentialsFiles.load(event);
 
-        if (config == null) {
+        if (initialConfig == null) {
             LOG.warn("No credentials configuration file for file auth extension available, denying all connections.");
+        } else {
+            update(initialConfig);
+            credentialsFiles.archiveParsedFiles(configArchiver);
         }
+        commitReloadEvent(event, initialConfig != null, reloadMetrics, getGeneration());
+    }
 
-        addReloadCallback((oldConfig, newConfig) -> {
-            final Lock writeLock = lock.writeLock();
-            writeLock.lock();
-            try {
-                config = newConfig;
-            } finally {
-                writeLock.unlock();
+    /**
+     * The config is built on the first call after journal entries were applied, which takes time proportional to all
+     * users. For the {@link CredentialsStoreType#MAPPED} and {@link CredentialsStoreType#LAZY} stores the flattened
+     * config is not kept on the heap, so it is built on every call.
+     *
+     * @return the current config including the entries of the credentials journal, flattened by the
+     *         {@link CredentialsFlattener}, or null if no valid config was loaded yet
+     */
+    public @Nullable FileAuthConfig getCurrentConfig() {
+        final PublishedConfig currentConfig = config;
+        return currentConfig == null ? null : currentConfig.get();
+    }
+
+    /**
+     * @return the generation of the current config, incremented for every loaded config and applied journal batch
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    //guarded by updateLock
+    private void setConfig(final @NotNull PublishedConfig newConfig) {
+        config = newConfig;
+        generation++;
+    }
+
+    /**
+     * Applies a new config of the credentials files together with the entries of the credentials journal.
+     *
+     * @param newBaseConfig the new config of the credentials files
+     * @return the changes of the current config
+     */
+    private @NotNull CredentialsDiff update(final @NotNull FileAuthConfig newBaseConfig) {
+        updateLock.lock();
+        try {
+            baseConfig = newBaseConfig;
+            journalOverrides.setBaseConfig(newBaseConfig);
+            rebuildRequired = true;
+            readJournal();
+            compactJournalIfNecessary();
+            return publish(newBaseConfig);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * Checks the credentials files for changes and applies them, scheduled with a fixed delay.
+     */
+    private void reloadConfigFiles() {
+        try {
+            reloadConfigFileTask.run();
+        } catch (final RuntimeException e) {
+            //the executor does not run a task again after it threw
+            LOG.error("Could not reload the credentials configuration.", e);
+        }
+    }
+
+    /**
+     * Applies the entries that were appended to the credentials journal since it was read the last time, scheduled
+     * with a fixed delay.
+     */
+    private void pollJournal() {
+        updateLock.lock();
+        try {
+            //the journal is applied on top of the credentials files, so it is not read before they were loaded
+            final FileAuthConfig currentBaseConfig = baseConfig;
+            if (currentBaseConfig == null || !readJournal()) {
+                return;
             }
-        });
+            compactJournalIfNecessary();
+            final CredentialsDiff diff = publish(currentBaseConfig);
+            LOG.debug("Applied credentials journal entries: {}", diff);
+        } catch (final RuntimeException e) {
+            //the executor does not run a task again after it threw
+            LOG.error("Could not apply the credentials journal entries.", e);
+        } finally {
+            updateLock.unlock();
+        }
     }
 
-    public @Nullable FileAuthConfig getCurrentConfig() {
-        final Lock readLock = lock.readLock();
-        readLock.lock();
+    /**
+     * Appends a batch of entries to the credentials journal and applies them.
+     * <p>
+     * The batch is only appended if all entries are valid, so either all or none of the entries are applied. The
+     * entries are forced to the storage device before they are applied.
+     *
+     * @param entries the entries to append and apply
+     * @param errors  the list the validation errors are added to
+     * @return true if the batch was applied, false if an entry is invalid
+     * @throws IOException if the entries could not be appended to the journal
+     */
+    boolean applyBatch(final @NotNull List<JournalEntry> entries, final @NotNull List<String> errors)
+            throws IOException {
+        if (!journalEnabled) {
+            errors.add("The credentials journal is disabled");
+            return false;
+        }
+        updateLock.lock();
         try {
-            return config;
+            final FileAuthConfig currentBaseConfig = baseConfig;
+            if (currentBaseConfig == null) {
+                errors.add("No credentials configuration is loaded");
+                return false;
+            }
+            //entries of other writers must be applied first, the batch may depend on them
+            readJournal();
+            final JournalOverrides batchOverrides = journalOverrides.copy();
+            for (final JournalEntry entry : entries) {
+                batchOverrides.apply(entry, errors);
+            }
+            if (!errors.isEmpty()) {
+                return false;
+            }
+            credentialsJournal.append(entries);
+            readJournal();
+            compactJournalIfNecessary();
+            final CredentialsDiff diff = publish(currentBaseConfig);
+            LOG.debug("Applied batch of {} credentials journal entries: {}", entries.size(), diff);
+            return true;
         } finally {
-            readLock.unlock();
+            updateLock.unlock();
         }
     }
 
+    /**
+     * Parses all credentials files again, even if they were not modified, and applies them if they are valid.
+     * <p>
+     * The reload is serialized with the scheduled reloads, so an older config never replaces a newer one.
+     */
+    void reloadNow() {
+        reloadConfigFileTask.reloadNow();
+    }
+
+    @NotNull ReloadMetrics getReloadMetrics() {
+        return reloadMetrics;
+    }
+
+    //guarded by updateLock
+    private boolean readJournal() {
+        if (!journalEnabled) {
+            return false;
+        }
+        final List<JournalEntry> entries;
+        try {
+            if (journalReplayed) {
+                entries = credentialsJournal.poll();
+            } else {
+                entries = credentialsJournal.replay();
+                journalReplayed = true;
+            }
+        } catch (final IOException e) {
+            LOG.warn("Could not read credentials journal, reason: {}", e.getMessage());
+            return false;
+        }
+        applyJournalEntries(entries);
+        return !entries.isEmpty();
+    }
+
+    //guarded by updateLock
+    private void applyJournalEntries(final @NotNull List<JournalEntry> entries) {
+        for (final JournalEntry entry : entries) {
+            if (journalOverrides.apply(entry)) {
+                reloadMetrics.journalEntryApplied();
+                //a role may change the flattened permissions of other roles and of all users of combined roles
+                if (entry.getOperation() == JournalEntry.Operation.ADD_ROLE) {
+                    rebuildRequired = true;
+                } else {
+                    pendingUsers.add(entry.getName());
+                }
+            } else {
+                reloadMetrics.journalEntryRejected();
+            }
+        }
+        journalEntriesSinceCompaction += entries.size();
+    }
+
+    //guarded by updateLock
+    private void compactJournalIfNecessary() {
+        if (journalEntriesSinceCompaction < journalCompactionThreshold) {
+            return;
+        }
+        try {
+            credentialsJournal.compact(remainingEntries -> {
+                applyJournalEntries(remainingEntries);
+                return journalOverrides.toEntries();
+            });
+            journalEntriesSinceCompaction = 0;
+            //the journal users of the published config are merged, so they do not accumulate until the next reload
+            rebuildRequired = true;
+        } catch (final IOException e) {
+            LOG.warn("Could not compact credentials journal, reason: {}", e.getMessage());
+        } catch (final RuntimeException e) {
+            //the applied entries are still published
+            LOG.warn("Could not compact credentials journal.", e);
+        }
+    }
+
+    /**
+     * Publishes the config of the credentials files with the applied journal entries and calls the callbacks.
+     * <p>
+     * The whole config is only flattened and compared to the previous one if the credentials files or roles changed or
+     * the journal was compacted. Otherwise only the users of the journal entries are flattened and compared, so
+     * applying journal entries takes time proportional to the entries and not to all users.
+     */
+    //guarded by updateLock
+    private @NotNull CredentialsDiff publish(final @NotNull FileAuthConfig currentBaseConfig) {
+        final CredentialsDiff diff =
+                rebuildRequired || flattener == null ? rebuild(currentBaseConfig) : publishJournalUsers(flattener);
+        if (!diff.isEmpty()) {
+            for (final ReloadCallback callback : callbacks) {
+                callback.onReload(diff);
+            }
+        }
+        return diff;
+    }
+
+    //guarded by updateLock
+    private @NotNull CredentialsDiff rebuild(final @NotNull FileAuthConfig currentBaseConfig) {
+        final FileAuthConfig newConfig = journalOverrides.applyTo(currentBaseConfig);
+        final CredentialsFlattener newFlattener = CredentialsFlattener.create(newConfig);
+        final FileAuthConfig flattenedConfig = newFlattener.flattenConfig(newConfig);
+        final CredentialsDiff diff = CredentialsDiff.compute(getCurrentConfig(), flattenedConfig);
+        flattener = newFlattener;
+        journalUsers.clear();
+        journalRoles.clear();
+        pendingUsers.clear();
+        rebuildRequired = false;
+        if (retainConfig) {
+            final Map<String, User> newRebuiltUsers = new HashMap<>();
+            if (flattenedConfig.getUsers() != null) {
+                for (final User user : flattenedConfig.getUsers()) {
+                    newRebuiltUsers.put(user.getName(), user);
+                }
+            }
+            rebuiltUsers = newRebuiltUsers;
+            rebuiltOverrides = null;
+            setConfig(new PublishedConfig(() -> flattenedConfig, true, Map.of(), List.of()));
+        } else {
+            //only the parsed config and the overrides are kept, the flattened config is built again on demand
+            final JournalOverrides overrides = journalOverrides.copy();
+            rebuiltUsers = null;
+            rebuiltOverrides = overrides;
+            setConfig(new PublishedConfig(() -> flatten(overrides.applyTo(currentBaseConfig)),
+                    false,
+                    Map.of(),
+                    List.of()));
+        }
+        reloadMetrics.configApplied(newConfig, flattenedConfig);
+        return diff;
+    }
+
+    //guarded by updateLock
+    private @NotNull CredentialsDiff publishJournalUsers(final @NotNull CredentialsFlattener currentFlattener) {
+        final List<User> addedUsers = new ArrayList<>();
+        final List<User> changedUsers = new ArrayList<>();
+        final List<String> removedUsers = new ArrayList<>();
+        final List<Role> addedRoles = new ArrayList<>();
+        final List<User> replacedUsers = new ArrayList<>();
+        for (final String userName : pendingUsers) {
+            final User previousUser = journalUsers.containsKey(userName) ?
+                    journalUsers.get(userName) :
+                    rebuiltUser(userName, currentFlattener);
+            final User user = journalOverrides.resolveUser(userName);
+            final User flattenedUser = user == null ? null : currentFlattener.flattenUser(user, addedRoles);
+            if (previousUser == null) {
+                if (flattenedUser == null) {
+                    continue;
+                }
+                addedUsers.add(flattenedUser);
+            } else if (flattenedUser == null) {
+                removedUsers.add(userName);
+            } else if (!previousUser.equals(flattenedUser)) {
+                changedUsers.add(flattenedUser);
+            } else {
+                continue;
+            }
+            if (previousUser != null) {
+                replacedUsers.add(previousUser);
+            }
+            journalUsers.put(userName, flattenedUser);
+        }
+        pendingUsers.clear();
+        journalRoles.addAll(addedRoles);
+
+        final PublishedConfig previousConfig = config;
+        if (previousConfig == null) {
+            throw new IllegalStateException("The journal users are published before the config was rebuilt");
+        }
+        final PublishedConfig newConfig = new PublishedConfig(previousConfig.rebuiltConfig,
+                previousConfig.retained,
+                Collections.unmodifiableMap(new LinkedHashMap<>(journalUsers)),
+                List.copyOf(journalRoles));
+        final CredentialsDiff diff =
+                CredentialsDiff.ofUsers(newConfig, addedUsers, changedUsers, removedUsers, addedRoles);
+        setConfig(newConfig);
+        final List<User> newUsers = new ArrayList<>(addedUsers);
+        newUsers.addAll(changedUsers);
+        reloadMetrics.usersApplied(addedUsers.size() - removedUsers.size(),
+                HeapFootprint.estimate(newUsers, addedRoles) - HeapFootprint.estimate(replacedUsers, List.of()));
+        return diff;
+    }
+
+    /**
+     * @return the flattened user of the last rebuild, null if there was none
+     */
+    //guarded by updateLock
+    private @Nullable User rebuiltUser(
+            final @NotNull String userName, final @NotNull CredentialsFlattener currentFlattener) {
+        if (rebuiltUsers != null) {
+            return rebuiltUsers.get(userName);
+        }
+        final User user = Objects.requireNonNull(rebuiltOverrides).resolveUser(userName);
+        //the user was flattened by the last rebuild, so no combined role is added
+        return user == null ? null : currentFlattener.flattenUser(user, new ArrayList<>());
+    }
+
+    private static @NotNull FileAuthConfig flatten(final @NotNull FileAuthConfig config) {
+        return CredentialsFlattener.create(config).flattenConfig(config);
+    }
+
     /**
      * Adds a reload callback.
      */
@@ -107,12 +469,24 @@ public class CredentialsConfiguration {
         callbacks.add(callback);
     }
 
-    private static @NotNull File getConfigFile(final @NotNull File extensionHomeFolder) {
-        return new File(extensionHomeFolder, CONFIG_NAME);
+    private static void commitReloadEvent(
+            final @NotNull CredentialsReloadEvent event,
+            final boolean success,
+            final @NotNull ReloadMetrics reloadMetrics,
+            final long generation) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.success = success;
+            event.generation = generation;
+            event.users = reloadMetrics.getUsers();
+            event.roles = reloadMetrics.getRoles();
+            event.permissions = reloadMetrics.getPermissions();
+            event.commit();
+        }
     }
 
     /**
-     * A callback that gets triggered every time the config file changes.
+     * A callback that gets triggered every time the users or roles in the config file change.
      * <p>
      * A callback is guaranteed to not get executed concurrently.
      * <p>
@@ -124,76 +498,134 @@ public class CredentialsConfiguration {
         /**
          * A callback that is called when the config changes
          *
-         * @param oldConfig the old config
-         * @param newConfig the new config
+         * @param diff the changes between the old and the new config
          */
-        void onReload(@Nullable FileAuthConfig oldConfig, @NotNull FileAuthConfig newConfig);
+        void onReload(@NotNull CredentialsDiff diff);
+    }
+
+    /**
+     * The flattened config of the last rebuild with the flattened users of the journal applied since then.
+     * <p>
+     * The whole config is only built when it is requested the first time, the users of the journal are at most the
+     * entries since the last compaction. A config that is not retained is built again on every request, so it is not
+     * kept on the heap.
+     */
+    @ThreadSafe
+    private static class PublishedConfig implements Supplier<FileAuthConfig> {
+
+        private final @NotNull Supplier<FileAuthConfig> rebuiltConfig;
+        private final boolean retained;
+        private final @NotNull Map<String, User> journalUsers;
+        private final @NotNull List<Role> journalRoles;
+        //guarded by this
+        private @Nullable FileAuthConfig config;
+
+        PublishedConfig(
+                final @NotNull Supplier<FileAuthConfig> rebuiltConfig,
+                final boolean retained,
+                final @NotNull Map<String, User> journalUsers,
+                final @NotNull List<Role> journalRoles) {
+            this.rebuiltConfig = rebuiltConfig;
+            this.retained = retained;
+            this.journalUsers = journalUsers;
+            this.journalRoles = journalRoles;
+        }
+
+        @Override
+        public synchronized @NotNull FileAuthConfig get() {
+            if (config != null) {
+                return config;
+            }
+            final FileAuthConfig newConfig = build();
+            if (retained) {
+                config = newConfig;
+            }
+            return newConfig;
+        }
+
+        private @NotNull FileAuthConfig build() {
+            final FileAuthConfig flattenedConfig = rebuiltConfig.get();
+            if (journalUsers.isEmpty() && journalRoles.isEmpty()) {
+                return flattenedConfig;
+            }
+            final List<User> rebuiltUsers = flattenedConfig.getUsers() == null ? List.of() : flattenedConfig.getUsers();
+            final List<User> users = new ArrayList<>(rebuiltUsers.size() + journalUsers.size());
+            for (final User user : rebuiltUsers) {
+                if (!journalUsers.containsKey(user.getName())) {
+                    users.add(user);
+                }
+            }
+            for (final User user : journalUsers.values()) {
+                if (user != null) {
+                    users.add(user);
+                }
+            }
+            final List<Role> rebuiltRoles = flattenedConfig.getRoles() == null ? List.of() : flattenedConfig.getRoles();
+            final List<Role> roles = new ArrayList<>(rebuiltRoles.size() + journalRoles.size());
+            roles.addAll(rebuiltRoles);
+            roles.addAll(journalRoles);
+            final FileAuthConfig newConfig = new FileAuthConfig(users, roles);
+            newConfig.setUserPatterns(flattenedConfig.getUserPatterns());
+            return newConfig;
+        }
     }
 
     private static class ReloadConfigFileTask implements Runnable {
 
         private final @NotNull ConfigArchiver configArchiver;
-        private final @NotNull ConfigParser configParser;
-        private final @NotNull File configFile;
+        private final @NotNull CredentialsFiles credentialsFiles;
+        private final @NotNull ReloadMetrics reloadMetrics;
         private final @NotNull CredentialsConfiguration credentialsConfiguration;
-        private final @NotNull List<ReloadCallback> callbacks;
-        private @Nullable FileAuthConfig oldConfig;
-        private long lastReadTimestamp;
 
         ReloadConfigFileTask(
-                final @NotNull File extensionHomeFolder,
-                final @NotNull List<ReloadCallback> callbacks,
-                final @NotNull ConfigParser configParser,
+                final @NotNull CredentialsFiles credentialsFiles,
                 final @NotNull ConfigArchiver configArchiver,
+                final @NotNull ReloadMetrics reloadMetrics,
                 final @NotNull CredentialsConfiguration credentialsConfiguration) {
-            this.callbacks = callbacks;
-            this.configParser = configParser;
+            this.credentialsFiles = credentialsFiles;
             this.configArchiver = configArchiver;
-            configFile = getConfigFile(extensionHomeFolder);
+            this.reloadMetrics = reloadMetrics;
             this.credentialsConfiguration = credentialsConfiguration;
-            lastReadTimestamp = System.currentTimeMillis();
-            oldConfig = configParser.read(configFile);
         }
 
-        @Override
-        public void run() {
-            if (!configFile.exists()) {
-                LOG.debug(
-                        "No credentials file for file auth extension {} available, not reloading configuration for now",
-                        configFile.getAbsolutePath());
-                return;
-            }
+        synchronized void reloadNow() {
+            credentialsFiles.invalidate();
+            run();
+        }
 
-            final long lastModification = configFile.lastModified();
-            if (credentialsConfiguration.getCurrentConfig() != null && lastReadTimestamp >= lastModification) {
-                LOG.trace("Checked for changes for file {}. No changes since {}",
-                        configFile.getAbsolutePath(),
-                        lastModification);
+        //synchronized, so loading and applying the files is not interleaved with a reload of another thread
+        @Override
+        public synchronized void run() {
+            if (!credentialsFiles.hasChanges()) {
+                LOG.trace("Checked for changes of the credentials files. No changes");
                 return;
             }
 
-            LOG.debug("Credentials for file auth extension changed, checking new credentials file. {}",
-                    configFile.getAbsolutePath());
-            final FileAuthConfig newConfig = configParser.read(configFile);
-
-            lastReadTimestamp = System.currentTimeMillis();
+            LOG.debug("Credentials for file auth extension changed, checking new credentials files.");
+            final CredentialsReloadEvent event = new CredentialsReloadEvent();
+            event.begin();
+            final Timer.Context totalContext = reloadMetrics.getTotalTimer().time();
+            final FileAuthConfig newConfig = credentialsFiles.load(event);
 
             if (newConfig == null) {
                 //No changes or invalid new config
+                totalContext.stop();
+                commitReloadEvent(event, false, reloadMetrics, credentialsConfiguration.getGeneration());
                 return;
             }
 
             LOG.info("Credentials configuration for file auth extension changed, using new configuration.");
-            try {
-                configArchiver.archive(oldConfig);
-            } catch (final IOException e) {
-                LOG.warn("Archival of the old credentials config failed. Reason: {}", e.getMessage());
-            }
-
-            oldConfig = newConfig;
-            for (final ReloadCallback callback : callbacks) {
-                callback.onReload(oldConfig, newConfig);
-            }
+            final Timer.Context applyContext = reloadMetrics.getApplyTimer().time();
+            final CredentialsDiff diff = credentialsConfiguration.update(newConfig);
+            LOG.debug("Applied changes to the credentials configuration: {}", diff);
+            event.applyTime = applyContext.stop();
+            event.changedUsers = diff.getAddedUsers().size() + diff.getChangedUsers().size() +
+                    diff.getRemovedUsers().size();
+            event.changedRoles = diff.getAddedRoles().size() + diff.getChangedRoles().size() +
+                    diff.getRemovedRoles().size();
+            totalContext.stop();
+            credentialsFiles.archiveParsedFiles(configArchiver);
+            commitReloadEvent(event, true, reloadMetrics, credentialsConfiguration.getGeneration());
         }
     }
 }
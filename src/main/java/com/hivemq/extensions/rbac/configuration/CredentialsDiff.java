@@ -0,0 +1,257 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The structural difference between two credentials configurations.
+ * <p>
+ * Users are identified by their name and roles by their id. A user or role whose identifier exists in both configs
+ * but whose content differs is contained in the changed users or roles.
+ * <p>
+ * The diff of journal entries is created from the changed users without comparing the whole configs, its config is
+ * only built when it is requested.
+ */
+@Immutable
+public class CredentialsDiff {
+
+    private final @NotNull Supplier<FileAuthConfig> config;
+    private final @NotNull List<User> addedUsers;
+    private final @NotNull List<User> changedUsers;
+    private final @NotNull List<String> removedUsers;
+    private final @NotNull List<Role> addedRoles;
+    private final @NotNull List<Role> changedRoles;
+    private final @NotNull List<String> removedRoles;
+    private final boolean userPatternsChanged;
+    private final boolean incremental;
+
+    private CredentialsDiff(
+            final @NotNull Supplier<FileAuthConfig> config,
+            final @NotNull List<User> addedUsers,
+            final @NotNull List<User> changedUsers,
+            final @NotNull List<String> removedUsers,
+            final @NotNull List<Role> addedRoles,
+            final @NotNull List<Role> changedRoles,
+            final @NotNull List<String> removedRoles,
+            final boolean userPatternsChanged,
+            final boolean incremental) {
+        this.config = config;
+        this.addedUsers = Collections.unmodifiableList(addedUsers);
+        this.changedUsers = Collections.unmodifiableList(changedUsers);
+        this.removedUsers = Collections.unmodifiableList(removedUsers);
+        this.addedRoles = Collections.unmodifiableList(addedRoles);
+        this.changedRoles = Collections.unmodifiableList(changedRoles);
+        this.removedRoles = Collections.unmodifiableList(removedRoles);
+        this.userPatternsChanged = userPatternsChanged;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Computes the difference between two configs.
+     *
+     * @param oldConfig the previous config, null if there was no valid config before
+     * @param newConfig the new config
+     * @return the difference that turns the old config into the new config
+     */
+    public static @NotNull CredentialsDiff compute(
+            final @Nullable FileAuthConfig oldConfig, final @NotNull FileAuthConfig newConfig) {
+        final List<User> addedUsers = new ArrayList<>();
+        final List<User> changedUsers = new ArrayList<>();
+        final List<String> removedUsers = new ArrayList<>();
+        final Map<String, User> oldUsers = new HashMap<>();
+        if (oldConfig != null && oldConfig.getUsers() != null) {
+            for (final User user : oldConfig.getUsers()) {
+                oldUsers.put(user.getName(), user);
+            }
+        }
+        if (newConfig.getUsers() != null) {
+            for (final User user : newConfig.getUsers()) {
+                final User oldUser = oldUsers.remove(user.getName());
+                if (oldUser == null) {
+                    addedUsers.add(user);
+                } else if (!oldUser.equals(user)) {
+                    changedUsers.add(user);
+                }
+            }
+        }
+        removedUsers.addAll(oldUsers.keySet());
+
+        final List<Role> addedRoles = new ArrayList<>();
+        final List<Role> changedRoles = new ArrayList<>();
+        final List<String> removedRoles = new ArrayList<>();
+        final Map<String, Role> oldRoles = new HashMap<>();
+        if (oldConfig != null && oldConfig.getRoles() != null) {
+            for (final Role role : oldConfig.getRoles()) {
+                oldRoles.put(role.getId(), role);
+            }
+        }
+        if (newConfig.getRoles() != null) {
+            for (final Role role : newConfig.getRoles()) {
+                final Role oldRole = oldRoles.remove(role.getId());
+                if (oldRole == null) {
+                    addedRoles.add(role);
+                } else if (!oldRole.equals(role)) {
+                    changedRoles.add(role);
+                }
+            }
+        }
+        removedRoles.addAll(oldRoles.keySet());
+
+        final List<UserPattern> oldUserPatterns = oldConfig == null ? null : oldConfig.getUserPatterns();
+        final boolean userPatternsChanged =
+                !Objects.equals(orEmpty(oldUserPatterns), orEmpty(newConfig.getUserPatterns()));
+
+        return new CredentialsDiff(() -> newConfig,
+                addedUsers,
+                changedUsers,
+                removedUsers,
+                addedRoles,
+                changedRoles,
+                removedRoles,
+                userPatternsChanged,
+                false);
+    }
+
+    /**
+     * Creates the diff of users that were added, changed or removed, for example by journal entries. Roles can only
+     * be added and the user patterns are unchanged.
+     *
+     * @param config       the supplier of the new config, only called when the config of the diff is requested
+     * @param addedUsers   the users that were added
+     * @param changedUsers the users that were changed
+     * @param removedUsers the names of the users that were removed
+     * @param addedRoles   the roles that were added
+     * @return the diff of the users and roles
+     */
+    public static @NotNull CredentialsDiff ofUsers(
+            final @NotNull Supplier<FileAuthConfig> config,
+            final @NotNull List<User> addedUsers,
+            final @NotNull List<User> changedUsers,
+            final @NotNull List<String> removedUsers,
+            final @NotNull List<Role> addedRoles) {
+        return new CredentialsDiff(config,
+                addedUsers,
+                changedUsers,
+                removedUsers,
+                addedRoles,
+                List.of(),
+                List.of(),
+                false,
+                true);
+    }
+
+    /**
+     * The config of a diff of journal entries is built on the first call, which takes time proportional to all users.
+     *
+     * @return the new config this diff leads to
+     */
+    public @NotNull FileAuthConfig getConfig() {
+        return config.get();
+    }
+
+    public @NotNull List<User> getAddedUsers() {
+        return addedUsers;
+    }
+
+    public @NotNull List<User> getChangedUsers() {
+        return changedUsers;
+    }
+
+    public @NotNull List<String> getRemovedUsers() {
+        return removedUsers;
+    }
+
+    public @NotNull List<Role> getAddedRoles() {
+        return addedRoles;
+    }
+
+    public @NotNull List<Role> getChangedRoles() {
+        return changedRoles;
+    }
+
+    public @NotNull List<String> getRemovedRoles() {
+        return removedRoles;
+    }
+
+    /**
+     * @return true if the user patterns of the old and the new config differ, patterns are compared as a whole as
+     *         their order matters
+     */
+    public boolean isUserPatternsChanged() {
+        return userPatternsChanged;
+    }
+
+    /**
+     * @return true if the diff was created from changed users by {@link #ofUsers}, false if it was computed from two
+     *         whole configs
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @return true if the old and the new config contain the same users, roles and user patterns
+     */
+    public boolean isEmpty() {
+        return addedUsers.isEmpty() &&
+                changedUsers.isEmpty() &&
+                removedUsers.isEmpty() &&
+                addedRoles.isEmpty() &&
+                changedRoles.isEmpty() &&
+                removedRoles.isEmpty() &&
+                !userPatternsChanged;
+    }
+
+    private static @NotNull List<UserPattern> orEmpty(final @Nullable List<UserPattern> userPatterns) {
+        return userPatterns == null ? List.of() : userPatterns;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "CredentialsDiff{" +
+                "addedUsers=" +
+                addedUsers.size() +
+                ", changedUsers=" +
+                changedUsers.size() +
+                ", removedUsers=" +
+                removedUsers.size() +
+                ", addedRoles=" +
+                addedRoles.size() +
+                ", changedRoles=" +
+                changedRoles.size() +
+                ", removedRoles=" +
+                removedRoles.size() +
+                ", userPatternsChanged=" +
+                userPatternsChanged +
+                '}';
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The credentials configuration files of the extension.
+ * <p>
+ * These are the {@code credentials.xml} file and every {@code *.xml} shard in the {@code credentials.d} folder inside
+ * the extension folder. Each file may contain users, roles or both. The users and roles of all files are merged into
+ * one config, so users can refer to roles of other files.
+ * <p>
+ * A file is only parsed again if it was modified since it was parsed the last time. Changed files are parsed in
+ * parallel.
+ */
+@ThreadSafe
+class CredentialsFiles {
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(CredentialsFiles.class);
+    static final @NotNull String SHARDS_FOLDER_NAME = "credentials.d";
+
+    private final @NotNull File configFile;
+    private final @NotNull File shardsFolder;
+    private final @NotNull ConfigParser configParser;
+
+    //guarded by this
+    private final @NotNull Map<File, LoadedFile> loadedFiles = new HashMap<>();
+    //guarded by this, the files that were parsed by the last load
+    private @NotNull List<LoadedFile> parsedFiles = List.of();
+
+    CredentialsFiles(
+            final @NotNull File extensionHomeFolder,
+            final @NotNull String configFileName,
+            final @NotNull ConfigParser configParser) {
+        this.configParser = configParser;
+        configFile = new File(extensionHomeFolder, configFileName);
+        shardsFolder = new File(extensionHomeFolder, SHARDS_FOLDER_NAME);
+    }
+
+    /**
+     * @return true if a file was added, modified or removed since the last load
+     */
+    synchronized boolean hasChanges() {
+        final List<File> files = listFiles();
+        if (files.size() != loadedFiles.size()) {
+            return true;
+        }
+        for (final File file : files) {
+            final LoadedFile loadedFile = loadedFiles.get(file);
+            if (loadedFile == null || loadedFile.lastModified != file.lastModified()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks all files as modified, so the next load parses all of them again.
+     */
+    synchronized void invalidate() {
+        loadedFiles.replaceAll((file, loadedFile) -> new LoadedFile(file,
+                Long.MIN_VALUE,
+                loadedFile.content,
+                loadedFile.config,
+                loadedFile.positions));
+    }
+
+    /**
+     * Parses all files that were added or modified since the last load and merges them with the unchanged files.
+     * <p>
+     * If a file can not be parsed, the previously parsed version of this file is kept, but the config is not loaded.
+     *
+     * @param event the reload event to record the parse and validation time and failure reason in, may be null
+     * @return the merged config or null if a file could not be parsed or the merged config is invalid
+     */
+    synchronized @Nullable FileAuthConfig load(final @Nullable CredentialsReloadEvent event) {
+        final List<File> files = listFiles();
+        loadedFiles.keySet().retainAll(files);
+        if (files.isEmpty()) {
+            LOG.debug("No credentials file {} or shards in {} available.",
+                    configFile.getAbsolutePath(),
+                    shardsFolder.getAbsolutePath());
+            parsedFiles = List.of();
+            if (event != null) {
+                event.failureReason = "unreadable";
+            }
+            return null;
+        }
+
+        final List<File> changedFiles = new ArrayList<>();
+        for (final File file : files) {
+            final LoadedFile loadedFile = loadedFiles.get(file);
+            if (loadedFile == null || loadedFile.lastModified != file.lastModified()) {
+                changedFiles.add(file);
+            }
+        }
+
+        final long parseStart = System.nanoTime();
+        //JAXB parsing is CPU bound, so shards are parsed on the common pool, the calling thread takes part as well
+        final List<LoadedFile> parsed = (changedFiles.size() > 1 ? changedFiles.parallelStream() :
+                changedFiles.stream()).map(this::parse).collect(Collectors.toList());
+        if (event != null) {
+            event.parseTime = System.nanoTime() - parseStart;
+        }
+
+        boolean parseFailed = false;
+        final List<LoadedFile> newParsedFiles = new ArrayList<>();
+        for (final LoadedFile loadedFile : parsed) {
+            if (loadedFile.config == null) {
+                parseFailed = true;
+                final LoadedFile previous = loadedFiles.get(loadedFile.file);
+                //remember the modification, so an invalid file is only parsed again after it was modified again
+                loadedFiles.put(loadedFile.file,
+                        new LoadedFile(loadedFile.file,
+                                loadedFile.lastModified,
+                                previous == null ? null : previous.content,
+                                previous == null ? null : previous.config,
+                                previous == null ? null : previous.positions));
+            } else {
+                loadedFiles.put(loadedFile.file, loadedFile);
+                newParsedFiles.add(loadedFile);
+            }
+        }
+        parsedFiles = newParsedFiles;
+        if (parseFailed) {
+            if (event != null) {
+                event.failureReason = "unparsable";
+            }
+            return null;
+        }
+
+        final Map<String, FileAuthConfig> configs = new LinkedHashMap<>();
+        final Map<String, SourcePositions> positions = new HashMap<>();
+        for (final File file : files) {
+            final LoadedFile loadedFile = loadedFiles.get(file);
+            if (loadedFile != null && loadedFile.config != null) {
+                configs.put(getName(file), loadedFile.config);
+                if (loadedFile.positions != null) {
+                    positions.put(getName(file), loadedFile.positions);
+                }
+            }
+        }
+        return configParser.merge(configs, positions, event);
+    }
+
+    /**
+     * Archives the files that were parsed by the last load.
+     *
+     * @param configArchiver the archiver to archive the files with
+     */
+    synchronized void archiveParsedFiles(final @NotNull ConfigArchiver configArchiver) {
+        for (final LoadedFile parsedFile : parsedFiles) {
+            if (parsedFile.content != null) {
+                configArchiver.archive(parsedFile.file.getName(), parsedFile.content);
+            }
+        }
+        parsedFiles = List.of();
+    }
+
+    private @NotNull LoadedFile parse(final @NotNull File file) {
+        final long lastModified = file.lastModified();
+        final byte[] content = configParser.readContent(file, null);
+        if (content == null) {
+            return new LoadedFile(file, lastModified, null, null, null);
+        }
+        final SourcePositions.Recorder recorder = new SourcePositions.Recorder();
+        final FileAuthConfig config = configParser.unmarshal(content, recorder, null);
+        if (config == null) {
+            LOG.warn("Credentials file {} is invalid.", file.getAbsolutePath());
+            return new LoadedFile(file, lastModified, content, null, null);
+        }
+        return new LoadedFile(file, lastModified, content, config, recorder.build(getName(file)));
+    }
+
+    /**
+     * @return the credentials file, if it exists, followed by the shards ordered by their name
+     */
+    private @NotNull List<File> listFiles() {
+        final List<File> files = new ArrayList<>();
+        if (configFile.isFile()) {
+            files.add(configFile);
+        }
+        final File[] shards = shardsFolder.listFiles((dir, name) -> name.endsWith(".xml"));
+        if (shards != null) {
+            Arrays.sort(shards, Comparator.comparing(File::getName));
+            for (final File shard : shards) {
+                if (shard.isFile()) {
+                    files.add(shard);
+                }
+            }
+        }
+        return files;
+    }
+
+    private @NotNull String getName(final @NotNull File file) {
+        return file.equals(configFile) ? file.getName() : SHARDS_FOLDER_NAME + "/" + file.getName();
+    }
+
+    private static class LoadedFile {
+
+        private final @NotNull File file;
+        private final long lastModified;
+        private final byte @Nullable [] content;
+        private final @Nullable FileAuthConfig config;
+        //the positions of the entries of the config, for the errors of later validations of the merged config
+        private final @Nullable SourcePositions positions;
+
+        LoadedFile(
+                final @NotNull File file,
+                final long lastModified,
+                final byte @Nullable [] content,
+                final @Nullable FileAuthConfig config,
+                final @Nullable SourcePositions positions) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.content = content;
+            this.config = config;
+            this.positions = positions;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Group;
+import com.hivemq.extensions.rbac.configuration.entities.IdList;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Resolves groups and role inheritance of a credentials configuration, so no hierarchy has to be walked when a client
+ * connects.
+ * <p>
+ * In the flattened config every role contains its own permissions followed by the permissions of the roles it
+ * extends, without duplicates. Every user and user pattern holds its own roles followed by the roles of its groups.
+ * For every set of more than one role that a user holds, a combined role with the deduplicated permissions of all
+ * roles of the set is added, so the permissions of every user are found with a single lookup of
+ * {@link #combinedRoleId(List)}. The flattened config contains no groups and no extended roles.
+ * <p>
+ * Quotas are not inherited by extending roles. A combined role has the quota of the first of its roles that has one,
+ * and every quota of the flattened config knows the role that declares it.
+ */
+public class CredentialsFlattener {
+
+    private final @NotNull Map<String, Role> roles = new LinkedHashMap<>();
+    private final @NotNull Map<String, List<String>> groups = new HashMap<>();
+    private final @NotNull Map<String, Role> flattenedRoles = new HashMap<>();
+    private final @NotNull Map<List<String>, Role> combinedRoles = new LinkedHashMap<>();
+
+    private CredentialsFlattener(final @NotNull FileAuthConfig config) {
+        if (config.getRoles() != null) {
+            for (final Role role : config.getRoles()) {
+                roles.putIfAbsent(role.getId(), role);
+            }
+        }
+        if (config.getGroups() != null) {
+            for (final Group group : config.getGroups()) {
+                groups.putIfAbsent(group.getId(), group.getRoles() == null ? List.of() : group.getRoles());
+            }
+        }
+    }
+
+    /**
+     * Flattens a validated config.
+     *
+     * @param config the config to flatten, it is not modified
+     * @return the flattened config, which shares all users and roles that do not change with the given config
+     */
+    public static @NotNull FileAuthConfig flatten(final @NotNull FileAuthConfig config) {
+        return new CredentialsFlattener(config).flattenConfig(config);
+    }
+
+    /**
+     * Creates a flattener that keeps the roles and groups of a config, so users that are added or changed later can
+     * be flattened without flattening the whole config again.
+     *
+     * @param config the validated config with the roles and groups
+     * @return the flattener for the config
+     */
+    static @NotNull CredentialsFlattener create(final @NotNull FileAuthConfig config) {
+        return new CredentialsFlattener(config);
+    }
+
+    /**
+     * @param roleIds the roles a user holds
+     * @return the id of the role that combines the permissions of all roles or the only role if there is only one,
+     *         computed only once for the shared role lists of users
+     */
+    public static @NotNull String combinedRoleId(final @NotNull List<String> roleIds) {
+        return IdList.combinedId(roleIds);
+    }
+
+    /**
+     * Flattens a user that refers only to the roles and groups of the config of this flattener.
+     *
+     * @param user       the validated user to flatten
+     * @param addedRoles the list the combined role of the user is added to, if no user had the same roles before
+     * @return the flattened user
+     */
+    @NotNull User flattenUser(final @NotNull User user, final @NotNull List<Role> addedRoles) {
+        final int combinedRoleCount = combinedRoles.size();
+        final User flattenedUser = flatten(user);
+        if (combinedRoles.size() > combinedRoleCount) {
+            addedRoles.add(combinedRoles.get(flattenedUser.getRoles()));
+        }
+        return flattenedUser;
+    }
+
+    /**
+     * @param config the config this flattener was created for
+     * @return the flattened config
+     */
+    @NotNull FileAuthConfig flattenConfig(final @NotNull FileAuthConfig config) {
+        final List<User> newUsers = new ArrayList<>();
+        if (config.getUsers() != null) {
+            for (final User user : config.getUsers()) {
+                newUsers.add(flatten(user));
+            }
+        }
+        List<UserPattern> newUserPatterns = null;
+        if (config.getUserPatterns() != null) {
+            newUserPatterns = new ArrayList<>();
+            for (final UserPattern userPattern : config.getUserPatterns()) {
+                final List<String> effectiveRoles = effectiveRoles(userPattern.getRoles(), userPattern.getGroups());
+                newUserPatterns.add(
+                        effectiveRoles.equals(userPattern.getRoles()) && userPattern.getGroups() == null ?
+                                userPattern :
+                                new UserPattern(userPattern.getPrefix(),
+                                        userPattern.getGlob(),
+                                        userPattern.getRegex(),
+                                        userPattern.getPassword(),
+                                        userPattern.getHmacSecret(),
+                                        effectiveRoles));
+            }
+        }
+
+        final List<Role> newRoles = new ArrayList<>(roles.size() + combinedRoles.size());
+        for (final String roleId : roles.keySet()) {
+            newRoles.add(flattenRole(roleId, new HashSet<>()));
+        }
+        newRoles.addAll(combinedRoles.values());
+
+        final FileAuthConfig flattenedConfig = new FileAuthConfig(newUsers, newRoles);
+        flattenedConfig.setUserPatterns(newUserPatterns);
+        return flattenedConfig;
+    }
+
+    private @NotNull User flatten(final @NotNull User user) {
+        final List<String> effectiveRoles = effectiveRoles(user.getRoles(), user.getGroups());
+        if (effectiveRoles.equals(user.getRoles()) && user.getGroups() == null) {
+            return user;
+        }
+        final User flattenedUser = new User(user.getName(), user.getPassword(), effectiveRoles);
+        flattenedUser.setMaxSessions(user.getMaxSessions());
+        return flattenedUser;
+    }
+
+    /**
+     * @return the roles followed by the roles of the groups, and registers a combined role for them
+     */
+    private @NotNull List<String> effectiveRoles(
+            final @Nullable List<String> ownRoles, final @Nullable List<String> ownGroups) {
+        final Set<String> effectiveRoles = new LinkedHashSet<>();
+        if (ownRoles != null) {
+            effectiveRoles.addAll(ownRoles);
+        }
+        if (ownGroups != null) {
+            for (final String group : ownGroups) {
+                effectiveRoles.addAll(groups.getOrDefault(group, List.of()));
+            }
+        }
+        final List<String> effectiveRoleList = Objects.requireNonNull(IdList.intern(new ArrayList<>(effectiveRoles)));
+        if (effectiveRoleList.size() > 1 && !combinedRoles.containsKey(effectiveRoleList)) {
+            final Set<Permission> permissions = new LinkedHashSet<>();
+            Quota quota = null;
+            for (final String roleId : effectiveRoleList) {
+                if (roles.containsKey(roleId)) {
+                    final Role flattenedRole = flattenRole(roleId, new HashSet<>());
+                    permissions.addAll(flattenedRole.getPermissions());
+                    if (quota == null) {
+                        quota = flattenedRole.getQuota();
+                    }
+                }
+            }
+            final Role combinedRole = new Role(combinedRoleId(effectiveRoleList), new ArrayList<>(permissions));
+            combinedRole.setQuota(quota);
+            combinedRoles.put(effectiveRoleList, combinedRole);
+        }
+        return effectiveRoleList;
+    }
+
+    private @NotNull Role flattenRole(final @NotNull String roleId, final @NotNull Set<String> path) {
+        final Role flattenedRole = flattenedRoles.get(roleId);
+        if (flattenedRole != null) {
+            return flattenedRole;
+        }
+        final Role role = roles.get(roleId);
+        final List<Permission> ownPermissions = role.getPermissions() == null ? List.of() : role.getPermissions();
+        final Set<Permission> permissions = new LinkedHashSet<>(ownPermissions);
+        //the path guards against cycles, which are rejected by the validation before
+        path.add(roleId);
+        if (role.getExtendedRoles() != null) {
+            for (final String extendedRole : role.getExtendedRoles()) {
+                if (roles.containsKey(extendedRole) && !path.contains(extendedRole)) {
+                    permissions.addAll(flattenRole(extendedRole, path).getPermissions());
+                }
+            }
+        }
+        path.remove(roleId);
+        if (role.getExtendedRoles() == null && permissions.size() == ownPermissions.size() && role.getQuota() == null) {
+            flattenedRoles.put(roleId, role);
+            return role;
+        }
+        final Role newRole = new Role(roleId, new ArrayList<>(permissions));
+        if (role.getQuota() != null) {
+            newRole.setQuota(new Quota(role.getQuota(), roleId));
+        }
+        flattenedRoles.put(roleId, newRole);
+        return newRole;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The append-only credentials journal next to the credentials file.
+ * <p>
+ * Entries are appended as single lines with a checksum, see {@link JournalEntry}. Writers must hold an exclusive lock
+ * on the journal file while appending. A line that is not terminated by a line feed yet is not read, so a writer that
+ * crashed in the middle of a line can never cause a partial entry to be applied. Complete lines with an invalid
+ * checksum are skipped.
+ * <p>
+ * The journal is compacted into a snapshot file that contains one entry per role and user. The snapshot is written
+ * completely before the journal is truncated. As add entries set the complete state of a role or user, replaying the
+ * journal on top of a snapshot that already contains it leads to the same state, so a crash during compaction loses no
+ * entries.
+ */
+@ThreadSafe
+class CredentialsJournal {
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(CredentialsJournal.class);
+    static final @NotNull String JOURNAL_NAME = "credentials.journal";
+    static final @NotNull String SNAPSHOT_NAME = "credentials.journal.snapshot";
+
+    private final @NotNull File journalFile;
+    private final @NotNull File snapshotFile;
+    private final @NotNull ReloadMetrics reloadMetrics;
+
+    //guarded by this, the position in the journal up to which entries were read
+    private long offset;
+
+    CredentialsJournal(final @NotNull File extensionHomeFolder, final @NotNull ReloadMetrics reloadMetrics) {
+        this.reloadMetrics = reloadMetrics;
+        journalFile = new File(extensionHomeFolder, JOURNAL_NAME);
+        snapshotFile = new File(extensionHomeFolder, SNAPSHOT_NAME);
+    }
+
+    /**
+     * Reads the snapshot and the journal from the start.
+     *
+     * @return all entries of the snapshot followed by all entries of the journal
+     * @throws IOException if the snapshot or the journal could not be read
+     */
+    synchronized @NotNull List<JournalEntry> replay() throws IOException {
+        final List<JournalEntry> entries = new ArrayList<>();
+        if (snapshotFile.isFile()) {
+            read(snapshotFile, 0, entries);
+        }
+        offset = 0;
+        entries.addAll(poll());
+        return entries;
+    }
+
+    /**
+     * @return the entries that were appended to the journal since the last poll
+     * @throws IOException if the journal could not be read
+     */
+    synchronized @NotNull List<JournalEntry> poll() throws IOException {
+        if (!journalFile.isFile()) {
+            offset = 0;
+            return List.of();
+        }
+        if (journalFile.length() < offset) {
+            LOG.warn("Credentials journal {} was truncated, replaying it from the start.",
+                    journalFile.getAbsolutePath());
+            offset = 0;
+        }
+        if (journalFile.length() == offset) {
+            return List.of();
+        }
+        final List<JournalEntry> entries = new ArrayList<>();
+        offset += read(journalFile, offset, entries);
+        return entries;
+    }
+
+    /**
+     * Appends entries to the journal and forces them to the storage device.
+     * <p>
+     * If the entries could not be written completely, the journal is truncated to its previous length, so none of the
+     * entries are read by a later poll.
+     *
+     * @param entries the entries to append
+     * @throws IOException if the entries could not be written
+     */
+    synchronized void append(final @NotNull Collection<JournalEntry> entries) throws IOException {
+        final StringBuilder lines = new StringBuilder();
+        for (final JournalEntry entry : entries) {
+            lines.append(entry.format());
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        try (final FileChannel channel = FileChannel.open(journalFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND); final FileLock ignored = channel.lock()) {
+            final long previousSize = channel.size();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (final IOException e) {
+                try {
+                    channel.truncate(previousSize);
+                } catch (final IOException truncateException) {
+                    e.addSuppressed(truncateException);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Compacts the journal into the snapshot.
+     * <p>
+     * Entries that were appended after the last poll are read while the journal is locked and passed to the
+     * snapshot function, which must apply them and return the entries that describe the complete state.
+     *
+     * @param snapshot the function that applies the remaining entries and returns the entries of the new snapshot
+     * @throws IOException if the snapshot could not be written or the journal could not be truncated
+     */
+    synchronized void compact(
+            final @NotNull Function<List<JournalEntry>, Collection<JournalEntry>> snapshot) throws IOException {
+        if (!journalFile.isFile()) {
+            return;
+        }
+        try (final FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE);
+             final FileLock ignored = channel.lock()) {
+            final Collection<JournalEntry> snapshotEntries = snapshot.apply(poll());
+
+            final File tempFile = new File(snapshotFile.getParentFile(), SNAPSHOT_NAME + ".tmp");
+            try (final OutputStream outputStream = Files.newOutputStream(tempFile.toPath())) {
+                for (final JournalEntry entry : snapshotEntries) {
+                    outputStream.write(entry.format().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            try (final FileChannel tempChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+                tempChannel.force(true);
+            }
+            try {
+                Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            channel.truncate(0);
+            channel.force(false);
+            offset = 0;
+            LOG.debug("Compacted credentials journal {} into {} entries.",
+                    journalFile.getAbsolutePath(),
+                    snapshotEntries.size());
+        }
+    }
+
+    /**
+     * Reads all complete lines of a file starting at a position.
+     *
+     * @return the amount of bytes that were read
+     */
+    private long read(final @NotNull File file, final long position, final @NotNull List<JournalEntry> entries)
+            throws IOException {
+        final byte[] bytes;
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size() - position;
+            if (size <= 0) {
+                return 0;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE - 8));
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+                //read until the buffer is full or the end of the file was reached
+            }
+            bytes = buffer.array();
+        }
+
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            int lineEnd = i;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart) {
+                final String line = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+                final JournalEntry entry = JournalEntry.parse(line);
+                if (entry == null) {
+                    reloadMetrics.journalEntryRejected();
+                    LOG.warn("Skipping corrupt entry at byte {} of credentials journal file {}.",
+                            position + lineStart,
+                            file.getAbsolutePath());
+                } else {
+                    entries.add(entry);
+                }
+            }
+            lineStart = i + 1;
+        }
+        return lineStart;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event that is committed for every load or reload of the credentials configuration.
+ */
+@Name("com.hivemq.extensions.rbac.CredentialsReload")
+@Label("Credentials Reload")
+@Description("Load of the credentials configuration file of the File RBAC extension")
+@Category({"HiveMQ", "File RBAC"})
+class CredentialsReloadEvent extends Event {
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Failure Reason")
+    String failureReason;
+
+    @Label("Generation")
+    long generation;
+
+    @Label("Users")
+    long users;
+
+    @Label("Roles")
+    long roles;
+
+    @Label("Permissions")
+    long permissions;
+
+    @Label("Changed Users")
+    @Description("Amount of added, changed and removed users")
+    long changedUsers;
+
+    @Label("Changed Roles")
+    @Description("Amount of added, changed and removed roles")
+    long changedRoles;
+
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long parseTime;
+
+    @Label("Validate Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long validateTime;
+
+    @Label("Apply Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long applyTime;
+}
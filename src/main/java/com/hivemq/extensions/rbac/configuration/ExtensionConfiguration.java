@@ -63,11 +63,105 @@ public class ExtensionConfiguration {
                                 defaultConfig.getReloadInterval());
                 newExtensionConfig.setReloadInterval(defaultConfig.getReloadInterval());
             }
+            if (newExtensionConfig.getJfrEventThreshold() < 0) {
+                LOG.warn("JFR event threshold for file auth extension must not be negative, using default threshold " +
+                        defaultConfig.getJfrEventThreshold());
+                newExtensionConfig.setJfrEventThreshold(defaultConfig.getJfrEventThreshold());
+            }
+            if (newExtensionConfig.getJournalPollInterval() < 0) {
+                LOG.warn("Credentials journal poll interval for file auth extension must not be negative, using default interval " +
+                        defaultConfig.getJournalPollInterval());
+                newExtensionConfig.setJournalPollInterval(defaultConfig.getJournalPollInterval());
+            }
+            if (newExtensionConfig.getJournalCompactionThreshold() < 1) {
+                LOG.warn("Credentials journal compaction threshold for file auth extension must be greater than 0, using default threshold " +
+                        defaultConfig.getJournalCompactionThreshold());
+                newExtensionConfig.setJournalCompactionThreshold(defaultConfig.getJournalCompactionThreshold());
+            }
+            if (newExtensionConfig.getArchiveMaxFiles() < 0) {
+                LOG.warn("Maximum amount of archived credentials files for file auth extension must not be negative, using default " +
+                        defaultConfig.getArchiveMaxFiles());
+                newExtensionConfig.setArchiveMaxFiles(defaultConfig.getArchiveMaxFiles());
+            }
+            if (newExtensionConfig.getArchiveMaxAge() < 0) {
+                LOG.warn("Maximum age of archived credentials files for file auth extension must not be negative, using default " +
+                        defaultConfig.getArchiveMaxAge());
+                newExtensionConfig.setArchiveMaxAge(defaultConfig.getArchiveMaxAge());
+            }
+            if (newExtensionConfig.getRevocationBatchSize() < 0) {
+                LOG.warn("Revocation batch size for file auth extension must not be negative, using default size " +
+                        defaultConfig.getRevocationBatchSize());
+                newExtensionConfig.setRevocationBatchSize(defaultConfig.getRevocationBatchSize());
+            }
+            if (newExtensionConfig.getRevocationBatchInterval() < 0) {
+                LOG.warn("Revocation batch interval for file auth extension must not be negative, using default interval " +
+                        defaultConfig.getRevocationBatchInterval());
+                newExtensionConfig.setRevocationBatchInterval(defaultConfig.getRevocationBatchInterval());
+            }
+            if (newExtensionConfig.getQuotaMaxDelay() < 0) {
+                LOG.warn("Quota max delay for file auth extension must not be negative, using default delay " +
+                        defaultConfig.getQuotaMaxDelay());
+                newExtensionConfig.setQuotaMaxDelay(defaultConfig.getQuotaMaxDelay());
+            }
+            if (newExtensionConfig.getWarmCacheSize() < 0) {
+                LOG.warn("Warm cache size for file auth extension must not be negative, disabling the warm cache");
+                newExtensionConfig.setWarmCacheSize(defaultConfig.getWarmCacheSize());
+            }
+            if (newExtensionConfig.getWarmCacheMaxAge() <= 0) {
+                LOG.warn("Warm cache max age for file auth extension must be positive, using default age " +
+                        defaultConfig.getWarmCacheMaxAge());
+                newExtensionConfig.setWarmCacheMaxAge(defaultConfig.getWarmCacheMaxAge());
+            }
+            if (newExtensionConfig.getWarmCacheSaveInterval() < 0) {
+                LOG.warn("Warm cache save interval for file auth extension must not be negative, using default interval " +
+                        defaultConfig.getWarmCacheSaveInterval());
+                newExtensionConfig.setWarmCacheSaveInterval(defaultConfig.getWarmCacheSaveInterval());
+            }
+            if (newExtensionConfig.getWarmUpTime() < 0) {
+                LOG.warn("Warm-up time for file auth extension must not be negative, disabling the warm-up");
+                newExtensionConfig.setWarmUpTime(defaultConfig.getWarmUpTime());
+            }
+            if (newExtensionConfig.getValidationMaxErrors() < 1) {
+                LOG.warn("Maximum amount of validation errors for file auth extension must be greater than 0, using default " +
+                        defaultConfig.getValidationMaxErrors());
+                newExtensionConfig.setValidationMaxErrors(defaultConfig.getValidationMaxErrors());
+            }
+            if (newExtensionConfig.getHashCacheSize() < 0) {
+                LOG.warn("Hash cache size for file auth extension must not be negative, using default size " +
+                        defaultConfig.getHashCacheSize());
+                newExtensionConfig.setHashCacheSize(defaultConfig.getHashCacheSize());
+            }
+            if (newExtensionConfig.getHashCacheExpiry() <= 0) {
+                LOG.warn("Hash cache expiry for file auth extension must be positive, using default expiry " +
+                        defaultConfig.getHashCacheExpiry());
+                newExtensionConfig.setHashCacheExpiry(defaultConfig.getHashCacheExpiry());
+            }
+            if (newExtensionConfig.getTraceMaxFiles() < 0) {
+                LOG.warn("Maximum amount of trace files for file auth extension must not be negative, disabling the trace");
+                newExtensionConfig.setTraceMaxFiles(defaultConfig.getTraceMaxFiles());
+            }
+            if (newExtensionConfig.getTraceFileSize() < 1) {
+                LOG.warn("Trace file size for file auth extension must be greater than 0, using default size " +
+                        defaultConfig.getTraceFileSize());
+                newExtensionConfig.setTraceFileSize(defaultConfig.getTraceFileSize());
+            }
+            if (newExtensionConfig.getAdminSocket() != null && newExtensionConfig.getAdminSocket().isBlank()) {
+                newExtensionConfig.setAdminSocket(null);
+            }
+            if (newExtensionConfig.getAdminSocket() != null && newExtensionConfig.getJournalPollInterval() == 0) {
+                LOG.warn("Admin socket for file auth extension requires the credentials journal, disabling the admin socket");
+                newExtensionConfig.setAdminSocket(null);
+            }
             if (newExtensionConfig.getPasswordType() == null) {
                 LOG.warn("Unknown password type file auth extension, using default type " +
                         defaultConfig.getPasswordType());
                 newExtensionConfig.setPasswordType(defaultConfig.getPasswordType());
             }
+            if (newExtensionConfig.getCredentialsStore() == null) {
+                LOG.warn("Unknown credentials store file auth extension, using default store " +
+                        defaultConfig.getCredentialsStore());
+                newExtensionConfig.setCredentialsStore(defaultConfig.getCredentialsStore());
+            }
             return newExtensionConfig;
         } catch (final IOException e) {
             LOG.warn("Could not read file auth extension configuration file, reason: {}, using defaults",
@@ -0,0 +1,178 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.IdList;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Estimates the heap that the users, user patterns and roles of a config retain, including their entries in the
+ * indexes of the in-memory credentials store.
+ * <p>
+ * The estimate assumes a 64 bit JVM with compressed references and compact strings. The shared {@link IdList}s of the
+ * users are only counted once.
+ */
+class HeapFootprint {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    //a node of a concurrent hash map and its share of the table
+    private static final int INDEX_ENTRY = 40;
+    //the name and user slots and the share of the pilots in the user index
+    private static final int USER_INDEX_ENTRY = 9;
+
+    //only the shared objects are tracked, so the estimate does not need a set entry per user
+    private final @NotNull Set<Object> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long bytes;
+
+    private HeapFootprint() {
+    }
+
+    /**
+     * @param config the flattened config
+     * @return the estimated amount of bytes the config retains
+     */
+    static long estimate(final @NotNull FileAuthConfig config) {
+        final HeapFootprint footprint = new HeapFootprint();
+        if (config.getUsers() != null) {
+            for (final User user : config.getUsers()) {
+                footprint.addUser(user);
+            }
+        }
+        if (config.getUserPatterns() != null) {
+            for (final UserPattern userPattern : config.getUserPatterns()) {
+                footprint.addUserPattern(userPattern);
+            }
+        }
+        if (config.getRoles() != null) {
+            for (final Role role : config.getRoles()) {
+                footprint.addRole(role);
+            }
+        }
+        return footprint.bytes;
+    }
+
+    /**
+     * Estimates a part of a config, the objects it shares with the rest of the config are counted as well.
+     *
+     * @param users the flattened users
+     * @param roles the flattened roles
+     * @return the estimated amount of bytes the users and roles retain
+     */
+    static long estimate(final @NotNull Collection<User> users, final @NotNull Collection<Role> roles) {
+        final HeapFootprint footprint = new HeapFootprint();
+        for (final User user : users) {
+            footprint.addUser(user);
+        }
+        for (final Role role : roles) {
+            footprint.addRole(role);
+        }
+        return footprint.bytes;
+    }
+
+    private void addUser(final @NotNull User user) {
+        bytes += USER_INDEX_ENTRY + object(5);
+        addString(user.getName());
+        addString(user.getPassword());
+        addList(user.getRoles());
+        addList(user.getGroups());
+    }
+
+    private void addUserPattern(final @NotNull UserPattern userPattern) {
+        bytes += object(8);
+        addString(userPattern.getExpression());
+        addString(userPattern.getPassword());
+        addString(userPattern.getHmacSecret());
+        addList(userPattern.getRoles());
+        addList(userPattern.getGroups());
+    }
+
+    private void addRole(final @NotNull Role role) {
+        bytes += INDEX_ENTRY + object(4);
+        addString(role.getId());
+        addList(role.getExtendedRoles());
+        final Quota quota = role.getQuota();
+        //combined roles share the quota of one of their roles
+        if (quota != null && shared.add(quota)) {
+            //the limits are boxed longs
+            bytes += object(4) + 3 * object(2);
+        }
+        final List<Permission> permissions = role.getPermissions();
+        if (permissions != null) {
+            bytes += object(2) + array(permissions.size() * REFERENCE);
+            for (final Permission permission : permissions) {
+                bytes += object(6);
+                addString(permission.getTopic());
+                addString(permission.getSharedGroup());
+            }
+        }
+    }
+
+    private void addList(final @Nullable List<String> list) {
+        if (list == null) {
+            return;
+        }
+        final boolean isShared = list instanceof IdList;
+        if (isShared && !shared.add(list)) {
+            return;
+        }
+        bytes += object(isShared ? 3 : 2) + array(list.size() * REFERENCE);
+        for (final String id : list) {
+            //the ids of shared lists are interned as well
+            if (!isShared || shared.add(id)) {
+                addString(id);
+            }
+        }
+    }
+
+    private void addString(final @Nullable String string) {
+        if (string == null) {
+            return;
+        }
+        boolean latin1 = true;
+        for (int i = 0; i < string.length() && latin1; i++) {
+            latin1 = string.charAt(i) <= 0xFF;
+        }
+        bytes += object(3) + array(latin1 ? string.length() : string.length() * 2);
+    }
+
+    private static long object(final int fields) {
+        return align(OBJECT_HEADER + (long) fields * REFERENCE);
+    }
+
+    private static long array(final long contentBytes) {
+        return align(ARRAY_HEADER + contentBytes);
+    }
+
+    private static long align(final long size) {
+        return (size + 7) & ~7;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An entry of the credentials journal.
+ * <p>
+ * An entry is stored as one line: the CRC32 checksum of the payload as 8 hex digits, a tab and the payload. The payload
+ * consists of the operation and its arguments separated by tabs, roles are separated by commas:
+ * <pre>
+ * add-user     &lt;name&gt; &lt;password&gt; &lt;role1,role2&gt; [&lt;max-sessions&gt;]
+ * remove-user  &lt;name&gt;
+ * set-password &lt;name&gt; &lt;password&gt;
+ * set-roles    &lt;name&gt; &lt;role1,role2&gt;
+ * add-role     &lt;id&gt; &lt;permission1,permission2&gt;
+ * </pre>
+ * A permission consists of its topic filter, activity, QoS, retain, shared subscription and shared group separated by
+ * semicolons, for example {@code devices/+/status;PUBLISH;ALL;NOT_RETAINED;ALL;#}. The topic filter and the shared
+ * group are URL encoded. An add-user entry without max sessions keeps the max sessions of the user it replaces.
+ */
+@Immutable
+class JournalEntry {
+
+    enum Operation {
+        ADD_USER("add-user", 3, 4),
+        REMOVE_USER("remove-user", 1, 1),
+        SET_PASSWORD("set-password", 2, 2),
+        SET_ROLES("set-roles", 2, 2),
+        ADD_ROLE("add-role", 2, 2);
+
+        private final @NotNull String name;
+        private final int minArguments;
+        private final int maxArguments;
+
+        Operation(final @NotNull String name, final int minArguments, final int maxArguments) {
+            this.name = name;
+            this.minArguments = minArguments;
+            this.maxArguments = maxArguments;
+        }
+
+        @NotNull String getName() {
+            return name;
+        }
+
+        static @Nullable Operation fromName(final @NotNull String name) {
+            for (final Operation operation : values()) {
+                if (operation.name.equals(name)) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final @NotNull Operation operation;
+    private final @NotNull String name;
+    private final @Nullable String password;
+    private final @Nullable List<String> roles;
+    private final @Nullable Integer maxSessions;
+    private final @Nullable Role role;
+
+    private JournalEntry(
+            final @NotNull Operation operation,
+            final @NotNull String name,
+            final @Nullable String password,
+            final @Nullable List<String> roles,
+            final @Nullable Integer maxSessions,
+            final @Nullable Role role) {
+        this.operation = operation;
+        this.name = name;
+        this.password = password;
+        this.roles = roles;
+        this.maxSessions = maxSessions;
+        this.role = role;
+    }
+
+    /**
+     * @param maxSessions the maximum sessions of the user, 0 for no limit, or null to keep the maximum sessions of the
+     *                    user that is replaced
+     */
+    static @NotNull JournalEntry addUser(
+            final @NotNull String userName,
+            final @NotNull String password,
+            final @NotNull List<String> roles,
+            final @Nullable Integer maxSessions) {
+        if (maxSessions != null && maxSessions < 0) {
+            throw new IllegalArgumentException("The max sessions in the journal must not be negative");
+        }
+        return new JournalEntry(Operation.ADD_USER,
+                checkArgument(userName),
+                checkArgument(password),
+                checkRoles(roles),
+                maxSessions,
+                null);
+    }
+
+    static @NotNull JournalEntry removeUser(final @NotNull String userName) {
+        return new JournalEntry(Operation.REMOVE_USER, checkArgument(userName), null, null, null, null);
+    }
+
+    static @NotNull JournalEntry setPassword(final @NotNull String userName, final @NotNull String password) {
+        return new JournalEntry(Operation.SET_PASSWORD,
+                checkArgument(userName),
+                checkArgument(password),
+                null,
+                null,
+                null);
+    }
+
+    static @NotNull JournalEntry setRoles(final @NotNull String userName, final @NotNull List<String> roles) {
+        return new JournalEntry(Operation.SET_ROLES, checkArgument(userName), null, checkRoles(roles), null, null);
+    }
+
+    static @NotNull JournalEntry addRole(final @NotNull Role role) {
+        if (role.getId() == null || role.getPermissions() == null || role.getPermissions().isEmpty()) {
+            throw new IllegalArgumentException("Roles in the journal must have an id and permissions");
+        }
+        for (final Permission permission : role.getPermissions()) {
+            if (permission.getTopic() == null || permission.getTopic().isEmpty() ||
+                    permission.getActivity() == null || permission.getQos() == null ||
+                    permission.getRetain() == null || permission.getSharedSubscription() == null ||
+                    permission.getSharedGroup() == null || permission.getSharedGroup().isEmpty()) {
+                throw new IllegalArgumentException("Permissions in the journal must be complete");
+            }
+        }
+        return new JournalEntry(Operation.ADD_ROLE, checkArgument(role.getId()), null, null, null, role);
+    }
+
+    @NotNull Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the name of the user or the id of the role for {@link Operation#ADD_ROLE}
+     */
+    @NotNull String getName() {
+        return name;
+    }
+
+    @Nullable String getPassword() {
+        return password;
+    }
+
+    @Nullable List<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return the maximum sessions of an added user, null if they are not set by the entry
+     */
+    @Nullable Integer getMaxSessions() {
+        return maxSessions;
+    }
+
+    @Nullable Role getRole() {
+        return role;
+    }
+
+    /**
+     * @return the entry as a line of the journal including the checksum and the trailing line feed
+     */
+    @NotNull String format() {
+        final StringBuilder payload = new StringBuilder(operation.name).append('\t').append(name);
+        if (operation == Operation.ADD_USER || operation == Operation.SET_PASSWORD) {
+            payload.append('\t').append(password);
+        }
+        if (operation == Operation.ADD_USER || operation == Operation.SET_ROLES) {
+            payload.append('\t').append(String.join(",", roles));
+        }
+        if (maxSessions != null) {
+            payload.append('\t').append(maxSessions);
+        }
+        if (operation == Operation.ADD_ROLE) {
+            payload.append('\t');
+            formatPermissions(role.getPermissions(), payload);
+        }
+        final String payloadString = payload.toString();
+        return String.format("%08x", checksum(payloadString)) + '\t' + payloadString + '\n';
+    }
+
+    /**
+     * @param line a line of the journal without the trailing line feed
+     * @return the entry or null if the line is corrupt
+     */
+    static @Nullable JournalEntry parse(final @NotNull String line) {
+        final int separator = line.indexOf('\t');
+        if (separator != 8) {
+            return null;
+        }
+        final String payload = line.substring(separator + 1);
+        final long checksum;
+        try {
+            checksum = Long.parseLong(line.substring(0, separator), 16);
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+        if (checksum != checksum(payload)) {
+            return null;
+        }
+        return parsePayload(payload);
+    }
+
+    /**
+     * @param payload the payload of an entry without the checksum
+     * @return the entry or null if the payload is invalid
+     */
+    static @Nullable JournalEntry parsePayload(final @NotNull String payload) {
+        final String[] fields = payload.split("\t", -1);
+        final Operation operation = Operation.fromName(fields[0]);
+        if (operation == null || fields.length < operation.minArguments + 1 ||
+                fields.length > operation.maxArguments + 1 || fields[1].isEmpty()) {
+            return null;
+        }
+        switch (operation) {
+            case ADD_USER:
+                Integer maxSessions = null;
+                if (fields.length > 4) {
+                    maxSessions = parseMaxSessions(fields[4]);
+                    if (maxSessions == null) {
+                        return null;
+                    }
+                }
+                return new JournalEntry(operation, fields[1], fields[2], parseRoles(fields[3]), maxSessions, null);
+            case REMOVE_USER:
+                return new JournalEntry(operation, fields[1], null, null, null, null);
+            case SET_PASSWORD:
+                return new JournalEntry(operation, fields[1], fields[2], null, null, null);
+            case SET_ROLES:
+                return new JournalEntry(operation, fields[1], null, parseRoles(fields[2]), null, null);
+            case ADD_ROLE:
+                final List<Permission> permissions = parsePermissions(fields[2]);
+                return permissions == null ? null :
+                        new JournalEntry(operation, fields[1], null, null, null, new Role(fields[1], permissions));
+            default:
+                return null;
+        }
+    }
+
+    private static @NotNull List<String> parseRoles(final @NotNull String roles) {
+        return roles.isEmpty() ? List.of() : Arrays.asList(roles.split(","));
+    }
+
+    private static @Nullable Integer parseMaxSessions(final @NotNull String maxSessions) {
+        try {
+            final int parsed = Integer.parseInt(maxSessions);
+            return parsed < 0 ? null : parsed;
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void formatPermissions(
+            final @NotNull List<Permission> permissions, final @NotNull StringBuilder builder) {
+        for (int i = 0; i < permissions.size(); i++) {
+            final Permission permission = permissions.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(URLEncoder.encode(permission.getTopic(), StandardCharsets.UTF_8))
+                    .append(';')
+                    .append(permission.getActivity().name())
+                    .append(';')
+                    .append(permission.getQos().name())
+                    .append(';')
+                    .append(permission.getRetain().name())
+                    .append(';')
+                    .append(permission.getSharedSubscription().name())
+                    .append(';')
+                    .append(URLEncoder.encode(permission.getSharedGroup(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static @Nullable List<Permission> parsePermissions(final @NotNull String permissions) {
+        if (permissions.isEmpty()) {
+            return null;
+        }
+        final List<Permission> parsed = new ArrayList<>();
+        for (final String permissionString : permissions.split(",")) {
+            final String[] fields = permissionString.split(";", -1);
+            if (fields.length != 6 || fields[0].isEmpty() || fields[5].isEmpty()) {
+                return null;
+            }
+            try {
+                final Permission permission = new Permission(URLDecoder.decode(fields[0], StandardCharsets.UTF_8));
+                permission.setActivity(TopicPermission.MqttActivity.valueOf(fields[1]));
+                permission.setQos(TopicPermission.Qos.valueOf(fields[2]));
+                permission.setRetain(TopicPermission.Retain.valueOf(fields[3]));
+                permission.setSharedSubscription(TopicPermission.SharedSubscription.valueOf(fields[4]));
+                permission.setSharedGroup(URLDecoder.decode(fields[5], StandardCharsets.UTF_8));
+                parsed.add(permission);
+            } catch (final IllegalArgumentException e) {
+                //unknown enum constant or invalid URL encoding
+                return null;
+            }
+        }
+        return parsed;
+    }
+
+    private static long checksum(final @NotNull String payload) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(payload.getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+
+    private static @NotNull String checkArgument(final @NotNull String argument) {
+        if (argument.isEmpty() || argument.indexOf('\t') >= 0 || argument.indexOf('\n') >= 0 ||
+                argument.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Journal arguments must not be empty or contain tabs or line breaks");
+        }
+        return argument;
+    }
+
+    private static @NotNull List<String> checkRoles(final @NotNull List<String> roles) {
+        for (final String role : roles) {
+            checkArgument(role);
+            if (role.indexOf(',') >= 0) {
+                throw new IllegalArgumentException("Role ids in the journal must not contain commas");
+            }
+        }
+        return List.copyOf(roles);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "JournalEntry{" + "operation=" + operation.name + ", name='" + name + '\'' + '}';
+    }
+}
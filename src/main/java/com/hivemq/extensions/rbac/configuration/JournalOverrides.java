@@ -0,0 +1,299 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Group;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The users and roles that were added, changed or removed by the credentials journal.
+ * <p>
+ * The overrides are applied on top of the users and roles of the credentials files. Groups are only managed in the
+ * credentials files, a user of the journal keeps the groups of the user with the same name in the credentials files.
+ * The journal can not express the inherited roles and the quota of a role, so roles of the credentials files can not
+ * be replaced by the journal.
+ * This class is not thread safe, it is guarded by the update lock of the {@link CredentialsConfiguration}.
+ */
+class JournalOverrides {
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(JournalOverrides.class);
+
+    private final @NotNull ExtensionConfig extensionConfig;
+    //a null value marks a removed user
+    private final @NotNull Map<String, User> users;
+    private final @NotNull Map<String, Role> roles;
+    private @NotNull Map<String, User> baseUsers;
+    private @NotNull Set<String> baseRoleIds;
+    private @NotNull Set<String> roleIds;
+    private @NotNull Set<String> groupIds;
+
+    JournalOverrides(final @NotNull ExtensionConfig extensionConfig) {
+        this.extensionConfig = extensionConfig;
+        users = new LinkedHashMap<>();
+        roles = new LinkedHashMap<>();
+        baseUsers = Map.of();
+        baseRoleIds = Set.of();
+        roleIds = new HashSet<>();
+        groupIds = Set.of();
+    }
+
+    private JournalOverrides(final @NotNull JournalOverrides overrides) {
+        extensionConfig = overrides.extensionConfig;
+        users = new LinkedHashMap<>(overrides.users);
+        roles = new LinkedHashMap<>(overrides.roles);
+        baseUsers = overrides.baseUsers;
+        baseRoleIds = overrides.baseRoleIds;
+        roleIds = new HashSet<>(overrides.roleIds);
+        groupIds = overrides.groupIds;
+    }
+
+    /**
+     * @return a copy of the overrides that entries can be applied to without changing these overrides
+     */
+    @NotNull JournalOverrides copy() {
+        return new JournalOverrides(this);
+    }
+
+    /**
+     * @param baseConfig the config of the credentials files the overrides are applied to
+     */
+    void setBaseConfig(final @NotNull FileAuthConfig baseConfig) {
+        final Map<String, User> newBaseUsers = new HashMap<>();
+        if (baseConfig.getUsers() != null) {
+            for (final User user : baseConfig.getUsers()) {
+                newBaseUsers.put(user.getName(), user);
+            }
+        }
+        final Set<String> newBaseRoleIds = new HashSet<>();
+        if (baseConfig.getRoles() != null) {
+            for (final Role role : baseConfig.getRoles()) {
+                newBaseRoleIds.add(role.getId());
+            }
+        }
+        //a role that was added to the credentials files takes precedence over the role of the journal
+        roles.keySet().removeIf(roleId -> {
+            if (newBaseRoleIds.contains(roleId)) {
+                LOG.warn("Removing role '{}' from the credentials journal, it is defined in the credentials files.",
+                        roleId);
+                return true;
+            }
+            return false;
+        });
+        final Set<String> newRoleIds = new HashSet<>(newBaseRoleIds);
+        newRoleIds.addAll(roles.keySet());
+        final Set<String> newGroupIds = new HashSet<>();
+        if (baseConfig.getGroups() != null) {
+            for (final Group group : baseConfig.getGroups()) {
+                newGroupIds.add(group.getId());
+            }
+        }
+        baseUsers = newBaseUsers;
+        baseRoleIds = newBaseRoleIds;
+        roleIds = newRoleIds;
+        groupIds = newGroupIds;
+    }
+
+    /**
+     * @param entry the journal entry to apply
+     * @return true if the entry was applied, false if it is invalid
+     */
+    boolean apply(final @NotNull JournalEntry entry) {
+        final List<String> errors = new ArrayList<>();
+        if (!apply(entry, errors)) {
+            LOG.warn("Ignoring credentials journal entry {}: {}", entry, errors);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param entry  the journal entry to apply
+     * @param errors the list the validation errors are added to
+     * @return true if the entry was applied, false if it is invalid
+     */
+    boolean apply(final @NotNull JournalEntry entry, final @NotNull List<String> errors) {
+        if (entry.getOperation() == JournalEntry.Operation.ADD_ROLE) {
+            final Role role = entry.getRole();
+            if (baseRoleIds.contains(role.getId())) {
+                errors.add("Role '" + role.getId() + "' is defined in the credentials files and can only be changed " +
+                        "there, the journal can not express its inherited roles and quota");
+                return false;
+            }
+            if (!ConfigCredentialsValidator.validatePermissions(role, errors)) {
+                return false;
+            }
+            roles.put(role.getId(), role);
+            roleIds.add(role.getId());
+            return true;
+        }
+
+        final String userName = entry.getName();
+        final User currentUser = users.containsKey(userName) ? users.get(userName) : baseUsers.get(userName);
+        if (currentUser == null && entry.getOperation() != JournalEntry.Operation.ADD_USER) {
+            errors.add("User '" + userName + "' does not exist");
+            return false;
+        }
+
+        final List<String> groups = baseGroups(userName);
+        final User newUser;
+        switch (entry.getOperation()) {
+            case ADD_USER:
+                newUser = new User(userName, entry.getPassword(), entry.getRoles(), groups);
+                if (entry.getMaxSessions() != null) {
+                    newUser.setMaxSessions(entry.getMaxSessions());
+                } else if (currentUser != null) {
+                    newUser.setMaxSessions(currentUser.getMaxSessions());
+                }
+                break;
+            case SET_PASSWORD:
+                newUser = new User(userName, entry.getPassword(), currentUser.getRoles(), groups);
+                newUser.setMaxSessions(currentUser.getMaxSessions());
+                break;
+            case SET_ROLES:
+                newUser = new User(userName, currentUser.getPassword(), entry.getRoles(), groups);
+                newUser.setMaxSessions(currentUser.getMaxSessions());
+                break;
+            default:
+                users.put(userName, null);
+                return true;
+        }
+
+        if (!ConfigCredentialsValidator.validateUser(extensionConfig, newUser, roleIds, groupIds, errors)) {
+            return false;
+        }
+        users.put(userName, newUser);
+        return true;
+    }
+
+    /**
+     * @param baseConfig the config of the credentials files
+     * @return the config with the overrides applied
+     */
+    @NotNull FileAuthConfig applyTo(final @NotNull FileAuthConfig baseConfig) {
+        if (users.isEmpty() && roles.isEmpty()) {
+            return baseConfig;
+        }
+        final List<Role> baseConfigRoles = baseConfig.getRoles() == null ? List.of() : baseConfig.getRoles();
+        final List<Role> newRoles = new ArrayList<>(baseConfigRoles.size() + roles.size());
+        for (final Role role : baseConfigRoles) {
+            if (!roles.containsKey(role.getId())) {
+                newRoles.add(role);
+            }
+        }
+        newRoles.addAll(roles.values());
+
+        final List<User> baseConfigUsers = baseConfig.getUsers() == null ? List.of() : baseConfig.getUsers();
+        final List<User> newUsers = new ArrayList<>(baseConfigUsers.size() + users.size());
+        for (final User user : baseConfigUsers) {
+            if (!users.containsKey(user.getName())) {
+                newUsers.add(user);
+            }
+        }
+        for (final User overrideUser : users.values()) {
+            final User user = overrideUser == null ? null : currentUser(overrideUser);
+            if (user != null) {
+                newUsers.add(user);
+            }
+        }
+        final FileAuthConfig newConfig = new FileAuthConfig(newUsers, newRoles);
+        newConfig.setGroups(baseConfig.getGroups());
+        newConfig.setUserPatterns(baseConfig.getUserPatterns());
+        return newConfig;
+    }
+
+    /**
+     * @param userName the name of a user
+     * @return the user with this name in the config of {@link #applyTo(FileAuthConfig)}, null if there is none
+     */
+    @Nullable User resolveUser(final @NotNull String userName) {
+        if (!users.containsKey(userName)) {
+            return baseUsers.get(userName);
+        }
+        final User overrideUser = users.get(userName);
+        return overrideUser == null ? null : currentUser(overrideUser);
+    }
+
+    /**
+     * @return the user of the journal with the current groups of the credentials files, null if it is ignored
+     */
+    private @Nullable User currentUser(final @NotNull User overrideUser) {
+        //the groups of the user may have changed in the credentials files since the entry was applied
+        final List<String> groups = baseGroups(overrideUser.getName());
+        final User user;
+        if (Objects.equals(groups, overrideUser.getGroups())) {
+            user = overrideUser;
+        } else {
+            user = new User(overrideUser.getName(), overrideUser.getPassword(), overrideUser.getRoles(), groups);
+            user.setMaxSessions(overrideUser.getMaxSessions());
+        }
+        //a role may have been removed from the credentials files since the entry was applied
+        if (!roleIds.containsAll(user.getRoles())) {
+            LOG.warn("Ignoring user '{}' of the credentials journal, it refers to an unknown role.", user.getName());
+            return null;
+        }
+        if (user.getRoles().isEmpty() && (groups == null || groups.isEmpty())) {
+            LOG.warn("Ignoring user '{}' of the credentials journal, it has neither roles nor groups.",
+                    user.getName());
+            return null;
+        }
+        return user;
+    }
+
+    private @Nullable List<String> baseGroups(final @NotNull String userName) {
+        final User baseUser = baseUsers.get(userName);
+        return baseUser == null ? null : baseUser.getGroups();
+    }
+
+    /**
+     * @return the entries that describe all overrides, one entry per role followed by one entry per user
+     */
+    @NotNull Collection<JournalEntry> toEntries() {
+        final List<JournalEntry> entries = new ArrayList<>(roles.size() + users.size());
+        for (final Role role : roles.values()) {
+            entries.add(JournalEntry.addRole(role));
+        }
+        for (final Map.Entry<String, User> entry : users.entrySet()) {
+            final User user = entry.getValue();
+            if (user == null) {
+                entries.add(JournalEntry.removeUser(entry.getKey()));
+            } else {
+                entries.add(JournalEntry.addUser(entry.getKey(),
+                        user.getPassword(),
+                        user.getRoles(),
+                        user.getMaxSessions()));
+            }
+        }
+        return entries;
+    }
+}
@@ -18,7 +18,7 @@ package com.hivemq.extensions.rbac.configuration;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 
-class NotMarshallableException extends Exception {
+public class NotMarshallableException extends Exception {
 
     NotMarshallableException(final @NotNull String message) {
         super(message);
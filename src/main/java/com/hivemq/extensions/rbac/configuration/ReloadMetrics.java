@@ -0,0 +1,212 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics for loading and reloading the credentials configuration.
+ * <p>
+ * All metric handles are resolved once at construction time.
+ */
+@ThreadSafe
+class ReloadMetrics {
+
+    static final @NotNull String PREFIX = "com.hivemq.extensions.file-rbac.";
+    static final @NotNull String PARSE_TIME = PREFIX + "reload.parse.time";
+    static final @NotNull String VALIDATE_TIME = PREFIX + "reload.validate.time";
+    static final @NotNull String ARCHIVE_TIME = PREFIX + "reload.archive.time";
+    static final @NotNull String APPLY_TIME = PREFIX + "reload.apply.time";
+    static final @NotNull String TOTAL_TIME = PREFIX + "reload.total.time";
+    static final @NotNull String READ_FAILURES = PREFIX + "reload.failures.read";
+    static final @NotNull String VALIDATION_FAILURES = PREFIX + "reload.failures.validation";
+    static final @NotNull String ARCHIVE_FAILURES = PREFIX + "reload.failures.archive";
+    static final @NotNull String LAST_SUCCESS_TIMESTAMP = PREFIX + "reload.last-success.timestamp";
+    static final @NotNull String JOURNAL_ENTRIES_APPLIED = PREFIX + "journal.entries.applied";
+    static final @NotNull String JOURNAL_ENTRIES_REJECTED = PREFIX + "journal.entries.rejected";
+    static final @NotNull String GENERATION = PREFIX + "credentials.generation";
+    static final @NotNull String USER_COUNT = PREFIX + "credentials.users";
+    static final @NotNull String ROLE_COUNT = PREFIX + "credentials.roles";
+    static final @NotNull String PERMISSION_COUNT = PREFIX + "credentials.permissions";
+    static final @NotNull String HEAP_BYTES = PREFIX + "credentials.heap.bytes";
+
+    private final @NotNull Timer parseTimer;
+    private final @NotNull Timer validateTimer;
+    private final @NotNull Timer archiveTimer;
+    private final @NotNull Timer applyTimer;
+    private final @NotNull Timer totalTimer;
+    private final @NotNull Counter readFailures;
+    private final @NotNull Counter validationFailures;
+    private final @NotNull Counter archiveFailures;
+    private final @NotNull Counter journalEntriesApplied;
+    private final @NotNull Counter journalEntriesRejected;
+
+    private volatile long lastSuccessTimestamp;
+    private volatile long users;
+    private volatile long roles;
+    private volatile long permissions;
+    private volatile long heapBytes;
+
+    ReloadMetrics(final @NotNull MetricRegistry metricRegistry, final @NotNull LongSupplier generation) {
+        parseTimer = metricRegistry.timer(PARSE_TIME);
+        validateTimer = metricRegistry.timer(VALIDATE_TIME);
+        archiveTimer = metricRegistry.timer(ARCHIVE_TIME);
+        applyTimer = metricRegistry.timer(APPLY_TIME);
+        totalTimer = metricRegistry.timer(TOTAL_TIME);
+        readFailures = metricRegistry.counter(READ_FAILURES);
+        validationFailures = metricRegistry.counter(VALIDATION_FAILURES);
+        archiveFailures = metricRegistry.counter(ARCHIVE_FAILURES);
+        journalEntriesApplied = metricRegistry.counter(JOURNAL_ENTRIES_APPLIED);
+        journalEntriesRejected = metricRegistry.counter(JOURNAL_ENTRIES_REJECTED);
+        registerGauge(metricRegistry, LAST_SUCCESS_TIMESTAMP, () -> lastSuccessTimestamp);
+        registerGauge(metricRegistry, GENERATION, generation);
+        registerGauge(metricRegistry, USER_COUNT, () -> users);
+        registerGauge(metricRegistry, ROLE_COUNT, () -> roles);
+        registerGauge(metricRegistry, PERMISSION_COUNT, () -> permissions);
+        registerGauge(metricRegistry, HEAP_BYTES, () -> heapBytes);
+    }
+
+    @NotNull Timer getParseTimer() {
+        return parseTimer;
+    }
+
+    @NotNull Timer getValidateTimer() {
+        return validateTimer;
+    }
+
+    @NotNull Timer getArchiveTimer() {
+        return archiveTimer;
+    }
+
+    @NotNull Timer getApplyTimer() {
+        return applyTimer;
+    }
+
+    @NotNull Timer getTotalTimer() {
+        return totalTimer;
+    }
+
+    void readFailed() {
+        readFailures.inc();
+    }
+
+    void validationFailed() {
+        validationFailures.inc();
+    }
+
+    void archiveFailed() {
+        archiveFailures.inc();
+    }
+
+    void journalEntryApplied() {
+        journalEntriesApplied.inc();
+    }
+
+    void journalEntryRejected() {
+        journalEntriesRejected.inc();
+    }
+
+    /**
+     * Updates the gauges after a config was successfully loaded and applied.
+     *
+     * @param config          the config that is now in use
+     * @param flattenedConfig the flattened config that is held by the credentials stores
+     */
+    void configApplied(final @NotNull FileAuthConfig config, final @NotNull FileAuthConfig flattenedConfig) {
+        final List<Role> configRoles = config.getRoles();
+        long permissionCount = 0;
+        if (configRoles != null) {
+            for (final Role role : configRoles) {
+                if (role.getPermissions() != null) {
+                    permissionCount += role.getPermissions().size();
+                }
+            }
+        }
+        users = config.getUsers() == null ? 0 : config.getUsers().size();
+        roles = configRoles == null ? 0 : configRoles.size();
+        permissions = permissionCount;
+        heapBytes = HeapFootprint.estimate(flattenedConfig);
+        lastSuccessTimestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Updates the gauges after users of the credentials journal were applied without changing the roles.
+     * <p>
+     * Called only by the serialized updates of the credentials configuration.
+     *
+     * @param userDelta      the amount of added minus the amount of removed users
+     * @param heapBytesDelta the estimated bytes of the new users minus the estimated bytes of the replaced users
+     */
+    void usersApplied(final long userDelta, final long heapBytesDelta) {
+        users += userDelta;
+        heapBytes += heapBytesDelta;
+        lastSuccessTimestamp = System.currentTimeMillis();
+    }
+
+    long getReadFailures() {
+        return readFailures.getCount();
+    }
+
+    long getValidationFailures() {
+        return validationFailures.getCount();
+    }
+
+    long getJournalEntriesApplied() {
+        return journalEntriesApplied.getCount();
+    }
+
+    long getJournalEntriesRejected() {
+        return journalEntriesRejected.getCount();
+    }
+
+    long getLastSuccessTimestamp() {
+        return lastSuccessTimestamp;
+    }
+
+    long getUsers() {
+        return users;
+    }
+
+    long getRoles() {
+        return roles;
+    }
+
+    long getPermissions() {
+        return permissions;
+    }
+
+    long getHeapBytes() {
+        return heapBytes;
+    }
+
+    private static void registerGauge(
+            final @NotNull MetricRegistry metricRegistry,
+            final @NotNull String name,
+            final @NotNull LongSupplier value) {
+        metricRegistry.gauge(name, () -> (Gauge<Long>) value::getAsLong);
+    }
+}
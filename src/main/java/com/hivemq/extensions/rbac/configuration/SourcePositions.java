@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Group;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lines and columns of the users, roles, groups and user patterns of the credentials files, so validation errors
+ * can point to the invalid entry.
+ * <p>
+ * The positions are captured while a file is parsed and are kept in the order of the entries of the file, packed into
+ * one long per entry, so they can be kept for all parsed files. The positions of merged files keep the positions of
+ * every file with the index of its first entry in the merged lists.
+ */
+@Immutable
+class SourcePositions {
+
+    static final @NotNull SourcePositions NONE = new SourcePositions(new Segment[Kind.values().length][0]);
+
+    enum Kind {
+        USER,
+        ROLE,
+        GROUP,
+        USER_PATTERN
+    }
+
+    //the segments of every kind, ordered by the index of their first entry
+    private final @NotNull Segment @NotNull [] @NotNull [] segments;
+
+    private SourcePositions(final @NotNull Segment @NotNull [] @NotNull [] segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Combines the positions of files in the order in which their entries are merged.
+     *
+     * @param configs   the configs by the name of their file, in the order in which they are merged
+     * @param positions the positions by the name of their file, files without positions are skipped
+     * @return the positions of the entries of the merged config
+     */
+    static @NotNull SourcePositions merge(
+            final @NotNull Map<String, FileAuthConfig> configs, final @NotNull Map<String, SourcePositions> positions) {
+        final Kind[] kinds = Kind.values();
+        final Segment[][] mergedSegments = new Segment[kinds.length][];
+        for (final Kind kind : kinds) {
+            final List<Segment> kindSegments = new ArrayList<>();
+            int offset = 0;
+            for (final Map.Entry<String, FileAuthConfig> entry : configs.entrySet()) {
+                final SourcePositions filePositions = positions.get(entry.getKey());
+                if (filePositions != null) {
+                    for (final Segment segment : filePositions.segments[kind.ordinal()]) {
+                        kindSegments.add(new Segment(segment.fileName, offset + segment.offset, segment.positions));
+                    }
+                }
+                offset += size(entry.getValue(), kind);
+            }
+            mergedSegments[kind.ordinal()] = kindSegments.toArray(new Segment[0]);
+        }
+        return new SourcePositions(mergedSegments);
+    }
+
+    /**
+     * @param kind  the kind of the entry
+     * @param index the index of the entry in the list of its kind
+     * @return the position of the entry to append to an error, empty if the position is unknown
+     */
+    @NotNull String describe(final @NotNull Kind kind, final int index) {
+        final Segment[] kindSegments = segments[kind.ordinal()];
+        for (int i = kindSegments.length - 1; i >= 0; i--) {
+            final Segment segment = kindSegments[i];
+            if (segment.offset <= index) {
+                final int position = index - segment.offset;
+                final long packed = position < segment.positions.length ? segment.positions[position] : 0;
+                if (packed == 0) {
+                    return "";
+                }
+                return " (" + (segment.fileName.isEmpty() ? "" : segment.fileName + ", ") + "line " +
+                        (packed >>> 32) + ", column " + (int) packed + ")";
+            }
+        }
+        return "";
+    }
+
+    private static int size(final @NotNull FileAuthConfig config, final @NotNull Kind kind) {
+        final List<?> entries;
+        switch (kind) {
+            case USER:
+                entries = config.getUsers();
+                break;
+            case ROLE:
+                entries = config.getRoles();
+                break;
+            case GROUP:
+                entries = config.getGroups();
+                break;
+            default:
+                entries = config.getUserPatterns();
+        }
+        return entries == null ? 0 : entries.size();
+    }
+
+    /**
+     * Records the positions of the entries of one file while it is parsed.
+     * <p>
+     * Not thread safe, a file is parsed by a single thread.
+     */
+    static class Recorder {
+
+        private final long @NotNull [] @NotNull [] positions = new long[Kind.values().length][16];
+        private final int @NotNull [] sizes = new int[Kind.values().length];
+
+        /**
+         * @param entry  an unmarshalled object, only users, roles, groups and user patterns are recorded
+         * @param line   the line of the element of the entry
+         * @param column the column of the element of the entry
+         */
+        void record(final @Nullable Object entry, final int line, final int column) {
+            final Kind kind;
+            if (entry instanceof User) {
+                kind = Kind.USER;
+            } else if (entry instanceof Role) {
+                kind = Kind.ROLE;
+            } else if (entry instanceof Group) {
+                kind = Kind.GROUP;
+            } else if (entry instanceof UserPattern) {
+                kind = Kind.USER_PATTERN;
+            } else {
+                return;
+            }
+            final int ordinal = kind.ordinal();
+            if (sizes[ordinal] == positions[ordinal].length) {
+                positions[ordinal] = Arrays.copyOf(positions[ordinal], sizes[ordinal] * 2);
+            }
+            //an unknown position is recorded as 0, so the entries keep their index
+            positions[ordinal][sizes[ordinal]++] = line < 1 ? 0 : ((long) line << 32) | Math.max(column, 0);
+        }
+
+        /**
+         * @param fileName the name of the file that is reported with the positions, may be empty
+         * @return the recorded positions
+         */
+        @NotNull SourcePositions build(final @NotNull String fileName) {
+            final Segment[][] fileSegments = new Segment[positions.length][];
+            for (int i = 0; i < positions.length; i++) {
+                fileSegments[i] = new Segment[]{new Segment(fileName, 0, Arrays.copyOf(positions[i], sizes[i]))};
+            }
+            return new SourcePositions(fileSegments);
+        }
+    }
+
+    private static class Segment {
+
+        private final @NotNull String fileName;
+        private final int offset;
+        private final long @NotNull [] positions;
+
+        Segment(final @NotNull String fileName, final int offset, final long @NotNull [] positions) {
+            this.fileName = fileName;
+            this.offset = offset;
+            this.positions = positions;
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.hivemq.extensions.rbac.configuration;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
@@ -28,25 +29,44 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
-
+/**
+ * Reads and writes the XML configuration files.
+ * <p>
+ * Building a JAXB context introspects all entity classes and takes longer than parsing a typical configuration, so
+ * all parsers share one context, which is built by the first parser that is created.
+ */
 @ThreadSafe
-class XmlParser {
+public class XmlParser {
 
     private static final @NotNull Logger LOG = LoggerFactory.getLogger(XmlParser.class);
 
-    //jaxb context is thread safe
+    //guarded by XmlParser.class, jaxb context is thread safe
+    private static @Nullable JAXBContext sharedContext;
+
     private final @NotNull JAXBContext jaxb;
 
-    XmlParser() {
-        try {
-            jaxb = JAXBContext.newInstance(FileAuthConfig.class, User.class, ExtensionConfig.class);
-        } catch (final JAXBException e) {
-            LOG.error("Error in the File Auth Extension. Could not initialize XML parser", e);
-            throw new RuntimeException(e);
+    public XmlParser() {
+        jaxb = getSharedContext();
+    }
+
+    private static synchronized @NotNull JAXBContext getSharedContext() {
+        if (sharedContext == null) {
+            try {
+                sharedContext = JAXBContext.newInstance(FileAuthConfig.class, User.class, ExtensionConfig.class);
+            } catch (final JAXBException e) {
+                LOG.error("Error in the File Auth Extension. Could not initialize XML parser", e);
+                throw new RuntimeException(e);
+            }
         }
+        return sharedContext;
     }
 
     /**
@@ -58,7 +78,7 @@ class XmlParser {
      * @param file   the file where the XML should be written to
      * @throws NotMarshallableException if the XML cannot be marshalled
      */
-    void marshal(final @NotNull FileAuthConfig config, final @NotNull File file)
+    public void marshal(final @NotNull FileAuthConfig config, final @NotNull File file)
             throws NotMarshallableException {
         if (file.isDirectory()) {
             throw new NotMarshallableException("Could not write config to file " +
@@ -83,7 +103,7 @@ class XmlParser {
         }
     }
 
-    @NotNull FileAuthConfig unmarshalFileAuthConfig(final @NotNull File file) throws IOException {
+    public @NotNull FileAuthConfig unmarshalFileAuthConfig(final @NotNull File file) throws IOException {
         try {
             final Unmarshaller unmarshaller = jaxb.createUnmarshaller();
             return (FileAuthConfig) unmarshaller.unmarshal(file);
@@ -92,6 +112,56 @@ class XmlParser {
         }
     }
 
+    public @NotNull FileAuthConfig unmarshalFileAuthConfig(final @NotNull InputStream inputStream)
+            throws IOException {
+        try {
+            final Unmarshaller unmarshaller = jaxb.createUnmarshaller();
+            return (FileAuthConfig) unmarshaller.unmarshal(inputStream);
+        } catch (final JAXBException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Parses a credentials file and records the positions of its entries.
+     *
+     * @param inputStream the content of the file
+     * @param recorder    the recorder the positions of the users, roles, groups and user patterns are recorded in
+     * @return the parsed config
+     * @throws IOException if the content could not be parsed
+     */
+    @NotNull FileAuthConfig unmarshalFileAuthConfig(
+            final @NotNull InputStream inputStream, final @NotNull SourcePositions.Recorder recorder)
+            throws IOException {
+        final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(inputStream);
+            final XMLStreamReader streamReader = reader;
+            final Unmarshaller unmarshaller = jaxb.createUnmarshaller();
+            unmarshaller.setListener(new Unmarshaller.Listener() {
+                @Override
+                public void beforeUnmarshal(final @NotNull Object target, final @Nullable Object parent) {
+                    //the reader is positioned at the start element of the target
+                    final Location location = streamReader.getLocation();
+                    recorder.record(target, location.getLineNumber(), location.getColumnNumber());
+                }
+            });
+            return (FileAuthConfig) unmarshaller.unmarshal(reader);
+        } catch (final JAXBException | XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final XMLStreamException ignored) {
+                    //the input stream is closed by the caller
+                }
+            }
+        }
+    }
+
     @NotNull ExtensionConfig unmarshalExtensionConfig(final @NotNull File file) throws IOException {
         try {
             final Unmarshaller unmarshaller = jaxb.createUnmarshaller();
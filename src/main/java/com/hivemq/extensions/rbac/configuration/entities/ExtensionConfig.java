@@ -42,9 +42,66 @@ public class ExtensionConfig {
     @XmlElement(name = "password-type", defaultValue = "HASHED")
     private @Nullable PasswordType passwordType = PasswordType.HASHED;
 
+    @XmlElement(name = "credentials-store", defaultValue = "MEMORY")
+    private @Nullable CredentialsStoreType credentialsStore = CredentialsStoreType.MEMORY;
+
     @XmlElement(name = "next-extension-instead-of-fail", defaultValue = "false")
     private boolean nextExtensionInsteadOfFail = false;
 
+    @XmlElement(name = "jfr-event-threshold", defaultValue = "0")
+    private long jfrEventThreshold = 0;
+
+    @XmlElement(name = "journal-poll-interval", defaultValue = "100")
+    private long journalPollInterval = 100;
+
+    @XmlElement(name = "journal-compaction-threshold", defaultValue = "1000")
+    private int journalCompactionThreshold = 1000;
+
+    @XmlElement(name = "admin-socket")
+    private @Nullable String adminSocket;
+
+    @XmlElement(name = "archive-max-files", defaultValue = "0")
+    private int archiveMaxFiles = 0;
+
+    @XmlElement(name = "archive-max-age", defaultValue = "0")
+    private int archiveMaxAge = 0;
+
+    @XmlElement(name = "revocation-batch-size", defaultValue = "1000")
+    private int revocationBatchSize = 1000;
+
+    @XmlElement(name = "revocation-batch-interval", defaultValue = "1000")
+    private long revocationBatchInterval = 1000;
+
+    @XmlElement(name = "quota-max-delay", defaultValue = "1000")
+    private long quotaMaxDelay = 1000;
+
+    @XmlElement(name = "warm-cache-size", defaultValue = "0")
+    private int warmCacheSize = 0;
+
+    @XmlElement(name = "warm-cache-max-age", defaultValue = "86400")
+    private long warmCacheMaxAge = 86400;
+
+    @XmlElement(name = "warm-cache-save-interval", defaultValue = "60")
+    private long warmCacheSaveInterval = 60;
+
+    @XmlElement(name = "warm-up-time", defaultValue = "0")
+    private long warmUpTime = 0;
+
+    @XmlElement(name = "validation-max-errors", defaultValue = "100")
+    private int validationMaxErrors = 100;
+
+    @XmlElement(name = "hash-cache-size", defaultValue = "1000")
+    private int hashCacheSize = 1000;
+
+    @XmlElement(name = "hash-cache-expiry", defaultValue = "30")
+    private long hashCacheExpiry = 30;
+
+    @XmlElement(name = "trace-max-files", defaultValue = "0")
+    private int traceMaxFiles = 0;
+
+    @XmlElement(name = "trace-file-size", defaultValue = "64")
+    private int traceFileSize = 64;
+
     public ExtensionConfig() {
     }
 
@@ -79,10 +136,223 @@ public class ExtensionConfig {
         this.passwordType = passwordType;
     }
 
+    /**
+     * @return how users and roles are stored for the lookups during authentication
+     */
+    public @Nullable CredentialsStoreType getCredentialsStore() {
+        return credentialsStore;
+    }
+
+    public void setCredentialsStore(final @Nullable CredentialsStoreType credentialsStore) {
+        this.credentialsStore = credentialsStore;
+    }
+
     public boolean isNextExtensionInsteadOfFail() {
         return nextExtensionInsteadOfFail;
     }
 
+    /**
+     * @return the minimum duration in milliseconds of an authentication for its JFR events to be recorded
+     */
+    public long getJfrEventThreshold() {
+        return jfrEventThreshold;
+    }
+
+    public void setJfrEventThreshold(final long jfrEventThreshold) {
+        this.jfrEventThreshold = jfrEventThreshold;
+    }
+
+    /**
+     * @return the interval in milliseconds in which the credentials journal is checked for new entries, 0 to disable
+     * the journal
+     */
+    public long getJournalPollInterval() {
+        return journalPollInterval;
+    }
+
+    public void setJournalPollInterval(final long journalPollInterval) {
+        this.journalPollInterval = journalPollInterval;
+    }
+
+    /**
+     * @return the amount of applied journal entries after which the journal is compacted
+     */
+    public int getJournalCompactionThreshold() {
+        return journalCompactionThreshold;
+    }
+
+    public void setJournalCompactionThreshold(final int journalCompactionThreshold) {
+        this.journalCompactionThreshold = journalCompactionThreshold;
+    }
+
+    /**
+     * @return the path of the Unix domain socket of the admin channel, relative to the extension folder, or null if
+     * the admin channel is disabled
+     */
+    public @Nullable String getAdminSocket() {
+        return adminSocket;
+    }
+
+    public void setAdminSocket(final @Nullable String adminSocket) {
+        this.adminSocket = adminSocket;
+    }
+
+    /**
+     * @return the maximum amount of archived credentials files to keep, 0 for no limit
+     */
+    public int getArchiveMaxFiles() {
+        return archiveMaxFiles;
+    }
+
+    public void setArchiveMaxFiles(final int archiveMaxFiles) {
+        this.archiveMaxFiles = archiveMaxFiles;
+    }
+
+    /**
+     * @return the maximum age in days of archived credentials files to keep, 0 for no limit
+     */
+    public int getArchiveMaxAge() {
+        return archiveMaxAge;
+    }
+
+    public void setArchiveMaxAge(final int archiveMaxAge) {
+        this.archiveMaxAge = archiveMaxAge;
+    }
+
+    /**
+     * @return the maximum amount of clients whose access was revoked by a reload that are disconnected at once, 0 to
+     * keep these clients connected
+     */
+    public int getRevocationBatchSize() {
+        return revocationBatchSize;
+    }
+
+    public void setRevocationBatchSize(final int revocationBatchSize) {
+        this.revocationBatchSize = revocationBatchSize;
+    }
+
+    /**
+     * @return the interval in milliseconds between the batches of disconnected clients
+     */
+    public long getRevocationBatchInterval() {
+        return revocationBatchInterval;
+    }
+
+    public void setRevocationBatchInterval(final long revocationBatchInterval) {
+        this.revocationBatchInterval = revocationBatchInterval;
+    }
+
+    /**
+     * @return the maximum time in milliseconds a PUBLISH that exceeds the rate quota of a client is delayed before it
+     * is dropped instead, 0 to drop these messages at once
+     */
+    public long getQuotaMaxDelay() {
+        return quotaMaxDelay;
+    }
+
+    public void setQuotaMaxDelay(final long quotaMaxDelay) {
+        this.quotaMaxDelay = quotaMaxDelay;
+    }
+
+    /**
+     * @return the maximum amount of verified credentials that are kept across restarts, 0 to disable the warm cache
+     */
+    public int getWarmCacheSize() {
+        return warmCacheSize;
+    }
+
+    public void setWarmCacheSize(final int warmCacheSize) {
+        this.warmCacheSize = warmCacheSize;
+    }
+
+    /**
+     * @return the time in seconds a verification in the warm cache is valid
+     */
+    public long getWarmCacheMaxAge() {
+        return warmCacheMaxAge;
+    }
+
+    public void setWarmCacheMaxAge(final long warmCacheMaxAge) {
+        this.warmCacheMaxAge = warmCacheMaxAge;
+    }
+
+    /**
+     * @return the interval in seconds in which the warm cache is saved, 0 to save it only when the extension stops
+     */
+    public long getWarmCacheSaveInterval() {
+        return warmCacheSaveInterval;
+    }
+
+    public void setWarmCacheSaveInterval(final long warmCacheSaveInterval) {
+        this.warmCacheSaveInterval = warmCacheSaveInterval;
+    }
+
+    /**
+     * @return the maximum time in milliseconds of the warm-up before the authenticator is registered, 0 to disable it
+     */
+    public long getWarmUpTime() {
+        return warmUpTime;
+    }
+
+    public void setWarmUpTime(final long warmUpTime) {
+        this.warmUpTime = warmUpTime;
+    }
+
+    /**
+     * @return the amount of errors after which the validation of a credentials configuration stops
+     */
+    public int getValidationMaxErrors() {
+        return validationMaxErrors;
+    }
+
+    public void setValidationMaxErrors(final int validationMaxErrors) {
+        this.validationMaxErrors = validationMaxErrors;
+    }
+
+    /**
+     * @return the maximum amount of password hashes that are cached, 0 to disable the hash cache
+     */
+    public int getHashCacheSize() {
+        return hashCacheSize;
+    }
+
+    public void setHashCacheSize(final int hashCacheSize) {
+        this.hashCacheSize = hashCacheSize;
+    }
+
+    /**
+     * @return the time in seconds a password hash is cached
+     */
+    public long getHashCacheExpiry() {
+        return hashCacheExpiry;
+    }
+
+    public void setHashCacheExpiry(final long hashCacheExpiry) {
+        this.hashCacheExpiry = hashCacheExpiry;
+    }
+
+    /**
+     * @return the maximum amount of authentication trace files that are kept, 0 to disable the trace
+     */
+    public int getTraceMaxFiles() {
+        return traceMaxFiles;
+    }
+
+    public void setTraceMaxFiles(final int traceMaxFiles) {
+        this.traceMaxFiles = traceMaxFiles;
+    }
+
+    /**
+     * @return the size in megabytes after which a new authentication trace file is started
+     */
+    public int getTraceFileSize() {
+        return traceFileSize;
+    }
+
+    public void setTraceFileSize(final int traceFileSize) {
+        this.traceFileSize = traceFileSize;
+    }
+
     @Override
     public @NotNull String toString() {
         return "ExtensionConfig{" +
@@ -92,8 +362,46 @@ public class ExtensionConfig {
                 listenerNames +
                 ", passwordType=" +
                 passwordType +
+                ", credentialsStore=" +
+                credentialsStore +
                 ", nextExtensionInsteadOfFail=" +
                 nextExtensionInsteadOfFail +
+                ", jfrEventThreshold=" +
+                jfrEventThreshold +
+                ", journalPollInterval=" +
+                journalPollInterval +
+                ", journalCompactionThreshold=" +
+                journalCompactionThreshold +
+                ", adminSocket=" +
+                adminSocket +
+                ", archiveMaxFiles=" +
+                archiveMaxFiles +
+                ", archiveMaxAge=" +
+                archiveMaxAge +
+                ", revocationBatchSize=" +
+                revocationBatchSize +
+                ", revocationBatchInterval=" +
+                revocationBatchInterval +
+                ", quotaMaxDelay=" +
+                quotaMaxDelay +
+                ", warmCacheSize=" +
+                warmCacheSize +
+                ", warmCacheMaxAge=" +
+                warmCacheMaxAge +
+                ", warmCacheSaveInterval=" +
+                warmCacheSaveInterval +
+                ", warmUpTime=" +
+                warmUpTime +
+                ", validationMaxErrors=" +
+                validationMaxErrors +
+                ", hashCacheSize=" +
+                hashCacheSize +
+                ", hashCacheExpiry=" +
+                hashCacheExpiry +
+                ", traceMaxFiles=" +
+                traceMaxFiles +
+                ", traceFileSize=" +
+                traceFileSize +
                 '}';
     }
 }
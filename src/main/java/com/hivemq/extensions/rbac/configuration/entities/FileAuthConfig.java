@@ -40,6 +40,14 @@ public class FileAuthConfig {
     @XmlElement(name = "role")
     private @Nullable List<Role> roles;
 
+    @XmlElementWrapper(name = "groups")
+    @XmlElement(name = "group")
+    private @Nullable List<Group> groups;
+
+    @XmlElementWrapper(name = "user-patterns")
+    @XmlElement(name = "user-pattern")
+    private @Nullable List<UserPattern> userPatterns;
+
     public FileAuthConfig() {
     }
 
@@ -64,8 +72,25 @@ public class FileAuthConfig {
         this.roles = roles;
     }
 
+    public @Nullable List<Group> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(final @Nullable List<Group> groups) {
+        this.groups = groups;
+    }
+
+    public @Nullable List<UserPattern> getUserPatterns() {
+        return userPatterns;
+    }
+
+    public void setUserPatterns(final @Nullable List<UserPattern> userPatterns) {
+        this.userPatterns = userPatterns;
+    }
+
     @Override
     public @NotNull String toString() {
-        return "Config{" + "users=" + users + ", roles=" + roles + '}';
+        return "Config{" + "users=" + users + ", roles=" + roles + ", groups=" + groups + ", userPatterns=" +
+                userPatterns + '}';
     }
 }
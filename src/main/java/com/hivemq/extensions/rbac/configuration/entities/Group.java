@@ -0,0 +1,82 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration.entities;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlType;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A named set of roles that users are assigned to instead of assigning the roles to every user.
+ */
+@XmlType(propOrder = {})
+@XmlAccessorType(XmlAccessType.FIELD)
+public class Group {
+
+    @XmlElement(name = "id")
+    private @Nullable String id;
+
+    @XmlElementWrapper(name = "roles")
+    @XmlElement(name = "id")
+    private @Nullable List<String> roles;
+
+    public Group() {
+    }
+
+    public Group(final @Nullable String id, final @Nullable List<String> roles) {
+        this.id = id;
+        this.roles = roles;
+    }
+
+    public @Nullable String getId() {
+        return id;
+    }
+
+    public @Nullable List<String> getRoles() {
+        return roles;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Group that = (Group) o;
+        return Objects.equals(id, that.id) &&
+                Objects.equals(roles, that.roles);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, roles);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "Group{" + "id='" + id + '\'' + ", roles=" + roles + '}';
+    }
+}
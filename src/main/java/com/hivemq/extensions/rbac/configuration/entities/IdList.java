@@ -0,0 +1,124 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration.entities;
+
+import com.github.benmanes.caffeine.cache.Interner;
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of role or group ids that is shared by all users with the same ids.
+ * <p>
+ * Hundreds of thousands of users usually hold the same few roles, so the lists are interned instead of keeping a list
+ * and id strings per user. The ids themselves are interned as well, so lists with overlapping ids share their strings.
+ * Interned lists are only weakly referenced and are collected with the last user that holds them.
+ */
+@Immutable
+public final class IdList extends AbstractList<String> implements RandomAccess {
+
+    //cannot be contained in XML, so it does not clash with the ids of configured roles
+    private static final char COMBINED_ID_SEPARATOR = '\u0000';
+
+    private static final @NotNull Interner<IdList> LISTS = Interner.newWeakInterner();
+    private static final @NotNull Interner<String> IDS = Interner.newWeakInterner();
+
+    private final @NotNull String @NotNull [] ids;
+    private final int hashCode;
+    //computed once for the lists that are actually interned
+    private @Nullable String combinedId;
+
+    private IdList(final @NotNull String @NotNull [] ids) {
+        this.ids = ids;
+        hashCode = super.hashCode();
+    }
+
+    /**
+     * @param ids the ids or null
+     * @return the shared list with the same ids or null if the ids are null
+     */
+    public static @Nullable List<String> intern(final @Nullable List<String> ids) {
+        if (ids == null || ids instanceof IdList) {
+            return ids;
+        }
+        final String[] internedIds = new String[ids.size()];
+        for (int i = 0; i < internedIds.length; i++) {
+            final String id = ids.get(i);
+            internedIds[i] = id == null ? null : IDS.intern(id);
+        }
+        return LISTS.intern(new IdList(internedIds));
+    }
+
+    /**
+     * @param ids the ids
+     * @return the ids joined into one id, which is the only id itself if there is only one
+     */
+    public static @NotNull String combinedId(final @NotNull List<String> ids) {
+        if (ids instanceof IdList) {
+            final IdList idList = (IdList) ids;
+            String combinedId = idList.combinedId;
+            if (combinedId == null) {
+                //racy but idempotent, like String.hashCode
+                combinedId = join(ids);
+                idList.combinedId = combinedId;
+            }
+            return combinedId;
+        }
+        return join(ids);
+    }
+
+    @Override
+    public @NotNull String get(final int index) {
+        return ids[index];
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof IdList && hashCode != o.hashCode()) {
+            return false;
+        }
+        return super.equals(o);
+    }
+
+    private static @NotNull String join(final @NotNull List<String> ids) {
+        if (ids.size() == 1) {
+            return ids.get(0);
+        }
+        final StringBuilder combinedId = new StringBuilder();
+        for (final String id : ids) {
+            combinedId.append(COMBINED_ID_SEPARATOR).append(id);
+        }
+        return combinedId.toString();
+    }
+}
@@ -24,6 +24,7 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
+import java.util.Objects;
 
 @XmlType(propOrder = {})
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -99,6 +100,28 @@ public class Permission {
         this.sharedGroup = sharedGroup;
     }
 
+    @Override
+    public boolean equals(final @Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Permission that = (Permission) o;
+        return Objects.equals(topic, that.topic) &&
+                Objects.equals(activity, that.activity) &&
+                Objects.equals(qos, that.qos) &&
+                Objects.equals(retain, that.retain) &&
+                Objects.equals(sharedSubscription, that.sharedSubscription) &&
+                Objects.equals(sharedGroup, that.sharedGroup);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(topic, activity, qos, retain, sharedSubscription, sharedGroup);
+    }
+
     @Override
     public @NotNull String toString() {
         return "Permission{" +
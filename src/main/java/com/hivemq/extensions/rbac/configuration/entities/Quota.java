@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration.entities;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlTransient;
+import javax.xml.bind.annotation.XmlType;
+import java.util.Objects;
+
+/**
+ * The limits for the PUBLISH packets of every client that holds a role. A limit of 0 means no limit.
+ */
+@XmlType(propOrder = {})
+@XmlAccessorType(XmlAccessType.FIELD)
+public class Quota {
+
+    //null instead of 0, so limits that are not set are marshalled without the element
+    @XmlElement(name = "messages-per-second")
+    private @Nullable Long messagesPerSecond;
+
+    @XmlElement(name = "bytes-per-second")
+    private @Nullable Long bytesPerSecond;
+
+    @XmlElement(name = "max-payload-size")
+    private @Nullable Long maxPayloadSize;
+
+    //the role that declares the quota, set when the config is flattened so combined roles keep it
+    @XmlTransient
+    private @Nullable String roleId;
+
+    public Quota() {
+    }
+
+    public Quota(final long messagesPerSecond, final long bytesPerSecond, final long maxPayloadSize) {
+        this.messagesPerSecond = messagesPerSecond == 0 ? null : messagesPerSecond;
+        this.bytesPerSecond = bytesPerSecond == 0 ? null : bytesPerSecond;
+        this.maxPayloadSize = maxPayloadSize == 0 ? null : maxPayloadSize;
+    }
+
+    public Quota(final @NotNull Quota quota, final @Nullable String roleId) {
+        this.messagesPerSecond = quota.messagesPerSecond;
+        this.bytesPerSecond = quota.bytesPerSecond;
+        this.maxPayloadSize = quota.maxPayloadSize;
+        this.roleId = roleId;
+    }
+
+    public long getMessagesPerSecond() {
+        return messagesPerSecond == null ? 0 : messagesPerSecond;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond == null ? 0 : bytesPerSecond;
+    }
+
+    public long getMaxPayloadSize() {
+        return maxPayloadSize == null ? 0 : maxPayloadSize;
+    }
+
+    /**
+     * @return the id of the role that declares the quota or null if the config was not flattened
+     */
+    public @Nullable String getRoleId() {
+        return roleId;
+    }
+
+    /**
+     * @return true if at least one limit is set
+     */
+    public boolean isLimited() {
+        return getMessagesPerSecond() > 0 || getBytesPerSecond() > 0 || getMaxPayloadSize() > 0;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Quota that = (Quota) o;
+        return getMessagesPerSecond() == that.getMessagesPerSecond() &&
+                getBytesPerSecond() == that.getBytesPerSecond() &&
+                getMaxPayloadSize() == that.getMaxPayloadSize() &&
+                Objects.equals(roleId, that.roleId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getMessagesPerSecond(), getBytesPerSecond(), getMaxPayloadSize(), roleId);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "Quota{" + "messagesPerSecond=" + getMessagesPerSecond() + ", bytesPerSecond=" + getBytesPerSecond() +
+                ", maxPayloadSize=" + getMaxPayloadSize() + ", roleId='" + roleId + '\'' + '}';
+    }
+}
@@ -25,6 +25,7 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlType;
 import java.util.List;
+import java.util.Objects;
 
 @XmlType(propOrder = {})
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -37,6 +38,13 @@ public class Role {
     @XmlElement(name = "permission")
     private @Nullable List<Permission> permissions;
 
+    @XmlElementWrapper(name = "extends")
+    @XmlElement(name = "id")
+    private @Nullable List<String> extendedRoles;
+
+    @XmlElement(name = "quota")
+    private @Nullable Quota quota;
+
     public Role() {
     }
 
@@ -45,6 +53,15 @@ public class Role {
         this.permissions = permissions;
     }
 
+    public Role(
+            final @Nullable String id,
+            final @Nullable List<Permission> permissions,
+            final @Nullable List<String> extendedRoles) {
+        this.id = id;
+        this.permissions = permissions;
+        this.extendedRoles = extendedRoles;
+    }
+
     public @Nullable String getId() {
         return id;
     }
@@ -53,8 +70,47 @@ public class Role {
         return permissions;
     }
 
+    /**
+     * @return the ids of the roles whose permissions this role inherits, after its own permissions
+     */
+    public @Nullable List<String> getExtendedRoles() {
+        return extendedRoles;
+    }
+
+    /**
+     * @return the limits for the PUBLISH packets of the clients that hold this role or null for no limits
+     */
+    public @Nullable Quota getQuota() {
+        return quota;
+    }
+
+    public void setQuota(final @Nullable Quota quota) {
+        this.quota = quota;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Role that = (Role) o;
+        return Objects.equals(id, that.id) &&
+                Objects.equals(permissions, that.permissions) &&
+                Objects.equals(extendedRoles, that.extendedRoles) &&
+                Objects.equals(quota, that.quota);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, permissions, extendedRoles, quota);
+    }
+
     @Override
     public @NotNull String toString() {
-        return "Role{" + "id='" + id + '\'' + ", permissions=" + permissions + '}';
+        return "Role{" + "id='" + id + '\'' + ", permissions=" + permissions + ", extendedRoles=" + extendedRoles +
+                ", quota=" + quota + '}';
     }
 }
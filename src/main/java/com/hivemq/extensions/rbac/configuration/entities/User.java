@@ -19,6 +19,7 @@ package com.hivemq.extensions.rbac.configuration.entities;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
@@ -26,6 +27,7 @@ import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
 import java.util.List;
+import java.util.Objects;
 
 @XmlRootElement
 @XmlType(propOrder = {})
@@ -42,13 +44,41 @@ public class User {
     @XmlElement(name = "id")
     private @Nullable List<String> roles;
 
+    @XmlElementWrapper(name = "groups")
+    @XmlElement(name = "id")
+    private @Nullable List<String> groups;
+
+    //null instead of 0, so users without a limit are marshalled without the element
+    @XmlElement(name = "max-sessions")
+    private @Nullable Integer maxSessions;
+
     public User() {
     }
 
     public User(final @Nullable String name, final @Nullable String password, final @Nullable List<String> roles) {
         this.name = name;
         this.password = password;
-        this.roles = roles;
+        this.roles = IdList.intern(roles);
+    }
+
+    public User(
+            final @Nullable String name,
+            final @Nullable String password,
+            final @Nullable List<String> roles,
+            final @Nullable List<String> groups) {
+        this.name = name;
+        this.password = password;
+        this.roles = IdList.intern(roles);
+        this.groups = IdList.intern(groups);
+    }
+
+    /**
+     * Replaces the lists that were read from XML with the shared {@link IdList}s.
+     */
+    @SuppressWarnings("unused")
+    private void afterUnmarshal(final @NotNull Unmarshaller unmarshaller, final @Nullable Object parent) {
+        roles = IdList.intern(roles);
+        groups = IdList.intern(groups);
     }
 
     public @Nullable String getName() {
@@ -59,12 +89,56 @@ public class User {
         return password;
     }
 
+    public void setPassword(final @Nullable String password) {
+        this.password = password;
+    }
+
     public @Nullable List<String> getRoles() {
         return roles;
     }
 
+    /**
+     * @return the ids of the groups whose roles the user holds in addition to its own roles
+     */
+    public @Nullable List<String> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return the maximum amount of clients that can be connected with this user at the same time, 0 for no limit
+     */
+    public int getMaxSessions() {
+        return maxSessions == null ? 0 : maxSessions;
+    }
+
+    public void setMaxSessions(final int maxSessions) {
+        this.maxSessions = maxSessions == 0 ? null : maxSessions;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final User that = (User) o;
+        return Objects.equals(name, that.name) &&
+                Objects.equals(password, that.password) &&
+                Objects.equals(roles, that.roles) &&
+                Objects.equals(groups, that.groups) &&
+                getMaxSessions() == that.getMaxSessions();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, password, roles, groups, getMaxSessions());
+    }
+
     @Override
     public @NotNull String toString() {
-        return "User{" + "name='" + name + '\'' + ", password='" + password + '\'' + ", roles=" + roles + '}';
+        return "User{" + "name='" + name + '\'' + ", password='" + password + '\'' + ", roles=" + roles +
+                ", groups=" + groups + ", maxSessions=" + getMaxSessions() + '}';
     }
 }
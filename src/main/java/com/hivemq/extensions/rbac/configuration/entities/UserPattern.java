@@ -0,0 +1,181 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration.entities;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A user entry that applies to every user name that matches a prefix, a glob or a regular expression.
+ * <p>
+ * Either all matching users share the same password, or the password of every user is derived from its name with an
+ * HMAC secret.
+ */
+@XmlRootElement(name = "user-pattern")
+@XmlType(propOrder = {})
+@XmlAccessorType(XmlAccessType.FIELD)
+public class UserPattern {
+
+    @XmlElement(name = "prefix")
+    private @Nullable String prefix;
+
+    @XmlElement(name = "glob")
+    private @Nullable String glob;
+
+    @XmlElement(name = "regex")
+    private @Nullable String regex;
+
+    @XmlElement(name = "password")
+    private @Nullable String password;
+
+    @XmlElement(name = "hmac-secret")
+    private @Nullable String hmacSecret;
+
+    @XmlElementWrapper(name = "roles")
+    @XmlElement(name = "id")
+    private @Nullable List<String> roles;
+
+    @XmlElementWrapper(name = "groups")
+    @XmlElement(name = "id")
+    private @Nullable List<String> groups;
+
+    public UserPattern() {
+    }
+
+    public UserPattern(
+            final @Nullable String prefix,
+            final @Nullable String glob,
+            final @Nullable String regex,
+            final @Nullable String password,
+            final @Nullable String hmacSecret,
+            final @Nullable List<String> roles) {
+        this(prefix, glob, regex, password, hmacSecret, roles, null);
+    }
+
+    public UserPattern(
+            final @Nullable String prefix,
+            final @Nullable String glob,
+            final @Nullable String regex,
+            final @Nullable String password,
+            final @Nullable String hmacSecret,
+            final @Nullable List<String> roles,
+            final @Nullable List<String> groups) {
+        this.prefix = prefix;
+        this.glob = glob;
+        this.regex = regex;
+        this.password = password;
+        this.hmacSecret = hmacSecret;
+        this.roles = roles;
+        this.groups = groups;
+    }
+
+    /**
+     * @return the prefix of all user names this pattern applies to
+     */
+    public @Nullable String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return a glob of the user names this pattern applies to, <code>*</code> matches any amount of characters and
+     *         <code>?</code> matches one character
+     */
+    public @Nullable String getGlob() {
+        return glob;
+    }
+
+    /**
+     * @return a regular expression that matches the whole user names this pattern applies to
+     */
+    public @Nullable String getRegex() {
+        return regex;
+    }
+
+    /**
+     * @return the password all matching users share, in the configured password type
+     */
+    public @Nullable String getPassword() {
+        return password;
+    }
+
+    /**
+     * @return the secret the password of every matching user is derived from
+     */
+    public @Nullable String getHmacSecret() {
+        return hmacSecret;
+    }
+
+    public @Nullable List<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return the ids of the groups whose roles the matching users hold in addition to the roles of the pattern
+     */
+    public @Nullable List<String> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return the prefix, glob or regular expression of this pattern, whichever is set
+     */
+    public @Nullable String getExpression() {
+        if (prefix != null) {
+            return prefix;
+        }
+        return glob != null ? glob : regex;
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final UserPattern that = (UserPattern) o;
+        return Objects.equals(prefix, that.prefix) &&
+                Objects.equals(glob, that.glob) &&
+                Objects.equals(regex, that.regex) &&
+                Objects.equals(password, that.password) &&
+                Objects.equals(hmacSecret, that.hmacSecret) &&
+                Objects.equals(roles, that.roles) &&
+                Objects.equals(groups, that.groups);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(prefix, glob, regex, password, hmacSecret, roles, groups);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        //the HMAC secret is left out, it grants access to every matching user
+        return "UserPattern{" + "prefix='" + prefix + '\'' + ", glob='" + glob + '\'' + ", regex='" + regex + '\'' +
+                ", password='" + password + '\'' + ", roles=" + roles + ", groups=" + groups + '}';
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.generator;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.NotMarshallableException;
+import com.hivemq.extensions.rbac.configuration.XmlParser;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.utils.Hashing;
+import org.apache.commons.lang3.RandomStringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-hashes the passwords of existing users in a credentials file with a new amount of iterations.
+ * <p>
+ * Hashing is done in parallel and the migrated file replaces the original file with an atomic rename, so a running
+ * extension never reads a partially written credentials file.
+ */
+public class CredentialsMigrator {
+
+    @SuppressWarnings("unused")
+    @Parameter(names = {"--credentials", "-c"}, required = true, description = "The credentials file to migrate")
+    private @Nullable String credentials;
+
+    @SuppressWarnings("unused")
+    @Parameter(names = {"--passwords", "-p"},
+               required = true,
+               description = "A file with one 'username:password' line per user to migrate")
+    private @Nullable String passwords;
+
+    @SuppressWarnings({"FieldCanBeLocal", "CanBeFinal"})
+    @Parameter(names = {"--iterations", "-i"},
+               description = "The amount of hashing iterations for migrated users. Default: 100")
+    private int iterations = 100;
+
+    @SuppressWarnings({"FieldCanBeLocal", "CanBeFinal"})
+    @Parameter(names = {"--threads", "-t"},
+               description = "The amount of threads used for hashing. Default: amount of available processors")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = "--help", help = true)
+    private boolean help;
+
+    public static void main(final @NotNull String @NotNull [] args) {
+        try {
+            final CredentialsMigrator migrator = new CredentialsMigrator();
+            final JCommander jCommander = JCommander.newBuilder().addObject(migrator).build();
+            jCommander.parse(args);
+
+            if (migrator.help) {
+                jCommander.usage();
+                System.exit(0);
+            }
+            migrator.run();
+        } catch (final ParameterException e) {
+            System.err.println(e.getMessage());
+            e.getJCommander().usage();
+            System.exit(1);
+        }
+    }
+
+    private void run() {
+        if (iterations < 1) {
+            System.err.println("Iterations must be larger than 0");
+            System.exit(1);
+        }
+        if (threads < 1) {
+            System.err.println("Threads must be larger than 0");
+            System.exit(1);
+        }
+        final File credentialsFile = new File(Objects.requireNonNull(credentials));
+        final File passwordsFile = new File(Objects.requireNonNull(passwords));
+
+        final MigrationResult result;
+        try {
+            result = migrate(credentialsFile, readPasswords(passwordsFile), iterations, threads);
+        } catch (final IOException e) {
+            System.err.println("Migration failed: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Migration was interrupted, credentials file was not changed");
+            System.exit(1);
+            return;
+        }
+
+        final double seconds = Math.max(result.getDurationNanos(), 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("Migrated %d users to %d iterations in %.2f s (%.1f users/s) using %d threads%n",
+                result.getMigrated().size(),
+                iterations,
+                seconds,
+                result.getMigrated().size() / seconds,
+                threads);
+        for (final String userName : result.getMismatched()) {
+            System.out.println("Password does not match the current hash, not migrated: " + userName);
+        }
+        for (final String userName : result.getUnknown()) {
+            System.out.println("User not found in credentials file: " + userName);
+        }
+        for (final Map.Entry<String, Integer> weakUser : result.getWeak().entrySet()) {
+            System.out.println("User still uses " +
+                    (weakUser.getValue() < 0 ? "an unhashed password" : weakUser.getValue() + " iterations") +
+                    ": " +
+                    weakUser.getKey());
+        }
+    }
+
+    /**
+     * Reads plain text passwords from a file with one <code>username:password</code> entry per line.
+     * <p>
+     * Empty lines and lines starting with <code>#</code> are ignored. The line is split at the first colon, so
+     * passwords may contain colons but usernames may not.
+     *
+     * @param file the file to read
+     * @return the passwords by username
+     * @throws IOException if the file cannot be read or contains an invalid line
+     */
+    static @NotNull Map<String, String> readPasswords(final @NotNull File file) throws IOException {
+        final Map<String, String> passwords = new HashMap<>();
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i);
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            final int separator = line.indexOf(':');
+            if (separator < 1) {
+                throw new IOException("Invalid entry in line " + (i + 1) + " of " + file.getAbsolutePath());
+            }
+            passwords.put(line.substring(0, separator), line.substring(separator + 1));
+        }
+        return passwords;
+    }
+
+    /**
+     * Re-hashes the passwords of all users in the credentials file for which a plain text password is given and that
+     * use less than the requested amount of iterations.
+     * <p>
+     * The plain text password is verified against the current hash before it is re-hashed. The credentials file is
+     * only replaced if at least one user was migrated.
+     *
+     * @param credentialsFile the credentials file to migrate
+     * @param plainPasswords  the plain text passwords by username
+     * @param iterations      the amount of hashing iterations for migrated users
+     * @param threads         the amount of threads used for hashing
+     * @return the result of the migration
+     * @throws IOException          if the credentials file cannot be read or written
+     * @throws InterruptedException if the migration was interrupted, the credentials file is not changed in this case
+     */
+    static @NotNull MigrationResult migrate(
+            final @NotNull File credentialsFile,
+            final @NotNull Map<String, String> plainPasswords,
+            final int iterations,
+            final int threads) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final XmlParser xmlParser = new XmlParser();
+        final FileAuthConfig config = xmlParser.unmarshalFileAuthConfig(credentialsFile);
+        final List<User> users = config.getUsers() == null ? List.of() : config.getUsers();
+
+        final Set<String> unknown = new HashSet<>(plainPasswords.keySet());
+        final List<Callable<Boolean>> tasks = new ArrayList<>();
+        final List<User> migrationCandidates = new ArrayList<>();
+        for (final User user : users) {
+            unknown.remove(user.getName());
+            final String plainPassword = plainPasswords.get(user.getName());
+            if (plainPassword == null || user.getPassword() == null || getIterations(user.getPassword()) >= iterations) {
+                continue;
+            }
+            migrationCandidates.add(user);
+            tasks.add(() -> rehash(user, plainPassword, iterations));
+        }
+
+        final List<String> migrated = new ArrayList<>();
+        final List<String> mismatched = new ArrayList<>();
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Boolean>> futures = executorService.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                final String userName = migrationCandidates.get(i).getName();
+                if (futures.get(i).get()) {
+                    migrated.add(userName);
+                } else {
+                    mismatched.add(userName);
+                }
+            }
+        } catch (final ExecutionException e) {
+            throw new IOException("Hashing failed", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        final Map<String, Integer> weak = new TreeMap<>();
+        for (final User user : users) {
+            final int userIterations = user.getPassword() == null ? -1 : getIterations(user.getPassword());
+            if (userIterations < iterations) {
+                weak.put(user.getName(), userIterations);
+            }
+        }
+
+        if (!migrated.isEmpty()) {
+            writeAtomically(xmlParser, config, credentialsFile);
+        }
+        return new MigrationResult(migrated, mismatched, new ArrayList<>(unknown), weak, System.nanoTime() - start);
+    }
+
+    private static boolean rehash(final @NotNull User user, final @NotNull String plainPassword, final int iterations) {
+        final String base64Password =
+                Base64.getEncoder().encodeToString(plainPassword.getBytes(StandardCharsets.UTF_8));
+        final String password = Objects.requireNonNull(user.getPassword());
+        //a malformed password is reported as mismatched instead of aborting the whole migration
+        final int currentIterations = getIterations(password);
+        if (currentIterations < 1) {
+            return false;
+        }
+        final String[] saltPw = password.split(":");
+        final byte[] expectedHash;
+        try {
+            expectedHash = Base64.getDecoder().decode(saltPw[2]);
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+        final byte[] currentHash = Hashing.createHash(base64Password, saltPw[0], currentIterations);
+        //We use a time constant equality check for passwords to avoid timing attacks
+        if (!MessageDigest.isEqual(currentHash, expectedHash)) {
+            return false;
+        }
+        user.setPassword(PasswordGenerator.createPasswordString(plainPassword,
+                RandomStringUtils.randomAlphanumeric(32),
+                iterations));
+        return true;
+    }
+
+    /**
+     * @return the amount of iterations of a <code>salt:iterations:hash</code> string or -1 if it is not hashed
+     */
+    private static int getIterations(final @NotNull String password) {
+        final String[] saltPw = password.split(":");
+        if (saltPw.length != 3) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(saltPw[1]);
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeAtomically(
+            final @NotNull XmlParser xmlParser,
+            final @NotNull FileAuthConfig config,
+            final @NotNull File credentialsFile) throws IOException {
+        final File tempFile = new File(credentialsFile.getAbsoluteFile().getParentFile(),
+                credentialsFile.getName() + ".migration.tmp");
+        Files.deleteIfExists(tempFile.toPath());
+        try {
+            xmlParser.marshal(config, tempFile);
+            copyPermissions(credentialsFile.toPath(), tempFile.toPath());
+        } catch (final NotMarshallableException e) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw new IOException(e);
+        } catch (final IOException e) {
+            Files.deleteIfExists(tempFile.toPath());
+            throw e;
+        }
+        try {
+            Files.move(tempFile.toPath(),
+                    credentialsFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), credentialsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Copies the owner, group and permissions of the credentials file to the migrated file, so the migration does not
+     * make the credentials readable by other users. Nothing is copied if the file system does not support POSIX
+     * permissions.
+     */
+    private static void copyPermissions(final @NotNull Path source, final @NotNull Path target) throws IOException {
+        final PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (targetView == null) {
+            return;
+        }
+        final PosixFileAttributes sourceAttributes = Files.readAttributes(source, PosixFileAttributes.class);
+        final PosixFileAttributes targetAttributes = targetView.readAttributes();
+        //changing the owner and group requires privileges the migration usually does not need
+        try {
+            if (!sourceAttributes.owner().equals(targetAttributes.owner())) {
+                targetView.setOwner(sourceAttributes.owner());
+            }
+            if (!sourceAttributes.group().equals(targetAttributes.group())) {
+                targetView.setGroup(sourceAttributes.group());
+            }
+        } catch (final IOException e) {
+            System.err.println("Could not copy the owner of " + source + " to the migrated file: " + e.getMessage());
+        }
+        //the permissions are set last, as changing the owner may clear some of them
+        targetView.setPermissions(sourceAttributes.permissions());
+    }
+
+    static class MigrationResult {
+        private final @NotNull List<String> migrated;
+        private final @NotNull List<String> mismatched;
+        private final @NotNull List<String> unknown;
+        private final @NotNull Map<String, Integer> weak;
+        private final long durationNanos;
+
+        private MigrationResult(
+                final @NotNull List<String> migrated,
+                final @NotNull List<String> mismatched,
+                final @NotNull List<String> unknown,
+                final @NotNull Map<String, Integer> weak,
+                final long durationNanos) {
+            this.migrated = migrated;
+            this.mismatched = mismatched;
+            this.unknown = unknown;
+            this.weak = weak;
+            this.durationNanos = durationNanos;
+        }
+
+        public @NotNull List<String> getMigrated() {
+            return migrated;
+        }
+
+        public @NotNull List<String> getMismatched() {
+            return mismatched;
+        }
+
+        public @NotNull List<String> getUnknown() {
+            return unknown;
+        }
+
+        /**
+         * @return the iterations of all users that still use less than the requested amount, -1 for unhashed passwords
+         */
+        public @NotNull Map<String, Integer> getWeak() {
+            return weak;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+    }
+}
@@ -80,14 +80,27 @@ public class PasswordGenerator {
         if (salt == null) {
             salt = RandomStringUtils.randomAlphanumeric(32);
         }
-        final String base64Password = Base64.getEncoder().encodeToString(password.getBytes(StandardCharsets.UTF_8));
-        final String base64Salt = Base64.getEncoder().encodeToString(salt.getBytes(StandardCharsets.UTF_8));
-        final byte[] hash = Hashing.createHash(base64Password, base64Salt, iterations);
-        final String passwordString = base64Salt + ":" + iterations + ":" + Base64.getEncoder().encodeToString(hash);
+        final String passwordString = createPasswordString(password, salt, iterations);
         if (!quiet) {
             System.out.println("Add the following string as password to your credentials configuration file:\n" +
                     "----------------------------------------------------------------------------");
         }
         System.out.println(passwordString);
     }
+
+    /**
+     * Creates the <code>salt:iterations:hash</code> representation of a password, as expected in the credentials file.
+     *
+     * @param password   the plain text password
+     * @param salt       the salt to use for hashing
+     * @param iterations the amount of hashing iterations
+     * @return the hashed password string
+     */
+    static @NotNull String createPasswordString(
+            final @NotNull String password, final @NotNull String salt, final int iterations) {
+        final String base64Password = Base64.getEncoder().encodeToString(password.getBytes(StandardCharsets.UTF_8));
+        final String base64Salt = Base64.getEncoder().encodeToString(salt.getBytes(StandardCharsets.UTF_8));
+        final byte[] hash = Hashing.createHash(base64Password, base64Salt, iterations);
+        return base64Salt + ":" + iterations + ":" + Base64.getEncoder().encodeToString(hash);
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.generator;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.CredentialsFlattener;
+import com.hivemq.extensions.rbac.configuration.XmlParser;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.store.CredentialsSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Compiles a credentials configuration file into the snapshot file that is used by the {@code MAPPED} and
+ * {@code LAZY} credentials stores, so large credentials configurations do not have to be parsed by the extension.
+ */
+public class SnapshotCompiler {
+
+    @SuppressWarnings("unused")
+    @Parameter(names = {"--input", "-i"}, required = true, description = "The credentials configuration file")
+    private @Nullable String input;
+
+    @SuppressWarnings({"FieldCanBeLocal", "CanBeFinal"})
+    @Parameter(names = {"--output", "-o"}, description = "The snapshot file to write. Default: credentials.bin")
+    private @NotNull String output = "credentials.bin";
+
+    @Parameter(names = "--help", help = true)
+    private boolean help;
+
+    public static void main(final @NotNull String @NotNull [] args) {
+        try {
+            final SnapshotCompiler compiler = new SnapshotCompiler();
+            final JCommander jCommander = JCommander.newBuilder().addObject(compiler).build();
+            jCommander.parse(args);
+
+            if (compiler.help) {
+                jCommander.usage();
+                System.exit(0);
+            }
+            compiler.compile();
+        } catch (final ParameterException e) {
+            System.err.println(e.getMessage());
+            e.getJCommander().usage();
+            System.exit(1);
+        }
+    }
+
+    private void compile() {
+        if (input == null || !new File(input).isFile()) {
+            System.err.println("Credentials configuration file " + input + " does not exist");
+            System.exit(1);
+        }
+        try {
+            final FileAuthConfig config = new XmlParser().unmarshalFileAuthConfig(new File(input));
+            CredentialsSnapshot.write(CredentialsFlattener.flatten(config), Path.of(output).toAbsolutePath());
+            System.out.println("Compiled " +
+                    (config.getUsers() == null ? 0 : config.getUsers().size()) +
+                    " users, " +
+                    (config.getUserPatterns() == null ? 0 : config.getUserPatterns().size()) +
+                    " user patterns and " +
+                    (config.getRoles() == null ? 0 : config.getRoles().size()) +
+                    " roles into " +
+                    output);
+        } catch (final IOException e) {
+            System.err.println("Could not compile " + input + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
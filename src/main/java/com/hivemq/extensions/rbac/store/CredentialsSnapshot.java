@@ -0,0 +1,530 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled, read-only snapshot of users and roles that is looked up without loading it into heap.
+ * <p>
+ * The snapshot starts with a header, followed by the user, role and user pattern records and one open addressing hash
+ * table for users and one for roles. A table slot contains the position of a record or 0 if it is empty. The few user
+ * patterns are read into heap when the snapshot is opened. A record consists of its length and its fields. Strings
+ * are stored as their UTF-8 length followed by their UTF-8 bytes, permission attributes are stored as the names of
+ * their constants. All numbers are big endian.
+ * <pre>
+ * header  magic, version, user count, role count, user table position, role table position, user slots, role slots,
+ *         user pattern count, user pattern position
+ * user    name, password, max sessions, role count, role ids
+ * role    id, permission count, permissions (topic, activity, qos, retain, shared subscription, shared group),
+ *         quota flag, quota (role id, messages per second, bytes per second, max payload size)
+ * pattern prefix, glob, regex, password, hmac secret, role count, role ids
+ * </pre>
+ */
+@ThreadSafe
+public class CredentialsSnapshot {
+
+    static final int MAGIC = 0x46524253;
+    static final int VERSION = 4;
+    static final int HEADER_SIZE = 52;
+
+    private final @NotNull SnapshotSource source;
+    private final int userCount;
+    private final int roleCount;
+    private final long userTablePosition;
+    private final long roleTablePosition;
+    private final int userSlots;
+    private final int roleSlots;
+    private final @NotNull UserPatternMatcher userPatterns;
+
+    private CredentialsSnapshot(
+            final @NotNull SnapshotSource source,
+            final int userCount,
+            final int roleCount,
+            final long userTablePosition,
+            final long roleTablePosition,
+            final int userSlots,
+            final int roleSlots,
+            final @NotNull UserPatternMatcher userPatterns) {
+        this.source = source;
+        this.userCount = userCount;
+        this.roleCount = roleCount;
+        this.userTablePosition = userTablePosition;
+        this.roleTablePosition = roleTablePosition;
+        this.userSlots = userSlots;
+        this.roleSlots = roleSlots;
+        this.userPatterns = userPatterns;
+    }
+
+    /**
+     * Compiles the users and roles of a config into a snapshot file.
+     * <p>
+     * The snapshot is written to a temporary file first and then moved to the target file, so readers never see a
+     * partially written snapshot. The config must be valid and flattened by the
+     * {@link com.hivemq.extensions.rbac.configuration.CredentialsFlattener}, user names and role ids must be unique.
+     *
+     * @param config the config to compile
+     * @param file   the snapshot file
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void write(final @NotNull FileAuthConfig config, final @NotNull Path file) throws IOException {
+        final List<User> users = config.getUsers() == null ? List.of() : config.getUsers();
+        final List<Role> roles = config.getRoles() == null ? List.of() : config.getRoles();
+        final List<UserPattern> userPatterns = config.getUserPatterns() == null ? List.of() : config.getUserPatterns();
+        final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final RecordWriter writer = new RecordWriter(channel);
+
+            final long[] userPositions = new long[users.size()];
+            final byte[][] userKeys = new byte[users.size()][];
+            for (int i = 0; i < users.size(); i++) {
+                final User user = users.get(i);
+                final List<String> userRoles = user.getRoles() == null ? List.of() : user.getRoles();
+                userKeys[i] = utf8(user.getName());
+                userPositions[i] = writer.position();
+                final DataOutputStream record = writer.startRecord();
+                writeBytes(record, userKeys[i]);
+                writeString(record, user.getPassword());
+                record.writeInt(user.getMaxSessions());
+                record.writeInt(userRoles.size());
+                for (final String role : userRoles) {
+                    writeString(record, role);
+                }
+                writer.endRecord();
+            }
+
+            final long[] rolePositions = new long[roles.size()];
+            final byte[][] roleKeys = new byte[roles.size()][];
+            for (int i = 0; i < roles.size(); i++) {
+                final Role role = roles.get(i);
+                final List<Permission> permissions = role.getPermissions() == null ? List.of() : role.getPermissions();
+                roleKeys[i] = utf8(role.getId());
+                rolePositions[i] = writer.position();
+                final DataOutputStream record = writer.startRecord();
+                writeBytes(record, roleKeys[i]);
+                record.writeInt(permissions.size());
+                for (final Permission permission : permissions) {
+                    writeString(record, permission.getTopic());
+                    writeString(record, name(permission.getActivity()));
+                    writeString(record, name(permission.getQos()));
+                    writeString(record, name(permission.getRetain()));
+                    writeString(record, name(permission.getSharedSubscription()));
+                    writeString(record, permission.getSharedGroup());
+                }
+                final Quota quota = role.getQuota();
+                record.writeBoolean(quota != null);
+                if (quota != null) {
+                    writeString(record, quota.getRoleId());
+                    record.writeLong(quota.getMessagesPerSecond());
+                    record.writeLong(quota.getBytesPerSecond());
+                    record.writeLong(quota.getMaxPayloadSize());
+                }
+                writer.endRecord();
+            }
+
+            final long userPatternPosition = writer.position();
+            for (final UserPattern userPattern : userPatterns) {
+                final List<String> userPatternRoles =
+                        userPattern.getRoles() == null ? List.of() : userPattern.getRoles();
+                final DataOutputStream record = writer.startRecord();
+                writeString(record, userPattern.getPrefix());
+                writeString(record, userPattern.getGlob());
+                writeString(record, userPattern.getRegex());
+                writeString(record, userPattern.getPassword());
+                writeString(record, userPattern.getHmacSecret());
+                record.writeInt(userPatternRoles.size());
+                for (final String role : userPatternRoles) {
+                    writeString(record, role);
+                }
+                writer.endRecord();
+            }
+
+            final long userTablePosition = writer.position();
+            final int userSlots = writer.writeTable(userKeys, userPositions);
+            final long roleTablePosition = writer.position();
+            final int roleSlots = writer.writeTable(roleKeys, rolePositions);
+            writer.flush();
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(users.size())
+                    .putInt(roles.size())
+                    .putLong(userTablePosition)
+                    .putLong(roleTablePosition)
+                    .putInt(userSlots)
+                    .putInt(roleSlots)
+                    .putInt(userPatterns.size())
+                    .putLong(userPatternPosition)
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads the header of a snapshot.
+     *
+     * @param source the bytes of the snapshot, closed together with the snapshot
+     * @return the snapshot
+     * @throws IOException if the source is not a valid snapshot
+     */
+    static @NotNull CredentialsSnapshot open(final @NotNull SnapshotSource source) throws IOException {
+        if (source.size() < HEADER_SIZE) {
+            throw new IOException("Credentials snapshot is too small");
+        }
+        final byte[] headerBytes = new byte[HEADER_SIZE];
+        source.read(0, headerBytes, 0, HEADER_SIZE);
+        final ByteBuffer header = ByteBuffer.wrap(headerBytes);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("File is not a credentials snapshot");
+        }
+        final int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported credentials snapshot version " + version);
+        }
+        final int userCount = header.getInt();
+        final int roleCount = header.getInt();
+        final long userTablePosition = header.getLong();
+        final long roleTablePosition = header.getLong();
+        final int userSlots = header.getInt();
+        final int roleSlots = header.getInt();
+        final int userPatternCount = header.getInt();
+        final long userPatternPosition = header.getLong();
+        if (!isValidTable(userTablePosition, userSlots, source.size()) ||
+                !isValidTable(roleTablePosition, roleSlots, source.size()) || userPatternCount < 0 ||
+                userPatternPosition < HEADER_SIZE || userPatternPosition > source.size()) {
+            throw new IOException("Credentials snapshot is corrupt");
+        }
+        return new CredentialsSnapshot(source,
+                userCount,
+                roleCount,
+                userTablePosition,
+                roleTablePosition,
+                userSlots,
+                roleSlots,
+                readUserPatterns(source, userPatternPosition, userPatternCount));
+    }
+
+    private static @NotNull UserPatternMatcher readUserPatterns(
+            final @NotNull SnapshotSource source, final long position, final int count) throws IOException {
+        final List<UserPattern> userPatterns = new ArrayList<>();
+        long recordPosition = position;
+        final byte[] number = new byte[4];
+        for (int i = 0; i < count; i++) {
+            if (recordPosition + 4 > source.size()) {
+                throw new IOException("Credentials snapshot is corrupt");
+            }
+            source.read(recordPosition, number, 0, 4);
+            final int length = ByteBuffer.wrap(number).getInt();
+            if (length < 0 || recordPosition + 4 + length > source.size()) {
+                throw new IOException("Credentials snapshot is corrupt");
+            }
+            final byte[] recordBytes = new byte[length];
+            source.read(recordPosition + 4, recordBytes, 0, length);
+            final ByteBuffer record = ByteBuffer.wrap(recordBytes);
+            try {
+                final String prefix = emptyToNull(readString(record));
+                final String glob = emptyToNull(readString(record));
+                final String regex = emptyToNull(readString(record));
+                final String password = emptyToNull(readString(record));
+                final String hmacSecret = emptyToNull(readString(record));
+                final int roleCount = record.getInt();
+                final List<String> roles = new ArrayList<>(Math.min(roleCount, record.remaining() / 4));
+                for (int r = 0; r < roleCount; r++) {
+                    roles.add(readString(record));
+                }
+                userPatterns.add(new UserPattern(prefix, glob, regex, password, hmacSecret, roles));
+            } catch (final BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("User pattern record in the credentials snapshot is corrupt");
+            }
+            recordPosition += 4 + length;
+        }
+        try {
+            return UserPatternMatcher.compile(userPatterns);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("User pattern in the credentials snapshot is invalid: " + e.getMessage());
+        }
+    }
+
+    int getUserCount() {
+        return userCount;
+    }
+
+    int getRoleCount() {
+        return roleCount;
+    }
+
+    @NotNull UserPatternMatcher getUserPatterns() {
+        return userPatterns;
+    }
+
+    /**
+     * @param userName the name of the user
+     * @return the user or null if the snapshot contains no user with this name
+     * @throws IOException if the snapshot could not be read or is corrupt
+     */
+    @Nullable User readUser(final @NotNull String userName) throws IOException {
+        final ByteBuffer record = find(userTablePosition, userSlots, utf8(userName));
+        if (record == null) {
+            return null;
+        }
+        try {
+            final String password = readString(record);
+            final int maxSessions = record.getInt();
+            final int roleCount = record.getInt();
+            final List<String> roles = new ArrayList<>(Math.min(roleCount, record.remaining() / 4));
+            for (int i = 0; i < roleCount; i++) {
+                roles.add(readString(record));
+            }
+            final User user = new User(userName, password, roles);
+            user.setMaxSessions(maxSessions);
+            return user;
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Record of user '" + userName + "' in the credentials snapshot is corrupt");
+        }
+    }
+
+    /**
+     * @param roleId the id of the role
+     * @return the role or null if the snapshot contains no role with this id
+     * @throws IOException if the snapshot could not be read or is corrupt
+     */
+    @Nullable Role readRole(final @NotNull String roleId) throws IOException {
+        final ByteBuffer record = find(roleTablePosition, roleSlots, utf8(roleId));
+        if (record == null) {
+            return null;
+        }
+        try {
+            final int permissionCount = record.getInt();
+            final List<Permission> permissions = new ArrayList<>(Math.min(permissionCount, record.remaining() / 4));
+            for (int i = 0; i < permissionCount; i++) {
+                final Permission permission = new Permission(readString(record));
+                permission.setActivity(TopicPermission.MqttActivity.valueOf(readString(record)));
+                permission.setQos(TopicPermission.Qos.valueOf(readString(record)));
+                permission.setRetain(TopicPermission.Retain.valueOf(readString(record)));
+                permission.setSharedSubscription(TopicPermission.SharedSubscription.valueOf(readString(record)));
+                permission.setSharedGroup(readString(record));
+                permissions.add(permission);
+            }
+            final Role role = new Role(roleId, permissions);
+            if (record.get() != 0) {
+                final String quotaRoleId = readString(record);
+                final Quota quota = new Quota(record.getLong(), record.getLong(), record.getLong());
+                role.setQuota(new Quota(quota, quotaRoleId.isEmpty() ? null : quotaRoleId));
+            }
+            return role;
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Record of role '" + roleId + "' in the credentials snapshot is corrupt");
+        }
+    }
+
+    void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * @return the record positioned after its key or null if no record with the key exists
+     */
+    private @Nullable ByteBuffer find(final long tablePosition, final int slots, final byte @NotNull [] key)
+            throws IOException {
+        final int mask = slots - 1;
+        final byte[] number = new byte[8];
+        int slot = hash(key) & mask;
+        for (int probes = 0; probes < slots; probes++) {
+            source.read(tablePosition + (long) slot * 8, number, 0, 8);
+            final long recordPosition = ByteBuffer.wrap(number).getLong();
+            if (recordPosition == 0) {
+                return null;
+            }
+            if (recordPosition < HEADER_SIZE || recordPosition + 4 > source.size()) {
+                throw new IOException("Credentials snapshot is corrupt");
+            }
+            source.read(recordPosition, number, 0, 4);
+            final int length = ByteBuffer.wrap(number, 0, 4).getInt();
+            if (length < 4 || recordPosition + 4 + length > source.size()) {
+                throw new IOException("Credentials snapshot is corrupt");
+            }
+            final byte[] recordBytes = new byte[length];
+            source.read(recordPosition + 4, recordBytes, 0, length);
+            final ByteBuffer record = ByteBuffer.wrap(recordBytes);
+            final int keyLength = record.getInt();
+            if (keyLength == key.length && keyLength <= length - 4 &&
+                    Arrays.equals(recordBytes, 4, 4 + keyLength, key, 0, keyLength)) {
+                record.position(4 + keyLength);
+                return record;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static boolean isValidTable(final long tablePosition, final int slots, final long size) {
+        return slots > 0 && Integer.bitCount(slots) == 1 && tablePosition >= HEADER_SIZE &&
+                tablePosition + (long) slots * 8 <= size;
+    }
+
+    /**
+     * FNV-1a hash of the UTF-8 bytes of a key.
+     */
+    static int hash(final byte @NotNull [] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static @NotNull String readString(final @NotNull ByteBuffer record) {
+        final int length = record.getInt();
+        if (length < 0 || length > record.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final String string = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return string;
+    }
+
+    private static @Nullable String emptyToNull(final @NotNull String string) {
+        return string.isEmpty() ? null : string;
+    }
+
+    private static void writeString(final @NotNull DataOutputStream output, final @Nullable String string)
+            throws IOException {
+        writeBytes(output, utf8(string));
+    }
+
+    private static void writeBytes(final @NotNull DataOutputStream output, final byte @NotNull [] bytes)
+            throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static byte @NotNull [] utf8(final @Nullable String string) {
+        return string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static @NotNull String name(final @Nullable Enum<?> constant) {
+        return constant == null ? "" : constant.name();
+    }
+
+    /**
+     * Writes length prefixed records and hash tables and keeps track of the position in the file.
+     */
+    private static class RecordWriter {
+
+        private final @NotNull OutputStream output;
+        private final @NotNull ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        private final @NotNull DataOutputStream record = new DataOutputStream(recordBytes);
+        private long position = HEADER_SIZE;
+
+        RecordWriter(final @NotNull FileChannel channel) throws IOException {
+            channel.position(HEADER_SIZE);
+            output = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+        }
+
+        long position() {
+            return position;
+        }
+
+        @NotNull DataOutputStream startRecord() {
+            recordBytes.reset();
+            return record;
+        }
+
+        void endRecord() throws IOException {
+            writeInt(recordBytes.size());
+            recordBytes.writeTo(output);
+            position += recordBytes.size();
+        }
+
+        /**
+         * @return the amount of slots of the table, a power of two that is at least twice the amount of keys
+         */
+        int writeTable(final byte @NotNull [] @NotNull [] keys, final long @NotNull [] positions)
+                throws IOException {
+            final int slots = Integer.highestOneBit(Math.max(2, keys.length * 2) - 1) << 1;
+            final int mask = slots - 1;
+            final long[] table = new long[slots];
+            for (int i = 0; i < keys.length; i++) {
+                int slot = hash(keys[i]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = positions[i];
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(8);
+            for (final long recordPosition : table) {
+                buffer.clear();
+                output.write(buffer.putLong(recordPosition).array());
+            }
+            position += (long) slots * 8;
+            return slots;
+        }
+
+        void flush() throws IOException {
+            output.flush();
+        }
+
+        private void writeInt(final int value) throws IOException {
+            output.write(value >>> 24);
+            output.write(value >>> 16);
+            output.write(value >>> 8);
+            output.write(value);
+            position += 4;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+import com.hivemq.extensions.rbac.configuration.entities.CredentialsStoreType;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+
+import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The users and roles that are looked up during authentication.
+ * <p>
+ * Implementations decide how much of the credentials is kept in heap. A store must only return users whose roles can
+ * be looked up at the time the user is returned, but a role may be removed before it is looked up.
+ */
+@ThreadSafe
+public interface CredentialsStore {
+
+    /**
+     * Creates the store that is configured in the extension config.
+     *
+     * @param extensionHomeFolder      the extension folder
+     * @param extensionConfig          the extension config
+     * @param credentialsConfiguration the credentials configuration the store is updated from
+     * @param executorService          the executor for background checks of the store
+     * @return the new store, it must be initialized before it is used
+     */
+    static @NotNull CredentialsStore create(
+            final @NotNull File extensionHomeFolder,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull CredentialsConfiguration credentialsConfiguration,
+            final @NotNull ScheduledExecutorService executorService) {
+        final CredentialsStoreType type = extensionConfig.getCredentialsStore();
+        if (type == CredentialsStoreType.MAPPED) {
+            return new MappedCredentialsStore(extensionHomeFolder,
+                    credentialsConfiguration,
+                    executorService,
+                    extensionConfig.getReloadInterval());
+        }
+        if (type == CredentialsStoreType.LAZY) {
+            return new LazyCredentialsStore(extensionHomeFolder,
+                    credentialsConfiguration,
+                    executorService,
+                    extensionConfig.getReloadInterval());
+        }
+        return new InMemoryCredentialsStore(credentialsConfiguration);
+    }
+
+    /**
+     * Loads the current users and roles and starts following their changes.
+     */
+    void init();
+
+    /**
+     * @param userName the name of the user
+     * @return the user or null if no user with this name exists
+     */
+    @Nullable User lookupUser(@NotNull String userName);
+
+    /**
+     * @param roleId the id of the role
+     * @return the role or null if no role with this id exists
+     */
+    @Nullable Role lookupRole(@NotNull String roleId);
+
+    /**
+     * @param userName the name of a user that is not contained in the store
+     * @return the first user pattern that applies to the user name or null if no pattern applies
+     */
+    @Nullable UserPattern lookupUserPattern(@NotNull String userName);
+
+    /**
+     * @return true if the store contains neither users nor user patterns or no roles, in which case all clients are
+     *         denied
+     */
+    boolean isEmpty();
+
+    /**
+     * @return the generation of the users and roles, incremented for every change
+     */
+    long getGeneration();
+
+    /**
+     * @param listener the listener that is notified after the users or roles changed
+     */
+    void addChangeListener(@NotNull ChangeListener listener);
+
+    /**
+     * Releases the resources of the store.
+     */
+    default void close() {
+    }
+
+    /**
+     * A listener for changes of the users and roles of a store.
+     * <p>
+     * Listeners are not notified concurrently, so they must not block for too long.
+     */
+    interface ChangeListener {
+
+        /**
+         * @param generation the generation of the store after the change
+         */
+        void onChange(long generation);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A store that keeps all users and roles of the credentials configuration in heap.
+ * <p>
+ * Users are looked up in a {@link UserIndex} that is built from all users of a config. Reloads that only change a few
+ * users, like the entries of the journal, put the changed users into a small overlay map instead of building the whole
+ * index again, the index is rebuilt once the overlay has grown to a fraction of the index.
+ * <p>
+ * The index, the overlay, the roles and the user patterns are never modified after they were published. A reload
+ * builds a new {@link State} from the previous one and the changes and publishes it with a single write, so a lookup
+ * sees either all or none of the changes of a reload.
+ */
+@ThreadSafe
+public class InMemoryCredentialsStore implements CredentialsStore {
+
+    //marks a removed user in the overlay
+    private static final @NotNull User REMOVED = new User();
+    //the index is rebuilt when the overlay contains more than this fraction of the indexed users
+    private static final int REBUILD_DIVISOR = 16;
+
+    //null if the store contains a fixed config
+    private final @Nullable CredentialsConfiguration credentialsConfiguration;
+    private final @NotNull List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    //written only by the serialized reload callbacks
+    private volatile @NotNull State state = State.EMPTY;
+
+    public InMemoryCredentialsStore(final @NotNull CredentialsConfiguration credentialsConfiguration) {
+        this.credentialsConfiguration = credentialsConfiguration;
+    }
+
+    private InMemoryCredentialsStore() {
+        this.credentialsConfiguration = null;
+    }
+
+    /**
+     * Creates a store that contains a fixed config, which is loaded like the initial config of the credentials
+     * configuration, but never reloaded.
+     *
+     * @param config a config flattened by the {@link com.hivemq.extensions.rbac.configuration.CredentialsFlattener}
+     * @return the store, it does not need to be initialized
+     */
+    public static @NotNull InMemoryCredentialsStore of(final @NotNull FileAuthConfig config) {
+        final InMemoryCredentialsStore store = new InMemoryCredentialsStore();
+        store.applyDiff(CredentialsDiff.compute(null, config));
+        return store;
+    }
+
+    @Override
+    public void init() {
+        if (credentialsConfiguration == null) {
+            return;
+        }
+        final FileAuthConfig currentConfig = credentialsConfiguration.getCurrentConfig();
+        if (currentConfig != null) {
+            applyDiff(CredentialsDiff.compute(null, currentConfig));
+        }
+
+        credentialsConfiguration.addReloadCallback(this::applyDiff);
+    }
+
+    @Override
+    public @Nullable User lookupUser(final @NotNull String userName) {
+        final State currentState = state;
+        final User changedUser = currentState.changedUsers.get(userName);
+        if (changedUser != null) {
+            return changedUser == REMOVED ? null : changedUser;
+        }
+        return currentState.userIndex.get(userName);
+    }
+
+    @Override
+    public @Nullable Role lookupRole(final @NotNull String roleId) {
+        return state.roles.get(roleId);
+    }
+
+    @Override
+    public @Nullable UserPattern lookupUserPattern(final @NotNull String userName) {
+        return state.userPatterns.match(userName);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        final State currentState = state;
+        return (currentState.users == 0 && currentState.userPatterns.isEmpty()) || currentState.roles.isEmpty();
+    }
+
+    @Override
+    public long getGeneration() {
+        return state.generation;
+    }
+
+    @Override
+    public void addChangeListener(final @NotNull ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Applies the changes of a reload to the user and role indexes.
+     * <p>
+     * The new state is published at once, so every user that can be looked up only refers to roles of the same state.
+     * Called by the serialized reload callbacks and directly by the concurrency tests.
+     */
+    void applyDiff(final @NotNull CredentialsDiff diff) {
+        final State newState = state.apply(diff);
+        state = newState;
+        for (final ChangeListener listener : listeners) {
+            listener.onChange(newState.generation);
+        }
+    }
+
+    /**
+     * The users, roles and user patterns of a generation, never modified after it was published.
+     */
+    @Immutable
+    private static class State {
+
+        static final @NotNull State EMPTY =
+                new State(UserIndex.EMPTY, Map.of(), Map.of(), UserPatternMatcher.EMPTY, 0, 0);
+
+        final @NotNull UserIndex userIndex;
+        //the users that were added, changed or removed since the index was built
+        final @NotNull Map<String, User> changedUsers;
+        final @NotNull Map<String, Role> roles;
+        final @NotNull UserPatternMatcher userPatterns;
+        final int users;
+        final long generation;
+
+        State(
+                final @NotNull UserIndex userIndex,
+                final @NotNull Map<String, User> changedUsers,
+                final @NotNull Map<String, Role> roles,
+                final @NotNull UserPatternMatcher userPatterns,
+                final int users,
+                final long generation) {
+            this.userIndex = userIndex;
+            this.changedUsers = changedUsers;
+            this.roles = roles;
+            this.userPatterns = userPatterns;
+            this.users = users;
+            this.generation = generation;
+        }
+
+        /**
+         * Only the rebuild of the index uses the whole config of the diff, so applying a diff of journal entries takes
+         * time proportional to the changes.
+         *
+         * @return a new state with the changes of the diff, the unchanged parts are shared with this state
+         */
+        @NotNull State apply(final @NotNull CredentialsDiff diff) {
+            Map<String, Role> newRoles = roles;
+            if (!diff.getAddedRoles().isEmpty() || !diff.getChangedRoles().isEmpty() ||
+                    !diff.getRemovedRoles().isEmpty()) {
+                newRoles = new HashMap<>(roles);
+                putRoles(newRoles, diff.getAddedRoles());
+                putRoles(newRoles, diff.getChangedRoles());
+                for (final String roleId : diff.getRemovedRoles()) {
+                    newRoles.remove(roleId);
+                }
+            }
+            final UserPatternMatcher newUserPatterns = diff.isUserPatternsChanged() ?
+                    UserPatternMatcher.compile(diff.getConfig().getUserPatterns()) :
+                    userPatterns;
+
+            final int userChanges =
+                    diff.getAddedUsers().size() + diff.getChangedUsers().size() + diff.getRemovedUsers().size();
+            if (userChanges == 0) {
+                return new State(userIndex, changedUsers, newRoles, newUserPatterns, users, generation + 1);
+            }
+            if (changedUsers.size() + userChanges > userIndex.size() / REBUILD_DIVISOR) {
+                final List<User> configUsers = diff.getConfig().getUsers();
+                final UserIndex newUserIndex = UserIndex.build(configUsers == null ? List.of() : configUsers);
+                return new State(newUserIndex,
+                        Map.of(),
+                        newRoles,
+                        newUserPatterns,
+                        newUserIndex.size(),
+                        generation + 1);
+            }
+            //the overlay is at most a fraction of the index, so copying it is cheaper than building the index
+            final Map<String, User> newChangedUsers = new HashMap<>(changedUsers);
+            putUsers(newChangedUsers, diff.getAddedUsers());
+            putUsers(newChangedUsers, diff.getChangedUsers());
+            for (final String userName : diff.getRemovedUsers()) {
+                newChangedUsers.put(userName, REMOVED);
+            }
+            final int newUsers = users + diff.getAddedUsers().size() - diff.getRemovedUsers().size();
+            return new State(userIndex, newChangedUsers, newRoles, newUserPatterns, newUsers, generation + 1);
+        }
+
+        private static void putRoles(final @NotNull Map<String, Role> roles, final @NotNull Collection<Role> added) {
+            for (final Role role : added) {
+                roles.put(Objects.requireNonNull(role.getId()), role);
+            }
+        }
+
+        private static void putUsers(final @NotNull Map<String, User> users, final @NotNull Collection<User> added) {
+            for (final User user : added) {
+                users.put(Objects.requireNonNull(user.getName()), user);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A store that reads users and roles from the credentials snapshot file on demand and caches the recently used ones.
+ * <p>
+ * Only the cached users and roles occupy heap and the snapshot is not mapped, so the amount of users is only limited
+ * by the disk.
+ */
+@ThreadSafe
+class LazyCredentialsStore extends SnapshotCredentialsStore {
+
+    static final int MAX_CACHED_USERS = 100_000;
+    static final int MAX_CACHED_ROLES = 10_000;
+
+    //the caches belong to one snapshot, they are replaced together with it
+    private volatile @NotNull Caches caches = new Caches(null);
+
+    LazyCredentialsStore(
+            final @NotNull File extensionHomeFolder,
+            final @NotNull CredentialsConfiguration credentialsConfiguration,
+            final @NotNull ScheduledExecutorService executorService,
+            final int reloadInterval) {
+        super(extensionHomeFolder, credentialsConfiguration, executorService, reloadInterval);
+    }
+
+    @Override
+    @NotNull SnapshotSource openSource(final @NotNull Path file) throws IOException {
+        return new ChannelSource(file);
+    }
+
+    @Override
+    @Nullable User readUser(final @NotNull CredentialsSnapshot snapshot, final @NotNull String userName)
+            throws IOException {
+        final Caches currentCaches = getCaches(snapshot);
+        final User cachedUser = currentCaches.users.getIfPresent(userName);
+        if (cachedUser != null) {
+            return cachedUser;
+        }
+        final User user = snapshot.readUser(userName);
+        if (user != null) {
+            currentCaches.users.put(userName, user);
+        }
+        return user;
+    }
+
+    @Override
+    @Nullable Role readRole(final @NotNull CredentialsSnapshot snapshot, final @NotNull String roleId)
+            throws IOException {
+        final Caches currentCaches = getCaches(snapshot);
+        final Role cachedRole = currentCaches.roles.getIfPresent(roleId);
+        if (cachedRole != null) {
+            return cachedRole;
+        }
+        final Role role = snapshot.readRole(roleId);
+        if (role != null) {
+            currentCaches.roles.put(roleId, role);
+        }
+        return role;
+    }
+
+    private @NotNull Caches getCaches(final @NotNull CredentialsSnapshot snapshot) {
+        final Caches currentCaches = caches;
+        if (currentCaches.snapshot == snapshot) {
+            return currentCaches;
+        }
+        //concurrent lookups may both create new caches for a new snapshot, one of them is dropped
+        final Caches newCaches = new Caches(snapshot);
+        caches = newCaches;
+        return newCaches;
+    }
+
+    private static class Caches {
+
+        private final @Nullable CredentialsSnapshot snapshot;
+        private final @NotNull Cache<String, User> users =
+                Caffeine.newBuilder().maximumSize(MAX_CACHED_USERS).build();
+        private final @NotNull Cache<String, Role> roles =
+                Caffeine.newBuilder().maximumSize(MAX_CACHED_ROLES).build();
+
+        Caches(final @Nullable CredentialsSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * A snapshot that is read with positional reads, which do not change the position of the channel and can be
+     * used concurrently.
+     */
+    @ThreadSafe
+    static class ChannelSource implements SnapshotSource {
+
+        private final @NotNull FileChannel channel;
+        private final long size;
+
+        ChannelSource(final @NotNull Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void read(
+                final long position, final byte @NotNull [] destination, final int offset, final int length)
+                throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(destination, offset, length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position() - offset) < 0) {
+                    throw new EOFException("Read beyond the end of the credentials snapshot");
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
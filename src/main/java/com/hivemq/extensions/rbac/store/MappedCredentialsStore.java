@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A store that maps the credentials snapshot into memory.
+ * <p>
+ * Every lookup decodes the user or role from the mapped file, so the users and roles only occupy page cache, which
+ * the operating system can share and evict, but no heap.
+ */
+@ThreadSafe
+class MappedCredentialsStore extends SnapshotCredentialsStore {
+
+    MappedCredentialsStore(
+            final @NotNull File extensionHomeFolder,
+            final @NotNull CredentialsConfiguration credentialsConfiguration,
+            final @NotNull ScheduledExecutorService executorService,
+            final int reloadInterval) {
+        super(extensionHomeFolder, credentialsConfiguration, executorService, reloadInterval);
+    }
+
+    @Override
+    @NotNull SnapshotSource openSource(final @NotNull Path file) throws IOException {
+        return new MappedSource(file);
+    }
+
+    /**
+     * A snapshot that is mapped in segments, as a single mapping is limited to 2 GiB.
+     */
+    @ThreadSafe
+    static class MappedSource implements SnapshotSource {
+
+        private static final int SEGMENT_BITS = 30;
+        private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+        private final @NotNull MappedByteBuffer @NotNull [] segments;
+        private final long size;
+
+        MappedSource(final @NotNull Path file) throws IOException {
+            //the mappings stay valid after the channel is closed
+            try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                size = channel.size();
+                segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+                for (int i = 0; i < segments.length; i++) {
+                    final long position = (long) i << SEGMENT_BITS;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            position,
+                            Math.min(SEGMENT_SIZE, size - position));
+                }
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void read(
+                final long position, final byte @NotNull [] destination, final int offset, final int length)
+                throws IOException {
+            if (position < 0 || position + length > size) {
+                throw new IOException("Read beyond the end of the credentials snapshot");
+            }
+            long current = position;
+            int copied = 0;
+            while (copied < length) {
+                //the segments are shared between threads, so every read uses its own view
+                final ByteBuffer segment = segments[(int) (current >>> SEGMENT_BITS)].duplicate();
+                segment.position((int) (current & (SEGMENT_SIZE - 1)));
+                final int chunk = Math.min(length - copied, segment.remaining());
+                segment.get(destination, offset + copied, chunk);
+                copied += chunk;
+                current += chunk;
+            }
+        }
+
+        @Override
+        public void close() {
+            //mappings are released when they are garbage collected
+        }
+    }
+}
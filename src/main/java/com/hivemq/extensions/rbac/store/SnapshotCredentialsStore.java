@@ -0,0 +1,376 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A store that looks up users and roles in a compiled {@link CredentialsSnapshot} file instead of keeping them in
+ * heap.
+ * <p>
+ * If a credentials configuration is loaded, it is compiled into the snapshot file when the credentials files are
+ * reloaded or the journal is compacted. The users of the journal entries in between are kept in a small overlay in
+ * heap, which is published together with the snapshot. Otherwise a snapshot that was compiled in advance is used, and
+ * the file is checked for changes in the reload interval.
+ * <p>
+ * Every lookup holds a reference to the snapshot it reads, a replaced snapshot is closed once the last lookup that
+ * reads it has completed.
+ */
+@ThreadSafe
+abstract class SnapshotCredentialsStore implements CredentialsStore {
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(SnapshotCredentialsStore.class);
+    static final @NotNull String SNAPSHOT_NAME = "credentials.bin";
+    //marks a removed user in the overlay
+    private static final @NotNull User REMOVED = new User();
+
+    private final @NotNull Path snapshotFile;
+    private final @NotNull CredentialsConfiguration credentialsConfiguration;
+    private final @NotNull ScheduledExecutorService executorService;
+    private final int reloadInterval;
+    private final @NotNull List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    //written only under this
+    private volatile @Nullable View view;
+    private volatile long generation;
+    //guarded by this
+    private @Nullable FileTime lastModified;
+    //guarded by this
+    private long lastSize = -1;
+
+    SnapshotCredentialsStore(
+            final @NotNull File extensionHomeFolder,
+            final @NotNull CredentialsConfiguration credentialsConfiguration,
+            final @NotNull ScheduledExecutorService executorService,
+            final int reloadInterval) {
+        this.credentialsConfiguration = credentialsConfiguration;
+        this.executorService = executorService;
+        this.reloadInterval = reloadInterval;
+        snapshotFile = new File(extensionHomeFolder, SNAPSHOT_NAME).toPath();
+    }
+
+    @Override
+    public void init() {
+        final FileAuthConfig currentConfig = credentialsConfiguration.getCurrentConfig();
+        if (currentConfig != null) {
+            compile(currentConfig);
+        } else {
+            refresh();
+        }
+        credentialsConfiguration.addReloadCallback(this::applyDiff);
+        executorService.scheduleWithFixedDelay(this::refresh, reloadInterval, reloadInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public @Nullable User lookupUser(final @NotNull String userName) {
+        final View currentView = acquireView();
+        if (currentView == null) {
+            return null;
+        }
+        try {
+            final User journalUser = currentView.users.get(userName);
+            if (journalUser != null) {
+                return journalUser == REMOVED ? null : journalUser;
+            }
+            return readUser(currentView.snapshot.snapshot, userName);
+        } catch (final IOException e) {
+            LOG.warn("Could not look up user '{}' in credentials snapshot {}, reason: {}",
+                    userName,
+                    snapshotFile,
+                    e.getMessage());
+            return null;
+        } finally {
+            currentView.snapshot.release();
+        }
+    }
+
+    @Override
+    public @Nullable Role lookupRole(final @NotNull String roleId) {
+        final View currentView = acquireView();
+        if (currentView == null) {
+            return null;
+        }
+        try {
+            final Role journalRole = currentView.roles.get(roleId);
+            if (journalRole != null) {
+                return journalRole;
+            }
+            return readRole(currentView.snapshot.snapshot, roleId);
+        } catch (final IOException e) {
+            LOG.warn("Could not look up role '{}' in credentials snapshot {}, reason: {}",
+                    roleId,
+                    snapshotFile,
+                    e.getMessage());
+            return null;
+        } finally {
+            currentView.snapshot.release();
+        }
+    }
+
+    @Override
+    public @Nullable UserPattern lookupUserPattern(final @NotNull String userName) {
+        //the user patterns are decoded when the snapshot is opened, so they can be matched without a reference
+        final View currentView = view;
+        return currentView == null ? null : currentView.snapshot.snapshot.getUserPatterns().match(userName);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        final View currentView = view;
+        if (currentView == null) {
+            return true;
+        }
+        final CredentialsSnapshot currentSnapshot = currentView.snapshot.snapshot;
+        return (currentView.userCount == 0 && currentSnapshot.getUserPatterns().isEmpty()) ||
+                currentSnapshot.getRoleCount() + currentView.roles.size() == 0;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void addChangeListener(final @NotNull ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public synchronized void close() {
+        final View currentView = view;
+        view = null;
+        if (currentView != null) {
+            currentView.snapshot.release();
+        }
+    }
+
+    /**
+     * Opens the snapshot file again if it was replaced since it was opened the last time.
+     */
+    synchronized void refresh() {
+        try {
+            if (!Files.isRegularFile(snapshotFile)) {
+                return;
+            }
+            final BasicFileAttributes attributes = Files.readAttributes(snapshotFile, BasicFileAttributes.class);
+            if (attributes.lastModifiedTime().equals(lastModified) && attributes.size() == lastSize) {
+                return;
+            }
+            final CredentialsSnapshot newSnapshot = swap(attributes);
+            LOG.info("Opened credentials snapshot {} with {} users.", snapshotFile, newSnapshot.getUserCount());
+        } catch (final IOException e) {
+            LOG.warn("Could not open credentials snapshot {}, reason: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the changes of a reload. The users of journal entries are added to the overlay, every other change is
+     * compiled into the snapshot file.
+     */
+    private synchronized void applyDiff(final @NotNull CredentialsDiff diff) {
+        final View currentView = view;
+        if (diff.isIncremental() && currentView != null) {
+            publish(currentView.apply(diff));
+        } else {
+            compile(diff.getConfig());
+        }
+    }
+
+    /**
+     * Compiles a config into the snapshot file and opens it.
+     */
+    private synchronized void compile(final @NotNull FileAuthConfig config) {
+        try {
+            CredentialsSnapshot.write(config, snapshotFile);
+            swap(Files.readAttributes(snapshotFile, BasicFileAttributes.class));
+        } catch (final IOException e) {
+            LOG.warn("Could not compile credentials snapshot {}, reason: {}", snapshotFile, e.getMessage());
+        }
+    }
+
+    //guarded by this
+    private @NotNull CredentialsSnapshot swap(final @NotNull BasicFileAttributes attributes) throws IOException {
+        final CredentialsSnapshot newSnapshot = CredentialsSnapshot.open(openSource(snapshotFile));
+        lastModified = attributes.lastModifiedTime();
+        lastSize = attributes.size();
+        publish(new View(new SnapshotReference(newSnapshot), Map.of(), Map.of(), newSnapshot.getUserCount()));
+        return newSnapshot;
+    }
+
+    //guarded by this
+    private void publish(final @NotNull View newView) {
+        final View previousView = view;
+        view = newView;
+        //the previous snapshot is closed by the last lookup that still reads it
+        if (previousView != null && previousView.snapshot != newView.snapshot) {
+            previousView.snapshot.release();
+        }
+        final long newGeneration = generation + 1;
+        generation = newGeneration;
+        for (final ChangeListener listener : listeners) {
+            listener.onChange(newGeneration);
+        }
+    }
+
+    /**
+     * @return the current view with a reference to its snapshot, which must be released, or null if there is none
+     */
+    private @Nullable View acquireView() {
+        while (true) {
+            final View currentView = view;
+            //a snapshot can only be closed after it was replaced, so the next attempt reads the new view
+            if (currentView == null || currentView.snapshot.acquire()) {
+                return currentView;
+            }
+        }
+    }
+
+    /**
+     * @param file the snapshot file
+     * @return the source to read the snapshot from
+     * @throws IOException if the file could not be opened
+     */
+    abstract @NotNull SnapshotSource openSource(@NotNull Path file) throws IOException;
+
+    @Nullable User readUser(final @NotNull CredentialsSnapshot snapshot, final @NotNull String userName)
+            throws IOException {
+        return snapshot.readUser(userName);
+    }
+
+    @Nullable Role readRole(final @NotNull CredentialsSnapshot snapshot, final @NotNull String roleId)
+            throws IOException {
+        return snapshot.readRole(roleId);
+    }
+
+    /**
+     * An opened snapshot that is closed when neither the store nor a lookup references it anymore.
+     */
+    @ThreadSafe
+    private static class SnapshotReference {
+
+        private final @NotNull CredentialsSnapshot snapshot;
+        //one reference of the store while the snapshot is current and one of every lookup that reads it
+        private final @NotNull AtomicInteger references = new AtomicInteger(1);
+
+        SnapshotReference(final @NotNull CredentialsSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * @return true if a reference was acquired, false if the snapshot is already closed
+         */
+        boolean acquire() {
+            while (true) {
+                final int current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    snapshot.close();
+                } catch (final IOException e) {
+                    LOG.debug("Could not close credentials snapshot, reason: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * A snapshot and the users and roles of the journal entries that were applied since it was compiled, never
+     * modified after it was published.
+     */
+    @Immutable
+    private static class View {
+
+        private final @NotNull SnapshotReference snapshot;
+        private final @NotNull Map<String, User> users;
+        private final @NotNull Map<String, Role> roles;
+        private final long userCount;
+
+        View(
+                final @NotNull SnapshotReference snapshot,
+                final @NotNull Map<String, User> users,
+                final @NotNull Map<String, Role> roles,
+                final long userCount) {
+            this.snapshot = snapshot;
+            this.users = users;
+            this.roles = roles;
+            this.userCount = userCount;
+        }
+
+        /**
+         * @return a new view of the same snapshot with the users and roles of the diff added to the overlay, which
+         *         holds at most the entries since the last compaction of the journal
+         */
+        @NotNull View apply(final @NotNull CredentialsDiff diff) {
+            final Map<String, User> newUsers = new HashMap<>(users);
+            for (final User user : diff.getAddedUsers()) {
+                newUsers.put(Objects.requireNonNull(user.getName()), user);
+            }
+            for (final User user : diff.getChangedUsers()) {
+                newUsers.put(Objects.requireNonNull(user.getName()), user);
+            }
+            for (final String userName : diff.getRemovedUsers()) {
+                newUsers.put(userName, REMOVED);
+            }
+            Map<String, Role> newRoles = roles;
+            if (!diff.getAddedRoles().isEmpty()) {
+                newRoles = new HashMap<>(roles);
+                for (final Role role : diff.getAddedRoles()) {
+                    newRoles.put(Objects.requireNonNull(role.getId()), role);
+                }
+            }
+            return new View(snapshot,
+                    newUsers,
+                    newRoles,
+                    userCount + diff.getAddedUsers().size() - diff.getRemovedUsers().size());
+        }
+    }
+}
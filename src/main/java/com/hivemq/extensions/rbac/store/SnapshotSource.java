@@ -0,0 +1,44 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Random access to the bytes of a compiled credentials snapshot.
+ */
+interface SnapshotSource extends Closeable {
+
+    /**
+     * @return the size of the snapshot in bytes
+     */
+    long size();
+
+    /**
+     * Reads bytes of the snapshot, the range must be within the size of the snapshot.
+     *
+     * @param position    the position in the snapshot to read from
+     * @param destination the array to read into
+     * @param offset      the offset in the array
+     * @param length      the amount of bytes to read
+     * @throws IOException if the bytes could not be read
+     */
+    void read(long position, byte @NotNull [] destination, int offset, int length) throws IOException;
+}
@@ -0,0 +1,306 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable index of users by their name, based on a minimal perfect hash function.
+ * <p>
+ * The hash function maps the names of the indexed users to distinct positions in a flat array of the users, so a
+ * lookup computes one hash, reads the pilot of the bucket of the hash and compares the name at the resulting
+ * position, without probing or following links. The names are kept in an array next to the users, so the name can be
+ * compared while the user is still loaded. The function is built by hash and displace:
+ * the names are hashed into buckets of about {@value #KEYS_PER_BUCKET} names, and for every bucket, starting with the
+ * largest, a pilot is searched that moves all names of the bucket to free positions. Positions are searched in a
+ * table that is slightly larger than the amount of users, positions beyond the amount of users are remapped to the
+ * remaining free positions, so the arrays contain no gaps. The index needs about 8 bits per user in addition to
+ * the arrays of names and users.
+ * <p>
+ * The hash is derived from the cached {@link String#hashCode()} of the name, so a lookup does not iterate the name
+ * twice. The few names that share their hash code with another name are kept in a small overflow map.
+ */
+@Immutable
+public class UserIndex {
+
+    static final @NotNull UserIndex EMPTY =
+            new UserIndex(0, 0, new int[0], new int[0], new String[0], new User[0], Map.of());
+
+    private static final int KEYS_PER_BUCKET = 4;
+    private static final double LOAD_FACTOR = 0.99;
+    //a bucket that needs more tries is unlucky with the seed, so the index is built again with the next seed
+    private static final int MAX_PILOT = 1 << 24;
+    private static final int MAX_SEEDS = 32;
+    private static final long PILOT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+    private final int tableSize;
+    private final int @NotNull [] pilots;
+    //the free positions that the positions beyond the amount of users are mapped to
+    private final int @NotNull [] remap;
+    private final @NotNull String @NotNull [] names;
+    private final @NotNull User @NotNull [] users;
+    //the users whose name has the same hash code as the name of an indexed user
+    private final @NotNull Map<String, User> overflow;
+
+    private UserIndex(
+            final long seed,
+            final int tableSize,
+            final int @NotNull [] pilots,
+            final int @NotNull [] remap,
+            final @NotNull String @NotNull [] names,
+            final @NotNull User @NotNull [] users,
+            final @NotNull Map<String, User> overflow) {
+        this.seed = seed;
+        this.tableSize = tableSize;
+        this.pilots = pilots;
+        this.remap = remap;
+        this.names = names;
+        this.users = users;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Builds an index.
+     *
+     * @param users the users, their names must be distinct
+     * @return the index of the users
+     * @throws IllegalArgumentException if two users have the same name
+     * @throws IllegalStateException    if no hash function was found, which is practically impossible
+     */
+    public static @NotNull UserIndex build(final @NotNull Collection<User> users) {
+        if (users.isEmpty()) {
+            return EMPTY;
+        }
+        final User[] allUsers = users.toArray(new User[0]);
+
+        //the users sorted by the hash codes of their names, the index of the user is kept in the lower 32 bits
+        final long[] sortedHashCodes = new long[allUsers.length];
+        for (int i = 0; i < allUsers.length; i++) {
+            sortedHashCodes[i] = ((long) Objects.requireNonNull(allUsers[i].getName()).hashCode() << 32) | i;
+        }
+        Arrays.sort(sortedHashCodes);
+        final List<User> indexedUsers = new ArrayList<>(allUsers.length);
+        final Map<String, User> overflow = new HashMap<>();
+        for (int i = 0; i < sortedHashCodes.length; i++) {
+            final User user = allUsers[(int) sortedHashCodes[i]];
+            if (i == 0 || (sortedHashCodes[i] >>> 32) != (sortedHashCodes[i - 1] >>> 32)) {
+                indexedUsers.add(user);
+                continue;
+            }
+            final String name = Objects.requireNonNull(user.getName());
+            if (name.equals(indexedUsers.get(indexedUsers.size() - 1).getName())
+                    || overflow.putIfAbsent(name, user) != null) {
+                throw new IllegalArgumentException("Duplicate user name '" + name + "'");
+            }
+        }
+
+        final User[] userArray = indexedUsers.toArray(new User[0]);
+        final long[] hashes = new long[userArray.length];
+        for (long seed = 0; seed < MAX_SEEDS; seed++) {
+            for (int i = 0; i < userArray.length; i++) {
+                hashes[i] = hash(Objects.requireNonNull(userArray[i].getName()), seed);
+            }
+            final UserIndex index = tryBuild(seed, userArray, hashes, Map.copyOf(overflow));
+            if (index != null) {
+                return index;
+            }
+        }
+        throw new IllegalStateException("Could not build the user index for " + allUsers.length + " users");
+    }
+
+    /**
+     * @param name the name of the user
+     * @return the user or null if the index contains no user with this name
+     */
+    public @Nullable User get(final @NotNull String name) {
+        if (users.length == 0) {
+            return null;
+        }
+        final long hash = hash(name, seed);
+        int position = position(hash, pilots[bucket(hash, pilots.length)], tableSize);
+        if (position >= users.length) {
+            position = remap[position - users.length];
+        }
+        if (name.equals(names[position])) {
+            return users[position];
+        }
+        return overflow.isEmpty() ? null : overflow.get(name);
+    }
+
+    /**
+     * @return the amount of users in the index
+     */
+    public int size() {
+        return users.length + overflow.size();
+    }
+
+    private static @Nullable UserIndex tryBuild(
+            final long seed,
+            final @NotNull User @NotNull [] users,
+            final long @NotNull [] hashes,
+            final @NotNull Map<String, User> overflow) {
+        final int keys = users.length;
+        final int tableSize = Math.max(keys, (int) Math.ceil(keys / LOAD_FACTOR));
+        final int bucketCount = (keys + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET;
+
+        //counting sort of the keys by their bucket
+        final int[] bucketStarts = new int[bucketCount + 1];
+        for (final long hash : hashes) {
+            bucketStarts[bucket(hash, bucketCount) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[bucket + 1]);
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+        final int[] bucketKeys = new int[keys];
+        final int[] fill = Arrays.copyOf(bucketStarts, bucketCount);
+        for (int key = 0; key < keys; key++) {
+            bucketKeys[fill[bucket(hashes[key], bucketCount)]++] = key;
+        }
+
+        //counting sort of the buckets by their size, largest first
+        final int[] sizeStarts = new int[maxBucketSize + 2];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            sizeStarts[maxBucketSize - bucketSize(bucketStarts, bucket) + 1]++;
+        }
+        for (int i = 1; i < sizeStarts.length; i++) {
+            sizeStarts[i] += sizeStarts[i - 1];
+        }
+        final int[] bucketOrder = new int[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            bucketOrder[sizeStarts[maxBucketSize - bucketSize(bucketStarts, bucket)]++] = bucket;
+        }
+
+        final int[] pilots = new int[bucketCount];
+        final long[] taken = new long[(tableSize + 63) >>> 6];
+        final int[] positions = new int[maxBucketSize];
+        final long[] bucketHashes = new long[maxBucketSize];
+        for (final int bucket : bucketOrder) {
+            final int start = bucketStarts[bucket];
+            final int size = bucketSize(bucketStarts, bucket);
+            if (size == 0) {
+                break;
+            }
+            //the hashes of the bucket are copied, so the tries of pilots only read adjacent hashes
+            for (int i = 0; i < size; i++) {
+                bucketHashes[i] = hashes[bucketKeys[start + i]];
+            }
+            int pilot = 0;
+            while (!place(bucketHashes, size, pilot, tableSize, taken, positions)) {
+                if (++pilot == MAX_PILOT) {
+                    return null;
+                }
+            }
+            pilots[bucket] = pilot;
+        }
+
+        //the positions beyond the amount of keys are mapped to the free positions, so the users fill the array
+        final int[] remap = new int[tableSize - keys];
+        int free = 0;
+        for (int position = keys; position < tableSize; position++) {
+            if (isTaken(taken, position)) {
+                while (isTaken(taken, free)) {
+                    free++;
+                }
+                remap[position - keys] = free++;
+            }
+        }
+        final String[] nameTable = new String[keys];
+        final User[] userTable = new User[keys];
+        for (int key = 0; key < keys; key++) {
+            int position = position(hashes[key], pilots[bucket(hashes[key], bucketCount)], tableSize);
+            if (position >= keys) {
+                position = remap[position - keys];
+            }
+            nameTable[position] = users[key].getName();
+            userTable[position] = users[key];
+        }
+        return new UserIndex(seed, tableSize, pilots, remap, nameTable, userTable, overflow);
+    }
+
+    /**
+     * Tries to place all keys of a bucket with a pilot.
+     *
+     * @return true if all keys were moved to free and distinct positions, which are then marked as taken
+     */
+    private static boolean place(
+            final long @NotNull [] bucketHashes,
+            final int size,
+            final int pilot,
+            final int tableSize,
+            final long @NotNull [] taken,
+            final int @NotNull [] positions) {
+        for (int i = 0; i < size; i++) {
+            final int position = position(bucketHashes[i], pilot, tableSize);
+            if (isTaken(taken, position)) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (positions[j] == position) {
+                    return false;
+                }
+            }
+            positions[i] = position;
+        }
+        for (int i = 0; i < size; i++) {
+            taken[positions[i] >>> 6] |= 1L << positions[i];
+        }
+        return true;
+    }
+
+    private static int bucketSize(final int @NotNull [] bucketStarts, final int bucket) {
+        return bucketStarts[bucket + 1] - bucketStarts[bucket];
+    }
+
+    private static boolean isTaken(final long @NotNull [] taken, final int position) {
+        return (taken[position >>> 6] & (1L << position)) != 0;
+    }
+
+    private static int bucket(final long hash, final int bucketCount) {
+        return (int) (((hash >>> 32) * bucketCount) >>> 32);
+    }
+
+    private static int position(final long hash, final int pilot, final int tableSize) {
+        return (int) (((mix(hash + pilot * PILOT_MULTIPLIER) >>> 32) * tableSize) >>> 32);
+    }
+
+    /**
+     * The finalizer of MurmurHash3 is a bijection, so names with different hash codes always get different hashes.
+     */
+    private static long hash(final @NotNull String name, final long seed) {
+        return mix(name.hashCode() ^ (seed * PILOT_MULTIPLIER));
+    }
+
+    private static long mix(final long hash) {
+        final long first = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        final long second = (first ^ (first >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return second ^ (second >>> 33);
+    }
+}
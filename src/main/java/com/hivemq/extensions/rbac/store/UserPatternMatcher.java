@@ -0,0 +1,189 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.Immutable;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the user pattern that applies to a user name.
+ * <p>
+ * The patterns are compiled into a trie of their literal prefixes: a prefix pattern is its whole prefix, a glob
+ * pattern the part before its first wildcard and a regex pattern the leading characters without special meaning.
+ * A lookup walks the trie along the user name, so only the patterns whose literal prefix matches the user name are
+ * checked, independent of the amount of patterns. If several patterns match, the first one in the config wins.
+ */
+@Immutable
+public class UserPatternMatcher {
+
+    static final @NotNull UserPatternMatcher EMPTY = new UserPatternMatcher(List.of());
+
+    private final @NotNull List<UserPattern> patterns;
+    //the remainder of a glob or regex pattern, null for prefix patterns
+    private final @Nullable Pattern @NotNull [] remainders;
+    private final @NotNull Node root = new Node();
+
+    private UserPatternMatcher(final @NotNull List<UserPattern> patterns) {
+        this.patterns = List.copyOf(patterns);
+        remainders = new Pattern[patterns.size()];
+        for (int i = 0; i < patterns.size(); i++) {
+            final UserPattern pattern = patterns.get(i);
+            final String literalPrefix;
+            if (pattern.getPrefix() != null) {
+                literalPrefix = pattern.getPrefix();
+            } else if (pattern.getGlob() != null) {
+                literalPrefix = globPrefix(pattern.getGlob());
+                remainders[i] = Pattern.compile(globToRegex(pattern.getGlob()), Pattern.DOTALL);
+            } else {
+                literalPrefix = regexPrefix(pattern.getRegex());
+                remainders[i] = Pattern.compile(pattern.getRegex());
+            }
+            Node node = root;
+            for (int c = 0; c < literalPrefix.length(); c++) {
+                node = node.children.computeIfAbsent(literalPrefix.charAt(c), key -> new Node());
+            }
+            node.addPattern(i);
+        }
+    }
+
+    /**
+     * Compiles user patterns.
+     *
+     * @param patterns the validated user patterns in the order of the config, may be null
+     * @return the matcher
+     * @throws java.util.regex.PatternSyntaxException if a regex pattern is invalid
+     */
+    public static @NotNull UserPatternMatcher compile(final @Nullable List<UserPattern> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return EMPTY;
+        }
+        return new UserPatternMatcher(patterns);
+    }
+
+    /**
+     * @param userName the name of the user
+     * @return the first pattern that applies to the user name or null if no pattern applies
+     */
+    public @Nullable UserPattern match(final @NotNull String userName) {
+        int best = Integer.MAX_VALUE;
+        Node node = root;
+        for (int c = 0; ; c++) {
+            //the indexes of a node are ascending, so the first match of a node is its best one
+            for (final int index : node.patterns) {
+                if (index >= best) {
+                    break;
+                }
+                final Pattern remainder = remainders[index];
+                if (remainder == null || remainder.matcher(userName).matches()) {
+                    best = index;
+                    break;
+                }
+            }
+            if (c == userName.length()) {
+                break;
+            }
+            node = node.children.get(userName.charAt(c));
+            if (node == null) {
+                break;
+            }
+        }
+        return best == Integer.MAX_VALUE ? null : patterns.get(best);
+    }
+
+    /**
+     * @return true if there are no patterns
+     */
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * @return the compiled patterns in the order of the config
+     */
+    @NotNull List<UserPattern> getPatterns() {
+        return patterns;
+    }
+
+    static @NotNull String globPrefix(final @NotNull String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                return glob.substring(0, i);
+            }
+        }
+        return glob;
+    }
+
+    static @NotNull String globToRegex(final @NotNull String glob) {
+        final StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * @return the leading characters every match of the regex starts with, possibly fewer
+     */
+    static @NotNull String regexPrefix(final @NotNull String regex) {
+        //an alternation may start with anything
+        if (regex.indexOf('|') >= 0) {
+            return "";
+        }
+        final int start = regex.startsWith("^") ? 1 : 0;
+        for (int i = start; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                //a quantifier may apply to the preceding character
+                final int end = c == '?' || c == '*' || c == '{' ? i - 1 : i;
+                return regex.substring(start, Math.max(start, end));
+            }
+        }
+        return regex.substring(start);
+    }
+
+    private static class Node {
+
+        private final @NotNull Map<Character, Node> children = new HashMap<>();
+        private int @NotNull [] patterns = new int[0];
+
+        void addPattern(final int index) {
+            final int[] newPatterns = new int[patterns.length + 1];
+            System.arraycopy(patterns, 0, newPatterns, 0, patterns.length);
+            newPatterns[patterns.length] = index;
+            patterns = newPatterns;
+        }
+    }
+}
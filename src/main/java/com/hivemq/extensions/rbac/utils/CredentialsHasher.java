@@ -16,16 +16,20 @@
  */
 package com.hivemq.extensions.rbac.utils;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 
 import java.security.MessageDigest;
 import java.util.Base64;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @ThreadSafe
 public class CredentialsHasher {
@@ -33,18 +37,52 @@ public class CredentialsHasher {
     static final @NotNull String HASH_CACHE_HITRATE = "com.hivemq.extensions.file-rbac.hash.cache.hitrate";
     private static final @NotNull String HASH_TIME = "com.hivemq.extensions.file-rbac.hash.sampled-time";
 
-    private final @NotNull MetricRegistry metricRegistry;
+    private final @NotNull Meter cacheHitMeter;
+    private final @NotNull Timer hashTimer;
     private final @NotNull Cache<String, byte[]> credentialHashCache;
+    private final @Nullable VerificationCache verificationCache;
+    private final long jfrEventThresholdNanos;
 
 
-    public CredentialsHasher(final @NotNull MetricRegistry metricRegistry) {
-        this.metricRegistry = metricRegistry;
-        credentialHashCache =
-                Caffeine.newBuilder().recordStats().expireAfterWrite(30, TimeUnit.SECONDS).maximumSize(1000).build();
+    /**
+     * @param extensionConfig   the configuration of the hash cache and the JFR event threshold
+     * @param metricRegistry    the registry for the hashing metrics
+     * @param verificationCache the cache of credentials verified before a restart or null if it is disabled
+     */
+    public CredentialsHasher(
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull MetricRegistry metricRegistry,
+            final @Nullable VerificationCache verificationCache) {
+        this.verificationCache = verificationCache;
+        jfrEventThresholdNanos = TimeUnit.MILLISECONDS.toNanos(extensionConfig.getJfrEventThreshold());
+        cacheHitMeter = metricRegistry.meter(HASH_CACHE_HITRATE);
+        hashTimer = metricRegistry.timer(HASH_TIME);
+        credentialHashCache = Caffeine.newBuilder()
+                .recordStats()
+                .expireAfterWrite(extensionConfig.getHashCacheExpiry(), TimeUnit.SECONDS)
+                .maximumSize(extensionConfig.getHashCacheSize())
+                .build();
     }
 
+    /**
+     * Checks a password against its salted hash. Passwords that were checked recently are not hashed again, the hashes
+     * are cached for 30 seconds by default. The successful checks of a user are also kept in the verification cache,
+     * if it is enabled, so they are not hashed again after a restart either.
+     *
+     * @param userName               the user name or null if the check must not use the verification cache
+     * @param base64Password         the password presented by the client
+     * @param saltPasswordFromConfig the salted password hash of the user
+     * @param passwordCheckConsumer  the consumer of how the password was checked or null
+     * @return true if the password matches the hash
+     */
     public boolean checkCredentials(
-            final @NotNull String base64Password, final @NotNull String saltPasswordFromConfig) {
+            final @Nullable String userName,
+            final @NotNull String base64Password,
+            final @NotNull String saltPasswordFromConfig,
+            final @Nullable Consumer<PasswordCheck> passwordCheckConsumer) {
+        final long start = System.nanoTime();
+        final PasswordCheckEvent event = new PasswordCheckEvent();
+        event.begin();
         final String[] saltPw = saltPasswordFromConfig.split(":");
         if (saltPw.length != 3) {
             return false;
@@ -56,19 +94,58 @@ public class CredentialsHasher {
         final String cacheString = base64Password + saltFromConfigBase64 + iterations;
         byte[] credentialsHash = credentialHashCache.getIfPresent(cacheString);
 
-        if (credentialsHash != null) {
+        final boolean cacheHit = credentialsHash != null;
+        boolean warmCacheHit = false;
+        long hashTime = 0;
+        if (cacheHit) {
             //found in cache
-            metricRegistry.meter(HASH_CACHE_HITRATE).mark();
-        } else {
+            cacheHitMeter.mark();
+        } else if (userName != null && verificationCache != null) {
+            //verified against the same hash before the restart
+            warmCacheHit = verificationCache.contains(userName, base64Password, saltPasswordFromConfig);
+        }
+        if (!cacheHit && !warmCacheHit) {
             //not found in cache
-            final Timer timer = metricRegistry.timer(HASH_TIME);
-            try (final Timer.Context ignored = timer.time()) {
+            final Timer.Context context = hashTimer.time();
+            try {
                 credentialsHash = Hashing.createHash(base64Password, saltFromConfigBase64, iterations);
+            } finally {
+                hashTime = context.stop();
             }
             credentialHashCache.put(cacheString, credentialsHash);
         }
 
+        if (passwordCheckConsumer != null) {
+            passwordCheckConsumer.accept(cacheHit ? PasswordCheck.CACHE_HIT :
+                    warmCacheHit ? PasswordCheck.WARM_CACHE_HIT : PasswordCheck.HASHED);
+        }
+
         //We use a time constant equality check for passwords to avoid timing attacks
-        return MessageDigest.isEqual(credentialsHash, Base64.getDecoder().decode(passwordHashFromConfigBase64));
+        final boolean success = warmCacheHit ||
+                MessageDigest.isEqual(credentialsHash, Base64.getDecoder().decode(passwordHashFromConfigBase64));
+        if (success && !cacheHit && !warmCacheHit && userName != null && verificationCache != null) {
+            verificationCache.add(userName, base64Password, saltPasswordFromConfig);
+        }
+
+        event.end();
+        if (System.nanoTime() - start >= jfrEventThresholdNanos && event.shouldCommit()) {
+            event.cacheHit = cacheHit;
+            event.warmCacheHit = warmCacheHit;
+            event.iterations = iterations;
+            event.hashTime = hashTime;
+            event.success = success;
+            event.commit();
+        }
+        return success;
+    }
+
+    /**
+     * Removes all cached hashes, so every password is hashed again on its next check.
+     */
+    public void invalidateCache() {
+        credentialHashCache.invalidateAll();
+        if (verificationCache != null) {
+            verificationCache.invalidate();
+        }
     }
 }
@@ -21,173 +21,214 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
 import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
-import com.hivemq.extension.sdk.api.services.builder.Builders;
-import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+import com.hivemq.extensions.rbac.configuration.CredentialsFlattener;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
-import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
 import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
 import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
 import com.hivemq.extensions.rbac.configuration.entities.Role;
 import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+import com.hivemq.extensions.rbac.store.CredentialsStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 @ThreadSafe
 public class CredentialsValidator {
 
-    private final @NotNull CredentialsConfiguration credentialsConfiguration;
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(CredentialsValidator.class);
+
+    private final @NotNull CredentialsStore credentialsStore;
     private final @NotNull ExtensionConfig extensionConfig;
     private final @NotNull CredentialsHasher credentialsHasher;
-    private final @NotNull ReadWriteLock usersLock = new ReentrantReadWriteLock();
-    private final @NotNull ReadWriteLock rolesLock = new ReentrantReadWriteLock();
-    private @NotNull Map<String, User> users = new ConcurrentHashMap<>();
-    private @NotNull Map<String, Role> roles = new ConcurrentHashMap<>();
+    private final @NotNull TopicPermissionInterner topicPermissionInterner;
 
+    /**
+     * @param verificationCache       the cache of credentials verified before a restart or null if it is disabled
+     * @param topicPermissionInterner the interner that builds the topic permissions of the clients
+     */
     public CredentialsValidator(
-            final @NotNull CredentialsConfiguration credentialsConfiguration,
+            final @NotNull CredentialsStore credentialsStore,
             final @NotNull ExtensionConfig extensionConfig,
-            final @NotNull MetricRegistry metricRegistry) {
-        this.credentialsConfiguration = credentialsConfiguration;
+            final @NotNull MetricRegistry metricRegistry,
+            final @Nullable VerificationCache verificationCache,
+            final @NotNull TopicPermissionInterner topicPermissionInterner) {
+        this.credentialsStore = credentialsStore;
         this.extensionConfig = extensionConfig;
-        this.credentialsHasher = new CredentialsHasher(metricRegistry);
+        this.credentialsHasher = new CredentialsHasher(extensionConfig, metricRegistry, verificationCache);
+        this.topicPermissionInterner = topicPermissionInterner;
     }
 
     public void init() {
-        final FileAuthConfig currentConfig = credentialsConfiguration.getCurrentConfig();
-        if (currentConfig != null) {
-            updateUsersMap(currentConfig);
-            updateRolesMap(currentConfig);
-        }
-
-        credentialsConfiguration.addReloadCallback((oldConfig, newConfig) -> {
-            updateUsersMap(newConfig);
-            updateRolesMap(newConfig);
-        });
+        credentialsStore.init();
     }
 
     /**
-     * @param userName the userName
-     * @param password the password
+     * Users are looked up by their exact name first. Only if no user with the name exists, the user patterns are
+     * matched.
+     *
+     * @param userName              the userName
+     * @param password              the password
+     * @param passwordCheckConsumer the consumer of how the password was checked or null, it is not called if no user
+     *                              or user pattern applies to the user name
      * @return a list of the users roles or null if the credentials are not valid
      */
-    public @Nullable List<String> getRoles(final @NotNull String userName, final @NotNull ByteBuffer password) {
+    public @Nullable List<String> getRoles(
+            final @NotNull String userName,
+            final @NotNull ByteBuffer password,
+            final @Nullable Consumer<PasswordCheck> passwordCheckConsumer) {
         //If Config is invalid do not allow clients to connect
-        if (users.isEmpty() || roles.isEmpty()) {
+        if (credentialsStore.isEmpty()) {
             return null;
         }
 
-        final Lock readLock = usersLock.readLock();
-        readLock.lock();
-        final User user;
-        try {
-            user = users.get(userName);
-        } finally {
-            readLock.unlock();
+        final User user = credentialsStore.lookupUser(userName);
+        if (user != null) {
+            final boolean passwordValid =
+                    checkPassword(userName, password, user.getPassword(), passwordCheckConsumer);
+            return passwordValid ? user.getRoles() : null;
         }
 
-        if (user == null || user.getPassword() == null) {
+        final UserPattern userPattern = credentialsStore.lookupUserPattern(userName);
+        if (userPattern == null) {
             return null;
         }
-
-        if (extensionConfig.getPasswordType() == PasswordType.HASHED) {
-            final String base64Password = encodePassword(password);
-            final boolean passwordsEqual = credentialsHasher.checkCredentials(base64Password, user.getPassword());
-
-            if (!passwordsEqual) {
-                return null;
+        final String hmacSecret = userPattern.getHmacSecret();
+        final boolean passwordValid;
+        if (hmacSecret != null) {
+            if (passwordCheckConsumer != null) {
+                passwordCheckConsumer.accept(PasswordCheck.DERIVED);
             }
+            passwordValid = DerivedPasswords.check(hmacSecret, userName, password);
         } else {
-            if (!user.getPassword().equals(StandardCharsets.UTF_8.decode(password).toString())) {
-                return null;
-            }
+            passwordValid = checkPassword(userName, password, userPattern.getPassword(), passwordCheckConsumer);
         }
-        return user.getRoles();
+        return passwordValid ? userPattern.getRoles() : null;
+    }
+
+    /**
+     * Only users of the credentials configuration can have a maximum of sessions, users that match a user pattern
+     * have no limit.
+     *
+     * @param userName the userName
+     * @return the maximum amount of clients that can be connected with the user at the same time, 0 for no limit
+     */
+    public int getMaxSessions(final @NotNull String userName) {
+        final User user = credentialsStore.lookupUser(userName);
+        return user == null ? 0 : user.getMaxSessions();
     }
 
+    /**
+     * The permissions of the roles are flattened and deduplicated when the credentials are loaded, so the permissions
+     * of roles that were returned by {@link #getRoles(String, ByteBuffer, Consumer)} are found with a single lookup.
+     * The topic permissions are interned, so clients with the same permissions share the same instances.
+     *
+     * @param clientId    the client id
+     * @param userName    the userName
+     * @param clientRoles the roles of the client
+     * @return the permissions of all roles without duplicates
+     */
     public @NotNull List<TopicPermission> getPermissions(
             final @NotNull String clientId, final @NotNull String userName, final @NotNull List<String> clientRoles) {
         if (clientRoles.isEmpty()) {
             return Collections.emptyList();
         }
 
-        final ArrayList<TopicPermission> topicPermissions = new ArrayList<>();
-        for (final String clientRole : clientRoles) {
-            final Role role = roles.get(clientRole);
-            for (final Permission permission : Objects.requireNonNull(role.getPermissions())) {
-                topicPermissions.add(toTopicPermission(clientId, userName, permission));
+        final Role combinedRole = credentialsStore.lookupRole(CredentialsFlattener.combinedRoleId(clientRoles));
+        final Collection<Permission> permissions;
+        if (combinedRole != null) {
+            permissions = Objects.requireNonNull(combinedRole.getPermissions());
+        } else {
+            //the combination is unknown if a reload changed the roles since the roles of the client were looked up
+            permissions = new LinkedHashSet<>();
+            for (final String clientRole : clientRoles) {
+                final Role role = credentialsStore.lookupRole(clientRole);
+                //the role may have been removed by a reload since the roles of the client were looked up, the client
+                //then only gets the permissions of its remaining roles
+                if (role != null) {
+                    permissions.addAll(Objects.requireNonNull(role.getPermissions()));
+                } else {
+                    LOG.debug("Role {} of user {} was removed by a reload, skipping its permissions.",
+                            clientRole,
+                            userName);
+                }
             }
         }
+        final ArrayList<TopicPermission> topicPermissions = new ArrayList<>(permissions.size());
+        for (final Permission permission : permissions) {
+            topicPermissions.add(topicPermissionInterner.intern(clientId, userName, permission));
+        }
         return topicPermissions;
     }
 
-
-    private @NotNull String encodePassword(final @NotNull ByteBuffer password) {
-        final byte[] passwordBytes = new byte[password.remaining()];
-        password.get(passwordBytes);
-        return Base64.getEncoder().encodeToString(passwordBytes);
-    }
-
-    private void updateUsersMap(final @NotNull FileAuthConfig config) {
-        final List<User> newUsers = config.getUsers();
-        final ConcurrentHashMap<String, User> newUsersMap =
-                new ConcurrentHashMap<>(Objects.requireNonNull(newUsers).size());
-        for (final User newUser : newUsers) {
-            newUsersMap.put(Objects.requireNonNull(newUser.getName()), newUser);
+    /**
+     * The quota of every combination of roles is resolved when the credentials are loaded, like the permissions, so
+     * the quota of roles that were returned by {@link #getRoles(String, ByteBuffer, Consumer)} is found with a single
+     * lookup.
+     *
+     * @param clientRoles the roles of the client
+     * @return the quota of the first role of the client that has one or null if the client has no quota
+     */
+    public @Nullable Quota getQuota(final @NotNull List<String> clientRoles) {
+        if (clientRoles.isEmpty()) {
+            return null;
         }
 
-        final Lock writeLock = usersLock.writeLock();
-        writeLock.lock();
-        try {
-            users = newUsersMap;
-        } finally {
-            writeLock.unlock();
+        final Role combinedRole = credentialsStore.lookupRole(CredentialsFlattener.combinedRoleId(clientRoles));
+        if (combinedRole != null) {
+            return combinedRole.getQuota();
         }
-    }
-
-    private void updateRolesMap(final @NotNull FileAuthConfig config) {
-        final List<Role> newRoles = config.getRoles();
-        final ConcurrentHashMap<String, Role> newRolesMap =
-                new ConcurrentHashMap<>(Objects.requireNonNull(newRoles).size());
-        for (final Role newRole : newRoles) {
-            newRolesMap.put(Objects.requireNonNull(newRole.getId()), newRole);
+        //the combination is unknown if a reload changed the roles since the roles of the client were looked up
+        for (final String clientRole : clientRoles) {
+            final Role role = credentialsStore.lookupRole(clientRole);
+            if (role != null && role.getQuota() != null) {
+                return role.getQuota();
+            }
         }
+        return null;
+    }
 
-        final Lock writeLock = rolesLock.writeLock();
-        writeLock.lock();
-        try {
-            roles = newRolesMap;
-        } finally {
-            writeLock.unlock();
-        }
+    /**
+     * Removes all cached password hashes and verified credentials.
+     */
+    public void flushCaches() {
+        credentialsHasher.invalidateCache();
     }
 
-    private @NotNull TopicPermission toTopicPermission(
-            final @NotNull String clientId, final @NotNull String userName, final @NotNull Permission permission) {
-        return Builders.topicPermission()
-                .topicFilter(getTopicFilter(clientId, userName, permission))
-                .activity(Objects.requireNonNull(permission.getActivity()))
-                .type(TopicPermission.PermissionType.ALLOW)
-                .retain(Objects.requireNonNull(permission.getRetain()))
-                .qos(Objects.requireNonNull(permission.getQos()))
-                .sharedSubscription(Objects.requireNonNull(permission.getSharedSubscription()))
-                .sharedGroup(Objects.requireNonNull(permission.getSharedGroup()))
-                .build();
+    private boolean checkPassword(
+            final @NotNull String userName,
+            final @NotNull ByteBuffer password,
+            final @Nullable String configPassword,
+            final @Nullable Consumer<PasswordCheck> passwordCheckConsumer) {
+        if (configPassword == null) {
+            return false;
+        }
+        if (extensionConfig.getPasswordType() == PasswordType.HASHED) {
+            return credentialsHasher.checkCredentials(userName,
+                    encodePassword(password),
+                    configPassword,
+                    passwordCheckConsumer);
+        }
+        if (passwordCheckConsumer != null) {
+            passwordCheckConsumer.accept(PasswordCheck.PLAIN);
+        }
+        return configPassword.equals(StandardCharsets.UTF_8.decode(password).toString());
     }
 
-    private @NotNull String getTopicFilter(
-            final @NotNull String clientId, final @NotNull String userName, final @NotNull Permission permission) {
-        final String configTopic = permission.getTopic();
-        return Substitution.substitute(Objects.requireNonNull(configTopic), clientId, userName);
+    private @NotNull String encodePassword(final @NotNull ByteBuffer password) {
+        final byte[] passwordBytes = new byte[password.remaining()];
+        password.get(passwordBytes);
+        return Base64.getEncoder().encodeToString(passwordBytes);
     }
 }
@@ -0,0 +1,89 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Passwords that are derived from a user name and a secret, so a whole fleet of devices does not need to be listed
+ * user by user.
+ * <p>
+ * The password of a user is the Base64 encoded HMAC-SHA256 of the UTF-8 user name, keyed with the UTF-8 secret.
+ */
+@ThreadSafe
+public class DerivedPasswords {
+
+    private static final @NotNull String ALGORITHM = "HmacSHA256";
+
+    private static final @NotNull ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported", e);
+        }
+    });
+
+    private DerivedPasswords() {
+    }
+
+    /**
+     * @param secret   the secret of the user pattern
+     * @param userName the name of the user
+     * @return the password of the user
+     */
+    public static @NotNull String derive(final @NotNull String secret, final @NotNull String userName) {
+        return Base64.getEncoder().encodeToString(hmac(secret, userName));
+    }
+
+    /**
+     * Checks a password in constant time.
+     *
+     * @param secret   the secret of the user pattern
+     * @param userName the name of the user
+     * @param password the UTF-8 password the client sent, it is consumed
+     * @return true if the password is the derived password of the user
+     */
+    public static boolean check(
+            final @NotNull String secret, final @NotNull String userName, final @NotNull ByteBuffer password) {
+        final byte[] expected =
+                Base64.getEncoder().encodeToString(hmac(secret, userName)).getBytes(StandardCharsets.US_ASCII);
+        final byte[] actual = new byte[password.remaining()];
+        password.get(actual);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static byte @NotNull [] hmac(final @NotNull String secret, final @NotNull String userName) {
+        final Mac mac = MAC.get();
+        try {
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+        } catch (final InvalidKeyException e) {
+            //an HMAC accepts keys of any length
+            throw new IllegalStateException(e);
+        }
+        return mac.doFinal(userName.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Reservoir} that records values in a HdrHistogram.
+ * <p>
+ * Recording a value is wait-free and does not allocate, so it can be used on the connect path. Snapshots contain all
+ * values of the current time window, a new window is started by the first snapshot after the window has elapsed.
+ */
+@ThreadSafe
+public class HdrHistogramReservoir implements Reservoir {
+
+    //3 significant digits limit the error of a recorded value to 0.1%
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final @NotNull Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final long windowNanos;
+
+    //guarded by this
+    private final @NotNull Histogram window = new Histogram(SIGNIFICANT_DIGITS);
+    //guarded by this
+    private @Nullable Histogram interval;
+    //guarded by this
+    private long windowStart = System.nanoTime();
+
+    public HdrHistogramReservoir() {
+        this(1, TimeUnit.MINUTES);
+    }
+
+    public HdrHistogramReservoir(final long window, final @NotNull TimeUnit windowUnit) {
+        this.windowNanos = windowUnit.toNanos(window);
+    }
+
+    @Override
+    public void update(final long value) {
+        recorder.recordValue(Math.max(0, value));
+    }
+
+    @Override
+    public synchronized int size() {
+        collect();
+        return (int) Math.min(window.getTotalCount(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized @NotNull Snapshot getSnapshot() {
+        collect();
+        final Snapshot snapshot = new HdrSnapshot(window.copy());
+        final long now = System.nanoTime();
+        if (now - windowStart >= windowNanos) {
+            window.reset();
+            windowStart = now;
+        }
+        return snapshot;
+    }
+
+    private void collect() {
+        interval = recorder.getIntervalHistogram(interval);
+        window.add(interval);
+    }
+
+    private static class HdrSnapshot extends Snapshot {
+
+        private final @NotNull Histogram histogram;
+
+        HdrSnapshot(final @NotNull Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public double getValue(final double quantile) {
+            return histogram.getValueAtPercentile(quantile * 100);
+        }
+
+        /**
+         * @return the highest equivalent value of every histogram bucket, repeated once per recorded value, so the
+         *         length matches {@link #size()}
+         */
+        @Override
+        public long @NotNull [] getValues() {
+            final long[] values = new long[size()];
+            int i = 0;
+            for (final HistogramIterationValue value : histogram.recordedValues()) {
+                final int count = (int) Math.min(value.getCountAtValueIteratedTo(), values.length - i);
+                Arrays.fill(values, i, i + count, value.getValueIteratedTo());
+                i += count;
+                if (i == values.length) {
+                    break;
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(histogram.getTotalCount(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getMaxValue();
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getMean();
+        }
+
+        @Override
+        public long getMin() {
+            return histogram.getMinValue();
+        }
+
+        @Override
+        public double getStdDev() {
+            return histogram.getStdDeviation();
+        }
+
+        @Override
+        public void dump(final @NotNull OutputStream output) {
+            final PrintStream printStream = new PrintStream(output, false, StandardCharsets.UTF_8);
+            histogram.outputPercentileDistribution(printStream, 1.0);
+            printStream.flush();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+/**
+ * How the password of a user was checked.
+ * <p>
+ * The authentication trace stores the ordinals, so new values must only be added at the end.
+ */
+public enum PasswordCheck {
+    /**
+     * The password was compared with the plain text password of the user.
+     */
+    PLAIN,
+    /**
+     * The password was hashed.
+     */
+    HASHED,
+    /**
+     * The hash of the password was found in the hash cache.
+     */
+    CACHE_HIT,
+    /**
+     * The password was verified before a restart and found in the warm verification cache.
+     */
+    WARM_CACHE_HIT,
+    /**
+     * The password was derived from the user name with the secret of a user pattern.
+     */
+    DERIVED
+}
@@ -0,0 +1,51 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event that is committed for every check of a password against its hashed representation.
+ */
+@Name("com.hivemq.extensions.rbac.PasswordCheck")
+@Label("Password Check")
+@Description("Check of a password against a salted hash by the File RBAC extension")
+@Category({"HiveMQ", "File RBAC"})
+class PasswordCheckEvent extends Event {
+
+    @Label("Cache Hit")
+    boolean cacheHit;
+
+    @Label("Warm Cache Hit")
+    @Description("The credentials were verified before a restart and not hashed")
+    boolean warmCacheHit;
+
+    @Label("Iterations")
+    int iterations;
+
+    @Label("Hashing Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long hashTime;
+
+    @Label("Success")
+    boolean success;
+}
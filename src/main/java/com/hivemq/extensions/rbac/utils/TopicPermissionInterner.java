@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extension.sdk.api.services.builder.Builders;
+import com.hivemq.extension.sdk.api.services.builder.TopicPermissionBuilder;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Shares {@link TopicPermission} instances between all clients that are granted the same permission.
+ * <p>
+ * HiveMQ keeps the permissions of a client for its whole session, so building new permissions for every client
+ * retains one object per permission and client. Instead, the topic permissions are interned by their resolved fields:
+ * permissions without substitutions are the same for every client and are looked up by the configured permission
+ * without resolving their topic, substituted permissions are shared by all clients with the same client id or user
+ * name. Interned permissions are only weakly referenced, so they are collected with the last session that uses them.
+ */
+@ThreadSafe
+public class TopicPermissionInterner {
+
+    private static final @NotNull String SUBSTITUTION_PREFIX = "${{";
+
+    private final @NotNull Supplier<TopicPermissionBuilder> builderSupplier;
+    //keyed by a permission with the resolved topic
+    private final @NotNull Cache<Permission, TopicPermission> topicPermissions =
+            Caffeine.newBuilder().weakValues().build();
+
+    public TopicPermissionInterner() {
+        this(Builders::topicPermission);
+    }
+
+    /**
+     * @param builderSupplier the supplier of the builders of the topic permissions, the builders of HiveMQ are only
+     *                        available inside the broker
+     */
+    public TopicPermissionInterner(final @NotNull Supplier<TopicPermissionBuilder> builderSupplier) {
+        this.builderSupplier = builderSupplier;
+    }
+
+    /**
+     * @param clientId   the client id
+     * @param userName   the userName
+     * @param permission the configured permission
+     * @return the topic permission with the substituted topic filter, shared with all clients with the same result
+     */
+    public @NotNull TopicPermission intern(
+            final @NotNull String clientId, final @NotNull String userName, final @NotNull Permission permission) {
+        final String topic = Objects.requireNonNull(permission.getTopic());
+        if (!topic.contains(SUBSTITUTION_PREFIX)) {
+            return topicPermissions.get(permission, this::build);
+        }
+        final Permission resolved = new Permission(Substitution.substitute(topic, clientId, userName));
+        resolved.setActivity(permission.getActivity());
+        resolved.setQos(permission.getQos());
+        resolved.setRetain(permission.getRetain());
+        resolved.setSharedSubscription(permission.getSharedSubscription());
+        resolved.setSharedGroup(permission.getSharedGroup());
+        return topicPermissions.get(resolved, this::build);
+    }
+
+    /**
+     * @return the approximate amount of interned topic permissions
+     */
+    public long size() {
+        return topicPermissions.estimatedSize();
+    }
+
+    private @NotNull TopicPermission build(final @NotNull Permission permission) {
+        return builderSupplier.get()
+                .topicFilter(Objects.requireNonNull(permission.getTopic()))
+                .activity(Objects.requireNonNull(permission.getActivity()))
+                .type(TopicPermission.PermissionType.ALLOW)
+                .retain(Objects.requireNonNull(permission.getRetain()))
+                .qos(Objects.requireNonNull(permission.getQos()))
+                .sharedSubscription(Objects.requireNonNull(permission.getSharedSubscription()))
+                .sharedGroup(Objects.requireNonNull(permission.getSharedGroup()))
+                .build();
+    }
+}
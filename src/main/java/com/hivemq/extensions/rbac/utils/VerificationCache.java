@@ -0,0 +1,291 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers credentials that were verified against their password hash, so they can be verified without hashing after
+ * the broker restarted.
+ * <p>
+ * An entry is the HMAC-SHA256 of the user name, the password and the stored password hash under a secret key that is
+ * kept in a separate file, so neither the password nor anything it can be derived from without the key is written.
+ * An entry only matches while the stored hash of the user is unchanged, a changed password or salt invalidates it.
+ * <p>
+ * The entries are saved periodically and loaded when the extension starts. The key file must be protected like the
+ * credentials configuration: with the key, passwords could be guessed against the entries without the cost of the
+ * password hashing.
+ */
+@ThreadSafe
+public class VerificationCache {
+
+    static final @NotNull String CACHE_FILE_NAME = "verification-cache.bin";
+    static final @NotNull String KEY_FILE_NAME = "verification-cache.key";
+    static final @NotNull String HITRATE = "com.hivemq.extensions.file-rbac.hash.warm-cache.hitrate";
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(VerificationCache.class);
+    private static final int MAGIC = 0x57434331;
+    private static final int VERSION = 1;
+    private static final int KEY_LENGTH = 32;
+    private static final int MAC_LENGTH = 32;
+    private static final @NotNull String MAC_ALGORITHM = "HmacSHA256";
+
+    private final @NotNull Path cacheFile;
+    private final @NotNull Path keyFile;
+    private final long maxAgeMillis;
+    private final @NotNull Meter hitMeter;
+    //the values are the times of the verifications, the keys wrap the MACs
+    private final @NotNull Cache<ByteBuffer, Long> verifications;
+    //a MAC instance is not thread safe, every thread keeps its own
+    private final @NotNull ThreadLocal<Mac> macs = new ThreadLocal<>();
+    private volatile @Nullable SecretKeySpec key;
+
+    public VerificationCache(
+            final @NotNull File extensionHomeFolder,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull MetricRegistry metricRegistry) {
+        cacheFile = new File(extensionHomeFolder, CACHE_FILE_NAME).toPath();
+        keyFile = new File(extensionHomeFolder, KEY_FILE_NAME).toPath();
+        maxAgeMillis = TimeUnit.SECONDS.toMillis(extensionConfig.getWarmCacheMaxAge());
+        hitMeter = metricRegistry.meter(HITRATE);
+        verifications = Caffeine.newBuilder().maximumSize(extensionConfig.getWarmCacheSize()).build();
+    }
+
+    /**
+     * Reads the secret key and the saved entries, or creates a new key. The cache stays empty if the entries could
+     * not be read.
+     *
+     * @return false if no key is available, the cache is disabled then
+     */
+    public boolean load() {
+        try {
+            key = new SecretKeySpec(readOrCreateKey(), MAC_ALGORITHM);
+        } catch (final IOException e) {
+            //without a key nothing is cached, so the warm cache is disabled
+            LOG.warn("Could not read or create the key file {} of the warm cache, disabling the warm cache. Reason: {}",
+                    keyFile,
+                    e.getMessage());
+            return false;
+        }
+        if (!Files.exists(cacheFile)) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        int loaded = 0;
+        try (final DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+                cacheFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                LOG.warn("Ignoring the warm cache {} because its format is unknown.", cacheFile);
+                return true;
+            }
+            final int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                final byte[] mac = new byte[MAC_LENGTH];
+                input.readFully(mac);
+                final long verifiedAt = input.readLong();
+                if (now - verifiedAt < maxAgeMillis) {
+                    verifications.put(ByteBuffer.wrap(mac), verifiedAt);
+                    loaded++;
+                }
+            }
+        } catch (final EOFException e) {
+            LOG.warn("The warm cache {} is truncated, loaded {} entries.", cacheFile, loaded);
+            return true;
+        } catch (final IOException e) {
+            LOG.warn("Could not read the warm cache {}, reason: {}", cacheFile, e.getMessage());
+            return true;
+        }
+        LOG.info("Loaded {} verified credentials from the warm cache {}.", loaded, cacheFile);
+        return true;
+    }
+
+    /**
+     * Writes the entries to a temporary file that replaces the cache file, so a crash never leaves a partial file.
+     * <p>
+     * Saves are serialized, as they share the temporary file.
+     */
+    public synchronized void save() {
+        if (key == null) {
+            return;
+        }
+        final Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        final long now = System.currentTimeMillis();
+        final List<Map.Entry<ByteBuffer, Long>> entries = new ArrayList<>();
+        for (final Map.Entry<ByteBuffer, Long> entry : verifications.asMap().entrySet()) {
+            if (now - entry.getValue() < maxAgeMillis) {
+                entries.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        try {
+            try (final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                    tempFile)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(entries.size());
+                for (final Map.Entry<ByteBuffer, Long> entry : entries) {
+                    output.write(entry.getKey().array());
+                    output.writeLong(entry.getValue());
+                }
+            }
+            try {
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.debug("Saved {} verified credentials to the warm cache {}.", entries.size(), cacheFile);
+        } catch (final IOException e) {
+            LOG.warn("Could not save the warm cache {}, reason: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    /**
+     * @param userName       the user name
+     * @param base64Password the password presented by the client
+     * @param storedHash     the salted password hash of the user
+     * @return true if the credentials were verified against the same stored hash before
+     */
+    boolean contains(
+            final @NotNull String userName, final @NotNull String base64Password, final @NotNull String storedHash) {
+        final byte[] mac = mac(userName, base64Password, storedHash);
+        if (mac == null) {
+            return false;
+        }
+        final Long verifiedAt = verifications.getIfPresent(ByteBuffer.wrap(mac));
+        if (verifiedAt == null || System.currentTimeMillis() - verifiedAt >= maxAgeMillis) {
+            return false;
+        }
+        hitMeter.mark();
+        return true;
+    }
+
+    /**
+     * Remembers credentials that were verified against the stored hash.
+     *
+     * @param userName       the user name
+     * @param base64Password the password presented by the client
+     * @param storedHash     the salted password hash of the user
+     */
+    void add(final @NotNull String userName, final @NotNull String base64Password, final @NotNull String storedHash) {
+        final byte[] mac = mac(userName, base64Password, storedHash);
+        if (mac != null) {
+            verifications.put(ByteBuffer.wrap(mac), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Removes all entries, the file is overwritten with the next save.
+     */
+    void invalidate() {
+        verifications.invalidateAll();
+    }
+
+    long size() {
+        verifications.cleanUp();
+        return verifications.estimatedSize();
+    }
+
+    private byte @Nullable [] mac(
+            final @NotNull String userName, final @NotNull String base64Password, final @NotNull String storedHash) {
+        final SecretKeySpec currentKey = key;
+        if (currentKey == null) {
+            return null;
+        }
+        Mac mac = macs.get();
+        try {
+            if (mac == null) {
+                mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(currentKey);
+                macs.set(mac);
+            }
+        } catch (final GeneralSecurityException e) {
+            LOG.warn("Could not create the MAC of the warm cache, reason: {}", e.getMessage());
+            return null;
+        }
+        //the parts are prefixed with their length, so no two different triples have the same input
+        update(mac, userName);
+        update(mac, base64Password);
+        update(mac, storedHash);
+        return mac.doFinal();
+    }
+
+    private static void update(final @NotNull Mac mac, final @NotNull String part) {
+        final byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+        mac.update(ByteBuffer.allocate(4).putInt(0, bytes.length).array());
+        mac.update(bytes);
+    }
+
+    private byte @NotNull [] readOrCreateKey() throws IOException {
+        if (Files.exists(keyFile)) {
+            final byte[] existingKey = Files.readAllBytes(keyFile);
+            if (existingKey.length == KEY_LENGTH) {
+                return existingKey;
+            }
+            LOG.warn("The key file {} of the warm cache is invalid, creating a new key.", keyFile);
+        }
+        final byte[] newKey = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(newKey);
+        final Path tempFile = keyFile.resolveSibling(keyFile.getFileName() + ".tmp");
+        Files.deleteIfExists(tempFile);
+        //the key is never written to a file that others can read, even for a moment
+        try {
+            Files.createFile(tempFile,
+                    PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ,
+                            PosixFilePermission.OWNER_WRITE)));
+        } catch (final UnsupportedOperationException e) {
+            throw new IOException("the permissions of the key file cannot be restricted on this file system");
+        }
+        Files.write(tempFile, newKey);
+        Files.move(tempFile, keyFile, StandardCopyOption.REPLACE_EXISTING);
+        //entries of an older key can never match
+        Files.deleteIfExists(cacheFile);
+        return newKey;
+    }
+}
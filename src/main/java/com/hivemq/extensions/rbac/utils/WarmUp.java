@@ -0,0 +1,173 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extensions.rbac.configuration.CredentialsFlattener;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.store.InMemoryCredentialsStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the code of an authentication with synthetic credentials before the authenticator is registered.
+ * <p>
+ * The first connects after a start would otherwise run the password hashing, the substitution and the building of the
+ * permissions in the interpreter, while the JIT compiler is still collecting profiles, just when all clients
+ * reconnect. The warm-up authenticates synthetic users against a separate validator with its own in-memory store and
+ * metrics, so neither the caches nor the metrics of the real validator are touched. The passwords are hashed with only
+ * a few iterations, as the JIT compiles the hash function and not the amount of iterations.
+ * <p>
+ * The warm-up ends when its time is up, or earlier if it ran enough rounds for the hot methods to reach the optimizing
+ * compiler and the JIT compiler has been idle for a while.
+ */
+public class WarmUp {
+
+    private static final @NotNull Logger LOG = LoggerFactory.getLogger(WarmUp.class);
+
+    private static final int USERS = 16;
+    private static final int CLIENTS_PER_USER = 64;
+    private static final int HASH_ITERATIONS = 10;
+    //more than the invocations after which HotSpot compiles a method with C2
+    private static final int MIN_ROUNDS = 20_000;
+    private static final long QUIET_TIME = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final @NotNull List<String> ROLES = List.of("warm-up-role-1", "warm-up-role-2");
+
+    private final long warmUpTimeNanos;
+    private final @NotNull CredentialsValidator credentialsValidator;
+    private final @NotNull String @NotNull [] userNames = new String[USERS];
+    private final @NotNull ByteBuffer @NotNull [] passwords = new ByteBuffer[USERS];
+
+    /**
+     * @param warmUpTime the maximum time of the warm-up in milliseconds
+     */
+    public WarmUp(final long warmUpTime) {
+        warmUpTimeNanos = TimeUnit.MILLISECONDS.toNanos(warmUpTime);
+        final SecureRandom random = new SecureRandom();
+        final List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            final byte[] password = new byte[16];
+            final byte[] salt = new byte[16];
+            random.nextBytes(password);
+            random.nextBytes(salt);
+            final String base64Password = Base64.getEncoder().encodeToString(password);
+            final String base64Salt = Base64.getEncoder().encodeToString(salt);
+            final String hash =
+                    Base64.getEncoder().encodeToString(Hashing.createHash(base64Password, base64Salt, HASH_ITERATIONS));
+            userNames[i] = "warm-up-user-" + i;
+            passwords[i] = ByteBuffer.wrap(password).asReadOnlyBuffer();
+            users.add(new User(userNames[i], base64Salt + ":" + HASH_ITERATIONS + ":" + hash, ROLES));
+        }
+
+        final Permission ownTopic = new Permission("devices/${{clientid}}/#");
+        final Permission userTopic = new Permission("users/${{username}}/status");
+        userTopic.setActivity(TopicPermission.MqttActivity.PUBLISH);
+        final Permission commonTopic = new Permission("broadcast/#");
+        commonTopic.setActivity(TopicPermission.MqttActivity.SUBSCRIBE);
+        final Role role = new Role(ROLES.get(0), List.of(ownTopic, userTopic));
+        role.setQuota(new Quota(100, 0, 0));
+        final List<Role> roles = List.of(role, new Role(ROLES.get(1), List.of(commonTopic)));
+
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.HASHED);
+        //no JFR events are recorded for the synthetic authentications
+        extensionConfig.setJfrEventThreshold(Long.MAX_VALUE);
+        //the same store class as for the real credentials, so the warm-up does not add a store type to the profiles
+        final FileAuthConfig config = CredentialsFlattener.flatten(new FileAuthConfig(users, roles));
+        credentialsValidator = new CredentialsValidator(InMemoryCredentialsStore.of(config),
+                extensionConfig,
+                new MetricRegistry(),
+                null,
+                new TopicPermissionInterner());
+    }
+
+    /**
+     * Runs the warm-up in the calling thread.
+     *
+     * @return the amount of synthetic authentications
+     */
+    public int run() {
+        final long start = System.nanoTime();
+        final CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        final boolean compilationTimeSupported =
+                compilation != null && compilation.isCompilationTimeMonitoringSupported();
+        long lastCompilationTime = compilationTimeSupported ? compilation.getTotalCompilationTime() : 0;
+        long lastCompilationChange = start;
+        int rounds = 0;
+        int granted = 0;
+        long now = start;
+        while (now - start < warmUpTimeNanos) {
+            granted += authenticate(rounds++);
+            now = System.nanoTime();
+            if (compilationTimeSupported && rounds >= MIN_ROUNDS && (rounds & 0xFF) == 0) {
+                final long compilationTime = compilation.getTotalCompilationTime();
+                if (compilationTime != lastCompilationTime) {
+                    lastCompilationTime = compilationTime;
+                    lastCompilationChange = now;
+                } else if (now - lastCompilationChange >= QUIET_TIME) {
+                    break;
+                }
+            }
+        }
+        LOG.info("Warmed up File RBAC extension with {} authentications in {} ms.",
+                rounds,
+                TimeUnit.NANOSECONDS.toMillis(now - start));
+        LOG.trace("Warm-up granted {} permissions.", granted);
+        return rounds;
+    }
+
+    /**
+     * @return the amount of granted permissions
+     */
+    private int authenticate(final int round) {
+        final int user = round % USERS;
+        final ByteBuffer password;
+        if ((round & 3) == 0) {
+            //a wrong password that was never checked before is always hashed
+            password = ByteBuffer.wrap(("warm-up-" + round).getBytes(StandardCharsets.UTF_8));
+        } else {
+            password = passwords[user].duplicate();
+        }
+        final List<String> roles = credentialsValidator.getRoles(userNames[user], password, null);
+        if (roles == null) {
+            //also the lookup of an unknown user
+            return credentialsValidator.getRoles("unknown-" + user, passwords[user].duplicate(), null) == null ? 0 : 1;
+        }
+        final String clientId = userNames[user] + "-client-" + (round / USERS) % CLIENTS_PER_USER;
+        final Quota quota = credentialsValidator.getQuota(roles);
+        return credentialsValidator.getPermissions(clientId, userNames[user], roles).size() +
+                (quota == null ? 0 : 1);
+    }
+}
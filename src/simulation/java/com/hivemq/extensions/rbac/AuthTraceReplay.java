@@ -0,0 +1,416 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.AuthTraceReader.Connect;
+import com.hivemq.extensions.rbac.AuthenticationMetrics.Outcome;
+import com.hivemq.extensions.rbac.ConnectStormSimulator.SimulatedCredentialsStore;
+import com.hivemq.extensions.rbac.ConnectStormSimulator.SimulatedTopicPermissionBuilder;
+import com.hivemq.extensions.rbac.configuration.CredentialsFlattener;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.store.UserIndex;
+import com.hivemq.extensions.rbac.utils.CredentialsValidator;
+import com.hivemq.extensions.rbac.utils.Hashing;
+import com.hivemq.extensions.rbac.utils.PasswordCheck;
+import com.hivemq.extensions.rbac.utils.TopicPermissionInterner;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Replays authentication traces that the {@link AuthTraceRecorder} recorded in production against a fresh
+ * {@link CredentialsValidator}, so hash cache sizes and hashing settings are evaluated with the real user names,
+ * reconnect intervals and role sets.
+ * <p>
+ * The trace contains neither user names nor passwords, so every user ID of a trace is replaced by a synthetic user
+ * with a synthetic password that is hashed with the given iterations, and every role set by synthetic roles with the
+ * recorded amount of roles and permissions. Connects that checked a password are replayed with the right password if
+ * the credentials were valid and with a wrong password if not, connects of unknown users are replayed with an unknown
+ * user name. Connects without credentials or on skipped listeners did not reach the validator and are not replayed.
+ * User patterns are replayed as users.
+ * <p>
+ * Every run of the extension in the traces is replayed with its own validator, as the caches of the extension were
+ * empty at its start. The connects start at their recorded times, divided by the speed, in virtual threads. The
+ * replay reports how the passwords were checked in the recorded run and in the replay, the hashes and the hash cache
+ * hit rate and the durations of the authentications. As the hash cache expires in real time, the expiry of an
+ * accelerated replay must be divided by the speed to cover the same part of the trace.
+ * <pre>
+ * ./gradlew replayAuthTrace --args="--hash-cache-size 10000 --speed 10 --hash-cache-expiry 3 /path/to/auth-trace"
+ * </pre>
+ */
+public class AuthTraceReplay {
+
+    private static final @NotNull String ROLE = "role-";
+
+    @Parameter(description = "<trace files or folders>", required = true)
+    private @NotNull List<String> traces = new ArrayList<>();
+
+    @Parameter(names = "--speed",
+               description = "The speed of the replay relative to the recording, 0 replays as fast as possible")
+    private double speed = 1;
+
+    @Parameter(names = "--concurrency", description = "The maximum amount of concurrent authentications")
+    private int concurrency = 10_000;
+
+    @Parameter(names = "--hash-cache-size", description = "The maximum amount of entries of the hash cache")
+    private int hashCacheSize = 1000;
+
+    @Parameter(names = "--hash-cache-expiry", description = "The seconds after which hash cache entries expire")
+    private long hashCacheExpiry = 30;
+
+    @Parameter(names = "--password-type", description = "The type of the passwords in the credentials")
+    private @NotNull PasswordType passwordType = PasswordType.HASHED;
+
+    @Parameter(names = "--iterations", description = "The amount of hashing iterations of the passwords")
+    private int iterations = 100;
+
+    @Parameter(names = "--help", help = true)
+    private boolean help;
+
+    public static void main(final @NotNull String @NotNull [] args) throws IOException, InterruptedException {
+        final AuthTraceReplay replay = new AuthTraceReplay();
+        final JCommander jCommander = JCommander.newBuilder().addObject(replay).build();
+        try {
+            jCommander.parse(args);
+            replay.validate();
+        } catch (final ParameterException e) {
+            System.err.println(e.getMessage());
+            jCommander.usage();
+            System.exit(1);
+        }
+        if (replay.help) {
+            jCommander.usage();
+            System.exit(0);
+        }
+        replay.run();
+    }
+
+    private void validate() {
+        if (speed < 0 || concurrency < 1 || hashCacheSize < 0 || hashCacheExpiry < 1 || iterations < 1) {
+            throw new ParameterException("Speed and hash cache size must not be negative, " +
+                    "concurrency, hash cache expiry and iterations must be larger than 0");
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        final Map<Long, List<Connect>> runs = readTraces();
+        if (runs.isEmpty()) {
+            System.out.println("The traces contain no connects.");
+            return;
+        }
+        final ExtensionConfig extensionConfig = new ExtensionConfig(60, null, passwordType, false);
+        extensionConfig.setHashCacheSize(hashCacheSize);
+        extensionConfig.setHashCacheExpiry(hashCacheExpiry);
+        for (final Map.Entry<Long, List<Connect>> run : runs.entrySet()) {
+            replayRun(run.getKey(), run.getValue(), extensionConfig);
+        }
+    }
+
+    /**
+     * @return the connects of the traces grouped by the runs of the extension in the order of the files and sorted by
+     *         their start
+     */
+    private @NotNull Map<Long, List<Connect>> readTraces() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (final String trace : traces) {
+            final Path path = Path.of(trace);
+            if (Files.isDirectory(path)) {
+                try (final Stream<Path> folder = Files.list(path)) {
+                    folder.filter(file -> file.getFileName().toString().endsWith(AuthTrace.FILE_SUFFIX))
+                            .sorted()
+                            .forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        final Map<Long, List<Connect>> runs = new LinkedHashMap<>();
+        for (final Path file : files) {
+            try (final AuthTraceReader reader = new AuthTraceReader(file)) {
+                final List<Connect> connects = runs.computeIfAbsent(reader.getRunId(), runId -> new ArrayList<>());
+                Connect connect;
+                while ((connect = reader.next()) != null) {
+                    connects.add(connect);
+                }
+            }
+        }
+        runs.values().removeIf(List::isEmpty);
+        runs.values().forEach(connects -> connects.sort(Comparator.comparingLong(Connect::getTime)));
+        return runs;
+    }
+
+    private void replayRun(
+            final long runId,
+            final @NotNull List<Connect> connects,
+            final @NotNull ExtensionConfig extensionConfig) throws InterruptedException {
+        final long setUpStart = System.nanoTime();
+        final ReplayCredentials credentials = new ReplayCredentials(connects);
+        final List<ReplayConnect> replayConnects = new ArrayList<>(connects.size());
+        final Histogram recordedDurations = new Histogram(3);
+        final long[] recordedChecks = new long[PasswordCheck.values().length];
+        for (final Connect connect : connects) {
+            final ReplayConnect replayConnect = credentials.replayConnect(connect);
+            if (replayConnect != null) {
+                replayConnects.add(replayConnect);
+                recordedDurations.recordValue(connect.getDuration());
+                if (connect.getPasswordCheck() != null) {
+                    recordedChecks[connect.getPasswordCheck().ordinal()]++;
+                }
+            }
+        }
+        System.out.printf("Run %016x: %d connects, %d replayed, %d users and %d role sets created in %d ms.%n",
+                runId,
+                connects.size(),
+                replayConnects.size(),
+                credentials.getUsers(),
+                credentials.getRoleSets(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - setUpStart));
+        if (replayConnects.isEmpty()) {
+            return;
+        }
+
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final CredentialsValidator credentialsValidator = new CredentialsValidator(credentials.createStore(),
+                extensionConfig,
+                metricRegistry,
+                null,
+                new TopicPermissionInterner(SimulatedTopicPermissionBuilder::new));
+        final Recorder durations = new Recorder(3);
+        final LongAdder[] replayedChecks = new LongAdder[PasswordCheck.values().length];
+        for (int i = 0; i < replayedChecks.length; i++) {
+            replayedChecks[i] = new LongAdder();
+        }
+        final Consumer<PasswordCheck> passwordCheckConsumer = check -> replayedChecks[check.ordinal()].increment();
+        final Semaphore permits = new Semaphore(concurrency);
+        final long firstTime = replayConnects.get(0).time;
+        final long start = System.nanoTime();
+        try (final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (final ReplayConnect replayConnect : replayConnects) {
+                if (speed > 0) {
+                    final long startTime = start + (long) ((replayConnect.time - firstTime) / speed);
+                    long remaining;
+                    while ((remaining = startTime - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(remaining);
+                    }
+                }
+                permits.acquire();
+                executorService.execute(() -> {
+                    try {
+                        final long authenticationStart = System.nanoTime();
+                        final List<String> roles = credentialsValidator.getRoles(replayConnect.userName,
+                                ByteBuffer.wrap(replayConnect.password).asReadOnlyBuffer(),
+                                passwordCheckConsumer);
+                        if (roles != null) {
+                            credentialsValidator.getPermissions(replayConnect.clientId, replayConnect.userName, roles);
+                        }
+                        durations.recordValue(System.nanoTime() - authenticationStart);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        final long recordedElapsed = replayConnects.get(replayConnects.size() - 1).time - firstTime;
+        System.out.printf("  replayed %.1f s of the recording in %.1f s, %.0f connects/s%n",
+                recordedElapsed / 1e9,
+                elapsed / 1e9,
+                replayConnects.size() * 1e9 / elapsed);
+        final StringBuilder checks = new StringBuilder("  password checks (recorded/replayed):");
+        for (final PasswordCheck check : PasswordCheck.values()) {
+            final long replayed = replayedChecks[check.ordinal()].sum();
+            if (recordedChecks[check.ordinal()] > 0 || replayed > 0) {
+                checks.append(' ')
+                        .append(check.name().toLowerCase())
+                        .append(' ')
+                        .append(recordedChecks[check.ordinal()])
+                        .append('/')
+                        .append(replayed);
+            }
+        }
+        System.out.println(checks);
+        final long cacheHits = metricRegistry.meter("com.hivemq.extensions.file-rbac.hash.cache.hitrate").getCount();
+        final long hashes = metricRegistry.timer("com.hivemq.extensions.file-rbac.hash.sampled-time").getCount();
+        System.out.printf("  hash cache: %.1f %% hit rate, %d hashes%n",
+                cacheHits + hashes == 0 ? 0 : 100.0 * cacheHits / (cacheHits + hashes),
+                hashes);
+        ConnectStormSimulator.printPercentiles("recorded authentication time", recordedDurations);
+        ConnectStormSimulator.printPercentiles("replayed validation time", durations.getIntervalHistogram());
+    }
+
+    /**
+     * A connect of the trace with the credentials that replay it.
+     */
+    private static class ReplayConnect {
+
+        private final long time;
+        private final @NotNull String clientId;
+        private final @NotNull String userName;
+        private final byte @NotNull [] password;
+
+        ReplayConnect(
+                final long time,
+                final @NotNull String clientId,
+                final @NotNull String userName,
+                final byte @NotNull [] password) {
+            this.time = time;
+            this.clientId = clientId;
+            this.userName = userName;
+            this.password = password;
+        }
+    }
+
+    /**
+     * The synthetic users and roles that stand in for the user IDs and role sets of a run.
+     */
+    private class ReplayCredentials {
+
+        private final @NotNull Map<Long, Integer> users = new HashMap<>();
+        private final @NotNull Map<Integer, List<String>> userRoles = new HashMap<>();
+        private final @NotNull Map<Integer, List<String>> roleSets = new HashMap<>();
+        private final @NotNull Map<String, Role> roles = new HashMap<>();
+        private final @NotNull List<String> passwords = new ArrayList<>();
+
+        ReplayCredentials(final @NotNull List<Connect> connects) {
+            for (final Connect connect : connects) {
+                if (connect.getPasswordCheck() == null) {
+                    continue;
+                }
+                final int user = users.computeIfAbsent(connect.getUserId(), userId -> {
+                    passwords.add("password-" + Long.toHexString(userId));
+                    return users.size();
+                });
+                if (connect.getRoleSet() >= 0) {
+                    userRoles.putIfAbsent(user, roleSet(connect));
+                }
+            }
+        }
+
+        private @NotNull List<String> roleSet(final @NotNull Connect connect) {
+            return roleSets.computeIfAbsent(connect.getRoleSet(), roleSet -> {
+                final int roleCount = connect.getRoles();
+                if (roleCount == 0) {
+                    return List.of();
+                }
+                final List<String> roleIds = new ArrayList<>(roleCount);
+                final List<Permission> allPermissions = new ArrayList<>(connect.getPermissions());
+                for (int i = 0; i < roleCount; i++) {
+                    final String roleId = ROLE + roleSet + "-" + i;
+                    final List<Permission> permissions = new ArrayList<>();
+                    //the permissions are distributed over the roles of the set
+                    for (int p = i; p < connect.getPermissions(); p += roleCount) {
+                        permissions.add(new Permission("replay/" + roleId + "/permission-" + p));
+                    }
+                    roles.put(roleId, new Role(roleId, permissions));
+                    roleIds.add(roleId);
+                    allPermissions.addAll(permissions);
+                }
+                final String combinedRoleId = CredentialsFlattener.combinedRoleId(roleIds);
+                roles.putIfAbsent(combinedRoleId, new Role(combinedRoleId, allPermissions));
+                return List.copyOf(roleIds);
+            });
+        }
+
+        @NotNull SimulatedCredentialsStore createStore() {
+            final List<User> userList = new ArrayList<>(users.size());
+            final String[] passwordArray = passwords.toArray(new String[0]);
+            for (int user = 0; user < passwordArray.length; user++) {
+                final String password;
+                if (passwordType == PasswordType.HASHED) {
+                    final String salt = Base64.getEncoder()
+                            .encodeToString(Integer.toHexString(user).getBytes(StandardCharsets.UTF_8));
+                    final String base64Password = Base64.getEncoder()
+                            .encodeToString(passwordArray[user].getBytes(StandardCharsets.UTF_8));
+                    final byte[] hash = Hashing.createHash(base64Password, salt, iterations);
+                    password = salt + ":" + iterations + ":" + Base64.getEncoder().encodeToString(hash);
+                } else {
+                    password = passwordArray[user];
+                }
+                userList.add(new User(userName(user), password, userRoles.getOrDefault(user, List.of())));
+            }
+            return new SimulatedCredentialsStore(UserIndex.build(userList), roles, passwordArray);
+        }
+
+        /**
+         * @return the credentials that replay the connect or null if the connect did not reach the validator
+         */
+        @Nullable ReplayConnect replayConnect(final @NotNull Connect connect) {
+            final Outcome outcome = connect.getOutcome();
+            final boolean invalidCredentials = outcome == Outcome.REJECTED_INVALID_CREDENTIALS ||
+                    outcome == Outcome.NEXT_EXTENSION_INVALID_CREDENTIALS;
+            final String clientId = "client-" + Long.toHexString(connect.getUserId());
+            if (connect.getPasswordCheck() != null) {
+                final int user = users.get(connect.getUserId());
+                final String password = passwords.get(user) + (invalidCredentials ? "-wrong" : "");
+                return new ReplayConnect(connect.getTime(),
+                        clientId,
+                        userName(user),
+                        password.getBytes(StandardCharsets.UTF_8));
+            }
+            if (invalidCredentials && connect.getUserId() != AuthTrace.NO_USER) {
+                return new ReplayConnect(connect.getTime(),
+                        clientId,
+                        "unknown-" + Long.toHexString(connect.getUserId()),
+                        "password".getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        }
+
+        int getUsers() {
+            return users.size();
+        }
+
+        int getRoleSets() {
+            return roleSets.size();
+        }
+
+        private @NotNull String userName(final int user) {
+            return "user-" + user;
+        }
+    }
+}
@@ -0,0 +1,702 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.auth.parameter.SimpleAuthInput;
+import com.hivemq.extension.sdk.api.auth.parameter.SimpleAuthOutput;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extension.sdk.api.client.parameter.ClientInformation;
+import com.hivemq.extension.sdk.api.client.parameter.ConnectionInformation;
+import com.hivemq.extension.sdk.api.client.parameter.Listener;
+import com.hivemq.extension.sdk.api.packets.auth.ModifiableDefaultPermissions;
+import com.hivemq.extension.sdk.api.packets.connect.ConnectPacket;
+import com.hivemq.extension.sdk.api.services.builder.TopicPermissionBuilder;
+import com.hivemq.extensions.rbac.AuthenticationMetrics.Outcome;
+import com.hivemq.extensions.rbac.configuration.CredentialsFlattener;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+import com.hivemq.extensions.rbac.store.CredentialsStore;
+import com.hivemq.extensions.rbac.store.UserIndex;
+import com.hivemq.extensions.rbac.utils.CredentialsValidator;
+import com.hivemq.extensions.rbac.utils.Hashing;
+import com.hivemq.extensions.rbac.utils.TopicPermissionInterner;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Simulates a storm of connects against the {@link FileAuthAuthenticator}, like all clients reconnecting after a
+ * network outage or a restart of the broker.
+ * <p>
+ * Every client connects in its own virtual thread. All threads are started before a round, wait for its start and
+ * then park until the arrival time of their client, so a burst wakes all threads at once. The clients are a mix of
+ * known users, unknown users and known users with a wrong password, connected to a mix of listeners. The users are
+ * held by the same index as the in-memory store and their passwords are hashed like configured passwords, so the
+ * hashing, the hash cache, the session registry and the interning of the permissions run as in the broker.
+ * <p>
+ * Every round authenticates all clients with a new authenticator, so the caches are empty at the start of each round,
+ * and reports the connects per second, the latency from the arrival of a client to the end of its authentication,
+ * the hash cache hit rate and the heap allocated per connect. The first rounds also warm up the JIT compiler, so
+ * configurations and releases are compared by their last rounds.
+ * <pre>
+ * ./gradlew simulateConnectStorm --args="--clients 500000 --arrival RAMP --duration 20000"
+ * </pre>
+ */
+public class ConnectStormSimulator {
+
+    private static final @NotNull String ROLE = "device";
+    private static final int SUBSTITUTED_PERMISSIONS_SHARE = 4;
+    private static final double @NotNull [] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    @Parameter(names = "--clients", description = "The amount of clients that connect in every round")
+    private int clients = 200_000;
+
+    @Parameter(names = "--users", description = "The amount of users in the credentials")
+    private int users = 20_000;
+
+    @Parameter(names = "--unknown", description = "The share of clients with an unknown user name")
+    private double unknownShare = 0.05;
+
+    @Parameter(names = "--wrong-password", description = "The share of clients with a known user and a wrong password")
+    private double wrongPasswordShare = 0.05;
+
+    @Parameter(names = "--listeners", description = "The names of the listeners the clients connect to in turn")
+    private @NotNull List<String> listeners = new ArrayList<>(List.of("tcp-listener"));
+
+    @Parameter(names = "--extension-listeners",
+               description = "The listener names of the extension config, the clients of other listeners are skipped")
+    private @Nullable List<String> extensionListeners;
+
+    @Parameter(names = "--arrival", description = "The arrival curve of the clients")
+    private @NotNull ArrivalCurve arrival = ArrivalCurve.POISSON;
+
+    @Parameter(names = "--duration", description = "The time in milliseconds over which the clients arrive")
+    private long duration = 10_000;
+
+    @Parameter(names = "--password-type", description = "The type of the passwords in the credentials")
+    private @NotNull PasswordType passwordType = PasswordType.HASHED;
+
+    @Parameter(names = "--iterations", description = "The amount of hashing iterations of the passwords")
+    private int iterations = 100;
+
+    @Parameter(names = "--permissions",
+               description = "The amount of permissions of the users, every 4th permission contains the client id")
+    private int permissions = 10;
+
+    @Parameter(names = "--rounds", description = "The amount of rounds")
+    private int rounds = 3;
+
+    @Parameter(names = "--seed", description = "The seed of the random users, clients and arrivals")
+    private long seed = 1;
+
+    @Parameter(names = "--help", help = true)
+    private boolean help;
+
+    /**
+     * The distribution of the arrivals of the clients over the duration of a round.
+     */
+    enum ArrivalCurve {
+        /**
+         * All clients arrive at the start of the round, the duration is ignored.
+         */
+        BURST,
+        /**
+         * The clients arrive at a constant rate.
+         */
+        UNIFORM,
+        /**
+         * The arrival rate grows linearly from 0, like clients that reconnect with growing backoffs after an outage.
+         */
+        RAMP,
+        /**
+         * The clients arrive independently of each other at a constant average rate.
+         */
+        POISSON;
+
+        /**
+         * @param clients  the amount of clients
+         * @param duration the duration of the arrivals in nanoseconds
+         * @param random   the random for the poisson arrivals
+         * @return the ascending arrival times of the clients in nanoseconds after the start of the round
+         */
+        long @NotNull [] arrivals(final int clients, final long duration, final @NotNull SplittableRandom random) {
+            final long[] arrivals = new long[clients];
+            double time = 0;
+            for (int i = 0; i < clients; i++) {
+                if (this == UNIFORM) {
+                    arrivals[i] = duration * i / clients;
+                } else if (this == RAMP) {
+                    arrivals[i] = (long) (duration * Math.sqrt((double) i / clients));
+                } else if (this == POISSON) {
+                    //exponentially distributed times between the arrivals
+                    time -= Math.log(1 - random.nextDouble()) * duration / clients;
+                    arrivals[i] = (long) time;
+                }
+            }
+            return arrivals;
+        }
+    }
+
+    public static void main(final @NotNull String @NotNull [] args) throws InterruptedException {
+        final ConnectStormSimulator simulator = new ConnectStormSimulator();
+        final JCommander jCommander = JCommander.newBuilder().addObject(simulator).build();
+        try {
+            jCommander.parse(args);
+            simulator.validate();
+        } catch (final ParameterException e) {
+            System.err.println(e.getMessage());
+            jCommander.usage();
+            System.exit(1);
+        }
+        if (simulator.help) {
+            jCommander.usage();
+            System.exit(0);
+        }
+        simulator.run();
+    }
+
+    private void validate() {
+        if (clients < 1 || users < 1 || rounds < 1 || duration < 0 || iterations < 1 || permissions < 0) {
+            throw new ParameterException("Clients, users, rounds and iterations must be larger than 0, " +
+                    "duration and permissions must not be negative");
+        }
+        if (unknownShare < 0 || wrongPasswordShare < 0 || unknownShare + wrongPasswordShare > 1) {
+            throw new ParameterException("The shares of unknown users and wrong passwords must add up to at most 1");
+        }
+        if (listeners.isEmpty()) {
+            throw new ParameterException("At least one listener is required");
+        }
+    }
+
+    private void run() throws InterruptedException {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final long setUpStart = System.nanoTime();
+        final SimulatedCredentialsStore credentialsStore = createCredentialsStore(random);
+        final SimpleAuthInput[] inputs = createInputs(random, credentialsStore);
+        final long[] arrivals = arrival.arrivals(clients, TimeUnit.MILLISECONDS.toNanos(duration), random);
+        System.out.printf("Created %d users and %d clients in %d ms.%n",
+                users,
+                clients,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - setUpStart));
+
+        final ExtensionConfig extensionConfig = new ExtensionConfig(60,
+                extensionListeners == null ? null : Set.copyOf(extensionListeners),
+                passwordType,
+                false);
+        for (int round = 1; round <= rounds; round++) {
+            runRound(round, extensionConfig, credentialsStore, inputs, arrivals);
+        }
+    }
+
+    private void runRound(
+            final int round,
+            final @NotNull ExtensionConfig extensionConfig,
+            final @NotNull CredentialsStore credentialsStore,
+            final @NotNull SimpleAuthInput @NotNull [] inputs,
+            final long @NotNull [] arrivals) throws InterruptedException {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final CredentialsValidator credentialsValidator = new CredentialsValidator(credentialsStore,
+                extensionConfig,
+                metricRegistry,
+                null,
+                new TopicPermissionInterner(SimulatedTopicPermissionBuilder::new));
+        final FileAuthAuthenticator authenticator =
+                new FileAuthAuthenticator(credentialsValidator,
+                        new SessionRegistry(),
+                        extensionConfig,
+                        metricRegistry,
+                        null);
+        //the output is stateless, like the authenticator does not need more from it
+        final SimpleAuthOutput output = createOutput();
+        final Recorder latencies = new Recorder(3);
+        final Recorder authenticationTimes = new Recorder(3);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final long[] start = new long[1];
+
+        final long end;
+        final Allocation allocation;
+        try (final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < inputs.length; i++) {
+                final SimpleAuthInput input = inputs[i];
+                final long arrival = arrivals[i];
+                executorService.execute(() -> {
+                    try {
+                        startLatch.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    //the start is written before the latch is released
+                    final long arrivalTime = start[0] + arrival;
+                    long remaining;
+                    while ((remaining = arrivalTime - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(remaining);
+                    }
+                    final long authenticationStart = System.nanoTime();
+                    authenticator.onConnect(input, output);
+                    final long authenticationEnd = System.nanoTime();
+                    authenticationTimes.recordValue(authenticationEnd - authenticationStart);
+                    latencies.recordValue(authenticationEnd - arrivalTime);
+                });
+            }
+            allocation = new Allocation();
+            start[0] = System.nanoTime();
+            startLatch.countDown();
+        }
+        end = System.nanoTime();
+        allocation.stop();
+
+        final long elapsed = end - start[0];
+        System.out.printf("Round %d: %d connects in %d ms, %.0f connects/s%n",
+                round,
+                inputs.length,
+                TimeUnit.NANOSECONDS.toMillis(elapsed),
+                inputs.length * 1e9 / elapsed);
+        final StringBuilder outcomes = new StringBuilder("  outcomes:");
+        for (final Outcome outcome : Outcome.values()) {
+            final long count = metricRegistry.counter(outcome.getMetricName()).getCount();
+            if (count > 0) {
+                outcomes.append(' ').append(outcome.name().toLowerCase()).append(' ').append(count);
+            }
+        }
+        System.out.println(outcomes);
+        printPercentiles("latency from arrival", latencies.getIntervalHistogram());
+        printPercentiles("authentication time", authenticationTimes.getIntervalHistogram());
+        final long cacheHits = metricRegistry.meter("com.hivemq.extensions.file-rbac.hash.cache.hitrate").getCount();
+        final long hashes = metricRegistry.timer("com.hivemq.extensions.file-rbac.hash.sampled-time").getCount();
+        System.out.printf("  hash cache: %.1f %% hit rate, %d hashes%n",
+                cacheHits + hashes == 0 ? 0 : 100.0 * cacheHits / (cacheHits + hashes),
+                hashes);
+        System.out.printf("  heap: %d bytes allocated per connect, %d collections, %d ms collection time%n",
+                allocation.getBytes() / inputs.length,
+                allocation.getCollections(),
+                allocation.getCollectionTime());
+    }
+
+    private @NotNull SimulatedCredentialsStore createCredentialsStore(final @NotNull SplittableRandom random) {
+        final List<Permission> rolePermissions = new ArrayList<>(permissions);
+        for (int i = 0; i < permissions; i++) {
+            final Permission permission = new Permission(i % SUBSTITUTED_PERMISSIONS_SHARE == 0 ?
+                    "devices/${{clientid}}/channel-" + i + "/#" :
+                    "fleet/channel-" + i);
+            permission.setActivity(i % 2 == 0 ? TopicPermission.MqttActivity.PUBLISH :
+                    TopicPermission.MqttActivity.SUBSCRIBE);
+            rolePermissions.add(permission);
+        }
+        final Role role = new Role(ROLE, rolePermissions);
+        final Map<String, Role> roles = new HashMap<>();
+        roles.put(ROLE, role);
+        roles.put(CredentialsFlattener.combinedRoleId(List.of(ROLE)), role);
+
+        final String[] passwords = new String[users];
+        final String[] salts = new String[users];
+        for (int i = 0; i < users; i++) {
+            passwords[i] = "password-" + Long.toHexString(random.nextLong());
+            salts[i] = Base64.getEncoder().encodeToString(Long.toHexString(random.nextLong()).getBytes());
+        }
+        final List<String> userRoles = List.of(ROLE);
+        final List<User> userList = IntStream.range(0, users).parallel().mapToObj(i -> {
+            final String password;
+            if (passwordType == PasswordType.HASHED) {
+                final String base64Password =
+                        Base64.getEncoder().encodeToString(passwords[i].getBytes(StandardCharsets.UTF_8));
+                final byte[] hash = Hashing.createHash(base64Password, salts[i], iterations);
+                password = salts[i] + ":" + iterations + ":" + Base64.getEncoder().encodeToString(hash);
+            } else {
+                password = passwords[i];
+            }
+            return new User(userName(i), password, userRoles);
+        }).toList();
+        return new SimulatedCredentialsStore(UserIndex.build(userList), roles, passwords);
+    }
+
+    private @NotNull SimpleAuthInput @NotNull [] createInputs(
+            final @NotNull SplittableRandom random, final @NotNull SimulatedCredentialsStore credentialsStore) {
+        final ConnectionInformation[] connectionInformations = new ConnectionInformation[listeners.size()];
+        for (int i = 0; i < connectionInformations.length; i++) {
+            final String listenerName = listeners.get(i);
+            final Optional<Listener> listener = Optional.of(stub(Listener.class, (proxy, method, args) -> {
+                if (method.getName().equals("getName")) {
+                    return listenerName;
+                }
+                throw unsupported(method);
+            }));
+            connectionInformations[i] = stub(ConnectionInformation.class, (proxy, method, args) -> {
+                if (method.getName().equals("getListener")) {
+                    return listener;
+                }
+                throw unsupported(method);
+            });
+        }
+
+        final SimpleAuthInput[] inputs = new SimpleAuthInput[clients];
+        for (int i = 0; i < clients; i++) {
+            final double kind = random.nextDouble();
+            final int user = random.nextInt(users);
+            final String userName;
+            final String password;
+            if (kind < unknownShare) {
+                userName = "unknown-" + i;
+                password = "password-" + Long.toHexString(random.nextLong());
+            } else if (kind < unknownShare + wrongPasswordShare) {
+                userName = userName(user);
+                password = credentialsStore.getPassword(user) + "-wrong";
+            } else {
+                userName = userName(user);
+                password = credentialsStore.getPassword(user);
+            }
+            inputs[i] = createInput("client-" + i,
+                    userName,
+                    password.getBytes(StandardCharsets.UTF_8),
+                    connectionInformations[i % connectionInformations.length]);
+        }
+        return inputs;
+    }
+
+    private static @NotNull SimpleAuthInput createInput(
+            final @NotNull String clientId,
+            final @NotNull String userName,
+            final byte @NotNull [] password,
+            final @NotNull ConnectionInformation connectionInformation) {
+        final Optional<String> userNameOptional = Optional.of(userName);
+        final ByteBuffer passwordBuffer = ByteBuffer.wrap(password).asReadOnlyBuffer();
+        final ConnectPacket connectPacket = stub(ConnectPacket.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getUserName":
+                    return userNameOptional;
+                case "getPassword":
+                    //like the connect packets of HiveMQ, every call returns a new buffer
+                    return Optional.of(passwordBuffer.duplicate());
+                case "getClientId":
+                    return clientId;
+                default:
+                    throw unsupported(method);
+            }
+        });
+        final ClientInformation clientInformation = stub(ClientInformation.class, (proxy, method, args) -> {
+            if (method.getName().equals("getClientId")) {
+                return clientId;
+            }
+            throw unsupported(method);
+        });
+        return stub(SimpleAuthInput.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getConnectPacket":
+                    return connectPacket;
+                case "getConnectionInformation":
+                    return connectionInformation;
+                case "getClientInformation":
+                    return clientInformation;
+                default:
+                    throw unsupported(method);
+            }
+        });
+    }
+
+    private static @NotNull SimpleAuthOutput createOutput() {
+        final ModifiableDefaultPermissions defaultPermissions =
+                stub(ModifiableDefaultPermissions.class, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "addAll":
+                        case "setDefaultBehaviour":
+                            return null;
+                        default:
+                            throw unsupported(method);
+                    }
+                });
+        return stub(SimpleAuthOutput.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getDefaultPermissions":
+                    return defaultPermissions;
+                case "authenticateSuccessfully":
+                case "failAuthentication":
+                case "nextExtensionOrDefault":
+                    return null;
+                default:
+                    throw unsupported(method);
+            }
+        });
+    }
+
+    /**
+     * The stubs only answer the methods the authenticator calls, so they do not depend on the other methods of the
+     * interfaces of the SDK. Methods without arguments are answered without allocating.
+     */
+    private static <T> @NotNull T stub(final @NotNull Class<T> type, final @NotNull InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static @NotNull UnsupportedOperationException unsupported(final @NotNull Method method) {
+        return new UnsupportedOperationException(
+                "The simulation does not support " + method.getDeclaringClass().getSimpleName() + "." +
+                        method.getName());
+    }
+
+    private static @NotNull String userName(final int user) {
+        return "user-" + user;
+    }
+
+    static void printPercentiles(final @NotNull String name, final @NotNull Histogram histogram) {
+        final StringBuilder line = new StringBuilder("  ").append(name).append(" (ms):");
+        for (final double percentile : PERCENTILES) {
+            line.append(String.format(" p%s %.3f",
+                    percentile == (long) percentile ? Long.toString((long) percentile) : Double.toString(percentile),
+                    histogram.getValueAtPercentile(percentile) / 1e6));
+        }
+        line.append(String.format(" max %.3f", histogram.getMaxValue() / 1e6));
+        System.out.println(line);
+    }
+
+    /**
+     * Measures the heap that all threads allocate and the garbage collections. The allocations of virtual threads are
+     * counted for their carrier threads.
+     */
+    private static class Allocation {
+
+        private final @NotNull com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private long bytes;
+        private long collections;
+        private long collectionTime;
+
+        Allocation() {
+            bytes = -threadMXBean.getTotalThreadAllocatedBytes();
+            for (final GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections -= garbageCollector.getCollectionCount();
+                collectionTime -= garbageCollector.getCollectionTime();
+            }
+        }
+
+        void stop() {
+            bytes += threadMXBean.getTotalThreadAllocatedBytes();
+            for (final GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections += garbageCollector.getCollectionCount();
+                collectionTime += garbageCollector.getCollectionTime();
+            }
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        long getCollections() {
+            return collections;
+        }
+
+        long getCollectionTime() {
+            return collectionTime;
+        }
+    }
+
+    static class SimulatedCredentialsStore implements CredentialsStore {
+
+        private final @NotNull UserIndex users;
+        private final @NotNull Map<String, Role> roles;
+        private final @NotNull String @NotNull [] passwords;
+
+        SimulatedCredentialsStore(
+                final @NotNull UserIndex users,
+                final @NotNull Map<String, Role> roles,
+                final @NotNull String @NotNull [] passwords) {
+            this.users = users;
+            this.roles = roles;
+            this.passwords = passwords;
+        }
+
+        @NotNull String getPassword(final int user) {
+            return passwords[user];
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public @Nullable User lookupUser(final @NotNull String userName) {
+            return users.get(userName);
+        }
+
+        @Override
+        public @Nullable Role lookupRole(final @NotNull String roleId) {
+            return roles.get(roleId);
+        }
+
+        @Override
+        public @Nullable UserPattern lookupUserPattern(final @NotNull String userName) {
+            return null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public long getGeneration() {
+            return 0;
+        }
+
+        @Override
+        public void addChangeListener(final @NotNull ChangeListener listener) {
+        }
+    }
+
+    /**
+     * Stands in for the builder of HiveMQ, which is only available inside the broker.
+     */
+    static class SimulatedTopicPermissionBuilder implements TopicPermissionBuilder {
+
+        private @NotNull String topicFilter = "#";
+        private @NotNull TopicPermission.PermissionType type = TopicPermission.PermissionType.ALLOW;
+        private @NotNull TopicPermission.Qos qos = TopicPermission.Qos.ALL;
+        private @NotNull TopicPermission.MqttActivity activity = TopicPermission.MqttActivity.ALL;
+        private @NotNull TopicPermission.Retain retain = TopicPermission.Retain.ALL;
+        private @NotNull TopicPermission.SharedSubscription sharedSubscription =
+                TopicPermission.SharedSubscription.ALL;
+        private @NotNull String sharedGroup = "#";
+
+        @Override
+        public @NotNull TopicPermissionBuilder topicFilter(final @NotNull String topicFilter) {
+            this.topicFilter = topicFilter;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder type(final TopicPermission.@NotNull PermissionType type) {
+            this.type = type;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder qos(final TopicPermission.@NotNull Qos qos) {
+            this.qos = qos;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder activity(final TopicPermission.@NotNull MqttActivity activity) {
+            this.activity = activity;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder retain(final TopicPermission.@NotNull Retain retain) {
+            this.retain = retain;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder sharedSubscription(
+                final TopicPermission.@NotNull SharedSubscription sharedSubscription) {
+            this.sharedSubscription = sharedSubscription;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder sharedGroup(final @NotNull String sharedGroup) {
+            this.sharedGroup = sharedGroup;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermission build() {
+            return new SimulatedTopicPermission(topicFilter,
+                    type,
+                    qos,
+                    activity,
+                    retain,
+                    sharedSubscription,
+                    sharedGroup);
+        }
+    }
+
+    private record SimulatedTopicPermission(
+            @NotNull String topicFilter,
+            @NotNull PermissionType type,
+            @NotNull Qos qos,
+            @NotNull MqttActivity activity,
+            @NotNull Retain retain,
+            @NotNull SharedSubscription sharedSubscription,
+            @NotNull String sharedGroup) implements TopicPermission {
+
+        @Override
+        public @NotNull String getTopicFilter() {
+            return topicFilter;
+        }
+
+        @Override
+        public @NotNull PermissionType getType() {
+            return type;
+        }
+
+        @Override
+        public @NotNull Qos getQos() {
+            return qos;
+        }
+
+        @Override
+        public @NotNull MqttActivity getActivity() {
+            return activity;
+        }
+
+        @Override
+        public @NotNull Retain getPublishRetain() {
+            return retain;
+        }
+
+        @Override
+        public @NotNull SharedSubscription getSharedSubscription() {
+            return sharedSubscription;
+        }
+
+        @Override
+        public @NotNull String getSharedGroup() {
+            return sharedGroup;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.AuthenticationMetrics.Outcome;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.utils.PasswordCheck;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class AuthTraceRecorderTest {
+
+    private @NotNull File extensionFolder;
+    private @NotNull ExtensionConfig extensionConfig;
+    private @NotNull MetricRegistry metricRegistry;
+
+    @BeforeEach
+    void setUp(@TempDir final @NotNull File extensionFolder) {
+        this.extensionFolder = extensionFolder;
+        extensionConfig = new ExtensionConfig();
+        extensionConfig.setTraceMaxFiles(2);
+        extensionConfig.setTraceFileSize(1);
+        metricRegistry = new MetricRegistry();
+    }
+
+    @Test
+    void test_round_trip() throws Exception {
+        final AuthTraceRecorder recorder = createRecorder();
+        record(recorder, "user1", "listener1", List.of("role1", "role2"), PasswordCheck.HASHED, Outcome.ACCEPTED, 3);
+        record(recorder, "user2", "listener1", null, PasswordCheck.HASHED, Outcome.REJECTED_INVALID_CREDENTIALS, 0);
+        record(recorder, null, null, null, null, Outcome.REJECTED_MISSING_CREDENTIALS, 0);
+        record(recorder, "user1", "listener2", List.of("role1", "role2"), PasswordCheck.CACHE_HIT, Outcome.ACCEPTED, 3);
+        recorder.stop();
+
+        final List<Path> files = traceFiles();
+        assertEquals(1, files.size());
+        //neither user names nor roles are written
+        final String content = new String(Files.readAllBytes(files.get(0)), StandardCharsets.ISO_8859_1);
+        assertFalse(content.contains("user1"));
+        assertFalse(content.contains("role1"));
+
+        final List<AuthTraceReader.Connect> connects = readAll(files.get(0));
+        assertEquals(4, connects.size());
+        final AuthTraceReader.Connect first = connects.get(0);
+        assertEquals("listener1", first.getListener());
+        assertEquals(0, first.getRoleSet());
+        assertEquals(2, first.getRoles());
+        assertEquals(3, first.getPermissions());
+        assertEquals(Outcome.ACCEPTED, first.getOutcome());
+        assertEquals(PasswordCheck.HASHED, first.getPasswordCheck());
+
+        final AuthTraceReader.Connect second = connects.get(1);
+        assertNotEquals(first.getUserId(), second.getUserId());
+        assertEquals(-1, second.getRoleSet());
+        assertEquals(Outcome.REJECTED_INVALID_CREDENTIALS, second.getOutcome());
+
+        final AuthTraceReader.Connect third = connects.get(2);
+        assertEquals(AuthTrace.NO_USER, third.getUserId());
+        assertNull(third.getListener());
+        assertNull(third.getPasswordCheck());
+
+        final AuthTraceReader.Connect fourth = connects.get(3);
+        assertEquals(first.getUserId(), fourth.getUserId());
+        assertEquals("listener2", fourth.getListener());
+        assertEquals(0, fourth.getRoleSet());
+        assertEquals(PasswordCheck.CACHE_HIT, fourth.getPasswordCheck());
+        assertTrue(fourth.getTime() >= first.getTime());
+
+        assertEquals(4, metricRegistry.counter(AuthTraceRecorder.RECORDED).getCount());
+        assertEquals(0, metricRegistry.counter(AuthTraceRecorder.DROPPED).getCount());
+    }
+
+    @Test
+    void test_rotation_and_retention() throws Exception {
+        final AuthTraceRecorder recorder = createRecorder();
+        //about 20 bytes per connect, so at least 3 files of 1 MB are started
+        for (int batch = 0; batch < 5; batch++) {
+            for (int i = 0; i < 30_000; i++) {
+                record(recorder, "user" + i, "listener1", List.of("role1"), PasswordCheck.HASHED, Outcome.ACCEPTED, 1);
+            }
+            recorder.write();
+        }
+        recorder.stop();
+
+        final List<Path> files = traceFiles();
+        assertEquals(2, files.size());
+        long runId = 0;
+        for (final Path file : files) {
+            try (final AuthTraceReader reader = new AuthTraceReader(file)) {
+                if (runId != 0) {
+                    assertEquals(runId, reader.getRunId());
+                }
+                runId = reader.getRunId();
+                //listeners and role sets are repeated in every file
+                final AuthTraceReader.Connect connect = reader.next();
+                assertNotNull(connect);
+                assertEquals("listener1", connect.getListener());
+                assertEquals(0, connect.getRoleSet());
+                assertEquals(1, connect.getRoles());
+            }
+        }
+    }
+
+    @Test
+    void test_truncated_file() throws Exception {
+        final AuthTraceRecorder recorder = createRecorder();
+        record(recorder, "user1", "listener1", List.of("role1"), PasswordCheck.PLAIN, Outcome.ACCEPTED, 1);
+        record(recorder, "user2", "listener1", List.of("role1"), PasswordCheck.PLAIN, Outcome.ACCEPTED, 1);
+        recorder.stop();
+
+        final Path file = traceFiles().get(0);
+        final byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 3));
+        assertEquals(1, readAll(file).size());
+    }
+
+    @Test
+    void test_not_a_trace() throws Exception {
+        final Path file = extensionFolder.toPath().resolve("other" + AuthTrace.FILE_SUFFIX);
+        Files.writeString(file, "not a trace file");
+        assertThrows(IOException.class, () -> new AuthTraceReader(file));
+    }
+
+    @Test
+    void test_full_queue_drops() {
+        final AuthTraceRecorder recorder = createRecorder();
+        for (int i = 0; i < 70_000; i++) {
+            record(recorder, "user1", "listener1", null, null, Outcome.REJECTED_INVALID_CREDENTIALS, 0);
+        }
+        assertEquals(65_536, metricRegistry.counter(AuthTraceRecorder.RECORDED).getCount());
+        assertEquals(70_000 - 65_536, metricRegistry.counter(AuthTraceRecorder.DROPPED).getCount());
+        recorder.stop();
+    }
+
+    private @NotNull AuthTraceRecorder createRecorder() {
+        //the entries are written by the tests
+        return new AuthTraceRecorder(extensionFolder,
+                extensionConfig,
+                mock(ScheduledExecutorService.class),
+                metricRegistry);
+    }
+
+    private static void record(
+            final @NotNull AuthTraceRecorder recorder,
+            final @Nullable String userName,
+            final @Nullable String listener,
+            final @Nullable List<String> roles,
+            final @Nullable PasswordCheck passwordCheck,
+            final @NotNull Outcome outcome,
+            final int permissions) {
+        final AuthTraceRecorder.Entry entry = recorder.newEntry();
+        if (passwordCheck != null) {
+            entry.accept(passwordCheck);
+        }
+        entry.setRoles(roles);
+        entry.complete(1000, outcome, userName, listener, permissions);
+        recorder.record(entry);
+    }
+
+    private @NotNull List<Path> traceFiles() {
+        final File[] files = new File(extensionFolder, AuthTrace.FOLDER_NAME).listFiles();
+        assertNotNull(files);
+        final List<Path> paths = new ArrayList<>();
+        for (final File file : files) {
+            paths.add(file.toPath());
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    private static @NotNull List<AuthTraceReader.Connect> readAll(final @NotNull Path file) throws IOException {
+        final List<AuthTraceReader.Connect> connects = new ArrayList<>();
+        try (final AuthTraceReader reader = new AuthTraceReader(file)) {
+            AuthTraceReader.Connect connect;
+            while ((connect = reader.next()) != null) {
+                connects.add(connect);
+            }
+        }
+        return connects;
+    }
+}
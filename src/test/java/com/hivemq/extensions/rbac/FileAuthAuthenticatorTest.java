@@ -16,6 +16,7 @@
  */
 package com.hivemq.extensions.rbac;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.auth.parameter.SimpleAuthInput;
@@ -52,24 +53,31 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class FileAuthAuthenticatorTest {
 
     private @NotNull CredentialsValidator credentialsValidator;
+    private @NotNull SessionRegistry sessionRegistry;
     private @NotNull ExtensionConfig extensionConfig;
     private @NotNull FileAuthAuthenticator fileAuthAuthenticator;
     private @NotNull ModifiableDefaultPermissions modifiableDefaultPermissions;
     private @NotNull SimpleAuthOutput simpleAuthOutput;
+    private @NotNull MetricRegistry metricRegistry;
 
 
     @BeforeEach
     void before() {
         credentialsValidator = mock(CredentialsValidator.class);
         extensionConfig = mock(ExtensionConfig.class);
-        fileAuthAuthenticator = new FileAuthAuthenticator(credentialsValidator, extensionConfig);
+        metricRegistry = new MetricRegistry();
+        sessionRegistry = new SessionRegistry();
+        fileAuthAuthenticator =
+                new FileAuthAuthenticator(credentialsValidator, sessionRegistry, extensionConfig, metricRegistry, null);
         modifiableDefaultPermissions = new TestDefaultPermissions();
         when(credentialsValidator.getPermissions(anyString(), anyString(), anyList())).thenReturn(List.of(mock(
                 TopicPermission.class), mock(TopicPermission.class)));
@@ -144,7 +152,7 @@ class FileAuthAuthenticatorTest {
 
     @Test
     void test_connect_with_invalid_credentials() {
-        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class))).thenReturn(null);
+        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class), isNull())).thenReturn(null);
         when(extensionConfig.getListenerNames()).thenReturn(Set.of("listener-3", "listener-2"));
         fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1", "listener-2"), simpleAuthOutput);
         verify(simpleAuthOutput).failAuthentication(ConnackReasonCode.NOT_AUTHORIZED,
@@ -154,7 +162,7 @@ class FileAuthAuthenticatorTest {
     @Test
     void test_connect_with_invalid_credentials_but_nextExtensionOrDefault() {
         when(extensionConfig.isNextExtensionInsteadOfFail()).thenReturn(true);
-        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class))).thenReturn(null);
+        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class), isNull())).thenReturn(null);
         when(extensionConfig.getListenerNames()).thenReturn(Set.of("listener-3", "listener-2"));
         fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1", "listener-2"), simpleAuthOutput);
         verify(simpleAuthOutput).nextExtensionOrDefault();
@@ -162,7 +170,7 @@ class FileAuthAuthenticatorTest {
 
     @Test
     void test_connect_with_valid_credentials_empty_roles() {
-        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class))).thenReturn(List.of());
+        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class), isNull())).thenReturn(List.of());
         fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1"), simpleAuthOutput);
         verify(simpleAuthOutput).failAuthentication(ConnackReasonCode.NOT_AUTHORIZED,
                 "Authentication failed because of invalid credentials");
@@ -171,19 +179,75 @@ class FileAuthAuthenticatorTest {
     @Test
     void test_connect_with_valid_credentials_empty_roles_but_nextExtensionOrDefault() {
         when(extensionConfig.isNextExtensionInsteadOfFail()).thenReturn(true);
-        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class))).thenReturn(List.of());
+        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class), isNull())).thenReturn(List.of());
         fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1"), simpleAuthOutput);
         verify(simpleAuthOutput).nextExtensionOrDefault();
     }
 
     @Test
     void test_connect_with_valid_credentials() {
-        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class))).thenReturn(List.of("role1", "role2"));
+        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class), isNull()))
+                .thenReturn(List.of("role1", "role2"));
         fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1"), simpleAuthOutput);
         verify(simpleAuthOutput).authenticateSuccessfully();
         assertEquals(2, modifiableDefaultPermissions.asList().size());
     }
 
+    @Test
+    void test_connect_with_max_sessions_reached() {
+        when(credentialsValidator.getMaxSessions("user1")).thenReturn(1);
+        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class), isNull())).thenReturn(List.of("role1"));
+        fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1"), simpleAuthOutput);
+        verify(simpleAuthOutput).authenticateSuccessfully();
+        assertEquals(1, sessionRegistry.getConnectionCount("user1"));
+
+        final SimpleAuthOutput excessOutput = mock(SimpleAuthOutput.class);
+        fileAuthAuthenticator.onConnect(new TestInput("client2", "user1", "pass1"), excessOutput);
+        //the response is the same as for invalid credentials, so it does not reveal the user and its sessions
+        verify(excessOutput).failAuthentication(ConnackReasonCode.NOT_AUTHORIZED,
+                "Authentication failed because of invalid credentials");
+        //the excess connect is rejected before the password is checked
+        verify(credentialsValidator, times(1)).getRoles(anyString(), any(ByteBuffer.class), isNull());
+        assertEquals(1,
+                metricRegistry.counter(AuthenticationMetrics.Outcome.REJECTED_MAX_SESSIONS.getMetricName())
+                        .getCount());
+    }
+
+    @Test
+    void test_connect_with_max_sessions_reached_but_nextExtensionOrDefault() {
+        when(extensionConfig.isNextExtensionInsteadOfFail()).thenReturn(true);
+        when(credentialsValidator.getMaxSessions("user1")).thenReturn(1);
+        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class), isNull())).thenReturn(List.of("role1"));
+        fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1"), simpleAuthOutput);
+        verify(simpleAuthOutput).authenticateSuccessfully();
+
+        final SimpleAuthOutput excessOutput = mock(SimpleAuthOutput.class);
+        fileAuthAuthenticator.onConnect(new TestInput("client2", "user1", "pass1"), excessOutput);
+        verify(excessOutput).nextExtensionOrDefault();
+        assertEquals(1,
+                metricRegistry.counter(AuthenticationMetrics.Outcome.NEXT_EXTENSION_MAX_SESSIONS.getMetricName())
+                        .getCount());
+    }
+
+    @Test
+    void test_metrics() {
+        when(extensionConfig.getListenerNames()).thenReturn(Set.of("listener-2"));
+        when(credentialsValidator.getRoles(anyString(), any(ByteBuffer.class), isNull())).thenReturn(List.of("role1"));
+        fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1", "listener-1"), simpleAuthOutput);
+        fileAuthAuthenticator.onConnect(new TestInput("client1", "user1", "pass1", "listener-2"), simpleAuthOutput);
+        fileAuthAuthenticator.onConnect(new TestInput("client1", null, "pass1", "listener-2"), simpleAuthOutput);
+
+        assertEquals(1, metricRegistry.counter(AuthenticationMetrics.Outcome.ACCEPTED.getMetricName()).getCount());
+        assertEquals(1,
+                metricRegistry.counter(AuthenticationMetrics.Outcome.SKIPPED_LISTENER.getMetricName()).getCount());
+        assertEquals(1,
+                metricRegistry.counter(AuthenticationMetrics.Outcome.REJECTED_MISSING_CREDENTIALS.getMetricName())
+                        .getCount());
+        assertEquals(1, metricRegistry.counter(AuthenticationMetrics.LISTENER_PREFIX + "listener-1.connects").getCount());
+        assertEquals(2, metricRegistry.counter(AuthenticationMetrics.LISTENER_PREFIX + "listener-2.connects").getCount());
+        assertEquals(3, metricRegistry.timer(AuthenticationMetrics.TIME).getCount());
+    }
+
     private static class TestDefaultPermissions implements ModifiableDefaultPermissions {
 
         private final @NotNull List<TopicPermission> permissions = new ArrayList<>();
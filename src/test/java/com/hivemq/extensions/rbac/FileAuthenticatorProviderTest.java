@@ -16,6 +16,7 @@
  */
 package com.hivemq.extensions.rbac;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.extension.sdk.api.auth.Authenticator;
 import com.hivemq.extension.sdk.api.auth.parameter.AuthenticatorProviderInput;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
@@ -31,7 +32,11 @@ class FileAuthenticatorProviderTest {
     @Test
     void test_return_same_authenticator() {
         final FileAuthenticatorProvider fileAuthenticatorProvider =
-                new FileAuthenticatorProvider(mock(CredentialsValidator.class), mock(ExtensionConfig.class));
+                new FileAuthenticatorProvider(mock(CredentialsValidator.class),
+                        new SessionRegistry(),
+                        mock(ExtensionConfig.class),
+                        new MetricRegistry(),
+                        null);
         final Authenticator authenticator1 =
                 fileAuthenticatorProvider.getAuthenticator(mock(AuthenticatorProviderInput.class));
         final Authenticator authenticator2 =
@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PublishLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final @NotNull MetricRegistry metricRegistry = new MetricRegistry();
+    private final @NotNull QuotaMetrics quotaMetrics = new QuotaMetrics(metricRegistry);
+
+    @Test
+    void test_messages_per_second() {
+        //the start is close to the overflow of the nano time
+        final long start = Long.MAX_VALUE - SECOND;
+        final PublishLimiter publishLimiter = limiter(new Quota(10, 0, 0), 0, start);
+
+        //the tokens of one second are available at once
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, publishLimiter.acquire(100, start));
+        }
+        assertEquals(PublishLimiter.DROPPED, publishLimiter.acquire(100, start));
+        //one token is refilled every 100 milliseconds
+        assertEquals(0, publishLimiter.acquire(100, start + SECOND / 10));
+        assertEquals(PublishLimiter.DROPPED, publishLimiter.acquire(100, start + SECOND / 10));
+        assertEquals(0, publishLimiter.acquire(100, start + 2 * SECOND / 10));
+
+        assertEquals(0, throttled("role1"));
+        assertEquals(2, dropped("role1"));
+    }
+
+    @Test
+    void test_delay() {
+        final long start = 0;
+        final PublishLimiter publishLimiter = limiter(new Quota(10, 0, 0), 250, start);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, publishLimiter.acquire(100, start));
+        }
+        //the tokens are taken in advance, so every further publish waits for the next token
+        assertEquals(SECOND / 10, publishLimiter.acquire(100, start));
+        assertEquals(2 * SECOND / 10, publishLimiter.acquire(100, start));
+        assertEquals(PublishLimiter.DROPPED, publishLimiter.acquire(100, start));
+        assertEquals(SECOND / 10, publishLimiter.acquire(100, start + 2 * SECOND / 10));
+
+        assertEquals(3, throttled("role1"));
+        assertEquals(1, dropped("role1"));
+    }
+
+    @Test
+    void test_bytes_per_second() {
+        final long start = 0;
+        final PublishLimiter publishLimiter = limiter(new Quota(10, 1000, 0), 0, start);
+
+        assertEquals(0, publishLimiter.acquire(600, start));
+        assertEquals(PublishLimiter.DROPPED, publishLimiter.acquire(600, start));
+        //the message token of the dropped publish is returned
+        for (int i = 0; i < 9; i++) {
+            assertEquals(0, publishLimiter.acquire(0, start));
+        }
+        assertEquals(PublishLimiter.DROPPED, publishLimiter.acquire(0, start));
+        assertEquals(0, publishLimiter.acquire(400, start + SECOND / 10));
+
+        assertEquals(2, dropped("role1"));
+    }
+
+    @Test
+    void test_max_payload_size() {
+        final PublishLimiter publishLimiter = limiter(new Quota(0, 0, 1024), 0, 0);
+
+        assertEquals(0, publishLimiter.acquire(1024, 0));
+        assertEquals(PublishLimiter.DROPPED, publishLimiter.acquire(1025, 0));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, publishLimiter.acquire(1024, 0));
+        }
+
+        assertEquals(1, dropped("role1"));
+    }
+
+    private @NotNull PublishLimiter limiter(final @NotNull Quota quota, final long maxDelay, final long now) {
+        return new PublishLimiter(new Quota(quota, "role1"), maxDelay, quotaMetrics, now);
+    }
+
+    private long throttled(final @NotNull String roleId) {
+        return metricRegistry.counter(QuotaMetrics.PREFIX + roleId + ".throttled").getCount();
+    }
+
+    private long dropped(final @NotNull String roleId) {
+        return metricRegistry.counter(QuotaMetrics.PREFIX + roleId + ".dropped").getCount();
+    }
+}
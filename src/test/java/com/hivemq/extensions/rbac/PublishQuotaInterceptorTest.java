@@ -0,0 +1,103 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.async.Async;
+import com.hivemq.extension.sdk.api.async.TimeoutFallback;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundInput;
+import com.hivemq.extension.sdk.api.interceptor.publish.parameter.PublishInboundOutput;
+import com.hivemq.extension.sdk.api.packets.publish.AckReasonCode;
+import com.hivemq.extension.sdk.api.packets.publish.PublishPacket;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PublishQuotaInterceptorTest {
+
+    private final @NotNull ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void test_oversized_publish_is_dropped() {
+        final PublishQuotaInterceptor interceptor = interceptor(new Quota(0, 0, 10), 0);
+        final PublishInboundOutput output = mock(PublishInboundOutput.class);
+
+        interceptor.onInboundPublish(input(10), output);
+        verify(output, never()).preventPublishDelivery(any(AckReasonCode.class), anyString());
+
+        interceptor.onInboundPublish(input(11), output);
+        verify(output).preventPublishDelivery(AckReasonCode.QUOTA_EXCEEDED, PublishQuotaInterceptor.REASON);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void test_throttled_publish_is_resumed() throws Exception {
+        final PublishQuotaInterceptor interceptor = interceptor(new Quota(2, 0, 0), 1000);
+        final PublishInboundOutput output = mock(PublishInboundOutput.class);
+        final Async<PublishInboundOutput> async = mock(Async.class);
+        when(output.async(any(Duration.class), any(TimeoutFallback.class))).thenReturn(async);
+
+        //the first two publishes use the tokens of one second, the third one waits for the next token
+        interceptor.onInboundPublish(input(10), output);
+        interceptor.onInboundPublish(input(10), output);
+        interceptor.onInboundPublish(input(10), output);
+
+        verify(output, times(1)).async(any(Duration.class), any(TimeoutFallback.class));
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+        verify(async).resume();
+        verify(output, never()).preventPublishDelivery(any(AckReasonCode.class), anyString());
+    }
+
+    private @NotNull PublishQuotaInterceptor interceptor(final @NotNull Quota quota, final long maxDelay) {
+        final PublishLimiter publishLimiter = new PublishLimiter(new Quota(quota, "role1"),
+                maxDelay,
+                new QuotaMetrics(new MetricRegistry()),
+                System.nanoTime());
+        return new PublishQuotaInterceptor(publishLimiter, executorService);
+    }
+
+    private static @NotNull PublishInboundInput input(final int payloadSize) {
+        final PublishPacket publishPacket = mock(PublishPacket.class);
+        when(publishPacket.getPayload()).thenReturn(Optional.of(ByteBuffer.allocate(payloadSize)));
+        final PublishInboundInput input = mock(PublishInboundInput.class);
+        when(input.getPublishPacket()).thenReturn(publishPacket);
+        return input;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.client.parameter.ClientInformation;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationFailedInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationSuccessfulInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.ClientBasedInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SessionRegistryTest {
+
+    private final @NotNull SessionRegistry sessionRegistry = new SessionRegistry();
+
+    @Test
+    void test_max_sessions() {
+        assertTrue(sessionRegistry.authenticated("client1", "user1", List.of("role1"), 2, null));
+        sessionRegistry.onAuthenticationSuccessful(input(AuthenticationSuccessfulInput.class, "client1"));
+        //pending connections count as well
+        assertTrue(sessionRegistry.authenticated("client2", "user1", List.of("role1"), 2, null));
+
+        assertFalse(sessionRegistry.hasSessionCapacity("client3", "user1", 2));
+        assertFalse(sessionRegistry.authenticated("client3", "user1", List.of("role1"), 2, null));
+        assertTrue(sessionRegistry.hasSessionCapacity("client3", "user1", 0));
+        assertTrue(sessionRegistry.hasSessionCapacity("client3", "user2", 2));
+        assertEquals(2, sessionRegistry.getConnectionCount("user1"));
+
+        sessionRegistry.onAuthenticationFailedDisconnect(input(AuthenticationFailedInput.class, "client2"));
+        assertEquals(1, sessionRegistry.getConnectionCount("user1"));
+        sessionRegistry.onDisconnect(input(DisconnectEventInput.class, "client1"));
+        assertEquals(0, sessionRegistry.getConnectionCount("user1"));
+        assertTrue(sessionRegistry.authenticated("client3", "user1", List.of("role1"), 1, null));
+    }
+
+    @Test
+    void test_take_over_does_not_count() {
+        assertTrue(sessionRegistry.authenticated("client1", "user1", List.of("role1"), 1, null));
+        sessionRegistry.onAuthenticationSuccessful(input(AuthenticationSuccessfulInput.class, "client1"));
+
+        assertTrue(sessionRegistry.hasSessionCapacity("client1", "user1", 1));
+        assertTrue(sessionRegistry.authenticated("client1", "user1", List.of("role1"), 1, null));
+        sessionRegistry.onAuthenticationSuccessful(input(AuthenticationSuccessfulInput.class, "client1"));
+        assertEquals(2, sessionRegistry.getConnectionCount("user1"));
+
+        sessionRegistry.onDisconnect(input(DisconnectEventInput.class, "client1"));
+        assertEquals(1, sessionRegistry.getConnectionCount("user1"));
+        assertEquals(1, sessionRegistry.size());
+    }
+
+    @Test
+    void test_take_over_by_other_user() {
+        assertTrue(sessionRegistry.authenticated("client1", "user1", List.of("role1"), 0, null));
+        sessionRegistry.onAuthenticationSuccessful(input(AuthenticationSuccessfulInput.class, "client1"));
+        assertTrue(sessionRegistry.authenticated("client1", "user2", List.of("role1"), 0, null));
+        sessionRegistry.onAuthenticationSuccessful(input(AuthenticationSuccessfulInput.class, "client1"));
+
+        assertEquals(0, sessionRegistry.getConnectionCount("user1"));
+        assertEquals(2, sessionRegistry.getConnectionCount("user2"));
+        sessionRegistry.onDisconnect(input(DisconnectEventInput.class, "client1"));
+        sessionRegistry.onDisconnect(input(DisconnectEventInput.class, "client1"));
+        assertEquals(0, sessionRegistry.getConnectionCount("user2"));
+        assertEquals(0, sessionRegistry.size());
+    }
+
+    @Test
+    void test_lost_pending_connection() {
+        assertTrue(sessionRegistry.authenticated("client1", "user1", List.of("role1"), 1, null));
+        //the connection is lost before the authentication completes
+        sessionRegistry.onDisconnect(input(DisconnectEventInput.class, "client1"));
+
+        assertEquals(0, sessionRegistry.getConnectionCount("user1"));
+        assertTrue(sessionRegistry.authenticated("client2", "user1", List.of("role1"), 1, null));
+    }
+
+    @Test
+    void test_concurrent_connects_respect_max_sessions() throws Exception {
+        final int threads = 8;
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger accepted = new AtomicInteger();
+        for (int thread = 0; thread < threads; thread++) {
+            final int offset = thread * 1000;
+            executorService.execute(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (sessionRegistry.authenticated("client" + (offset + i), "user1", List.of("role1"), 10, null)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(10, accepted.get());
+        assertEquals(10, sessionRegistry.getConnectionCount("user1"));
+    }
+
+    private static <T extends ClientBasedInput> @NotNull T input(
+            final @NotNull Class<T> type, final @NotNull String clientId) {
+        final T input = mock(type);
+        final ClientInformation clientInformation = mock(ClientInformation.class);
+        when(clientInformation.getClientId()).thenReturn(clientId);
+        when(input.getClientInformation()).thenReturn(clientInformation);
+        return input;
+    }
+}
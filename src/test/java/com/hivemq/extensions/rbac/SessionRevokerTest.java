@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.client.parameter.ClientInformation;
+import com.hivemq.extension.sdk.api.events.client.parameters.AuthenticationSuccessfulInput;
+import com.hivemq.extension.sdk.api.events.client.parameters.DisconnectEventInput;
+import com.hivemq.extension.sdk.api.packets.disconnect.DisconnectReasonCode;
+import com.hivemq.extension.sdk.api.services.session.ClientService;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionRevokerTest {
+
+    private static final @NotNull List<Role> ROLES =
+            List.of(new Role("role1", List.of()), new Role("role2", List.of()));
+
+    private @NotNull SessionRegistry sessionRegistry;
+    private @NotNull ClientService clientService;
+    private @NotNull ScheduledExecutorService executorService;
+    private @NotNull MetricRegistry metricRegistry;
+    private @NotNull SessionRevoker sessionRevoker;
+
+    @BeforeEach
+    void setUp() {
+        sessionRegistry = new SessionRegistry();
+        clientService = mock(ClientService.class);
+        when(clientService.disconnectClient(anyString(), anyBoolean(), any(), anyString())).thenReturn(
+                CompletableFuture.completedFuture(true));
+        executorService = Executors.newSingleThreadScheduledExecutor();
+        metricRegistry = new MetricRegistry();
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setRevocationBatchSize(2);
+        extensionConfig.setRevocationBatchInterval(10);
+        sessionRevoker =
+                new SessionRevoker(sessionRegistry, clientService, executorService, extensionConfig, metricRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void test_sessions_follow_lifecycle() {
+        connect("client1", "user1", List.of("role1"));
+        connect("client2", "user1", List.of("role1"));
+        connect("client3", "user2", List.of("role2"));
+        //authenticated by another extension
+        sessionRegistry.onAuthenticationSuccessful(authenticationSuccessful("client4"));
+
+        assertEquals(3, sessionRegistry.size());
+        assertEquals(2, sessionRegistry.getSessions("user1").size());
+
+        sessionRegistry.onDisconnect(disconnect("client1"));
+        assertEquals(1, sessionRegistry.getSessions("user1").size());
+        assertEquals(0, sessionRegistry.getSessions("unknown").size());
+    }
+
+    @Test
+    void test_session_take_over() {
+        connect("client1", "user1", List.of("role1"));
+        connect("client1", "user2", List.of("role2"));
+        //the disconnect of the old connection arrives after the new connection was authenticated
+        sessionRegistry.onDisconnect(disconnect("client1"));
+
+        assertEquals(0, sessionRegistry.getSessions("user1").size());
+        assertEquals(1, sessionRegistry.getSessions("user2").size());
+
+        sessionRegistry.onDisconnect(disconnect("client1"));
+        assertEquals(0, sessionRegistry.size());
+    }
+
+    @Test
+    void test_revoke_removed_user_and_lost_roles() throws Exception {
+        final List<User> users = new ArrayList<>();
+        users.add(new User("user1", "pass", List.of("role1")));
+        users.add(new User("user2", "pass", List.of("role1", "role2")));
+        users.add(new User("user3", "pass", List.of("role1")));
+        final FileAuthConfig config = new FileAuthConfig(users, ROLES);
+        for (int i = 0; i < 3; i++) {
+            connect("user1-" + i, "user1", List.of("role1"));
+        }
+        connect("user2-0", "user2", List.of("role1", "role2"));
+        connect("user3-0", "user3", List.of("role1"));
+
+        //user1 is removed, user2 loses role2 and user3 gains role2
+        final FileAuthConfig newConfig = new FileAuthConfig(List.of(new User("user2", "pass", List.of("role1")),
+                new User("user3", "pass", List.of("role1", "role2"))), ROLES);
+        sessionRevoker.onReload(CredentialsDiff.compute(config, newConfig));
+        //the delayed batches are still executed after the shutdown
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (final String clientId : List.of("user1-0", "user1-1", "user1-2", "user2-0")) {
+            verify(clientService).disconnectClient(clientId,
+                    false,
+                    DisconnectReasonCode.NOT_AUTHORIZED,
+                    SessionRevoker.REASON);
+        }
+        verify(clientService, never()).disconnectClient(eq("user3-0"), anyBoolean(), any(), anyString());
+        assertEquals(1, metricRegistry.histogram(SessionRevoker.CLIENTS_PER_RELOAD).getCount());
+        assertEquals(4, metricRegistry.counter(SessionRevoker.DISCONNECTS).getCount());
+    }
+
+    @Test
+    void test_revoke_user_patterns() throws Exception {
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass", List.of("role1"))), ROLES);
+        config.setUserPatterns(List.of(new UserPattern("sensor-", null, null, "pass", null, List.of("role1")),
+                new UserPattern("meter-", null, null, "pass", null, List.of("role1", "role2"))));
+        connect("user1-0", "user1", List.of("role1"));
+        connect("sensor-0", "sensor-1", List.of("role1"));
+        connect("meter-0", "meter-1", List.of("role1", "role2"));
+        connect("meter-1", "meter-2", List.of("role1", "role2"));
+
+        //the sensor pattern is removed and the meter pattern loses role2
+        final FileAuthConfig newConfig =
+                new FileAuthConfig(List.of(new User("user1", "pass", List.of("role1"))), ROLES);
+        newConfig.setUserPatterns(List.of(new UserPattern("meter-", null, null, "pass", null, List.of("role1"))));
+        sessionRevoker.onReload(CredentialsDiff.compute(config, newConfig));
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (final String clientId : List.of("sensor-0", "meter-0", "meter-1")) {
+            verify(clientService).disconnectClient(clientId,
+                    false,
+                    DisconnectReasonCode.NOT_AUTHORIZED,
+                    SessionRevoker.REASON);
+        }
+        verify(clientService, never()).disconnectClient(eq("user1-0"), anyBoolean(), any(), anyString());
+    }
+
+    @Test
+    void test_revoke_changed_and_removed_roles() throws Exception {
+        final List<Role> roles = List.of(new Role("role1", List.of()),
+                new Role("role2", List.of()),
+                new Role("role3", List.of()));
+        final List<User> users = List.of(new User("user1", "pass", List.of("role1")),
+                new User("user2", "pass", List.of("role2")),
+                new User("user3", "pass", List.of("role3")));
+        connect("client1", "user1", List.of("role1"));
+        connect("client2", "user2", List.of("role2"));
+        connect("client3", "user3", List.of("role3"));
+
+        //role2 gets new permissions and role3 is removed, the users keep their roles
+        final List<User> newUsers = List.of(new User("user1", "pass", List.of("role1")),
+                new User("user2", "pass", List.of("role2")),
+                new User("user3", "pass", List.of("role1")));
+        final List<Role> newRoles =
+                List.of(new Role("role1", List.of()), new Role("role2", List.of(new Permission("#"))));
+        sessionRevoker.onReload(CredentialsDiff.compute(new FileAuthConfig(users, roles),
+                new FileAuthConfig(newUsers, newRoles)));
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (final String clientId : List.of("client2", "client3")) {
+            verify(clientService).disconnectClient(clientId,
+                    false,
+                    DisconnectReasonCode.NOT_AUTHORIZED,
+                    SessionRevoker.REASON);
+        }
+        verify(clientService, never()).disconnectClient(eq("client1"), anyBoolean(), any(), anyString());
+    }
+
+    @Test
+    void test_reconnected_client_is_not_disconnected() {
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass", List.of("role1"))), ROLES);
+        connect("client1", "user1", List.of("role1"));
+        sessionRegistry.onDisconnect(disconnect("client1"));
+        connect("client1", "user1", List.of("role2"));
+
+        final FileAuthConfig newConfig =
+                new FileAuthConfig(List.of(new User("user1", "pass", List.of("role2"))), ROLES);
+        sessionRevoker.onReload(CredentialsDiff.compute(config, newConfig));
+
+        assertTrue(sessionRegistry.isActive(sessionRegistry.getSessions("user1").get(0)));
+        verify(clientService, never()).disconnectClient(anyString(), anyBoolean(), any(), anyString());
+    }
+
+    private void connect(
+            final @NotNull String clientId, final @NotNull String userName, final @NotNull List<String> roles) {
+        sessionRegistry.authenticated(clientId, userName, roles, 0, null);
+        sessionRegistry.onAuthenticationSuccessful(authenticationSuccessful(clientId));
+    }
+
+    private static @NotNull AuthenticationSuccessfulInput authenticationSuccessful(final @NotNull String clientId) {
+        final AuthenticationSuccessfulInput input = mock(AuthenticationSuccessfulInput.class);
+        final ClientInformation clientInformation = clientInformation(clientId);
+        when(input.getClientInformation()).thenReturn(clientInformation);
+        return input;
+    }
+
+    private static @NotNull DisconnectEventInput disconnect(final @NotNull String clientId) {
+        final DisconnectEventInput input = mock(DisconnectEventInput.class);
+        final ClientInformation clientInformation = clientInformation(clientId);
+        when(input.getClientInformation()).thenReturn(clientInformation);
+        return input;
+    }
+
+    private static @NotNull ClientInformation clientInformation(final @NotNull String clientId) {
+        final ClientInformation clientInformation = mock(ClientInformation.class);
+        when(clientInformation.getClientId()).thenReturn(clientId);
+        return clientInformation;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AdminChannelTest {
+
+    private static final @NotNull String PASSWORD = "c2FsdA==:100:aGFzaA==";
+
+    private @NotNull File extensionFolder;
+    private @NotNull ScheduledExecutorService executorService;
+    private @NotNull CredentialsConfiguration credentialsConfiguration;
+    private @NotNull AtomicInteger cacheFlushes;
+    private @NotNull AdminChannel adminChannel;
+
+    @BeforeEach
+    void setUp(@TempDir final @NotNull File extensionFolder) throws Exception {
+        this.extensionFolder = extensionFolder;
+        final URL resource = getClass().getClassLoader().getResource("credentials.xml");
+        assertNotNull(resource);
+        Files.copy(new File(resource.toURI()).toPath(),
+                new File(extensionFolder, CredentialsConfiguration.CONFIG_NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        executorService = Executors.newSingleThreadScheduledExecutor();
+        credentialsConfiguration = new CredentialsConfiguration(extensionFolder,
+                executorService,
+                new ExtensionConfig(),
+                new MetricRegistry());
+        credentialsConfiguration.init();
+        cacheFlushes = new AtomicInteger();
+        adminChannel = new AdminChannel(extensionFolder,
+                "admin.sock",
+                credentialsConfiguration,
+                cacheFlushes::incrementAndGet);
+    }
+
+    @AfterEach
+    void tearDown() {
+        adminChannel.stop();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void test_commit_batch() throws Exception {
+        final long generation = credentialsConfiguration.getGeneration();
+        final String response = handle("add-role\trole3\tdevices%2F%2B%2Fstatus;PUBLISH;ALL;ALL;ALL;%23\n" +
+                "add-user\tuser3\t" + PASSWORD + "\trole3\n" +
+                "remove-user\tuser1\n" +
+                "commit\n");
+
+        assertEquals("ok 3\n", response);
+        assertEquals(generation + 1, credentialsConfiguration.getGeneration());
+        final FileAuthConfig config = credentialsConfiguration.getCurrentConfig();
+        assertNotNull(config);
+        assertTrue(config.getUsers().stream().anyMatch(user -> user.getName().equals("user3")));
+        assertFalse(config.getUsers().stream().map(User::getName).anyMatch("user1"::equals));
+        final Role role = config.getRoles()
+                .stream()
+                .filter(r -> r.getId().equals("role3"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("devices/+/status", role.getPermissions().get(0).getTopic());
+        assertTrue(new File(extensionFolder, CredentialsJournal.JOURNAL_NAME).length() > 0);
+    }
+
+    @Test
+    void test_commit_invalid_batch_is_not_applied() throws Exception {
+        final long generation = credentialsConfiguration.getGeneration();
+        final String response = handle("add-user\tuser3\t" + PASSWORD + "\trole1\n" +
+                "add-user\tuser4\t" + PASSWORD + "\tunknown-role\n" +
+                "commit\n");
+
+        assertTrue(response.startsWith("error "), response);
+        assertEquals(generation, credentialsConfiguration.getGeneration());
+        assertFalse(credentialsConfiguration.getCurrentConfig()
+                .getUsers()
+                .stream()
+                .map(User::getName)
+                .anyMatch("user3"::equals));
+        assertFalse(new File(extensionFolder, CredentialsJournal.JOURNAL_NAME).exists());
+    }
+
+    @Test
+    void test_invalid_command_discards_batch() throws Exception {
+        final String response = handle("add-user\tuser3\t" + PASSWORD + "\trole1\n" + "drop-users\n" + "commit\n");
+
+        assertEquals("error invalid command, the batch was discarded\nok 0\n", response);
+    }
+
+    @Test
+    void test_control_commands() throws Exception {
+        final String response = handle("flush-caches\nstats\nreload\n");
+
+        assertEquals(1, cacheFlushes.get());
+        assertTrue(response.startsWith("ok\ngeneration 1\nusers 2\nroles 2\npermissions 4\n"), response);
+        assertTrue(response.endsWith("ok generation 2\n"), response);
+    }
+
+    @Test
+    void test_start_and_stop() {
+        assumeTrue(Runtime.version().feature() >= 16);
+        final File socketFile = new File(extensionFolder, "admin.sock");
+
+        assertTrue(adminChannel.start());
+        assertTrue(socketFile.exists());
+        adminChannel.stop();
+        assertFalse(socketFile.exists());
+    }
+
+    @Test
+    void test_start_creates_owner_only_folder() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 16);
+        final AdminChannel channel = new AdminChannel(extensionFolder,
+                "admin/admin.sock",
+                credentialsConfiguration,
+                cacheFlushes::incrementAndGet);
+
+        assertTrue(channel.start());
+        try {
+            assertEquals(PosixFilePermissions.fromString("rwx------"),
+                    Files.getPosixFilePermissions(new File(extensionFolder, "admin").toPath()));
+            assertTrue(new File(extensionFolder, "admin/admin.sock").exists());
+        } finally {
+            channel.stop();
+        }
+    }
+
+    @Test
+    void test_start_refuses_shared_folder() throws Exception {
+        final File socketFolder = new File(extensionFolder, "admin");
+        assertTrue(socketFolder.mkdir());
+        Files.setPosixFilePermissions(socketFolder.toPath(), PosixFilePermissions.fromString("rwxr-xr-x"));
+        final AdminChannel channel = new AdminChannel(extensionFolder,
+                "admin/admin.sock",
+                credentialsConfiguration,
+                cacheFlushes::incrementAndGet);
+
+        assertFalse(channel.start());
+        assertFalse(new File(socketFolder, "admin.sock").exists());
+    }
+
+    @Test
+    void test_idle_connection_does_not_block_others() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 16);
+        assertTrue(adminChannel.start());
+
+        try (final SocketChannel idleConnection = connect();
+             final SocketChannel connection = connect()) {
+            assertTrue(idleConnection.isConnected());
+            final Writer writer = Channels.newWriter(connection, StandardCharsets.UTF_8);
+            writer.write("abort\n");
+            writer.flush();
+            final BufferedReader reader =
+                    new BufferedReader(Channels.newReader(connection, StandardCharsets.UTF_8));
+            assertEquals("ok", reader.readLine());
+        }
+    }
+
+    @Test
+    void test_connections_are_limited() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 16);
+        assertTrue(adminChannel.start());
+
+        final List<SocketChannel> idleConnections = new ArrayList<>();
+        try {
+            for (int i = 0; i < AdminChannel.MAX_CONNECTIONS; i++) {
+                idleConnections.add(connect());
+            }
+            //the idle connections are accepted one after another, wait until all of them are served
+            final BufferedReader lastReader = new BufferedReader(Channels.newReader(
+                    idleConnections.get(AdminChannel.MAX_CONNECTIONS - 1), StandardCharsets.UTF_8));
+            final Writer lastWriter = Channels.newWriter(idleConnections.get(AdminChannel.MAX_CONNECTIONS - 1),
+                    StandardCharsets.UTF_8);
+            lastWriter.write("abort\n");
+            lastWriter.flush();
+            assertEquals("ok", lastReader.readLine());
+
+            try (final SocketChannel connection = connect()) {
+                final BufferedReader reader =
+                        new BufferedReader(Channels.newReader(connection, StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().startsWith("error"));
+                assertNull(reader.readLine());
+            }
+        } finally {
+            for (final SocketChannel idleConnection : idleConnections) {
+                idleConnection.close();
+            }
+        }
+    }
+
+    private @NotNull SocketChannel connect() throws Exception {
+        //UnixDomainSocketAddress was added in Java 16, the tests are compiled for Java 11
+        final SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                .getMethod("of", Path.class)
+                .invoke(null, new File(extensionFolder, "admin.sock").toPath());
+        final SocketChannel channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class)
+                .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        channel.connect(address);
+        return channel;
+    }
+
+    private @NotNull String handle(final @NotNull String commands) throws Exception {
+        final StringWriter writer = new StringWriter();
+        adminChannel.handle(new BufferedReader(new StringReader(commands)), writer);
+        return writer.toString();
+    }
+}
@@ -16,37 +16,48 @@
  */
 package com.hivemq.extensions.rbac.configuration;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
-import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
-import com.hivemq.extensions.rbac.configuration.entities.Permission;
-import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
-import java.util.List;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ConfigArchiverTest {
 
     private @NotNull File extensionFolder;
-    private @NotNull ConfigArchiver configArchiver;
+    private @NotNull ExtensionConfig extensionConfig;
+    private @NotNull MetricRegistry metricRegistry;
+    private @NotNull ReloadMetrics reloadMetrics;
 
     @BeforeEach
     void setUp(@TempDir final @NotNull File extensionFolder) {
         this.extensionFolder = extensionFolder;
-        configArchiver = new ConfigArchiver(extensionFolder, new XmlParser());
+        extensionConfig = new ExtensionConfig();
+        metricRegistry = new MetricRegistry();
+        reloadMetrics = new ReloadMetrics(metricRegistry, () -> 0);
     }
 
     @Test
     void test_archive() throws Exception {
-        final FileAuthConfig config = new FileAuthConfig();
-        config.setRoles(List.of(new Role("id1", List.of(new Permission("topic1")))));
-        configArchiver.archive(config);
+        final ConfigArchiver configArchiver =
+                new ConfigArchiver(extensionFolder, Runnable::run, extensionConfig, reloadMetrics);
+        final byte[] content = "<file-rbac><users/></file-rbac>".getBytes(StandardCharsets.UTF_8);
+        configArchiver.archive("credentials.xml", content).get();
 
         final File[] files = extensionFolder.listFiles();
         assertNotNull(files);
@@ -59,8 +70,93 @@ class ConfigArchiverTest {
         final File[] archivedFiles = archiveFolder.listFiles();
         assertNotNull(archivedFiles);
         assertEquals(1, archivedFiles.length);
-        System.out.println(archivedFiles[0].getName());
         assertTrue(archivedFiles[0].getName().startsWith("20"));
-        assertTrue(archivedFiles[0].getName().endsWith("credentials.xml"));
+        assertTrue(archivedFiles[0].getName().endsWith("credentials.xml.gz"));
+        try (final InputStream inputStream = new GZIPInputStream(Files.newInputStream(archivedFiles[0].toPath()))) {
+            assertArrayEquals(content, inputStream.readAllBytes());
+        }
+        assertEquals(1, metricRegistry.timer(ReloadMetrics.ARCHIVE_TIME).getCount());
+    }
+
+    @Test
+    void test_archive_same_content_once() throws Exception {
+        final ConfigArchiver configArchiver =
+                new ConfigArchiver(extensionFolder, Runnable::run, extensionConfig, reloadMetrics);
+        configArchiver.archive("credentials.xml", "<file-rbac/>".getBytes(StandardCharsets.UTF_8)).get();
+        configArchiver.archive("credentials.xml", "<file-rbac/>".getBytes(StandardCharsets.UTF_8)).get();
+
+        final File[] archivedFiles = new File(extensionFolder, "credentials-archive").listFiles();
+        assertNotNull(archivedFiles);
+        assertEquals(1, archivedFiles.length);
+    }
+
+    @Test
+    void test_archive_max_files() throws Exception {
+        extensionConfig.setArchiveMaxFiles(2);
+        final ConfigArchiver configArchiver =
+                new ConfigArchiver(extensionFolder, Runnable::run, extensionConfig, reloadMetrics);
+        for (int i = 0; i < 3; i++) {
+            final byte[] content = ("<file-rbac>" + i + "</file-rbac>").getBytes(StandardCharsets.UTF_8);
+            configArchiver.archive("credentials.xml", content).get();
+        }
+
+        final File[] archivedFiles = new File(extensionFolder, "credentials-archive").listFiles();
+        assertNotNull(archivedFiles);
+        assertEquals(2, archivedFiles.length);
+    }
+
+    @Test
+    void test_archive_max_files_keeps_reverted_config() throws Exception {
+        extensionConfig.setArchiveMaxFiles(2);
+        final ConfigArchiver configArchiver =
+                new ConfigArchiver(extensionFolder, Runnable::run, extensionConfig, reloadMetrics);
+        final File archiveFolder = new File(extensionFolder, "credentials-archive");
+        configArchiver.archive("credentials.xml", "<file-rbac>a</file-rbac>".getBytes(StandardCharsets.UTF_8)).get();
+        final File[] firstFiles = archiveFolder.listFiles();
+        assertNotNull(firstFiles);
+        assertTrue(firstFiles[0].setLastModified(System.currentTimeMillis() - 60_000));
+        configArchiver.archive("credentials.xml", "<file-rbac>b</file-rbac>".getBytes(StandardCharsets.UTF_8)).get();
+        for (final File file : Objects.requireNonNull(archiveFolder.listFiles())) {
+            if (!file.equals(firstFiles[0])) {
+                assertTrue(file.setLastModified(System.currentTimeMillis() - 30_000));
+            }
+        }
+
+        //reverting to the first config makes its archive the most recent one
+        configArchiver.archive("credentials.xml", "<file-rbac>a</file-rbac>".getBytes(StandardCharsets.UTF_8)).get();
+        configArchiver.archive("credentials.xml", "<file-rbac>c</file-rbac>".getBytes(StandardCharsets.UTF_8)).get();
+
+        final File[] archivedFiles = archiveFolder.listFiles();
+        assertNotNull(archivedFiles);
+        assertEquals(2, archivedFiles.length);
+        assertTrue(firstFiles[0].exists());
+    }
+
+    @Test
+    void test_archive_max_age() throws Exception {
+        extensionConfig.setArchiveMaxAge(1);
+        final ConfigArchiver configArchiver =
+                new ConfigArchiver(extensionFolder, Runnable::run, extensionConfig, reloadMetrics);
+        configArchiver.archive("credentials.xml", "<file-rbac>old</file-rbac>".getBytes(StandardCharsets.UTF_8)).get();
+        final File[] oldFiles = new File(extensionFolder, "credentials-archive").listFiles();
+        assertNotNull(oldFiles);
+        assertTrue(oldFiles[0].setLastModified(System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000L));
+
+        configArchiver.archive("credentials.xml", "<file-rbac>new</file-rbac>".getBytes(StandardCharsets.UTF_8)).get();
+
+        final File[] archivedFiles = new File(extensionFolder, "credentials-archive").listFiles();
+        assertNotNull(archivedFiles);
+        assertEquals(1, archivedFiles.length);
+        assertNotEquals(oldFiles[0].getName(), archivedFiles[0].getName());
+    }
+
+    @Test
+    void test_archive_rejected() {
+        final ConfigArchiver configArchiver = new ConfigArchiver(extensionFolder, command -> {
+            throw new RejectedExecutionException();
+        }, extensionConfig, reloadMetrics);
+        assertTrue(configArchiver.archive("credentials.xml", "<file-rbac/>".getBytes(StandardCharsets.UTF_8))
+                .isCompletedExceptionally());
+        assertEquals(1, metricRegistry.counter(ReloadMetrics.ARCHIVE_FAILURES).getCount());
     }
 }
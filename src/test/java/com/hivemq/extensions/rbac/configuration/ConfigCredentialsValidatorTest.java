@@ -20,14 +20,19 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extensions.rbac.configuration.ConfigCredentialsValidator.ValidationResult;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Group;
 import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
 import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
 import com.hivemq.extensions.rbac.configuration.entities.Role;
 import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -313,6 +318,191 @@ class ConfigCredentialsValidatorTest {
         checkErrorString(result, "Unknown role '2' for user 'user1'");
     }
 
+    @Test
+    void test_user_patterns_without_users() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")))));
+        config.setUserPatterns(List.of(new UserPattern("meter-", null, null, null, "secret", List.of("1"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertTrue(result.isValidationSuccessful(), result.getErrors().toString());
+    }
+
+    @Test
+    void test_user_pattern_multiple_expressions() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")))));
+        config.setUserPatterns(List.of(new UserPattern("", "meter-*", null, null, "secret", List.of("1"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        checkErrorString(result, "A User Pattern needs exactly one non-empty prefix, glob or regex");
+    }
+
+    @Test
+    void test_user_pattern_invalid_regex() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")))));
+        config.setUserPatterns(List.of(new UserPattern(null, null, "meter-(", null, "secret", List.of("1"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        checkErrorString(result, "User Pattern 'meter-(' has invalid regex: Unclosed group");
+    }
+
+    @Test
+    void test_user_pattern_password_and_secret() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")))));
+        config.setUserPatterns(List.of(new UserPattern("meter-", null, null, "pass", "secret", List.of("1"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        checkErrorString(result, "User Pattern 'meter-' needs either a password or an hmac-secret");
+    }
+
+    @Test
+    void test_user_pattern_unknown_role() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")))));
+        config.setUserPatterns(List.of(new UserPattern(null, "meter-*", null, null, "secret", List.of("2"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        checkErrorString(result, "Unknown role '2' for user pattern 'meter-*'");
+    }
+
+    @Test
+    void test_role_inheritance() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic"))),
+                new Role("2", List.of(), List.of("1"))));
+        config.setUsers(List.of(new User("user1", "pass1", List.of("2"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertTrue(result.isValidationSuccessful(), result.getErrors().toString());
+    }
+
+    @Test
+    void test_role_inheritance_unknown_role() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")), List.of("2"))));
+        config.setUsers(List.of(new User("user1", "pass1", List.of("1"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        checkErrorString(result, "Unknown role '2' extended by role '1'");
+    }
+
+    @Test
+    void test_role_inheritance_cycle() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")), List.of("2")),
+                new Role("2", List.of(new Permission("topic")), List.of("3")),
+                new Role("3", List.of(new Permission("topic")), List.of("1")),
+                new Role("4", List.of(new Permission("topic")), List.of("4"))));
+        config.setUsers(List.of(new User("user1", "pass1", List.of("1"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        checkErrorString(result, "Role '1' extends itself: 1 -> 2 -> 3 -> 1");
+        checkErrorString(result, "Role '4' extends itself: 4 -> 4");
+    }
+
+    @Test
+    void test_role_negative_quota() {
+        final Role role = new Role("1", List.of(new Permission("topic")));
+        role.setQuota(new Quota(10, -1, 0));
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(role));
+        config.setUsers(List.of(new User("user1", "pass1", List.of("1"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        checkErrorString(result, "Role '1' has a negative quota");
+    }
+
+    @Test
+    void test_user_with_groups() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")))));
+        config.setGroups(List.of(new Group("group1", List.of("1"))));
+        config.setUsers(List.of(new User("user1", "pass1", null, List.of("group1"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertTrue(result.isValidationSuccessful(), result.getErrors().toString());
+    }
+
+    @Test
+    void test_user_unknown_group() {
+        final FileAuthConfig config = new FileAuthConfig();
+        config.setRoles(List.of(new Role("1", List.of(new Permission("topic")))));
+        config.setGroups(List.of(new Group("group1", List.of("2"))));
+        config.setUsers(List.of(new User("user1", "pass1", List.of("1"), List.of("group2"))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        checkErrorString(result, "Unknown role '2' for group 'group1'");
+        checkErrorString(result, "Unknown group 'group2' for user 'user1'");
+    }
+
+    @Test
+    void test_many_users_duplicates_in_order() {
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            users.add(new User("user" + (i % 4000), "pass", List.of("1")));
+        }
+        final FileAuthConfig config = new FileAuthConfig(users, List.of(new Role("1", List.of(new Permission("t")))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        extensionConfig.setValidationMaxErrors(2000);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        //the later entries are reported as duplicates, in the order of the config
+        assertEquals(1000, result.getErrors().size());
+        assertEquals("Duplicate Name 'user0' for user", result.getErrors().get(0));
+        assertEquals("Duplicate Name 'user999' for user", result.getErrors().get(999));
+    }
+
+    @Test
+    void test_max_errors() {
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            users.add(new User("user" + i, "pass", List.of("unknown")));
+        }
+        final FileAuthConfig config = new FileAuthConfig(users, List.of(new Role("1", List.of(new Permission("t")))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        extensionConfig.setValidationMaxErrors(10);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig, config);
+        assertFalse(result.isValidationSuccessful());
+        assertEquals(11, result.getErrors().size());
+        checkErrorString(result, "Validation stopped after 10 errors");
+    }
+
+    @Test
+    void test_errors_with_positions() {
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("1")),
+                new User("user2", "pass2", List.of("2"))), List.of(new Role("1", List.of(new Permission("t")))));
+        final SourcePositions.Recorder recorder = new SourcePositions.Recorder();
+        recorder.record(config.getUsers().get(0), 3, 9);
+        recorder.record(config.getUsers().get(1), 8, 9);
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final ValidationResult result = ConfigCredentialsValidator.validateConfig(extensionConfig,
+                config,
+                recorder.build("credentials.xml"));
+        assertFalse(result.isValidationSuccessful());
+        assertEquals(List.of("Unknown role '2' for user 'user2' (credentials.xml, line 8, column 9)"),
+                result.getErrors());
+    }
+
     private void checkErrorString(final ValidationResult result, final @NotNull String s) {
         assertTrue(result.getErrors().contains(s),
                 "Wanted error reason \"" + s + "\" not contained in: " + result.getErrors());
@@ -16,6 +16,7 @@
  */
 package com.hivemq.extensions.rbac.configuration;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
@@ -39,7 +40,7 @@ class ConfigParserTest {
     @BeforeEach
     void setUp(@TempDir final @NotNull File extensionFolder) {
         this.extensionFolder = extensionFolder;
-        configParser = new ConfigParser(new ExtensionConfig());
+        configParser = new ConfigParser(new ExtensionConfig(), new ReloadMetrics(new MetricRegistry(), () -> 0));
     }
 
     @Test
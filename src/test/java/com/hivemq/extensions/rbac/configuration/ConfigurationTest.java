@@ -16,8 +16,13 @@
  */
 package com.hivemq.extensions.rbac.configuration;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.CredentialsStoreType;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -28,11 +33,16 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -52,10 +62,13 @@ class ConfigurationTest {
         extensionConfig.setReloadInterval(1);
         final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
         final CredentialsConfiguration credentialsConfiguration =
-                new CredentialsConfiguration(extensionFolder, scheduledExecutorService, extensionConfig);
+                new CredentialsConfiguration(extensionFolder,
+                        scheduledExecutorService,
+                        extensionConfig,
+                        new MetricRegistry());
         credentialsConfiguration.init();
         final CountDownLatch latch = new CountDownLatch(1);
-        credentialsConfiguration.addReloadCallback((oldConfig, newConfig) -> latch.countDown());
+        credentialsConfiguration.addReloadCallback(diff -> latch.countDown());
         //Create a new file
         createCredentialsConfig();
         //Check if reload was called
@@ -70,14 +83,17 @@ class ConfigurationTest {
         extensionConfig.setReloadInterval(1);
         final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
         final CredentialsConfiguration credentialsConfiguration =
-                new CredentialsConfiguration(extensionFolder, scheduledExecutorService, extensionConfig);
+                new CredentialsConfiguration(extensionFolder,
+                        scheduledExecutorService,
+                        extensionConfig,
+                        new MetricRegistry());
         //Create a new file
         createCredentialsConfig();
         credentialsConfiguration.init();
         final File configFile = new File(extensionFolder, CredentialsConfiguration.CONFIG_NAME);
         assertTrue(configFile.delete());
         final CountDownLatch latch = new CountDownLatch(1);
-        credentialsConfiguration.addReloadCallback((oldConfig, newConfig) -> latch.countDown());
+        credentialsConfiguration.addReloadCallback(diff -> latch.countDown());
         //Check if reload was called
         assertFalse(latch.await(5, TimeUnit.SECONDS));
         assertNotNull(credentialsConfiguration.getCurrentConfig());
@@ -90,13 +106,211 @@ class ConfigurationTest {
         extensionConfig.setReloadInterval(1);
         final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
         final CredentialsConfiguration credentialsConfiguration =
-                new CredentialsConfiguration(extensionFolder, scheduledExecutorService, extensionConfig);
+                new CredentialsConfiguration(extensionFolder,
+                        scheduledExecutorService,
+                        extensionConfig,
+                        new MetricRegistry());
         createCredentialsConfig();
         credentialsConfiguration.init();
         assertNotNull(credentialsConfiguration.getCurrentConfig());
         scheduledExecutorService.shutdown();
     }
 
+    @Test
+    void test_init_metrics() throws Exception {
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final CredentialsConfiguration credentialsConfiguration =
+                new CredentialsConfiguration(extensionFolder, scheduledExecutorService, extensionConfig, metricRegistry);
+        createCredentialsConfig();
+        credentialsConfiguration.init();
+        assertEquals(1L, credentialsConfiguration.getGeneration());
+        assertEquals(1L, metricRegistry.getGauges().get(ReloadMetrics.GENERATION).getValue());
+        assertEquals(2L, metricRegistry.getGauges().get(ReloadMetrics.USER_COUNT).getValue());
+        assertEquals(2L, metricRegistry.getGauges().get(ReloadMetrics.ROLE_COUNT).getValue());
+        assertEquals(4L, metricRegistry.getGauges().get(ReloadMetrics.PERMISSION_COUNT).getValue());
+        assertTrue((Long) metricRegistry.getGauges().get(ReloadMetrics.HEAP_BYTES).getValue() > 0);
+        assertEquals(1, metricRegistry.timer(ReloadMetrics.PARSE_TIME).getCount());
+        assertEquals(0, metricRegistry.counter(ReloadMetrics.VALIDATION_FAILURES).getCount());
+        scheduledExecutorService.shutdown();
+    }
+
+    @Test
+    void test_init_reads_credentials_once() throws Exception {
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setReloadInterval(1);
+        final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        createCredentialsConfig();
+        final CredentialsConfiguration credentialsConfiguration =
+                new CredentialsConfiguration(extensionFolder, scheduledExecutorService, extensionConfig, metricRegistry);
+        credentialsConfiguration.init();
+        assertNotNull(credentialsConfiguration.getCurrentConfig());
+        //the reload checks after the start do not read the unchanged file again
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduledExecutorService.schedule(latch::countDown, 2500, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(1, metricRegistry.timer(ReloadMetrics.PARSE_TIME).getCount());
+        assertEquals(1L, credentialsConfiguration.getGeneration());
+        scheduledExecutorService.shutdown();
+    }
+
+    @Test
+    void test_journal() throws Exception {
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setJournalPollInterval(10);
+        final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        final CredentialsConfiguration credentialsConfiguration =
+                new CredentialsConfiguration(extensionFolder,
+                        scheduledExecutorService,
+                        extensionConfig,
+                        new MetricRegistry());
+        createCredentialsConfig();
+        final CredentialsJournal credentialsJournal =
+                new CredentialsJournal(extensionFolder, new ReloadMetrics(new MetricRegistry(), () -> 0));
+        credentialsJournal.append(List.of(JournalEntry.addUser("user3",
+                "c2FsdA==:100:aGFzaA==",
+                List.of("role1"),
+                null)));
+        credentialsConfiguration.init();
+        assertNotNull(credentialsConfiguration.getCurrentConfig());
+        assertEquals(3, credentialsConfiguration.getCurrentConfig().getUsers().size());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        credentialsConfiguration.addReloadCallback(diff -> {
+            if (diff.getRemovedUsers().equals(List.of("user1"))) {
+                latch.countDown();
+            }
+        });
+        credentialsJournal.append(List.of(JournalEntry.removeUser("user1")));
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(2, credentialsConfiguration.getCurrentConfig().getUsers().size());
+        scheduledExecutorService.shutdown();
+    }
+
+    @Test
+    void test_journal_failing_callback_does_not_stop_polling() throws Exception {
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setJournalPollInterval(10);
+        final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        final CredentialsConfiguration credentialsConfiguration =
+                new CredentialsConfiguration(extensionFolder,
+                        scheduledExecutorService,
+                        extensionConfig,
+                        new MetricRegistry());
+        createCredentialsConfig();
+        credentialsConfiguration.init();
+        final CredentialsJournal credentialsJournal =
+                new CredentialsJournal(extensionFolder, new ReloadMetrics(new MetricRegistry(), () -> 0));
+
+        final CountDownLatch failed = new CountDownLatch(1);
+        final CountDownLatch applied = new CountDownLatch(1);
+        credentialsConfiguration.addReloadCallback(diff -> {
+            if (diff.getRemovedUsers().equals(List.of("user1"))) {
+                failed.countDown();
+                throw new IllegalStateException("callback failed");
+            }
+            if (diff.getRemovedUsers().equals(List.of("admin-user"))) {
+                applied.countDown();
+            }
+        });
+        credentialsJournal.append(List.of(JournalEntry.removeUser("user1")));
+        assertTrue(failed.await(30, TimeUnit.SECONDS));
+        credentialsJournal.append(List.of(JournalEntry.removeUser("admin-user")));
+        assertTrue(applied.await(30, TimeUnit.SECONDS));
+        assertEquals(0, credentialsConfiguration.getCurrentConfig().getUsers().size());
+        scheduledExecutorService.shutdown();
+    }
+
+    @Test
+    void test_journal_batch_diff_contains_only_its_users() throws Exception {
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setJournalPollInterval(60_000);
+        final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        final CredentialsConfiguration credentialsConfiguration =
+                new CredentialsConfiguration(extensionFolder,
+                        scheduledExecutorService,
+                        extensionConfig,
+                        new MetricRegistry());
+        createCredentialsConfig();
+        credentialsConfiguration.init();
+        final List<CredentialsDiff> diffs = new ArrayList<>();
+        credentialsConfiguration.addReloadCallback(diffs::add);
+
+        final List<String> errors = new ArrayList<>();
+        assertTrue(credentialsConfiguration.applyBatch(List.of(JournalEntry.addUser("user3",
+                        "c2FsdA==:100:aGFzaA==",
+                        List.of("role1", "superuser"),
+                        null),
+                JournalEntry.setRoles("user1", List.of("superuser")),
+                JournalEntry.removeUser("admin-user")), errors), errors.toString());
+
+        assertEquals(1, diffs.size());
+        final CredentialsDiff diff = diffs.get(0);
+        assertEquals(List.of("user3"), names(diff.getAddedUsers()));
+        assertEquals(List.of("user1"), names(diff.getChangedUsers()));
+        assertEquals(List.of("admin-user"), diff.getRemovedUsers());
+        //the users of the journal are flattened like the users of the credentials files
+        final String combinedRoleId = CredentialsFlattener.combinedRoleId(List.of("role1", "superuser"));
+        assertEquals(List.of(combinedRoleId),
+                diff.getAddedRoles().stream().map(Role::getId).collect(Collectors.toList()));
+        assertTrue(diff.getChangedRoles().isEmpty());
+        assertTrue(diff.getRemovedRoles().isEmpty());
+
+        final FileAuthConfig config = credentialsConfiguration.getCurrentConfig();
+        assertNotNull(config);
+        assertEquals(Set.of("user1", "user3"), Set.copyOf(names(config.getUsers())));
+        assertTrue(config.getRoles().stream().map(Role::getId).anyMatch(combinedRoleId::equals));
+        assertEquals(2, credentialsConfiguration.getReloadMetrics().getUsers());
+
+        //an unchanged user leads to an empty diff
+        assertTrue(credentialsConfiguration.applyBatch(List.of(JournalEntry.setRoles("user1", List.of("superuser"))),
+                errors), errors.toString());
+        assertEquals(1, diffs.size());
+        scheduledExecutorService.shutdown();
+    }
+
+    @Test
+    void test_journal_batch_diff_of_snapshot_store() throws Exception {
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setJournalPollInterval(60_000);
+        //the flattened config is not kept on the heap for the snapshot stores
+        extensionConfig.setCredentialsStore(CredentialsStoreType.MAPPED);
+        final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        final CredentialsConfiguration credentialsConfiguration =
+                new CredentialsConfiguration(extensionFolder,
+                        scheduledExecutorService,
+                        extensionConfig,
+                        new MetricRegistry());
+        createCredentialsConfig();
+        credentialsConfiguration.init();
+        final List<CredentialsDiff> diffs = new ArrayList<>();
+        credentialsConfiguration.addReloadCallback(diffs::add);
+
+        final List<String> errors = new ArrayList<>();
+        assertTrue(credentialsConfiguration.applyBatch(List.of(JournalEntry.setRoles("user1", List.of("superuser")),
+                JournalEntry.removeUser("admin-user")), errors), errors.toString());
+        assertEquals(1, diffs.size());
+        assertEquals(List.of("user1"), names(diffs.get(0).getChangedUsers()));
+        assertEquals(List.of("admin-user"), diffs.get(0).getRemovedUsers());
+        assertEquals(List.of("user1"), names(credentialsConfiguration.getCurrentConfig().getUsers()));
+
+        //an unchanged user leads to an empty diff
+        assertTrue(credentialsConfiguration.applyBatch(List.of(JournalEntry.setRoles("user1", List.of("superuser"))),
+                errors), errors.toString());
+        assertEquals(1, diffs.size());
+
+        //a reload is compared to the config built again from the credentials files and the journal
+        credentialsConfiguration.reloadNow();
+        assertEquals(1, diffs.size());
+        scheduledExecutorService.shutdown();
+    }
+
+    private static @NotNull List<String> names(final @NotNull List<User> users) {
+        return users.stream().map(User::getName).collect(Collectors.toList());
+    }
+
     private void createCredentialsConfig() throws URISyntaxException, IOException {
         //Create a new file
         final File configFile = new File(extensionFolder, CredentialsConfiguration.CONFIG_NAME);
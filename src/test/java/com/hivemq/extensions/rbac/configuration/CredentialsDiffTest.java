@@ -0,0 +1,81 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialsDiffTest {
+
+    @Test
+    void test_compute_without_old_config() {
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("role1"))),
+                List.of(new Role("role1", List.of(new Permission("topic1")))));
+        final CredentialsDiff diff = CredentialsDiff.compute(null, config);
+        assertFalse(diff.isEmpty());
+        assertEquals(1, diff.getAddedUsers().size());
+        assertEquals(1, diff.getAddedRoles().size());
+        assertTrue(diff.getChangedUsers().isEmpty());
+        assertTrue(diff.getRemovedUsers().isEmpty());
+    }
+
+    @Test
+    void test_compute_same_config() {
+        final FileAuthConfig oldConfig = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("role1"))),
+                List.of(new Role("role1", List.of(new Permission("topic1")))));
+        final FileAuthConfig newConfig = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("role1"))),
+                List.of(new Role("role1", List.of(new Permission("topic1")))));
+        assertTrue(CredentialsDiff.compute(oldConfig, newConfig).isEmpty());
+    }
+
+    @Test
+    void test_compute_changes() {
+        final FileAuthConfig oldConfig = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("role1")),
+                new User("user2", "pass2", List.of("role1")),
+                new User("user3", "pass3", List.of("role2"))),
+                List.of(new Role("role1", List.of(new Permission("topic1"))),
+                        new Role("role2", List.of(new Permission("topic2")))));
+        final FileAuthConfig newConfig = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("role1")),
+                new User("user2", "rotated", List.of("role1")),
+                new User("user4", "pass4", List.of("role3"))),
+                List.of(new Role("role1", List.of(new Permission("topic1/#"))),
+                        new Role("role3", List.of(new Permission("topic3")))));
+
+        final CredentialsDiff diff = CredentialsDiff.compute(oldConfig, newConfig);
+        assertEquals(List.of("user4"), names(diff.getAddedUsers()));
+        assertEquals(List.of("user2"), names(diff.getChangedUsers()));
+        assertEquals(List.of("user3"), diff.getRemovedUsers());
+        assertEquals("role3", diff.getAddedRoles().get(0).getId());
+        assertEquals("role1", diff.getChangedRoles().get(0).getId());
+        assertEquals(List.of("role2"), diff.getRemovedRoles());
+    }
+
+    private static @NotNull List<String> names(final @NotNull List<User> users) {
+        return users.stream().map(User::getName).collect(Collectors.toList());
+    }
+}
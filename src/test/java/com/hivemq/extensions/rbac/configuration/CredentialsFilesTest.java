@@ -0,0 +1,131 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialsFilesTest {
+
+    private static final @NotNull String ROLES = "<file-rbac><roles><role><id>role1</id><permissions>" +
+            "<permission><topic>#</topic></permission></permissions></role></roles></file-rbac>";
+
+    private @NotNull File extensionFolder;
+    private @NotNull File shardsFolder;
+    private @NotNull MetricRegistry metricRegistry;
+    private @NotNull CredentialsFiles credentialsFiles;
+
+    @BeforeEach
+    void setUp(@TempDir final @NotNull File extensionFolder) {
+        this.extensionFolder = extensionFolder;
+        shardsFolder = new File(extensionFolder, CredentialsFiles.SHARDS_FOLDER_NAME);
+        assertTrue(shardsFolder.mkdir());
+        metricRegistry = new MetricRegistry();
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        credentialsFiles = new CredentialsFiles(extensionFolder,
+                CredentialsConfiguration.CONFIG_NAME,
+                new ConfigParser(extensionConfig, new ReloadMetrics(metricRegistry, () -> 0)));
+    }
+
+    @Test
+    void test_load_merges_shards() throws Exception {
+        Files.writeString(new File(extensionFolder, CredentialsConfiguration.CONFIG_NAME).toPath(), ROLES);
+        Files.writeString(new File(shardsFolder, "team-a.xml").toPath(), users("user1"));
+        Files.writeString(new File(shardsFolder, "team-b.xml").toPath(), users("user2"));
+
+        final FileAuthConfig config = credentialsFiles.load(null);
+        assertNotNull(config);
+        assertNotNull(config.getUsers());
+        assertEquals(2, config.getUsers().size());
+        assertNotNull(config.getRoles());
+        assertEquals(1, config.getRoles().size());
+        assertFalse(credentialsFiles.hasChanges());
+    }
+
+    @Test
+    void test_load_duplicate_user_in_shards() throws Exception {
+        Files.writeString(new File(shardsFolder, "roles.xml").toPath(), ROLES);
+        Files.writeString(new File(shardsFolder, "team-a.xml").toPath(), users("user1"));
+        Files.writeString(new File(shardsFolder, "team-b.xml").toPath(), users("user1"));
+
+        assertNull(credentialsFiles.load(null));
+        assertEquals(1, metricRegistry.counter(ReloadMetrics.VALIDATION_FAILURES).getCount());
+    }
+
+    @Test
+    void test_load_only_parses_changed_shards() throws Exception {
+        Files.writeString(new File(shardsFolder, "roles.xml").toPath(), ROLES);
+        final File shard = new File(shardsFolder, "team-a.xml");
+        Files.writeString(shard.toPath(), users("user1"));
+        Files.writeString(new File(shardsFolder, "team-b.xml").toPath(), users("user2"));
+        assertNotNull(credentialsFiles.load(null));
+        assertEquals(3, metricRegistry.timer(ReloadMetrics.PARSE_TIME).getCount());
+
+        Files.writeString(shard.toPath(), users("user3"));
+        assertTrue(shard.setLastModified(shard.lastModified() + 1000));
+        assertTrue(credentialsFiles.hasChanges());
+        final FileAuthConfig config = credentialsFiles.load(null);
+        assertNotNull(config);
+        assertNotNull(config.getUsers());
+        assertEquals("user3", config.getUsers().get(0).getName());
+        assertEquals("user2", config.getUsers().get(1).getName());
+        assertEquals(4, metricRegistry.timer(ReloadMetrics.PARSE_TIME).getCount());
+    }
+
+    @Test
+    void test_load_removed_shard() throws Exception {
+        Files.writeString(new File(shardsFolder, "roles.xml").toPath(), ROLES);
+        final File shard = new File(shardsFolder, "team-a.xml");
+        Files.writeString(shard.toPath(), users("user1"));
+        Files.writeString(new File(shardsFolder, "team-b.xml").toPath(), users("user2"));
+        assertNotNull(credentialsFiles.load(null));
+
+        assertTrue(shard.delete());
+        assertTrue(credentialsFiles.hasChanges());
+        final FileAuthConfig config = credentialsFiles.load(null);
+        assertNotNull(config);
+        assertNotNull(config.getUsers());
+        assertEquals(1, config.getUsers().size());
+    }
+
+    @Test
+    void test_load_no_files() {
+        assertFalse(credentialsFiles.hasChanges());
+        assertNull(credentialsFiles.load(null));
+    }
+
+    private static @NotNull String users(final @NotNull String userName) {
+        return "<file-rbac><users><user><name>" + userName + "</name><password>pass</password>" +
+                "<roles><id>role1</id></roles></user></users></file-rbac>";
+    }
+}
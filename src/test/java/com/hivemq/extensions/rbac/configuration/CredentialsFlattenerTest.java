@@ -0,0 +1,147 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Group;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CredentialsFlattenerTest {
+
+    @Test
+    void test_role_inheritance() {
+        final Role base = new Role("base", List.of(new Permission("status")));
+        final Role reader = new Role("reader", List.of(new Permission("data/#")), List.of("base"));
+        final Role writer = new Role("writer", List.of(new Permission("commands/#"), new Permission("status")),
+                List.of("base"));
+        final Role admin = new Role("admin", List.of(), List.of("reader", "writer"));
+        final FileAuthConfig config =
+                new FileAuthConfig(List.of(new User("user1", "pass1", List.of("admin"))),
+                        List.of(base, reader, writer, admin));
+
+        final FileAuthConfig flattened = CredentialsFlattener.flatten(config);
+
+        assertSame(base, role(flattened, "base"));
+        assertEquals(List.of("data/#", "status"), topics(role(flattened, "reader")));
+        assertEquals(List.of("commands/#", "status"), topics(role(flattened, "writer")));
+        assertEquals(List.of("data/#", "status", "commands/#"), topics(role(flattened, "admin")));
+        assertNull(role(flattened, "admin").getExtendedRoles());
+        assertSame(config.getUsers().get(0), flattened.getUsers().get(0));
+    }
+
+    @Test
+    void test_groups_and_combined_roles() {
+        final Role role1 = new Role("role1", List.of(new Permission("a"), new Permission("b")));
+        final Role role2 = new Role("role2", List.of(new Permission("b"), new Permission("c")));
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass1", null, List.of("group1")),
+                new User("user2", "pass2", List.of("role2", "role1"), List.of("group1")),
+                new User("user3", "pass3", List.of("role1"), List.of("group1"))), List.of(role1, role2));
+        config.setGroups(List.of(new Group("group1", List.of("role1", "role2"))));
+        config.setUserPatterns(List.of(new UserPattern("meter-", null, null, null, "secret", null, List.of("group1"))));
+
+        final FileAuthConfig flattened = CredentialsFlattener.flatten(config);
+
+        assertEquals(new User("user1", "pass1", List.of("role1", "role2")), flattened.getUsers().get(0));
+        assertEquals(new User("user2", "pass2", List.of("role2", "role1")), flattened.getUsers().get(1));
+        assertEquals(new User("user3", "pass3", List.of("role1", "role2")), flattened.getUsers().get(2));
+        assertEquals(List.of("role1", "role2"), flattened.getUserPatterns().get(0).getRoles());
+        assertNull(flattened.getUserPatterns().get(0).getGroups());
+        assertNull(flattened.getGroups());
+
+        //one combined role per distinct set of roles in the order the roles are held
+        assertEquals(4, flattened.getRoles().size());
+        assertEquals(List.of("a", "b", "c"),
+                topics(role(flattened, CredentialsFlattener.combinedRoleId(List.of("role1", "role2")))));
+        assertEquals(List.of("b", "c", "a"),
+                topics(role(flattened, CredentialsFlattener.combinedRoleId(List.of("role2", "role1")))));
+    }
+
+    @Test
+    void test_quotas() {
+        final Role base = new Role("base", List.of(new Permission("status")));
+        base.setQuota(new Quota(10, 0, 0));
+        final Role reader = new Role("reader", List.of(new Permission("data/#")), List.of("base"));
+        final Role writer = new Role("writer", List.of(new Permission("commands/#")));
+        writer.setQuota(new Quota(100, 1000, 256));
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("reader", "base")),
+                new User("user2", "pass2", List.of("writer", "base"))), List.of(base, reader, writer));
+
+        final FileAuthConfig flattened = CredentialsFlattener.flatten(config);
+
+        assertEquals(new Quota(new Quota(10, 0, 0), "base"), role(flattened, "base").getQuota());
+        //quotas are not inherited
+        assertNull(role(flattened, "reader").getQuota());
+        assertNull(config.getRoles().get(2).getQuota().getRoleId());
+        //a combined role has the quota of its first role that has one
+        final Role combinedRole1 = role(flattened, CredentialsFlattener.combinedRoleId(List.of("reader", "base")));
+        assertSame(role(flattened, "base").getQuota(), combinedRole1.getQuota());
+        final Role combinedRole2 = role(flattened, CredentialsFlattener.combinedRoleId(List.of("writer", "base")));
+        assertEquals("writer", combinedRole2.getQuota().getRoleId());
+        assertEquals(256, combinedRole2.getQuota().getMaxPayloadSize());
+    }
+
+    @Test
+    void test_flatten_user() {
+        final Role role1 = new Role("role1", List.of(new Permission("a")));
+        final Role role2 = new Role("role2", List.of(new Permission("b")), List.of("role1"));
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("role1"))),
+                List.of(role1, role2));
+        config.setGroups(List.of(new Group("group1", List.of("role2"))));
+        final CredentialsFlattener flattener = CredentialsFlattener.create(config);
+        flattener.flattenConfig(config);
+
+        final List<Role> addedRoles = new ArrayList<>();
+        final User user2 = flattener.flattenUser(new User("user2", "pass2", List.of("role1"), List.of("group1")),
+                addedRoles);
+        assertEquals(new User("user2", "pass2", List.of("role1", "role2")), user2);
+        assertEquals(1, addedRoles.size());
+        assertEquals(CredentialsFlattener.combinedRoleId(List.of("role1", "role2")), addedRoles.get(0).getId());
+        assertEquals(List.of("a", "b"), topics(addedRoles.get(0)));
+
+        //the combined role is only added for the first user that holds the roles
+        flattener.flattenUser(new User("user3", "pass3", List.of("role1", "role2")), addedRoles);
+        assertEquals(1, addedRoles.size());
+    }
+
+    @Test
+    void test_combined_role_id() {
+        assertEquals("role1", CredentialsFlattener.combinedRoleId(List.of("role1")));
+        assertEquals("\u0000role1\u0000role2", CredentialsFlattener.combinedRoleId(List.of("role1", "role2")));
+    }
+
+    private static @NotNull Role role(final @NotNull FileAuthConfig config, final @NotNull String id) {
+        return config.getRoles().stream().filter(role -> id.equals(role.getId())).findFirst().orElseThrow();
+    }
+
+    private static @NotNull List<String> topics(final @NotNull Role role) {
+        return role.getPermissions().stream().map(Permission::getTopic).collect(Collectors.toList());
+    }
+}
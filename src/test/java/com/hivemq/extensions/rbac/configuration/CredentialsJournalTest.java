@@ -0,0 +1,224 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialsJournalTest {
+
+    private @NotNull File extensionFolder;
+    private @NotNull MetricRegistry metricRegistry;
+    private @NotNull CredentialsJournal credentialsJournal;
+
+    @BeforeEach
+    void setUp(@TempDir final @NotNull File extensionFolder) {
+        this.extensionFolder = extensionFolder;
+        metricRegistry = new MetricRegistry();
+        credentialsJournal = new CredentialsJournal(extensionFolder, new ReloadMetrics(metricRegistry, () -> 0));
+    }
+
+    @Test
+    void test_entry_format_and_parse() {
+        final JournalEntry entry =
+                JournalEntry.addUser("user1", "c2FsdA==:100:aGFzaA==", List.of("role1", "role2"), 5);
+        final String line = entry.format();
+        assertTrue(line.endsWith("\n"));
+
+        final JournalEntry parsed = JournalEntry.parse(line.substring(0, line.length() - 1));
+        assertNotNull(parsed);
+        assertEquals(JournalEntry.Operation.ADD_USER, parsed.getOperation());
+        assertEquals("user1", parsed.getName());
+        assertEquals("c2FsdA==:100:aGFzaA==", parsed.getPassword());
+        assertEquals(List.of("role1", "role2"), parsed.getRoles());
+        assertEquals(Integer.valueOf(5), parsed.getMaxSessions());
+
+        //entries without max sessions are still read
+        final JournalEntry parsedWithout = JournalEntry.parsePayload("add-user\tuser1\tpass1\trole1");
+        assertNotNull(parsedWithout);
+        assertNull(parsedWithout.getMaxSessions());
+        assertNull(JournalEntry.parsePayload("add-user\tuser1\tpass1\trole1\t-1"));
+    }
+
+    @Test
+    void test_role_entry_format_and_parse() {
+        final Permission permission = new Permission("devices/+/status;raw,1");
+        permission.setActivity(TopicPermission.MqttActivity.PUBLISH);
+        permission.setRetain(TopicPermission.Retain.NOT_RETAINED);
+        final Role role = new Role("role1", List.of(permission, new Permission("#")));
+        final String line = JournalEntry.addRole(role).format();
+
+        final JournalEntry parsed = JournalEntry.parse(line.substring(0, line.length() - 1));
+        assertNotNull(parsed);
+        assertEquals(JournalEntry.Operation.ADD_ROLE, parsed.getOperation());
+        assertEquals("role1", parsed.getName());
+        assertEquals(role, parsed.getRole());
+    }
+
+    @Test
+    void test_entry_invalid_checksum() {
+        final String line = JournalEntry.removeUser("user1").format();
+        assertNull(JournalEntry.parse(line.substring(0, line.length() - 2) + "2"));
+    }
+
+    @Test
+    void test_entry_invalid_argument() {
+        assertThrows(IllegalArgumentException.class, () -> JournalEntry.setPassword("user\t1", "pass"));
+        assertThrows(IllegalArgumentException.class, () -> JournalEntry.setRoles("user1", List.of("role,1")));
+    }
+
+    @Test
+    void test_append_and_poll() throws Exception {
+        assertTrue(credentialsJournal.poll().isEmpty());
+
+        credentialsJournal.append(List.of(JournalEntry.addUser("user1", "pass1", List.of("role1"), null),
+                JournalEntry.setPassword("user1", "pass2")));
+        final List<JournalEntry> entries = credentialsJournal.poll();
+        assertEquals(2, entries.size());
+        assertEquals(JournalEntry.Operation.SET_PASSWORD, entries.get(1).getOperation());
+        assertTrue(credentialsJournal.poll().isEmpty());
+
+        credentialsJournal.append(List.of(JournalEntry.removeUser("user1")));
+        assertEquals(1, credentialsJournal.poll().size());
+    }
+
+    @Test
+    void test_poll_ignores_incomplete_line() throws Exception {
+        final File journalFile = new File(extensionFolder, CredentialsJournal.JOURNAL_NAME);
+        final String line = JournalEntry.removeUser("user1").format();
+        Files.writeString(journalFile.toPath(), line.substring(0, 10));
+        assertTrue(credentialsJournal.poll().isEmpty());
+
+        Files.writeString(journalFile.toPath(), line.substring(10), StandardOpenOption.APPEND);
+        assertEquals(1, credentialsJournal.poll().size());
+    }
+
+    @Test
+    void test_poll_skips_corrupt_line() throws Exception {
+        final File journalFile = new File(extensionFolder, CredentialsJournal.JOURNAL_NAME);
+        Files.writeString(journalFile.toPath(),
+                "0000\tremove-user\tuser1\n" + JournalEntry.removeUser("user2").format(),
+                StandardCharsets.UTF_8);
+
+        final List<JournalEntry> entries = credentialsJournal.poll();
+        assertEquals(1, entries.size());
+        assertEquals("user2", entries.get(0).getName());
+        assertEquals(1, metricRegistry.counter(ReloadMetrics.JOURNAL_ENTRIES_REJECTED).getCount());
+    }
+
+    @Test
+    void test_compact() throws Exception {
+        credentialsJournal.append(List.of(JournalEntry.addUser("user1", "pass1", List.of("role1"), null),
+                JournalEntry.setPassword("user1", "pass2")));
+        assertEquals(2, credentialsJournal.poll().size());
+        credentialsJournal.append(List.of(JournalEntry.removeUser("user2")));
+
+        credentialsJournal.compact(remainingEntries -> {
+            assertEquals(1, remainingEntries.size());
+            return List.of(JournalEntry.addUser("user1", "pass2", List.of("role1"), null),
+                    JournalEntry.removeUser("user2"));
+        });
+        assertEquals(0, new File(extensionFolder, CredentialsJournal.JOURNAL_NAME).length());
+        assertTrue(new File(extensionFolder, CredentialsJournal.SNAPSHOT_NAME).isFile());
+
+        credentialsJournal.append(List.of(JournalEntry.setRoles("user1", List.of("role2"))));
+        final List<JournalEntry> entries = credentialsJournal.replay();
+        assertEquals(3, entries.size());
+        assertEquals("pass2", entries.get(0).getPassword());
+        assertEquals(List.of("role2"), entries.get(2).getRoles());
+    }
+
+    @Test
+    void test_compact_keeps_max_sessions() throws Exception {
+        final User baseUser = new User("user1", "pass1", List.of("role1"));
+        baseUser.setMaxSessions(3);
+        final FileAuthConfig baseConfig = new FileAuthConfig(List.of(baseUser),
+                List.of(new Role("role1", List.of(new Permission("#")))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final JournalOverrides overrides = new JournalOverrides(extensionConfig);
+        overrides.setBaseConfig(baseConfig);
+
+        credentialsJournal.append(List.of(JournalEntry.setPassword("user1", "pass2")));
+        for (final JournalEntry entry : credentialsJournal.poll()) {
+            assertTrue(overrides.apply(entry));
+        }
+        credentialsJournal.compact(remainingEntries -> overrides.toEntries());
+
+        final JournalOverrides replayedOverrides = new JournalOverrides(extensionConfig);
+        replayedOverrides.setBaseConfig(baseConfig);
+        for (final JournalEntry entry : credentialsJournal.replay()) {
+            assertTrue(replayedOverrides.apply(entry));
+        }
+        final User user = replayedOverrides.resolveUser("user1");
+        assertNotNull(user);
+        assertEquals("pass2", user.getPassword());
+        assertEquals(3, user.getMaxSessions());
+
+        //an added user replaces the user of the credentials files but keeps its max sessions
+        assertTrue(replayedOverrides.apply(JournalEntry.addUser("user1", "pass3", List.of("role1"), null)));
+        assertEquals(3, replayedOverrides.resolveUser("user1").getMaxSessions());
+        assertTrue(replayedOverrides.apply(JournalEntry.addUser("user1", "pass3", List.of("role1"), 0)));
+        assertEquals(0, replayedOverrides.resolveUser("user1").getMaxSessions());
+    }
+
+    @Test
+    void test_add_role_of_credentials_files_is_rejected() {
+        final FileAuthConfig baseConfig = new FileAuthConfig(List.of(new User("user1", "pass1", List.of("role1"))),
+                List.of(new Role("role1", List.of(new Permission("#")))));
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setPasswordType(PasswordType.PLAIN);
+        final JournalOverrides overrides = new JournalOverrides(extensionConfig);
+        overrides.setBaseConfig(baseConfig);
+
+        final List<String> errors = new ArrayList<>();
+        assertFalse(overrides.apply(JournalEntry.addRole(new Role("role1", List.of(new Permission("a/#")))), errors));
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains("role1"));
+        assertTrue(overrides.apply(JournalEntry.addRole(new Role("role2", List.of(new Permission("a/#"))))));
+
+        //a role that is added to the credentials files takes precedence over the role of the journal
+        overrides.setBaseConfig(new FileAuthConfig(baseConfig.getUsers(),
+                List.of(new Role("role1", List.of(new Permission("#"))),
+                        new Role("role2", List.of(new Permission("b/#"))))));
+        assertTrue(overrides.toEntries().stream().noneMatch(entry -> entry.getRole() != null));
+    }
+}
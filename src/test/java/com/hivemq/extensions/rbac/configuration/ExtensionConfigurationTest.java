@@ -72,6 +72,95 @@ class ExtensionConfigurationTest {
         assertEquals(60, extensionConfig.getReloadInterval());
     }
 
+    @Test
+    void test_read_extension_configuration_jfr_event_threshold() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><jfr-event-threshold>10</jfr-event-threshold></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(10, extensionConfiguration.getExtensionConfig().getJfrEventThreshold());
+    }
+
+    @Test
+    void test_read_extension_configuration_invalid_jfr_event_threshold() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><jfr-event-threshold>-1</jfr-event-threshold></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(0, extensionConfiguration.getExtensionConfig().getJfrEventThreshold());
+    }
+
+    @Test
+    void test_read_extension_configuration_archive_retention() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><archive-max-files>5</archive-max-files><archive-max-age>-1</archive-max-age></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(5, extensionConfiguration.getExtensionConfig().getArchiveMaxFiles());
+        assertEquals(0, extensionConfiguration.getExtensionConfig().getArchiveMaxAge());
+    }
+
+    @Test
+    void test_read_extension_configuration_revocation() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><revocation-batch-size>-1</revocation-batch-size>" +
+                        "<revocation-batch-interval>200</revocation-batch-interval></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(1000, extensionConfiguration.getExtensionConfig().getRevocationBatchSize());
+        assertEquals(200, extensionConfiguration.getExtensionConfig().getRevocationBatchInterval());
+    }
+
+    @Test
+    void test_read_extension_configuration_quota_max_delay() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><quota-max-delay>-1</quota-max-delay></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(1000, extensionConfiguration.getExtensionConfig().getQuotaMaxDelay());
+    }
+
+    @Test
+    void test_read_extension_configuration_warm_cache() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><warm-cache-size>500</warm-cache-size>" +
+                        "<warm-cache-max-age>0</warm-cache-max-age><warm-cache-save-interval>-1</warm-cache-save-interval></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(500, extensionConfiguration.getExtensionConfig().getWarmCacheSize());
+        assertEquals(86400, extensionConfiguration.getExtensionConfig().getWarmCacheMaxAge());
+        assertEquals(60, extensionConfiguration.getExtensionConfig().getWarmCacheSaveInterval());
+    }
+
+    @Test
+    void test_read_extension_configuration_invalid_warm_up_time() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><warm-up-time>-1</warm-up-time></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(0, extensionConfiguration.getExtensionConfig().getWarmUpTime());
+    }
+
+    @Test
+    void test_read_extension_configuration_hash_cache() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><hash-cache-size>5000</hash-cache-size><hash-cache-expiry>0</hash-cache-expiry></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(5000, extensionConfiguration.getExtensionConfig().getHashCacheSize());
+        assertEquals(30, extensionConfiguration.getExtensionConfig().getHashCacheExpiry());
+    }
+
+    @Test
+    void test_read_extension_configuration_trace() throws Exception {
+        final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
+        Files.writeString(configFile.toPath(),
+                "<extension-configuration><trace-max-files>-1</trace-max-files><trace-file-size>0</trace-file-size></extension-configuration>");
+        final ExtensionConfiguration extensionConfiguration = new ExtensionConfiguration(extensionFolder);
+        assertEquals(0, extensionConfiguration.getExtensionConfig().getTraceMaxFiles());
+        assertEquals(64, extensionConfiguration.getExtensionConfig().getTraceFileSize());
+    }
+
     @Test
     void test_read_extension_configuration_invalid_pw_type() throws Exception {
         final File configFile = new File(extensionFolder, EXTENSION_CONFIG_FILE_NAME);
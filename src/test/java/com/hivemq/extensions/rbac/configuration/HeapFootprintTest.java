@@ -0,0 +1,60 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeapFootprintTest {
+
+    private static final List<Role> ROLES =
+            List.of(new Role("role1", List.of(new Permission("a/#"))), new Role("role2", List.of()));
+
+    @Test
+    void test_shared_roles_are_counted_once() {
+        final long oneUser = HeapFootprint.estimate(new FileAuthConfig(List.of(user("user1")), ROLES));
+        final long twoUsers =
+                HeapFootprint.estimate(new FileAuthConfig(List.of(user("user1"), user("user2")), ROLES));
+        final long threeUsers = HeapFootprint.estimate(new FileAuthConfig(List.of(user("user1"),
+                user("user2"),
+                user("user3")), ROLES));
+
+        //user object, name, password and index entry only
+        assertEquals(twoUsers - oneUser, threeUsers - twoUsers);
+        assertTrue(twoUsers - oneUser < 200, "bytes per user " + (twoUsers - oneUser));
+        assertTrue(oneUser - HeapFootprint.estimate(new FileAuthConfig(List.of(), ROLES)) > twoUsers - oneUser);
+    }
+
+    @Test
+    void test_empty_config() {
+        assertEquals(0, HeapFootprint.estimate(new FileAuthConfig(null, null)));
+    }
+
+    private static @NotNull User user(final @NotNull String name) {
+        return new User(name, "pass1", new ArrayList<>(List.of("role1", "role2")));
+    }
+}
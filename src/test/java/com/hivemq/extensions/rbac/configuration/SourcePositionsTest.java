@@ -0,0 +1,84 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration;
+
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SourcePositionsTest {
+
+    @Test
+    void test_describe() {
+        final SourcePositions.Recorder recorder = new SourcePositions.Recorder();
+        for (int i = 0; i < 100; i++) {
+            recorder.record(new User(), i + 1, 5);
+        }
+        recorder.record(new Permission(), 200, 1);
+        recorder.record(new User(), -1, -1);
+        final SourcePositions positions = recorder.build("credentials.xml");
+
+        assertEquals(" (credentials.xml, line 1, column 5)", positions.describe(SourcePositions.Kind.USER, 0));
+        assertEquals(" (credentials.xml, line 100, column 5)", positions.describe(SourcePositions.Kind.USER, 99));
+        //unknown positions
+        assertEquals("", positions.describe(SourcePositions.Kind.USER, 100));
+        assertEquals("", positions.describe(SourcePositions.Kind.USER, 101));
+        assertEquals("", positions.describe(SourcePositions.Kind.ROLE, 0));
+        assertEquals("", SourcePositions.NONE.describe(SourcePositions.Kind.USER, 0));
+
+        final SourcePositions.Recorder unnamedRecorder = new SourcePositions.Recorder();
+        unnamedRecorder.record(new User(), 1, 5);
+        assertEquals(" (line 1, column 5)", unnamedRecorder.build("").describe(SourcePositions.Kind.USER, 0));
+    }
+
+    @Test
+    void test_merge() {
+        final FileAuthConfig first = new FileAuthConfig(List.of(new User(), new User()), List.of());
+        final FileAuthConfig second = new FileAuthConfig(List.of(new User()), List.of(new Role("1", List.of())));
+        final FileAuthConfig third = new FileAuthConfig(List.of(new User()), null);
+        final SourcePositions.Recorder firstRecorder = new SourcePositions.Recorder();
+        firstRecorder.record(first.getUsers().get(0), 2, 1);
+        firstRecorder.record(first.getUsers().get(1), 3, 1);
+        final SourcePositions.Recorder thirdRecorder = new SourcePositions.Recorder();
+        thirdRecorder.record(third.getUsers().get(0), 7, 1);
+
+        final Map<String, FileAuthConfig> configs = new LinkedHashMap<>();
+        configs.put("credentials.xml", first);
+        configs.put("credentials.d/second.xml", second);
+        configs.put("credentials.d/third.xml", third);
+        final SourcePositions positions = SourcePositions.merge(configs,
+                Map.of("credentials.xml",
+                        firstRecorder.build("credentials.xml"),
+                        "credentials.d/third.xml",
+                        thirdRecorder.build("credentials.d/third.xml")));
+
+        assertEquals(" (credentials.xml, line 3, column 1)", positions.describe(SourcePositions.Kind.USER, 1));
+        //the second file has no positions
+        assertEquals("", positions.describe(SourcePositions.Kind.USER, 2));
+        assertEquals(" (credentials.d/third.xml, line 7, column 1)",
+                positions.describe(SourcePositions.Kind.USER, 3));
+        assertEquals("", positions.describe(SourcePositions.Kind.ROLE, 0));
+    }
+}
@@ -24,12 +24,15 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class XmlParserTest {
 
@@ -66,6 +69,27 @@ class XmlParserTest {
         assertEquals(config.toString().trim(), marshalledConfig.toString().trim());
     }
 
+    @Test
+    void test_unmarshal_credentials_positions() throws Exception {
+        final XmlParser xmlParser = new XmlParser();
+        final String content = "<file-rbac>\n" +
+                "    <users>\n" +
+                "        <user>\n" +
+                "            <name>user1</name>\n" +
+                "        </user>\n" +
+                "        <user><name>user2</name></user>\n" +
+                "    </users>\n" +
+                "</file-rbac>\n";
+        final SourcePositions.Recorder recorder = new SourcePositions.Recorder();
+        final FileAuthConfig config = xmlParser.unmarshalFileAuthConfig(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), recorder);
+        assertEquals(2, config.getUsers().size());
+        final SourcePositions positions = recorder.build("credentials.xml");
+        assertTrue(positions.describe(SourcePositions.Kind.USER, 0).startsWith(" (credentials.xml, line 3,"));
+        assertTrue(positions.describe(SourcePositions.Kind.USER, 1).startsWith(" (credentials.xml, line 6,"));
+        assertEquals("", positions.describe(SourcePositions.Kind.ROLE, 0));
+    }
+
     @Test
     void test_unmarshal_extension_config() throws Exception {
         final XmlParser xmlParser = new XmlParser();
@@ -0,0 +1,70 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.configuration.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdListTest {
+
+    @Test
+    void test_intern_shares_lists() {
+        final List<String> roles = IdList.intern(new ArrayList<>(List.of("role1", "role2")));
+
+        assertEquals(List.of("role1", "role2"), roles);
+        assertEquals(roles, List.of("role1", "role2"));
+        assertEquals(List.of("role1", "role2").hashCode(), roles.hashCode());
+        assertSame(roles, IdList.intern(new ArrayList<>(List.of(new String("role1"), new String("role2")))));
+        assertSame(roles, IdList.intern(roles));
+        assertNotSame(roles, IdList.intern(List.of("role2", "role1")));
+        assertNull(IdList.intern(null));
+        assertThrows(UnsupportedOperationException.class, () -> roles.add("role3"));
+    }
+
+    @Test
+    void test_intern_shares_ids() {
+        final List<String> roles1 = IdList.intern(List.of(new String("role1"), new String("role2")));
+        final List<String> roles2 = IdList.intern(List.of(new String("role3"), new String("role1")));
+
+        assertSame(roles1.get(0), roles2.get(1));
+    }
+
+    @Test
+    void test_users_share_roles() {
+        final User user1 = new User("user1", "pass1", new ArrayList<>(List.of("role1", "role2")));
+        final User user2 = new User("user2", "pass2", new ArrayList<>(List.of("role1", "role2")));
+
+        assertSame(user1.getRoles(), user2.getRoles());
+    }
+
+    @Test
+    void test_combined_id() {
+        assertEquals("role1", IdList.combinedId(List.of("role1")));
+        assertEquals("\u0000role1\u0000role2", IdList.combinedId(List.of("role1", "role2")));
+        final List<String> roles = IdList.intern(List.of("role1", "role2"));
+        assertEquals("\u0000role1\u0000role2", IdList.combinedId(roles));
+        assertSame(IdList.combinedId(roles), IdList.combinedId(roles));
+    }
+}
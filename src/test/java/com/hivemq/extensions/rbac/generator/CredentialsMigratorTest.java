@@ -0,0 +1,156 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.generator;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.XmlParser;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.utils.Hashing;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialsMigratorTest {
+
+    private static final @NotNull String CREDENTIALS = "<file-rbac>" +
+            "   <users>\n" +
+            "        <user>\n" +
+            "            <name>user1</name>\n" +
+            "            <password>c2FsdA==:100:MAK8JjJQh/c4uYbwkAm33TRXCbeuBC+meeK9ww3Mu4KTv08+8ywTKgF24MNHotOESjDmsutrEk+38PaZVX2TFA==</password>\n" +
+            "            <roles>\n" +
+            "                <id>role1</id>\n" +
+            "            </roles>\n" +
+            "        </user>\n" +
+            "        <user>\n" +
+            "            <name>user2</name>\n" +
+            "            <password>c2FsdA==:100:99RGrFfo+l2fQ+KTeSdM/5SZBAJlxj25jzwfAfNeqCe4+9ejGBSEue1w005Uq3+aoZKn89JXNQU8hgHKneu0Dw==</password>\n" +
+            "            <roles>\n" +
+            "                <id>role1</id>\n" +
+            "            </roles>\n" +
+            "        </user>\n" +
+            "    </users>\n" +
+            "    <roles>\n" +
+            "        <role>\n" +
+            "            <id>role1</id>\n" +
+            "            <permissions>\n" +
+            "                <permission>\n" +
+            "                    <topic>#</topic>\n" +
+            "                </permission>\n" +
+            "            </permissions>\n" +
+            "        </role>\n" +
+            "    </roles>\n" +
+            "</file-rbac>";
+
+    private @NotNull File credentialsFile;
+
+    @BeforeEach
+    void setUp(@TempDir final @NotNull File extensionFolder) throws Exception {
+        credentialsFile = new File(extensionFolder, "credentials.xml");
+        Files.writeString(credentialsFile.toPath(), CREDENTIALS);
+    }
+
+    @Test
+    void test_migrate() throws Exception {
+        final CredentialsMigrator.MigrationResult result =
+                CredentialsMigrator.migrate(credentialsFile, Map.of("user1", "pass1", "user3", "pass3"), 200, 2);
+
+        assertEquals(List.of("user1"), result.getMigrated());
+        assertEquals(List.of("user3"), result.getUnknown());
+        assertTrue(result.getMismatched().isEmpty());
+        assertEquals(Map.of("user2", 100), result.getWeak());
+
+        final FileAuthConfig config = new XmlParser().unmarshalFileAuthConfig(credentialsFile);
+        assertNotNull(config.getUsers());
+        final String password = Objects.requireNonNull(getUser(config, "user1").getPassword());
+        final String[] saltPw = password.split(":");
+        assertEquals("200", saltPw[1]);
+        assertArrayEquals(Base64.getDecoder().decode(saltPw[2]),
+                Hashing.createHash(Base64.getEncoder().encodeToString("pass1".getBytes(StandardCharsets.UTF_8)),
+                        saltPw[0],
+                        200));
+        assertTrue(Objects.requireNonNull(getUser(config, "user2").getPassword()).startsWith("c2FsdA==:100:"));
+        assertFalse(new File(credentialsFile.getParentFile(), "credentials.xml.migration.tmp").exists());
+    }
+
+    @Test
+    void test_migrate_keeps_permissions() throws Exception {
+        final Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-------");
+        Files.setPosixFilePermissions(credentialsFile.toPath(), permissions);
+        CredentialsMigrator.migrate(credentialsFile, Map.of("user1", "pass1"), 200, 1);
+
+        assertEquals(permissions, Files.getPosixFilePermissions(credentialsFile.toPath()));
+        assertTrue(Objects.requireNonNull(getUser(new XmlParser().unmarshalFileAuthConfig(credentialsFile),
+                "user1").getPassword()).contains(":200:"));
+    }
+
+    @Test
+    void test_migrate_wrong_password() throws Exception {
+        final long lastModified = credentialsFile.lastModified();
+        final CredentialsMigrator.MigrationResult result =
+                CredentialsMigrator.migrate(credentialsFile, Map.of("user1", "wrong"), 200, 1);
+
+        assertTrue(result.getMigrated().isEmpty());
+        assertEquals(List.of("user1"), result.getMismatched());
+        assertEquals(2, result.getWeak().size());
+        assertEquals(CREDENTIALS, Files.readString(credentialsFile.toPath()));
+        assertEquals(lastModified, credentialsFile.lastModified());
+    }
+
+    @Test
+    void test_migrate_malformed_password() throws Exception {
+        Files.writeString(credentialsFile.toPath(), CREDENTIALS.replace("c2FsdA==:100:MAK8", "c2FsdA==:1x0:MAK8"));
+        final CredentialsMigrator.MigrationResult result =
+                CredentialsMigrator.migrate(credentialsFile, Map.of("user1", "pass1", "user2", "pass2"), 200, 2);
+
+        //the malformed user does not abort the migration of the others
+        assertEquals(List.of("user1"), result.getMismatched());
+        assertEquals(List.of("user2"), result.getMigrated());
+    }
+
+    @Test
+    void test_read_passwords(@TempDir final @NotNull File folder) throws Exception {
+        final File passwordsFile = new File(folder, "passwords.txt");
+        Files.writeString(passwordsFile.toPath(), "# comment\nuser1:pass1\n\nuser2:pa:ss2\n");
+        assertEquals(Map.of("user1", "pass1", "user2", "pa:ss2"), CredentialsMigrator.readPasswords(passwordsFile));
+    }
+
+    private static @NotNull User getUser(final @NotNull FileAuthConfig config, final @NotNull String name) {
+        return Objects.requireNonNull(config.getUsers())
+                .stream()
+                .filter(user -> name.equals(user.getName()))
+                .findFirst()
+                .orElseThrow();
+    }
+}
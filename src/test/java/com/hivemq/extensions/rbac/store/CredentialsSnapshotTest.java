@@ -0,0 +1,138 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Quota;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CredentialsSnapshotTest {
+
+    private @NotNull Path snapshotFile;
+
+    @BeforeEach
+    void setUp(@TempDir final @NotNull File folder) {
+        snapshotFile = folder.toPath().resolve("credentials.bin");
+    }
+
+    @Test
+    void test_mapped_lookup() throws Exception {
+        CredentialsSnapshot.write(createConfig(1000), snapshotFile);
+        assertLookups(CredentialsSnapshot.open(new MappedCredentialsStore.MappedSource(snapshotFile)), 1000);
+    }
+
+    @Test
+    void test_channel_lookup() throws Exception {
+        CredentialsSnapshot.write(createConfig(1000), snapshotFile);
+        assertLookups(CredentialsSnapshot.open(new LazyCredentialsStore.ChannelSource(snapshotFile)), 1000);
+    }
+
+    @Test
+    void test_user_patterns() throws Exception {
+        final FileAuthConfig config = createConfig(10);
+        final UserPattern meters = new UserPattern("meter-", null, null, null, "secret", List.of("role0"));
+        final UserPattern sensors = new UserPattern(null, "sensor-*", null, "password", null, List.of("role1"));
+        config.setUserPatterns(List.of(meters, sensors));
+        CredentialsSnapshot.write(config, snapshotFile);
+        final CredentialsSnapshot snapshot =
+                CredentialsSnapshot.open(new LazyCredentialsStore.ChannelSource(snapshotFile));
+
+        assertEquals(List.of(meters, sensors), snapshot.getUserPatterns().getPatterns());
+        assertEquals(meters, snapshot.getUserPatterns().match("meter-000001"));
+        assertEquals(sensors, snapshot.getUserPatterns().match("sensor-1"));
+        assertNull(snapshot.getUserPatterns().match("user1"));
+        assertLookups(snapshot, 10);
+    }
+
+    @Test
+    void test_empty_config() throws Exception {
+        CredentialsSnapshot.write(new FileAuthConfig(), snapshotFile);
+        final CredentialsSnapshot snapshot =
+                CredentialsSnapshot.open(new MappedCredentialsStore.MappedSource(snapshotFile));
+
+        assertEquals(0, snapshot.getUserCount());
+        assertEquals(0, snapshot.getRoleCount());
+        assertNull(snapshot.readUser("user1"));
+        assertNull(snapshot.readRole("role1"));
+    }
+
+    @Test
+    void test_invalid_file() throws Exception {
+        Files.write(snapshotFile, new byte[CredentialsSnapshot.HEADER_SIZE]);
+
+        assertThrows(IOException.class,
+                () -> CredentialsSnapshot.open(new LazyCredentialsStore.ChannelSource(snapshotFile)));
+    }
+
+    private void assertLookups(final @NotNull CredentialsSnapshot snapshot, final int users) throws Exception {
+        assertEquals(users, snapshot.getUserCount());
+        assertEquals(2, snapshot.getRoleCount());
+        for (int i = 0; i < users; i++) {
+            assertEquals(createUser(i), snapshot.readUser("user" + i));
+        }
+        assertNull(snapshot.readUser("user" + users));
+        assertNull(snapshot.readUser(""));
+        assertEquals(createRole("role1"), snapshot.readRole("role1"));
+        assertNull(snapshot.readRole("role2"));
+        snapshot.close();
+    }
+
+    private static @NotNull FileAuthConfig createConfig(final int users) {
+        final List<User> userList = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            userList.add(createUser(i));
+        }
+        return new FileAuthConfig(userList, List.of(createRole("role0"), createRole("role1")));
+    }
+
+    private static @NotNull User createUser(final int i) {
+        final User user = new User("user" + i, "password" + i, List.of("role" + (i % 2)));
+        user.setMaxSessions(i % 3);
+        return user;
+    }
+
+    private static @NotNull Role createRole(final @NotNull String id) {
+        final Permission permission = new Permission("data/${{clientid}}/#");
+        permission.setActivity(TopicPermission.MqttActivity.PUBLISH);
+        permission.setQos(TopicPermission.Qos.ONE_TWO);
+        permission.setSharedGroup("group-ü");
+        final Role role = new Role(id, List.of(permission, new Permission("#")));
+        if (id.equals("role1")) {
+            role.setQuota(new Quota(new Quota(100, 0, 1024), id));
+        }
+        return role;
+    }
+}
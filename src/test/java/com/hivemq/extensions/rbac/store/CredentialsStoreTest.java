@@ -0,0 +1,288 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
+import com.hivemq.extensions.rbac.configuration.CredentialsDiff;
+import com.hivemq.extensions.rbac.configuration.entities.CredentialsStoreType;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import com.hivemq.extensions.rbac.configuration.entities.FileAuthConfig;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import com.hivemq.extensions.rbac.configuration.entities.Role;
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CredentialsStoreTest {
+
+    private @NotNull File extensionFolder;
+    private @NotNull ScheduledExecutorService executorService;
+
+    @BeforeEach
+    void setUp(@TempDir final @NotNull File extensionFolder) {
+        this.extensionFolder = extensionFolder;
+        executorService = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void test_memory_store() throws Exception {
+        assertStoreFollowsConfig(CredentialsStoreType.MEMORY, InMemoryCredentialsStore.class);
+    }
+
+    @Test
+    void test_mapped_store() throws Exception {
+        assertStoreFollowsConfig(CredentialsStoreType.MAPPED, MappedCredentialsStore.class);
+        assertTrue(new File(extensionFolder, SnapshotCredentialsStore.SNAPSHOT_NAME).isFile());
+    }
+
+    @Test
+    void test_lazy_store() throws Exception {
+        assertStoreFollowsConfig(CredentialsStoreType.LAZY, LazyCredentialsStore.class);
+    }
+
+    @Test
+    void test_precompiled_snapshot() throws Exception {
+        CredentialsSnapshot.write(new FileAuthConfig(List.of(new User("device1", "password", List.of("role1"))),
+                List.of(new Role("role1", List.of(new Permission("#"))))),
+                new File(extensionFolder, SnapshotCredentialsStore.SNAPSHOT_NAME).toPath());
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setCredentialsStore(CredentialsStoreType.LAZY);
+        final CredentialsConfiguration credentialsConfiguration =
+                new CredentialsConfiguration(extensionFolder, executorService, extensionConfig, new MetricRegistry());
+        credentialsConfiguration.init();
+        final CredentialsStore store =
+                CredentialsStore.create(extensionFolder, extensionConfig, credentialsConfiguration, executorService);
+        store.init();
+
+        assertFalse(store.isEmpty());
+        assertEquals("password", store.lookupUser("device1").getPassword());
+        assertNotNull(store.lookupRole("role1"));
+        store.close();
+    }
+
+    @Test
+    void test_memory_store_overlay() {
+        final List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            users.add(new User("user" + i, "pass", List.of("role1")));
+        }
+        final FileAuthConfig config = new FileAuthConfig(users, List.of(new Role("role1", List.of())));
+        final CredentialsConfiguration credentialsConfiguration = mock(CredentialsConfiguration.class);
+        when(credentialsConfiguration.getCurrentConfig()).thenReturn(config);
+        final InMemoryCredentialsStore store = new InMemoryCredentialsStore(credentialsConfiguration);
+        store.init();
+        final ArgumentCaptor<CredentialsConfiguration.ReloadCallback> callback =
+                ArgumentCaptor.forClass(CredentialsConfiguration.ReloadCallback.class);
+        verify(credentialsConfiguration).addReloadCallback(callback.capture());
+
+        //a few changes are kept in the overlay
+        final List<User> changedUsers = new ArrayList<>(users.subList(1, 100));
+        final User changedUser = new User("user1", "pass", List.of("role2"));
+        changedUsers.set(0, changedUser);
+        final User addedUser = new User("user100", "pass", List.of("role1"));
+        changedUsers.add(addedUser);
+        final FileAuthConfig changedConfig = new FileAuthConfig(changedUsers, config.getRoles());
+        callback.getValue().onReload(CredentialsDiff.compute(config, changedConfig));
+
+        assertNull(store.lookupUser("user0"));
+        assertSame(changedUser, store.lookupUser("user1"));
+        assertSame(users.get(2), store.lookupUser("user2"));
+        assertSame(addedUser, store.lookupUser("user100"));
+
+        //many changes rebuild the index
+        final List<User> rebuiltUsers = new ArrayList<>(changedUsers.subList(50, 100));
+        final FileAuthConfig rebuiltConfig = new FileAuthConfig(rebuiltUsers, config.getRoles());
+        callback.getValue().onReload(CredentialsDiff.compute(changedConfig, rebuiltConfig));
+
+        assertNull(store.lookupUser("user1"));
+        assertNull(store.lookupUser("user50"));
+        assertSame(users.get(51), store.lookupUser("user51"));
+        assertSame(addedUser, store.lookupUser("user100"));
+        assertFalse(store.isEmpty());
+        assertEquals(3, store.getGeneration());
+    }
+
+    @Test
+    void test_snapshot_store_journal_overlay() throws Exception {
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass", List.of("role1")),
+                new User("user2", "pass", List.of("role1"))), List.of(new Role("role1", List.of())));
+        final CredentialsConfiguration credentialsConfiguration = mock(CredentialsConfiguration.class);
+        when(credentialsConfiguration.getCurrentConfig()).thenReturn(config);
+        final LazyCredentialsStore store =
+                new LazyCredentialsStore(extensionFolder, credentialsConfiguration, executorService, 60);
+        store.init();
+        final ArgumentCaptor<CredentialsConfiguration.ReloadCallback> callback =
+                ArgumentCaptor.forClass(CredentialsConfiguration.ReloadCallback.class);
+        verify(credentialsConfiguration).addReloadCallback(callback.capture());
+        final File snapshotFile = new File(extensionFolder, SnapshotCredentialsStore.SNAPSHOT_NAME);
+        final FileTime compiled = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(snapshotFile.toPath(), compiled);
+
+        //the users of journal entries are not compiled into the snapshot
+        final User changedUser = new User("user1", "pass", List.of("role2"));
+        final User addedUser = new User("user3", "pass", List.of("role1"));
+        final Role addedRole = new Role("role2", List.of(new Permission("topic")));
+        callback.getValue()
+                .onReload(CredentialsDiff.ofUsers(() -> config,
+                        List.of(addedUser),
+                        List.of(changedUser),
+                        List.of("user2"),
+                        List.of(addedRole)));
+
+        assertEquals(compiled, Files.getLastModifiedTime(snapshotFile.toPath()));
+        assertEquals(List.of("role2"), store.lookupUser("user1").getRoles());
+        assertNull(store.lookupUser("user2"));
+        assertSame(addedUser, store.lookupUser("user3"));
+        assertSame(addedRole, store.lookupRole("role2"));
+        assertFalse(store.isEmpty());
+        assertEquals(2, store.getGeneration());
+
+        //a reload of the files is compiled and replaces the overlay
+        final FileAuthConfig reloadedConfig =
+                new FileAuthConfig(List.of(new User("user2", "pass", List.of("role1"))), config.getRoles());
+        callback.getValue().onReload(CredentialsDiff.compute(config, reloadedConfig));
+
+        assertNull(store.lookupUser("user1"));
+        assertEquals(List.of("role1"), store.lookupUser("user2").getRoles());
+        assertNull(store.lookupUser("user3"));
+        assertNull(store.lookupRole("role2"));
+        assertEquals(3, store.getGeneration());
+        store.close();
+    }
+
+    @Test
+    void test_snapshot_store_keeps_replaced_snapshot_open_for_lookups() {
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass", List.of("role1"))),
+                List.of(new Role("role1", List.of())));
+        final CredentialsConfiguration credentialsConfiguration = mock(CredentialsConfiguration.class);
+        when(credentialsConfiguration.getCurrentConfig()).thenReturn(config);
+        final AtomicReference<CredentialsConfiguration.ReloadCallback> callback = new AtomicReference<>();
+        final AtomicBoolean reloaded = new AtomicBoolean();
+        final LazyCredentialsStore store =
+                new LazyCredentialsStore(extensionFolder, credentialsConfiguration, executorService, 60) {
+                    @Override
+                    @Nullable User readUser(
+                            final @NotNull CredentialsSnapshot snapshot, final @NotNull String userName)
+                            throws IOException {
+                        //the snapshot is replaced twice while the lookup is reading it
+                        if (reloaded.compareAndSet(false, true)) {
+                            callback.get().onReload(CredentialsDiff.compute(config, config));
+                            callback.get().onReload(CredentialsDiff.compute(config, config));
+                        }
+                        return super.readUser(snapshot, userName);
+                    }
+                };
+        store.init();
+        final ArgumentCaptor<CredentialsConfiguration.ReloadCallback> captor =
+                ArgumentCaptor.forClass(CredentialsConfiguration.ReloadCallback.class);
+        verify(credentialsConfiguration).addReloadCallback(captor.capture());
+        callback.set(captor.getValue());
+
+        assertEquals(List.of("role1"), store.lookupUser("user1").getRoles());
+        assertTrue(reloaded.get());
+        assertEquals(3, store.getGeneration());
+        assertEquals(List.of("role1"), store.lookupUser("user1").getRoles());
+        store.close();
+    }
+
+    @Test
+    void test_memory_store_fixed_config() {
+        final FileAuthConfig config = new FileAuthConfig(List.of(new User("user1", "pass", List.of("role1"))),
+                List.of(new Role("role1", List.of(new Permission("topic")))));
+        final InMemoryCredentialsStore store = InMemoryCredentialsStore.of(config);
+        store.init();
+
+        assertFalse(store.isEmpty());
+        assertEquals(1, store.getGeneration());
+        assertEquals(List.of("role1"), store.lookupUser("user1").getRoles());
+        assertEquals(1, store.lookupRole("role1").getPermissions().size());
+    }
+
+    private void assertStoreFollowsConfig(
+            final @NotNull CredentialsStoreType type, final @NotNull Class<? extends CredentialsStore> storeClass)
+            throws Exception {
+        final URL resource = getClass().getClassLoader().getResource("credentials.xml");
+        assertNotNull(resource);
+        final File configFile = new File(extensionFolder, "credentials.xml");
+        Files.copy(new File(resource.toURI()).toPath(), configFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setCredentialsStore(type);
+        extensionConfig.setReloadInterval(1);
+        final CredentialsConfiguration credentialsConfiguration =
+                new CredentialsConfiguration(extensionFolder, executorService, extensionConfig, new MetricRegistry());
+        credentialsConfiguration.init();
+        final CredentialsStore store =
+                CredentialsStore.create(extensionFolder, extensionConfig, credentialsConfiguration, executorService);
+        assertInstanceOf(storeClass, store);
+        store.init();
+
+        assertFalse(store.isEmpty());
+        assertEquals(1, store.getGeneration());
+        assertEquals(List.of("role1"), store.lookupUser("user1").getRoles());
+        assertEquals(3, store.lookupRole("role1").getPermissions().size());
+        assertNull(store.lookupUser("unknown"));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        store.addChangeListener(generation -> latch.countDown());
+        Files.writeString(configFile.toPath(),
+                Files.readString(configFile.toPath()).replace("<name>user1</name>", "<name>user3</name>"));
+        assertTrue(configFile.setLastModified(System.currentTimeMillis() + 2000));
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(2, store.getGeneration());
+        assertNull(store.lookupUser("user1"));
+        assertEquals(List.of("role1"), store.lookupUser("user3").getRoles());
+        store.close();
+    }
+}
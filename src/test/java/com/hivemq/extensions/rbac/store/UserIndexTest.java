@@ -0,0 +1,92 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extensions.rbac.configuration.entities.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserIndexTest {
+
+    @Test
+    void test_empty() {
+        final UserIndex index = UserIndex.build(List.of());
+
+        assertEquals(0, index.size());
+        assertNull(index.get("user1"));
+    }
+
+    @Test
+    void test_all_users_found() {
+        for (final int size : new int[]{1, 2, 3, 7, 100, 12345, 100_000}) {
+            final List<User> users = users(size);
+            final UserIndex index = UserIndex.build(users);
+
+            assertEquals(size, index.size());
+            for (final User user : users) {
+                assertSame(user, index.get(new String(user.getName())));
+            }
+            assertNull(index.get("user-" + size));
+            assertNull(index.get("unknown"));
+            assertNull(index.get(""));
+        }
+    }
+
+    @Test
+    void test_same_hash_codes() {
+        //"Aa" and "BB" have the same hash code, so all these names have the same hash code
+        final User aaaa = new User("AaAa", "pass", List.of("role1"));
+        final User aabb = new User("AaBB", "pass", List.of("role1"));
+        final User bbaa = new User("BBAa", "pass", List.of("role1"));
+        final User bbbb = new User("BBBB", "pass", List.of("role1"));
+        final List<User> users = users(100);
+        users.addAll(List.of(aaaa, aabb, bbaa, bbbb));
+        final UserIndex index = UserIndex.build(users);
+
+        assertEquals(104, index.size());
+        assertSame(aaaa, index.get("AaAa"));
+        assertSame(aabb, index.get("AaBB"));
+        assertSame(bbaa, index.get("BBAa"));
+        assertSame(bbbb, index.get("BBBB"));
+        assertNull(index.get("BBBBAa"));
+    }
+
+    @Test
+    void test_duplicate_name() {
+        final List<User> users = users(10);
+        users.add(new User("user-5", "other", List.of("role2")));
+
+        final IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> UserIndex.build(users));
+        assertEquals("Duplicate user name 'user-5'", exception.getMessage());
+    }
+
+    private static List<User> users(final int size) {
+        final List<User> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(new User("user-" + i, "pass", List.of("role1")));
+        }
+        return users;
+    }
+}
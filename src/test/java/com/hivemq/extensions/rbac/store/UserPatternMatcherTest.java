@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.store;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.UserPattern;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserPatternMatcherTest {
+
+    @Test
+    void test_prefix() {
+        final UserPattern meters = prefix("meter-");
+        final UserPatternMatcher matcher = UserPatternMatcher.compile(List.of(meters));
+
+        assertSame(meters, matcher.match("meter-000001"));
+        assertSame(meters, matcher.match("meter-"));
+        assertNull(matcher.match("meter"));
+        assertNull(matcher.match("gateway-1"));
+    }
+
+    @Test
+    void test_glob() {
+        final UserPattern meters = glob("meter-??????");
+        final UserPattern sensors = glob("sensor-*-temp");
+        final UserPatternMatcher matcher = UserPatternMatcher.compile(List.of(meters, sensors));
+
+        assertSame(meters, matcher.match("meter-000001"));
+        assertNull(matcher.match("meter-0000001"));
+        assertSame(sensors, matcher.match("sensor-hall.1-temp"));
+        assertSame(sensors, matcher.match("sensor--temp"));
+        assertNull(matcher.match("sensor-1-humidity"));
+    }
+
+    @Test
+    void test_regex() {
+        final UserPattern meters = regex("^meter-\\d{6,7}$");
+        final UserPattern gateways = regex("(gw|gateway)-[a-f0-9]+");
+        final UserPatternMatcher matcher = UserPatternMatcher.compile(List.of(meters, gateways));
+
+        assertSame(meters, matcher.match("meter-2000000"));
+        assertNull(matcher.match("meter-12345"));
+        assertSame(gateways, matcher.match("gw-beef"));
+        assertSame(gateways, matcher.match("gateway-01"));
+        assertNull(matcher.match("gateway-xyz"));
+    }
+
+    @Test
+    void test_first_pattern_wins() {
+        final UserPattern special = glob("meter-9*");
+        final UserPattern meters = prefix("meter-");
+        final UserPattern all = regex(".*");
+        final UserPatternMatcher matcher = UserPatternMatcher.compile(List.of(special, meters, all));
+
+        assertSame(special, matcher.match("meter-900000"));
+        assertSame(meters, matcher.match("meter-100000"));
+        assertSame(all, matcher.match("anything"));
+
+        final UserPatternMatcher reversed = UserPatternMatcher.compile(List.of(all, meters, special));
+        assertSame(all, reversed.match("meter-900000"));
+    }
+
+    @Test
+    void test_empty() {
+        final UserPatternMatcher matcher = UserPatternMatcher.compile(null);
+
+        assertTrue(matcher.isEmpty());
+        assertNull(matcher.match("meter-000001"));
+    }
+
+    @Test
+    void test_regex_prefix() {
+        assertEquals("meter-", UserPatternMatcher.regexPrefix("^meter-\\d+"));
+        assertEquals("mete", UserPatternMatcher.regexPrefix("meter?-1"));
+        assertEquals("mete", UserPatternMatcher.regexPrefix("meter{0,1}"));
+        assertEquals("meter", UserPatternMatcher.regexPrefix("meter+"));
+        assertEquals("", UserPatternMatcher.regexPrefix("a|b"));
+        assertEquals("", UserPatternMatcher.regexPrefix("(?i)meter"));
+        assertEquals("meter", UserPatternMatcher.regexPrefix("meter"));
+    }
+
+    private static @NotNull UserPattern prefix(final @NotNull String prefix) {
+        return new UserPattern(prefix, null, null, "password", null, List.of("role1"));
+    }
+
+    private static @NotNull UserPattern glob(final @NotNull String glob) {
+        return new UserPattern(null, glob, null, "password", null, List.of("role1"));
+    }
+
+    private static @NotNull UserPattern regex(final @NotNull String regex) {
+        return new UserPattern(null, null, regex, "password", null, List.of("role1"));
+    }
+}
@@ -18,11 +18,14 @@ package com.hivemq.extensions.rbac.utils;
 
 import com.codahale.metrics.MetricRegistry;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import org.bouncycastle.crypto.digests.SHA512Digest;
 import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
 import java.util.Base64;
 
 import static com.hivemq.extensions.rbac.utils.CredentialsHasher.HASH_CACHE_HITRATE;
@@ -34,45 +37,76 @@ class CredentialsHasherTest {
 
     @Test
     void test_check_credentials_valid_password() {
-        final CredentialsHasher credentialsHasher = new CredentialsHasher(new MetricRegistry());
+        final CredentialsHasher credentialsHasher =
+                new CredentialsHasher(new ExtensionConfig(), new MetricRegistry(), null);
         final String base64Password = Base64.getEncoder().encodeToString("password".getBytes());
         final String hashedPassword = getHashedPassword();
-        final boolean result = credentialsHasher.checkCredentials(base64Password, hashedPassword);
+        final boolean result = credentialsHasher.checkCredentials(null, base64Password, hashedPassword, null);
         assertTrue(result);
     }
 
     @Test
     void test_check_credentials_invalid_password() {
-        final CredentialsHasher credentialsHasher = new CredentialsHasher(new MetricRegistry());
+        final CredentialsHasher credentialsHasher =
+                new CredentialsHasher(new ExtensionConfig(), new MetricRegistry(), null);
         final String base64Password = Base64.getEncoder().encodeToString("notapassword".getBytes());
         final String hashedPassword = getHashedPassword();
-        final boolean result = credentialsHasher.checkCredentials(base64Password, hashedPassword);
+        final boolean result = credentialsHasher.checkCredentials(null, base64Password, hashedPassword, null);
         assertFalse(result);
     }
 
     @Test
     void test_check_credentials_invalid_string() {
-        final CredentialsHasher credentialsHasher = new CredentialsHasher(new MetricRegistry());
+        final CredentialsHasher credentialsHasher =
+                new CredentialsHasher(new ExtensionConfig(), new MetricRegistry(), null);
         final String base64Password = Base64.getEncoder().encodeToString("password".getBytes());
-        final boolean result = credentialsHasher.checkCredentials(base64Password, "invalid-string");
+        final boolean result = credentialsHasher.checkCredentials(null, base64Password, "invalid-string", null);
         assertFalse(result);
     }
 
     @Test
     void test_check_credentials_valid_cached() {
         final MetricRegistry metricRegistry = new MetricRegistry();
-        final CredentialsHasher credentialsHasher = new CredentialsHasher(metricRegistry);
+        final CredentialsHasher credentialsHasher = new CredentialsHasher(new ExtensionConfig(), metricRegistry, null);
         final String base64Password = Base64.getEncoder().encodeToString("password".getBytes());
         final String hashedPassword = getHashedPassword();
-        final boolean result1 = credentialsHasher.checkCredentials(base64Password, hashedPassword);
-        final boolean result2 = credentialsHasher.checkCredentials(base64Password, hashedPassword);
-        final boolean result3 = credentialsHasher.checkCredentials(base64Password, hashedPassword);
+        final boolean result1 = credentialsHasher.checkCredentials(null, base64Password, hashedPassword, null);
+        final boolean result2 = credentialsHasher.checkCredentials(null, base64Password, hashedPassword, null);
+        final boolean result3 = credentialsHasher.checkCredentials(null, base64Password, hashedPassword, null);
         assertTrue(result1);
         assertTrue(result2);
         assertTrue(result3);
         assertEquals(2, metricRegistry.meter(HASH_CACHE_HITRATE).getCount());
     }
 
+    @Test
+    void test_check_credentials_warm_cache(@TempDir final @NotNull File extensionFolder) {
+        final ExtensionConfig extensionConfig = new ExtensionConfig();
+        extensionConfig.setWarmCacheSize(10);
+        final String base64Password = Base64.getEncoder().encodeToString("password".getBytes());
+        final String hashedPassword = getHashedPassword();
+        final VerificationCache verificationCache =
+                new VerificationCache(extensionFolder, extensionConfig, new MetricRegistry());
+        verificationCache.load();
+        assertTrue(new CredentialsHasher(extensionConfig, new MetricRegistry(), verificationCache).checkCredentials(
+                "user1",
+                base64Password,
+                hashedPassword,
+                null));
+        verificationCache.save();
+
+        //after a restart the credentials are verified without hashing
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final VerificationCache restartedCache =
+                new VerificationCache(extensionFolder, extensionConfig, metricRegistry);
+        restartedCache.load();
+        final CredentialsHasher credentialsHasher =
+                new CredentialsHasher(extensionConfig, metricRegistry, restartedCache);
+        assertTrue(credentialsHasher.checkCredentials("user1", base64Password, hashedPassword, null));
+        assertFalse(credentialsHasher.checkCredentials("user2", base64Password, hashedPassword, null));
+        assertEquals(1, metricRegistry.meter(VerificationCache.HITRATE).getCount());
+    }
+
     private @NotNull String getHashedPassword() {
         final String base64Salt = Base64.getEncoder().encodeToString("salt".getBytes());
         final byte[] password = "password".getBytes();
@@ -24,6 +24,7 @@ import com.hivemq.extension.sdk.api.services.builder.TopicPermissionBuilder;
 import com.hivemq.extensions.rbac.configuration.CredentialsConfiguration;
 import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
 import com.hivemq.extensions.rbac.configuration.entities.PasswordType;
+import com.hivemq.extensions.rbac.store.InMemoryCredentialsStore;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -33,6 +34,7 @@ import org.mockito.MockedStatic;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -104,6 +106,34 @@ class CredentialsValidatorTest {
             "    </users>\n" +
             ROLES +
             "</file-rbac>";
+    private static final @NotNull String PATTERN_CREDENTIALS = "<file-rbac>" +
+            "   <users>\n" +
+            "        <user>\n" +
+            "            <name>meter-000000</name>\n" +
+            "            <password>pass0</password>\n" +
+            "            <roles>\n" +
+            "                <id>role2</id>\n" +
+            "            </roles>\n" +
+            "        </user>\n" +
+            "    </users>\n" +
+            "   <user-patterns>\n" +
+            "        <user-pattern>\n" +
+            "            <prefix>meter-</prefix>\n" +
+            "            <hmac-secret>secret</hmac-secret>\n" +
+            "            <roles>\n" +
+            "                <id>role1</id>\n" +
+            "            </roles>\n" +
+            "        </user-pattern>\n" +
+            "        <user-pattern>\n" +
+            "            <glob>sensor-*</glob>\n" +
+            "            <password>sensorpass</password>\n" +
+            "            <roles>\n" +
+            "                <id>role2</id>\n" +
+            "            </roles>\n" +
+            "        </user-pattern>\n" +
+            "    </user-patterns>\n" +
+            ROLES +
+            "</file-rbac>";
     private @NotNull CredentialsValidator validator;
     private @NotNull ScheduledExecutorService scheduledExecutorService;
     private @NotNull File extensionFolder;
@@ -122,10 +152,10 @@ class CredentialsValidatorTest {
 
     @Test
     void test_valid_roles_plain() {
-        final List<String> roles = validator.getRoles("user1", ByteBuffer.wrap("pass1".getBytes()));
+        final List<String> roles = validator.getRoles("user1", ByteBuffer.wrap("pass1".getBytes()), null);
         assertNotNull(roles);
         assertEquals("role1", roles.get(0));
-        final List<String> roles2 = validator.getRoles("user2", ByteBuffer.wrap("pass2".getBytes()));
+        final List<String> roles2 = validator.getRoles("user2", ByteBuffer.wrap("pass2".getBytes()), null);
         assertNotNull(roles2);
         assertEquals("role1", roles2.get(0));
         assertEquals("role2", roles2.get(1));
@@ -134,10 +164,10 @@ class CredentialsValidatorTest {
     @Test
     void test_valid_roles_hashed() throws Exception {
         this.validator = initValidator(HASHED_CREDENTIALS, true);
-        final List<String> roles = validator.getRoles("user1", ByteBuffer.wrap("pass1".getBytes()));
+        final List<String> roles = validator.getRoles("user1", ByteBuffer.wrap("pass1".getBytes()), null);
         assertNotNull(roles);
         assertEquals("role1", roles.get(0));
-        final List<String> roles2 = validator.getRoles("user2", ByteBuffer.wrap("pass2".getBytes()));
+        final List<String> roles2 = validator.getRoles("user2", ByteBuffer.wrap("pass2".getBytes()), null);
         assertNotNull(roles2);
         assertEquals("role1", roles2.get(0));
         assertEquals("role2", roles2.get(1));
@@ -163,20 +193,67 @@ class CredentialsValidatorTest {
 
     @Test
     void test_invalid_roles() {
-        final List<String> roles = validator.getRoles("user1", ByteBuffer.wrap("pass2".getBytes()));
+        final List<String> roles = validator.getRoles("user1", ByteBuffer.wrap("pass2".getBytes()), null);
         assertNull(roles);
-        final List<String> roles2 = validator.getRoles("user2", ByteBuffer.wrap("pass1".getBytes()));
+        final List<String> roles2 = validator.getRoles("user2", ByteBuffer.wrap("pass1".getBytes()), null);
         assertNull(roles2);
-        final List<String> roles3 = validator.getRoles("user3", ByteBuffer.wrap("pass3".getBytes()));
+        final List<String> roles3 = validator.getRoles("user3", ByteBuffer.wrap("pass3".getBytes()), null);
         assertNull(roles3);
     }
 
+    @Test
+    void test_user_patterns() throws Exception {
+        this.validator = initValidator(PATTERN_CREDENTIALS, false);
+        final String derivedPassword = DerivedPasswords.derive("secret", "meter-000001");
+
+        assertEquals(List.of("role1"),
+                validator.getRoles("meter-000001", ByteBuffer.wrap(derivedPassword.getBytes()), null));
+        assertNull(validator.getRoles("meter-000002", ByteBuffer.wrap(derivedPassword.getBytes()), null));
+        assertEquals(List.of("role2"),
+                validator.getRoles("sensor-1", ByteBuffer.wrap("sensorpass".getBytes()), null));
+        assertNull(validator.getRoles("sensor-1", ByteBuffer.wrap("pass0".getBytes()), null));
+        assertNull(validator.getRoles("gateway-1", ByteBuffer.wrap("sensorpass".getBytes()), null));
+    }
+
+    @Test
+    void test_user_takes_precedence_over_pattern() throws Exception {
+        this.validator = initValidator(PATTERN_CREDENTIALS, false);
+
+        assertEquals(List.of("role2"),
+                validator.getRoles("meter-000000", ByteBuffer.wrap("pass0".getBytes()), null));
+        final String derivedPassword = DerivedPasswords.derive("secret", "meter-000000");
+        assertNull(validator.getRoles("meter-000000", ByteBuffer.wrap(derivedPassword.getBytes()), null));
+    }
+
+    @Test
+    void test_password_checks() throws Exception {
+        final List<PasswordCheck> checks = new ArrayList<>();
+        assertNotNull(validator.getRoles("user1", ByteBuffer.wrap("pass1".getBytes()), checks::add));
+        assertNull(validator.getRoles("user1", ByteBuffer.wrap("pass2".getBytes()), checks::add));
+        //unknown users are not checked
+        assertNull(validator.getRoles("user3", ByteBuffer.wrap("pass3".getBytes()), checks::add));
+        assertEquals(List.of(PasswordCheck.PLAIN, PasswordCheck.PLAIN), checks);
+
+        this.validator = initValidator(PATTERN_CREDENTIALS, false);
+        checks.clear();
+        final String derivedPassword = DerivedPasswords.derive("secret", "meter-000001");
+        assertNotNull(validator.getRoles("meter-000001", ByteBuffer.wrap(derivedPassword.getBytes()), checks::add));
+        assertEquals(List.of(PasswordCheck.DERIVED), checks);
+    }
+
+    @Test
+    void test_derived_password() {
+        //printf 'meter-000001' | openssl dgst -sha256 -hmac 'secret' -binary | base64
+        assertEquals("RD9iL6YC8jZKFS/+dCjn0DKI2U/8DpM5T623mQ52dMU=",
+                DerivedPasswords.derive("secret", "meter-000001"));
+    }
+
     @Test
     void test_invalid_config() throws Exception {
         this.validator = initValidator("", false);
-        final List<String> roles = validator.getRoles("user1", ByteBuffer.wrap("pass1".getBytes()));
+        final List<String> roles = validator.getRoles("user1", ByteBuffer.wrap("pass1".getBytes()), null);
         assertNull(roles);
-        final List<String> roles2 = validator.getRoles("user2", ByteBuffer.wrap("pass2".getBytes()));
+        final List<String> roles2 = validator.getRoles("user2", ByteBuffer.wrap("pass2".getBytes()), null);
         assertNull(roles2);
     }
 
@@ -190,10 +267,17 @@ class CredentialsValidatorTest {
         }
         Files.writeString(new File(extensionFolder, "credentials.xml").toPath(), credentials);
         final CredentialsConfiguration credentialsConfiguration =
-                new CredentialsConfiguration(extensionFolder, scheduledExecutorService, extensionConfig);
+                new CredentialsConfiguration(extensionFolder,
+                        scheduledExecutorService,
+                        extensionConfig,
+                        new MetricRegistry());
         credentialsConfiguration.init();
         final CredentialsValidator validator =
-                new CredentialsValidator(credentialsConfiguration, extensionConfig, new MetricRegistry());
+                new CredentialsValidator(new InMemoryCredentialsStore(credentialsConfiguration),
+                        extensionConfig,
+                        new MetricRegistry(),
+                        null,
+                        new TopicPermissionInterner());
         validator.init();
         return validator;
     }
@@ -0,0 +1,71 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HdrHistogramReservoirTest {
+
+    @Test
+    void test_values_match_size() {
+        final HdrHistogramReservoir reservoir = new HdrHistogramReservoir();
+        for (int i = 0; i < 10; i++) {
+            reservoir.update(5);
+        }
+        reservoir.update(1000);
+        reservoir.update(-1);
+
+        final Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(12, snapshot.size());
+        final long[] values = snapshot.getValues();
+        assertEquals(snapshot.size(), values.length);
+        assertEquals(0, values[0]);
+        for (int i = 1; i < 11; i++) {
+            assertEquals(5, values[i]);
+        }
+        assertTrue(values[11] >= 1000 && values[11] <= 1001);
+        assertEquals(5, snapshot.getMedian());
+        assertEquals(0, snapshot.getMin());
+    }
+
+    @Test
+    void test_window() {
+        final HdrHistogramReservoir reservoir = new HdrHistogramReservoir(1, TimeUnit.HOURS);
+        reservoir.update(1);
+        assertEquals(1, reservoir.getSnapshot().size());
+        reservoir.update(2);
+        //values of the current window are kept
+        assertEquals(2, reservoir.size());
+        assertEquals(2, reservoir.getSnapshot().getValues().length);
+    }
+
+    @Test
+    void test_window_elapsed() {
+        final HdrHistogramReservoir reservoir = new HdrHistogramReservoir(0, TimeUnit.NANOSECONDS);
+        reservoir.update(1);
+        assertEquals(1, reservoir.getSnapshot().size());
+        //the snapshot started a new window
+        assertEquals(0, reservoir.getSnapshot().size());
+        assertEquals(0, reservoir.getSnapshot().getValues().length);
+    }
+}
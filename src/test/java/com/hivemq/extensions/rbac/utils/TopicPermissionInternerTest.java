@@ -0,0 +1,131 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.auth.parameter.TopicPermission;
+import com.hivemq.extension.sdk.api.services.builder.TopicPermissionBuilder;
+import com.hivemq.extensions.rbac.configuration.entities.Permission;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TopicPermissionInternerTest {
+
+    private final @NotNull TopicPermissionInterner interner = new TopicPermissionInterner(TestBuilder::new);
+
+    @Test
+    void test_permission_without_substitution_is_shared() {
+        final Permission permission = new Permission("devices/+/status");
+        permission.setActivity(TopicPermission.MqttActivity.SUBSCRIBE);
+
+        final TopicPermission topicPermission = interner.intern("client1", "user1", permission);
+
+        assertEquals("devices/+/status", topicPermission.getTopicFilter());
+        assertEquals(TopicPermission.MqttActivity.SUBSCRIBE, topicPermission.getActivity());
+        assertSame(topicPermission, interner.intern("client2", "user2", permission));
+        //an equal permission of another role or a reloaded config
+        final Permission equalPermission = new Permission("devices/+/status");
+        equalPermission.setActivity(TopicPermission.MqttActivity.SUBSCRIBE);
+        assertSame(topicPermission, interner.intern("client3", "user3", equalPermission));
+        assertEquals(1, interner.size());
+    }
+
+    @Test
+    void test_substituted_permission_is_shared_by_resolved_topic() {
+        final Permission clientPermission = new Permission("data/${{clientid}}/#");
+        final Permission userPermission = new Permission("data/${{username}}/#");
+
+        final TopicPermission topicPermission = interner.intern("client1", "user1", clientPermission);
+
+        assertEquals("data/client1/#", topicPermission.getTopicFilter());
+        assertSame(topicPermission, interner.intern("client1", "user2", clientPermission));
+        assertSame(topicPermission, interner.intern("client2", "client1", userPermission));
+        assertNotSame(topicPermission, interner.intern("client2", "user1", clientPermission));
+    }
+
+    @Test
+    void test_permissions_with_different_fields_are_not_shared() {
+        final Permission publish = new Permission("data/${{clientid}}/#");
+        publish.setActivity(TopicPermission.MqttActivity.PUBLISH);
+        final Permission subscribe = new Permission("data/${{clientid}}/#");
+        subscribe.setActivity(TopicPermission.MqttActivity.SUBSCRIBE);
+
+        final TopicPermission publishPermission = interner.intern("client1", "user1", publish);
+        final TopicPermission subscribePermission = interner.intern("client1", "user1", subscribe);
+
+        assertNotSame(publishPermission, subscribePermission);
+        assertEquals(TopicPermission.MqttActivity.PUBLISH, publishPermission.getActivity());
+        assertEquals(TopicPermission.MqttActivity.SUBSCRIBE, subscribePermission.getActivity());
+    }
+
+    private static class TestBuilder implements TopicPermissionBuilder {
+
+        private @NotNull String topicFilter = "invalidFilter";
+        private @NotNull TopicPermission.MqttActivity activity = TopicPermission.MqttActivity.ALL;
+
+        @Override
+        public @NotNull TopicPermissionBuilder topicFilter(final @NotNull String topicFilter) {
+            this.topicFilter = topicFilter;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder type(final TopicPermission.@NotNull PermissionType type) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder qos(final TopicPermission.@NotNull Qos qos) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder activity(final TopicPermission.@NotNull MqttActivity activity) {
+            this.activity = activity;
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder retain(final TopicPermission.@NotNull Retain retain) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder sharedSubscription(
+                final TopicPermission.@NotNull SharedSubscription sharedSubscription) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermissionBuilder sharedGroup(final @NotNull String sharedGroup) {
+            return this;
+        }
+
+        @Override
+        public @NotNull TopicPermission build() {
+            final TopicPermission topicPermission = mock(TopicPermission.class);
+            when(topicPermission.getTopicFilter()).thenReturn(topicFilter);
+            when(topicPermission.getActivity()).thenReturn(activity);
+            return topicPermission;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.rbac.configuration.entities.ExtensionConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerificationCacheTest {
+
+    private static final @NotNull String HASH = "c2FsdA==:100:aGFzaA==";
+
+    private @NotNull File extensionFolder;
+    private @NotNull ExtensionConfig extensionConfig;
+
+    @BeforeEach
+    void setUp(@TempDir final @NotNull File extensionFolder) {
+        this.extensionFolder = extensionFolder;
+        extensionConfig = new ExtensionConfig();
+        extensionConfig.setWarmCacheSize(100);
+    }
+
+    @Test
+    void test_contains_only_verified_credentials() {
+        final VerificationCache verificationCache = newCache();
+        verificationCache.add("user1", "cGFzczE=", HASH);
+
+        assertTrue(verificationCache.contains("user1", "cGFzczE=", HASH));
+        assertFalse(verificationCache.contains("user2", "cGFzczE=", HASH));
+        assertFalse(verificationCache.contains("user1", "cGFzczI=", HASH));
+        //a changed password hash invalidates the verification
+        assertFalse(verificationCache.contains("user1", "cGFzczE=", "c2FsdA==:200:aGFzaA=="));
+        //the parts are not just concatenated
+        assertFalse(verificationCache.contains("user1cGFzczE=", "", HASH));
+    }
+
+    @Test
+    void test_save_and_load() throws Exception {
+        final VerificationCache verificationCache = newCache();
+        verificationCache.add("user1", "cGFzczE=", HASH);
+        verificationCache.save();
+
+        final byte[] cacheFile =
+                Files.readAllBytes(new File(extensionFolder, VerificationCache.CACHE_FILE_NAME).toPath());
+        //neither the user name nor the password are written
+        final String content = new String(cacheFile, StandardCharsets.ISO_8859_1);
+        assertFalse(content.contains("user1"));
+        assertFalse(content.contains("cGFzczE="));
+        assertEquals(32, Files.size(new File(extensionFolder, VerificationCache.KEY_FILE_NAME).toPath()));
+
+        final VerificationCache restartedCache = newCache();
+        assertEquals(1, restartedCache.size());
+        assertTrue(restartedCache.contains("user1", "cGFzczE=", HASH));
+    }
+
+    @Test
+    void test_new_key_discards_entries() throws Exception {
+        final VerificationCache verificationCache = newCache();
+        verificationCache.add("user1", "cGFzczE=", HASH);
+        verificationCache.save();
+        Files.write(new File(extensionFolder, VerificationCache.KEY_FILE_NAME).toPath(), new byte[3]);
+
+        final VerificationCache restartedCache = newCache();
+        assertEquals(0, restartedCache.size());
+        assertFalse(restartedCache.contains("user1", "cGFzczE=", HASH));
+    }
+
+    @Test
+    void test_key_file_is_owner_only() throws Exception {
+        newCache();
+        assertEquals(PosixFilePermissions.fromString("rw-------"),
+                Files.getPosixFilePermissions(new File(extensionFolder, VerificationCache.KEY_FILE_NAME).toPath()));
+    }
+
+    @Test
+    void test_unreadable_key_disables_cache() {
+        assertTrue(new File(extensionFolder, VerificationCache.KEY_FILE_NAME).mkdir());
+        final VerificationCache verificationCache =
+                new VerificationCache(extensionFolder, extensionConfig, new MetricRegistry());
+        assertFalse(verificationCache.load());
+
+        verificationCache.add("user1", "cGFzczE=", HASH);
+        assertFalse(verificationCache.contains("user1", "cGFzczE=", HASH));
+    }
+
+    @Test
+    void test_invalidate() {
+        final VerificationCache verificationCache = newCache();
+        verificationCache.add("user1", "cGFzczE=", HASH);
+        verificationCache.invalidate();
+
+        assertFalse(verificationCache.contains("user1", "cGFzczE=", HASH));
+    }
+
+    @Test
+    void test_corrupt_cache_file() throws Exception {
+        Files.write(new File(extensionFolder, VerificationCache.CACHE_FILE_NAME).toPath(), new byte[]{1, 2, 3});
+        final VerificationCache verificationCache = newCache();
+        assertEquals(0, verificationCache.size());
+
+        verificationCache.add("user1", "cGFzczE=", HASH);
+        assertTrue(verificationCache.contains("user1", "cGFzczE=", HASH));
+    }
+
+    private @NotNull VerificationCache newCache() {
+        final VerificationCache verificationCache =
+                new VerificationCache(extensionFolder, extensionConfig, new MetricRegistry());
+        assertTrue(verificationCache.load());
+        return verificationCache;
+    }
+}
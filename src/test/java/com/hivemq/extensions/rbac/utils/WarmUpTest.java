@@ -0,0 +1,49 @@
+/*
+ *
+ * Copyright 2019 HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.extensions.rbac.utils;
+
+import com.hivemq.extension.sdk.api.services.builder.Builders;
+import com.hivemq.extension.sdk.api.services.builder.TopicPermissionBuilder;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Answers.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+class WarmUpTest {
+
+    @Test
+    void test_run_within_time() {
+        try (final MockedStatic<Builders> ignored = mockStatic(Builders.class)) {
+            when(Builders.topicPermission()).thenAnswer(invocation -> mock(TopicPermissionBuilder.class, RETURNS_SELF));
+            final WarmUp warmUp = new WarmUp(200);
+
+            final long start = System.nanoTime();
+            final int rounds = warmUp.run();
+            final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(rounds > 0);
+            //a single round takes far less than a second
+            assertTrue(duration < 1200, "Warm-up took " + duration + " ms");
+        }
+    }
+}